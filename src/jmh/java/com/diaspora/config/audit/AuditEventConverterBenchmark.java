@@ -0,0 +1,89 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.PersistentAuditEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link AuditEventConverter} conversions, done for every saved or loaded audit event.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuditEventConverterBenchmark {
+
+    @Param({"100"})
+    public int eventCount;
+
+    private final AuditEventConverter auditEventConverter = new AuditEventConverter();
+
+    private Map<String, Object> data;
+
+    private PersistentAuditEvent persistentAuditEvent;
+
+    private List<PersistentAuditEvent> persistentAuditEvents;
+
+    @Setup
+    public void setup() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.12");
+        data = new HashMap<>();
+        data.put("details", new WebAuthenticationDetails(request));
+        data.put("type", "org.springframework.security.authentication.BadCredentialsException");
+        data.put("message", "Bad credentials");
+
+        persistentAuditEvents = new ArrayList<>();
+        for (int i = 0; i < eventCount; i++) {
+            persistentAuditEvents.add(createPersistentAuditEvent(i));
+        }
+        persistentAuditEvent = persistentAuditEvents.get(0);
+    }
+
+    @Benchmark
+    public Map<String, String> convertDataToStrings() {
+        return auditEventConverter.convertDataToStrings(data);
+    }
+
+    @Benchmark
+    public AuditEvent convertToAuditEvent() {
+        return auditEventConverter.convertToAuditEvent(persistentAuditEvent);
+    }
+
+    @Benchmark
+    public List<AuditEvent> convertToAuditEventList() {
+        return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
+    }
+
+    private PersistentAuditEvent createPersistentAuditEvent(int i) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setId((long) i);
+        event.setPrincipal("user-" + (i % 10));
+        event.setAuditEventDate(Instant.now());
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        event.getData().put("remoteAddress", "10.0.0." + (i % 255));
+        event.getData().put("sessionId", "session-" + i);
+        return event;
+    }
+}
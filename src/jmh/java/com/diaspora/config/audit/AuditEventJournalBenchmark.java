@@ -0,0 +1,131 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.PersistentAuditEvent;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of the time until an audit event is acknowledged, by 8 threads: appended to the
+ * {@link AuditEventJournal} and synced to the disk ({@code target=journal}), or inserted and committed, one
+ * transaction per event, into an H2 database served over TCP on localhost ({@code target=database}), as the
+ * synchronous inserts did. The database is in memory, so its commits do not even sync to the disk.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class AuditEventJournalBenchmark {
+
+    @Param({"journal", "database"})
+    public String target;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private Path directory;
+
+    private AuditEventJournal journal;
+
+    private Server databaseServer;
+
+    private String databaseUrl;
+
+    private final ThreadLocal<Connection> connections = new ThreadLocal<>();
+
+    @Setup
+    public void setup() throws IOException, SQLException {
+        if ("journal".equals(target)) {
+            directory = Files.createTempDirectory("audit-journal-benchmark");
+            journal = new AuditEventJournal(directory, 64 * 1024 * 1024);
+            journal.open();
+        } else {
+            databaseServer = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+            databaseUrl = "jdbc:h2:tcp://localhost:" + databaseServer.getPort() + "/mem:audit;DB_CLOSE_DELAY=-1";
+            try (Connection connection = DriverManager.getConnection(databaseUrl);
+                 Statement statement = connection.createStatement()) {
+                statement.execute("create table jhi_persistent_audit_event (event_id bigint primary key, " +
+                    "principal varchar(50) not null, event_date timestamp, event_type varchar(255), event_data varbinary(4000))");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (journal != null) {
+            journal.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+        if (databaseServer != null) {
+            databaseServer.stop();
+        }
+    }
+
+    @Benchmark
+    public void acknowledge() throws Exception {
+        PersistentAuditEvent event = event();
+        if (journal != null) {
+            journal.awaitSync(journal.append(event), 1000);
+        } else {
+            try (PreparedStatement insert = connection().prepareStatement("insert into jhi_persistent_audit_event " +
+                "(event_id, principal, event_date, event_type) values (?, ?, ?, ?)")) {
+                insert.setLong(1, event.getId());
+                insert.setString(2, event.getPrincipal());
+                insert.setTimestamp(3, Timestamp.from(event.getAuditEventDate()));
+                insert.setString(4, event.getAuditEventType());
+                insert.executeUpdate();
+            }
+            connection().commit();
+        }
+    }
+
+    private Connection connection() throws SQLException {
+        Connection connection = connections.get();
+        if (connection == null) {
+            connection = DriverManager.getConnection(databaseUrl);
+            connection.setAutoCommit(false);
+            connections.set(connection);
+        }
+        return connection;
+    }
+
+    private PersistentAuditEvent event() {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setId(ids.incrementAndGet());
+        event.setPrincipal("admin");
+        event.setAuditEventDate(Instant.now());
+        event.setAuditEventType("CARD_DATA_ACCESS");
+        event.getData().put("remoteAddress", "10.0.0.12");
+        return event;
+    }
+}
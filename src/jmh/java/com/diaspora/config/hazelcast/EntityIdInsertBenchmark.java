@@ -0,0 +1,151 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.config.CacheConfiguration;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.FlakeIdGeneratorConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import org.h2.tools.Server;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark of the insertion of entities by Hibernate, in transactions of {@link #ROWS} rows with
+ * {@code hibernate.jdbc.batch_size} set, into an in-memory H2 database served over TCP on localhost, so that each
+ * statement is a round trip as with the MySQL server: with {@code IDENTITY} ids ({@code ids=identity}), which
+ * Hibernate reads back one insert at a time, and with the ids of the {@link FlakeIdentifierGenerator}
+ * ({@code ids=flake}), which leave the inserts to JDBC batches. The throughput is in transactions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntityIdInsertBenchmark {
+
+    private static final int ROWS = 100;
+
+    @Param({"identity", "flake"})
+    public String ids;
+
+    @Param({"25"})
+    public int batchSize;
+
+    private Server databaseServer;
+
+    private HazelcastInstance hazelcastInstance;
+
+    private SessionFactory sessionFactory;
+
+    private Supplier<Object> rows;
+
+    @Setup
+    public void setup() throws SQLException {
+        databaseServer = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+        Config config = new Config();
+        config.setInstanceName(CacheConfiguration.HAZELCAST_INSTANCE_NAME);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.addFlakeIdGeneratorConfig(new FlakeIdGeneratorConfig(FlakeIdentifierGenerator.DEFAULT_FLAKE_ID_GENERATOR)
+            .setPrefetchCount(1000));
+        hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.URL,
+                "jdbc:h2:" + databaseServer.getURL() + "/mem:EntityIdInsertBenchmark;DB_CLOSE_DELAY=-1")
+            .applySetting(AvailableSettings.DIALECT, "org.hibernate.dialect.H2Dialect")
+            .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+            .applySetting(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize)
+            .applySetting(AvailableSettings.ORDER_INSERTS, true)
+            .build();
+        sessionFactory = new MetadataSources(registry)
+            .addAnnotatedClass(IdentityRow.class)
+            .addAnnotatedClass(FlakeRow.class)
+            .buildMetadata()
+            .buildSessionFactory();
+        rows = "identity".equals(ids) ? IdentityRow::new : FlakeRow::new;
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRows() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createQuery("delete from " + ("identity".equals(ids) ? "IdentityRow" : "FlakeRow")).executeUpdate();
+            session.getTransaction().commit();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sessionFactory.close();
+        hazelcastInstance.shutdown();
+        databaseServer.stop();
+    }
+
+    @Benchmark
+    public void insert() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            for (int i = 0; i < ROWS; i++) {
+                session.persist(rows.get());
+            }
+            session.getTransaction().commit();
+        }
+    }
+
+    @Entity(name = "IdentityRow")
+    public static class IdentityRow {
+
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        public Long id;
+
+        public String principal = "admin";
+
+        public Instant eventDate = Instant.now();
+
+        public String eventType = "AUTHENTICATION_SUCCESS";
+    }
+
+    @Entity(name = "FlakeRow")
+    @GenericGenerator(name = FlakeIdentifierGenerator.GENERATOR, strategy = "com.diaspora.config.hazelcast.FlakeIdentifierGenerator")
+    public static class FlakeRow {
+
+        @Id
+        @GeneratedValue(generator = FlakeIdentifierGenerator.GENERATOR)
+        public Long id;
+
+        public String principal = "admin";
+
+        public Instant eventDate = Instant.now();
+
+        public String eventType = "AUTHENTICATION_SUCCESS";
+    }
+}
@@ -0,0 +1,98 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.config.cache.CacheInvalidation;
+import com.diaspora.security.oauth2.RevokedToken;
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the Hazelcast serialization of the types the application stores in Hazelcast: the {@link RevokedToken}
+ * of the revoked tokens map, written for every map write, backup and partition migration, and the
+ * {@link CacheInvalidation} published on the invalidation topic of the two-tier caches for every eviction.
+ * Each type is serialized with its {@link HazelcastSerializationRegistry} serialization ({@code serialization=hazelcast})
+ * and with the Java serialization Hazelcast falls back to for a {@link java.io.Serializable} type
+ * ({@code serialization=java}). The payload sizes are compared by {@code HazelcastSerializationCompatibilityTest}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HazelcastSerializationBenchmark {
+
+    @Param({"revokedToken", "cacheInvalidation"})
+    public String type;
+
+    @Param({"hazelcast", "java"})
+    public String serialization;
+
+    private InternalSerializationService serializationService;
+
+    private Object object;
+
+    private Object serialized;
+
+    @Setup
+    public void setup() throws IOException {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        new HazelcastSerializationRegistry().registerWith(serializationConfig);
+        serializationService = new DefaultSerializationServiceBuilder().setConfig(serializationConfig).build();
+        if ("revokedToken".equals(type)) {
+            Instant now = Instant.now();
+            object = new RevokedToken("4f1c2a9e-7b3d-4e8a-9c61-2d5f0b7a8e13", now, now.plusSeconds(3600), "admin", "compromised");
+        } else {
+            object = new CacheInvalidation(UUID.randomUUID().toString(), "bins", "411111");
+        }
+        serialized = serialize();
+    }
+
+    @TearDown
+    public void tearDown() {
+        serializationService.dispose();
+    }
+
+    @Benchmark
+    public Object serialize() throws IOException {
+        if ("hazelcast".equals(serialization)) {
+            return serializationService.toData(object);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        if ("hazelcast".equals(serialization)) {
+            return serializationService.toObject(serialized);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream((byte[]) serialized))) {
+            return in.readObject();
+        }
+    }
+}
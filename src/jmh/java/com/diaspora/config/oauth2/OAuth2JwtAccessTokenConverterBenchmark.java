@@ -0,0 +1,79 @@
+package com.diaspora.config.oauth2;
+
+import com.diaspora.security.oauth2.OAuth2SignatureVerifierClient;
+import com.diaspora.security.oauth2.SignatureVerifierRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the JWT decoding done by {@link OAuth2JwtAccessTokenConverter} on every request.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OAuth2JwtAccessTokenConverterBenchmark {
+
+    @Param({"true", "false"})
+    public boolean tokenCache;
+
+    private OAuth2JwtAccessTokenConverter converter;
+
+    private String token;
+
+    private Map<String, Object> claims;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        OAuth2Properties oAuth2Properties = new OAuth2Properties();
+        oAuth2Properties.getTokenCache().setEnabled(tokenCache);
+        OAuth2SignatureVerifierClient client = () -> new RsaVerifier((RSAPublicKey) keyPair.getPublic());
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client, oAuth2Properties, null, new SimpleMeterRegistry());
+        registry.start();
+        converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry, null, new SimpleMeterRegistry());
+
+        long exp = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TimeUnit.DAYS.toSeconds(1);
+        String content = "{\"user_name\":\"user\",\"client_id\":\"web_app\",\"scope\":[\"openid\"]," +
+            "\"authorities\":[\"ROLE_USER\",\"ROLE_CARD_READ\"],\"jti\":\"5b3c4a5e-0c1f-4b8e-9a59-4c5d7e0b1a2f\"," +
+            "\"exp\":" + exp + "}";
+        token = JwtHelper.encode(content, new RsaSigner((RSAPrivateKey) keyPair.getPrivate())).getEncoded();
+        claims = converter.decode(token);
+    }
+
+    @Benchmark
+    public Map<String, Object> decode() {
+        return converter.decode(token);
+    }
+
+    @Benchmark
+    public OAuth2Authentication extractAuthentication() {
+        return converter.extractAuthentication(claims);
+    }
+}
@@ -0,0 +1,80 @@
+package com.diaspora.security;
+
+import com.diaspora.security.oauth2.AuthoritySetOAuth2Authentication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link SecurityUtils} role checks, called several times per request by service code.
+ * <p>
+ * The state is per thread, as the security context is held in a thread local.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecurityUtilsBenchmark {
+
+    @Param({"true", "false"})
+    public boolean authoritySet;
+
+    @Setup
+    public void setup() {
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+        authorities.add(new SimpleGrantedAuthority("ROLE_CARD_READ"));
+        authorities.add(new SimpleGrantedAuthority("ROLE_CARD_WRITE"));
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("user", "user", authorities);
+        if (authoritySet) {
+            OAuth2Request request = new OAuth2Request(null, "web_app", authorities, true, null, null, null, null, null);
+            securityContext.setAuthentication(new AuthoritySetOAuth2Authentication(new OAuth2Authentication(request, user)));
+        } else {
+            securityContext.setAuthentication(user);
+        }
+        SecurityContextHolder.setContext(securityContext);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public boolean isAuthenticated() {
+        return SecurityUtils.isAuthenticated();
+    }
+
+    @Benchmark
+    public boolean isCurrentUserInRoleGranted() {
+        return SecurityUtils.isCurrentUserInRole("ROLE_CARD_WRITE");
+    }
+
+    @Benchmark
+    public boolean isCurrentUserInRoleDenied() {
+        return SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN);
+    }
+}
@@ -0,0 +1,67 @@
+package com.diaspora.web.rest.errors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.zalando.problem.Problem;
+import org.zalando.problem.Status;
+import org.zalando.problem.violations.ConstraintViolationProblem;
+import org.zalando.problem.violations.Violation;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the {@link ExceptionTranslator} post-processing, done for every error response.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionTranslatorBenchmark {
+
+    private final ExceptionTranslator exceptionTranslator = new ExceptionTranslator();
+
+    private NativeWebRequest request;
+
+    private ResponseEntity<Problem> defaultProblem;
+
+    private ResponseEntity<Problem> constraintViolationProblem;
+
+    @Setup
+    public void setup() {
+        request = new ServletWebRequest(new MockHttpServletRequest("GET", "/api/cards/42"));
+        defaultProblem = new ResponseEntity<>(Problem.builder()
+            .withStatus(Status.NOT_FOUND)
+            .withTitle("Not Found")
+            .withDetail("Card 42 not found")
+            .build(), new HttpHeaders(), HttpStatus.NOT_FOUND);
+        constraintViolationProblem = new ResponseEntity<>(new ConstraintViolationProblem(Status.BAD_REQUEST,
+            Collections.singletonList(new Violation("pan", "must match \"[0-9]{16}\""))), new HttpHeaders(), HttpStatus.BAD_REQUEST);
+    }
+
+    @Benchmark
+    public ResponseEntity<Problem> processDefaultProblem() {
+        return exceptionTranslator.process(defaultProblem, request);
+    }
+
+    @Benchmark
+    public ResponseEntity<Problem> processConstraintViolationProblem() {
+        return exceptionTranslator.process(constraintViolationProblem, request);
+    }
+}
@@ -0,0 +1,28 @@
+package com.diaspora.client;
+
+import com.diaspora.security.oauth2.ClientCredentialsTokenManager;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+/**
+ * Authorizes the {@link AuthorizedFeignClient} calls with the client-credentials token of the
+ * {@link ClientCredentialsTokenManager}, which only makes a call wait when it has no valid token.
+ */
+public class ClientCredentialsFeignRequestInterceptor implements RequestInterceptor {
+
+    private static final String AUTHORIZATION_HEADER = "Authorization";
+
+    private static final String BEARER_TOKEN_TYPE = "Bearer";
+
+    private final ClientCredentialsTokenManager tokenManager;
+
+    public ClientCredentialsFeignRequestInterceptor(ClientCredentialsTokenManager tokenManager) {
+        this.tokenManager = tokenManager;
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        template.header(AUTHORIZATION_HEADER, String.format("%s %s", BEARER_TOKEN_TYPE, tokenManager.getAccessToken().getValue()));
+    }
+}
@@ -1,22 +1,20 @@
 package com.diaspora.client;
 
-import org.springframework.cloud.security.oauth2.client.feign.OAuth2FeignRequestInterceptor;
+import com.diaspora.security.oauth2.ClientCredentialsTokenManager;
 import org.springframework.context.annotation.Bean;
-import org.springframework.security.oauth2.client.DefaultOAuth2ClientContext;
 
 import feign.RequestInterceptor;
-import io.github.jhipster.security.uaa.LoadBalancedResourceDetails;
 
 public class OAuth2InterceptedFeignConfiguration {
 
-    private final LoadBalancedResourceDetails loadBalancedResourceDetails;
+    private final ClientCredentialsTokenManager clientCredentialsTokenManager;
 
-    public OAuth2InterceptedFeignConfiguration(LoadBalancedResourceDetails loadBalancedResourceDetails) {
-        this.loadBalancedResourceDetails = loadBalancedResourceDetails;
+    public OAuth2InterceptedFeignConfiguration(ClientCredentialsTokenManager clientCredentialsTokenManager) {
+        this.clientCredentialsTokenManager = clientCredentialsTokenManager;
     }
 
     @Bean(name = "oauth2RequestInterceptor")
     public RequestInterceptor getOAuth2RequestInterceptor() {
-        return new OAuth2FeignRequestInterceptor(new DefaultOAuth2ClientContext(), loadBalancedResourceDetails);
+        return new ClientCredentialsFeignRequestInterceptor(clientCredentialsTokenManager);
     }
 }
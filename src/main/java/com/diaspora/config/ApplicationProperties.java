@@ -1,6 +1,22 @@
 package com.diaspora.config;
 
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MaxSizeConfig;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Properties specific to MS Secure Card Bank.
@@ -8,6 +24,1042 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  * Properties are configured in the {@code application.yml} file.
  * See {@link io.github.jhipster.config.JHipsterProperties} for a good example.
  */
+@Validated
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    @Valid
+    private final Cache cache = new Cache();
+
+    @Valid
+    private final Audit audit = new Audit();
+
+    @Valid
+    private final Datasource datasource = new Datasource();
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Datasource getDatasource() {
+        return datasource;
+    }
+
+    public Audit getAudit() {
+        return audit;
+    }
+
+    /**
+     * Read replicas of the database, see {@link com.diaspora.config.datasource.ReadWriteRoutingDataSource}.
+     */
+    public static class Datasource {
+
+        /**
+         * Replicas serving the read-only transactions, none to serve all the transactions from the primary.
+         */
+        @Valid
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * Time after a read-write transaction of a user during which the read-only transactions of that user are
+         * still served by the primary, so that they read their writes.
+         */
+        @Min(0)
+        private long stickyWindowMs = 5000;
+
+        /**
+         * Replication lag over which a replica is left out, until it catches up.
+         */
+        @Min(1)
+        private long maxLagMs = 10000;
+
+        /**
+         * Time between two checks of the replication lag.
+         */
+        @Min(1)
+        private long lagCheckIntervalMs = 2000;
+
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        public long getStickyWindowMs() {
+            return stickyWindowMs;
+        }
+
+        public void setStickyWindowMs(long stickyWindowMs) {
+            this.stickyWindowMs = stickyWindowMs;
+        }
+
+        public long getMaxLagMs() {
+            return maxLagMs;
+        }
+
+        public void setMaxLagMs(long maxLagMs) {
+            this.maxLagMs = maxLagMs;
+        }
+
+        public long getLagCheckIntervalMs() {
+            return lagCheckIntervalMs;
+        }
+
+        public void setLagCheckIntervalMs(long lagCheckIntervalMs) {
+            this.lagCheckIntervalMs = lagCheckIntervalMs;
+        }
+
+        /**
+         * A read replica, whose pool has the settings of {@code spring.datasource.hikari}, read-only, and the
+         * credentials of the primary unless set.
+         */
+        public static class Replica {
+
+            @NotNull
+            private String url;
+
+            private String username;
+
+            private String password;
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+        }
+    }
+
+    public static class Audit {
+
+        @Valid
+        private final Writer writer = new Writer();
+
+        @Valid
+        private final Export export = new Export();
+
+        @Valid
+        private final Retention retention = new Retention();
+
+        @Valid
+        private final Journal journal = new Journal();
+
+        @Valid
+        private final Chain chain = new Chain();
+
+        @Valid
+        private final Rollup rollup = new Rollup();
+
+        public Writer getWriter() {
+            return writer;
+        }
+
+        public Journal getJournal() {
+            return journal;
+        }
+
+        public Chain getChain() {
+            return chain;
+        }
+
+        public Rollup getRollup() {
+            return rollup;
+        }
+
+        public Export getExport() {
+            return export;
+        }
+
+        public Retention getRetention() {
+            return retention;
+        }
+
+        /**
+         * Asynchronous writer of the audit events, see {@link com.diaspora.config.audit.AuditEventWriter}.
+         */
+        public static class Writer {
+
+            /**
+             * What to do with an event when the queue is full.
+             */
+            public enum OverflowPolicy {
+                /**
+                 * Wait up to {@code block-timeout-ms} for room in the queue, then drop the event.
+                 */
+                BLOCK,
+                /**
+                 * Drop the event.
+                 */
+                DROP,
+                /**
+                 * Append the event to a file of {@code spill-directory}, written to the database once the queue
+                 * is empty again.
+                 */
+                SPILL
+            }
+
+            /**
+             * Maximum number of events waiting to be written.
+             */
+            @Min(1)
+            private int queueCapacity = 8192;
+
+            /**
+             * Number of events written by a single JDBC batch.
+             */
+            @Min(1)
+            private int batchSize = 200;
+
+            /**
+             * Maximum time an event waits for its batch to fill up before it is written.
+             */
+            @Min(1)
+            private long flushIntervalMs = 1000;
+
+            @NotNull
+            private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+            @Min(0)
+            private long blockTimeoutMs = 100;
+
+            /**
+             * Directory of the spill file, with the {@code SPILL} overflow policy.
+             */
+            private String spillDirectory = System.getProperty("java.io.tmpdir");
+
+            /**
+             * Maximum time spent writing the queued events when the application stops.
+             */
+            @Min(1)
+            private long shutdownTimeoutSeconds = 30;
+
+            public int getQueueCapacity() {
+                return queueCapacity;
+            }
+
+            public void setQueueCapacity(int queueCapacity) {
+                this.queueCapacity = queueCapacity;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public long getFlushIntervalMs() {
+                return flushIntervalMs;
+            }
+
+            public void setFlushIntervalMs(long flushIntervalMs) {
+                this.flushIntervalMs = flushIntervalMs;
+            }
+
+            public OverflowPolicy getOverflowPolicy() {
+                return overflowPolicy;
+            }
+
+            public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+                this.overflowPolicy = overflowPolicy;
+            }
+
+            public long getBlockTimeoutMs() {
+                return blockTimeoutMs;
+            }
+
+            public void setBlockTimeoutMs(long blockTimeoutMs) {
+                this.blockTimeoutMs = blockTimeoutMs;
+            }
+
+            public String getSpillDirectory() {
+                return spillDirectory;
+            }
+
+            public void setSpillDirectory(String spillDirectory) {
+                this.spillDirectory = spillDirectory;
+            }
+
+            public long getShutdownTimeoutSeconds() {
+                return shutdownTimeoutSeconds;
+            }
+
+            public void setShutdownTimeoutSeconds(long shutdownTimeoutSeconds) {
+                this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+            }
+        }
+
+        /**
+         * Local journal of the audit events, written before they are acknowledged, then shipped to the database, see
+         * {@link com.diaspora.config.audit.AuditEventWriter}.
+         */
+        public static class Journal {
+
+            private boolean enabled = false;
+
+            /**
+             * Directory of the journal segments, on a local disk kept across restarts.
+             */
+            @NotNull
+            private String directory = Paths.get(System.getProperty("java.io.tmpdir"), "audit-journal").toString();
+
+            /**
+             * Size of a segment file, mapped in memory.
+             */
+            @Min(1)
+            @Max(1024)
+            private int segmentSizeMb = 16;
+
+            /**
+             * Maximum time an event waits for the journal to be synced to the disk; after it, the event is acknowledged
+             * as not durable yet, and is shipped once the journal is synced.
+             */
+            @Min(1)
+            private long syncTimeoutMs = 1000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getDirectory() {
+                return directory;
+            }
+
+            public void setDirectory(String directory) {
+                this.directory = directory;
+            }
+
+            public int getSegmentSizeMb() {
+                return segmentSizeMb;
+            }
+
+            public void setSegmentSizeMb(int segmentSizeMb) {
+                this.segmentSizeMb = segmentSizeMb;
+            }
+
+            public long getSyncTimeoutMs() {
+                return syncTimeoutMs;
+            }
+
+            public void setSyncTimeoutMs(long syncTimeoutMs) {
+                this.syncTimeoutMs = syncTimeoutMs;
+            }
+        }
+
+        /**
+         * Tamper-evident chain of blocks of audit events, see {@link com.diaspora.service.AuditEventChainService}.
+         */
+        public static class Chain {
+
+            /**
+             * Whether the new events are sealed into blocks by a scheduled job.
+             */
+            private boolean enabled = true;
+
+            /**
+             * Time between two runs of the job, the maximum time an event waits to be sealed, plus the run time.
+             */
+            @Min(1)
+            private long sealIntervalMs = 10000;
+
+            /**
+             * Maximum number of events of a block.
+             */
+            @Min(1)
+            private int blockSize = 1024;
+
+            /**
+             * Maximum number of blocks sealed by a run of the job; the events left are sealed by the next run.
+             */
+            @Min(1)
+            private int maxBlocksPerRun = 64;
+
+            /**
+             * Maximum number of blocks verified by a request.
+             */
+            @Min(1)
+            private int maxVerifiedBlocks = 100;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getSealIntervalMs() {
+                return sealIntervalMs;
+            }
+
+            public void setSealIntervalMs(long sealIntervalMs) {
+                this.sealIntervalMs = sealIntervalMs;
+            }
+
+            public int getBlockSize() {
+                return blockSize;
+            }
+
+            public void setBlockSize(int blockSize) {
+                this.blockSize = blockSize;
+            }
+
+            public int getMaxBlocksPerRun() {
+                return maxBlocksPerRun;
+            }
+
+            public void setMaxBlocksPerRun(int maxBlocksPerRun) {
+                this.maxBlocksPerRun = maxBlocksPerRun;
+            }
+
+            public int getMaxVerifiedBlocks() {
+                return maxVerifiedBlocks;
+            }
+
+            public void setMaxVerifiedBlocks(int maxVerifiedBlocks) {
+                this.maxVerifiedBlocks = maxVerifiedBlocks;
+            }
+        }
+
+        /**
+         * Counts of the audit events per type, principal and minute, see
+         * {@link com.diaspora.service.AuditEventRollupService}.
+         */
+        public static class Rollup {
+
+            /**
+             * Whether the written events are counted.
+             */
+            private boolean enabled = true;
+
+            /**
+             * Time between two flushes of the counts to the database: the delay before an event is counted there,
+             * and the counts lost if the node dies.
+             */
+            @Min(1)
+            private long flushIntervalMs = 5000;
+
+            /**
+             * Maximum number of rows returned by a query.
+             */
+            @Min(1)
+            private int maxRows = 10000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getFlushIntervalMs() {
+                return flushIntervalMs;
+            }
+
+            public void setFlushIntervalMs(long flushIntervalMs) {
+                this.flushIntervalMs = flushIntervalMs;
+            }
+
+            public int getMaxRows() {
+                return maxRows;
+            }
+
+            public void setMaxRows(int maxRows) {
+                this.maxRows = maxRows;
+            }
+        }
+
+        /**
+         * Streaming export of the audit events, see {@link com.diaspora.service.AuditEventExportService}.
+         */
+        public static class Export {
+
+            /**
+             * Rows fetched from the database at once: the memory used by an export, whatever its size.
+             */
+            @Min(1)
+            private int fetchSize = 1000;
+
+            public int getFetchSize() {
+                return fetchSize;
+            }
+
+            public void setFetchSize(int fetchSize) {
+                this.fetchSize = fetchSize;
+            }
+        }
+
+        /**
+         * Purge of the old audit events, see {@link com.diaspora.service.AuditEventRetentionService}.
+         */
+        public static class Retention {
+
+            private boolean enabled = true;
+
+            /**
+             * When the purge runs; read by the {@code @Scheduled} annotation of the service.
+             */
+            @NotNull
+            private String cron = "0 30 3 * * ?";
+
+            /**
+             * Age after which the events are purged.
+             */
+            @Min(1)
+            private int maxAgeDays = 365;
+
+            /**
+             * Monthly partitions created ahead of the current month, on a partitioned table.
+             */
+            @Min(1)
+            private int partitionsAhead = 3;
+
+            /**
+             * Events deleted by a single transaction, on a table that is not partitioned.
+             */
+            @Min(1)
+            private int chunkSize = 1000;
+
+            /**
+             * Pause between two chunks, leaving the database time to purge its undo log and serve the other queries.
+             */
+            @Min(0)
+            private long chunkPauseMs = 200;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getCron() {
+                return cron;
+            }
+
+            public void setCron(String cron) {
+                this.cron = cron;
+            }
+
+            public int getMaxAgeDays() {
+                return maxAgeDays;
+            }
+
+            public void setMaxAgeDays(int maxAgeDays) {
+                this.maxAgeDays = maxAgeDays;
+            }
+
+            public int getPartitionsAhead() {
+                return partitionsAhead;
+            }
+
+            public void setPartitionsAhead(int partitionsAhead) {
+                this.partitionsAhead = partitionsAhead;
+            }
+
+            public int getChunkSize() {
+                return chunkSize;
+            }
+
+            public void setChunkSize(int chunkSize) {
+                this.chunkSize = chunkSize;
+            }
+
+            public long getChunkPauseMs() {
+                return chunkPauseMs;
+            }
+
+            public void setChunkPauseMs(long chunkPauseMs) {
+                this.chunkPauseMs = chunkPauseMs;
+            }
+        }
+    }
+
+    public static class Cache {
+
+        private final Local local = new Local();
+
+        @Valid
+        private final WarmUp warmUp = new WarmUp();
+
+        @Valid
+        private final Cluster cluster = new Cluster();
+
+        @Valid
+        private final Load load = new Load();
+
+        /**
+         * Settings of individual caches, by cache name; caches not listed here use the defaults.
+         * Each listed cache gets its own Hazelcast map config, see {@link com.diaspora.config.cache.HazelcastMapConfigRegistry}.
+         */
+        @Valid
+        private final Map<String, CacheSpec> caches = new LinkedHashMap<>();
+
+        public Local getLocal() {
+            return local;
+        }
+
+        public Map<String, CacheSpec> getCaches() {
+            return caches;
+        }
+
+        public WarmUp getWarmUp() {
+            return warmUp;
+        }
+
+        public Cluster getCluster() {
+            return cluster;
+        }
+
+        public Load getLoad() {
+            return load;
+        }
+
+        /**
+         * Default settings of the loads of missing entries, by {@code @Cacheable(sync = true)} methods.
+         * Concurrent misses of the same key on a node always share a single load.
+         */
+        public static class Load {
+
+            /**
+             * Whether a load also locks the key cluster-wide, so that a single node loads it; for expensive loaders.
+             */
+            private boolean clusterLock = false;
+
+            /**
+             * Time waited for the cluster lock of a key, after which the key is loaded without it.
+             */
+            @Min(1)
+            private long lockTimeoutSeconds = 10;
+
+            /**
+             * Time after which the cluster lock of a key is released, if its node does not release it.
+             */
+            @Min(1)
+            private long lockLeaseSeconds = 60;
+
+            /**
+             * Eagerness of the probabilistic early refresh of the entries close to their expiry, 1.0 being the usual
+             * value; 0 disables it. Only applies to caches with a time-to-live.
+             */
+            @DecimalMin("0.0")
+            private double earlyRefreshBeta = 0;
+
+            public boolean isClusterLock() {
+                return clusterLock;
+            }
+
+            public void setClusterLock(boolean clusterLock) {
+                this.clusterLock = clusterLock;
+            }
+
+            public long getLockTimeoutSeconds() {
+                return lockTimeoutSeconds;
+            }
+
+            public void setLockTimeoutSeconds(long lockTimeoutSeconds) {
+                this.lockTimeoutSeconds = lockTimeoutSeconds;
+            }
+
+            public long getLockLeaseSeconds() {
+                return lockLeaseSeconds;
+            }
+
+            public void setLockLeaseSeconds(long lockLeaseSeconds) {
+                this.lockLeaseSeconds = lockLeaseSeconds;
+            }
+
+            public double getEarlyRefreshBeta() {
+                return earlyRefreshBeta;
+            }
+
+            public void setEarlyRefreshBeta(double earlyRefreshBeta) {
+                this.earlyRefreshBeta = earlyRefreshBeta;
+            }
+        }
+
+        /**
+         * Membership of the Hazelcast cluster, which follows the instances registered in the service registry.
+         */
+        public static class Cluster {
+
+            /**
+             * Interval at which the registry is checked for instances outside of the cluster, which are then merged in.
+             */
+            @Min(1)
+            private int mergeDelaySeconds = 30;
+
+            /**
+             * Pause between two partition migrations when the cluster grows or shrinks, trading a slower rebalancing
+             * for less load on the members while it runs; 0 migrates the partitions as fast as possible.
+             */
+            @Min(0)
+            private int migrationIntervalSeconds = 0;
+
+            /**
+             * Time a leaving member waits for its partitions to be migrated to the other members before it stops.
+             */
+            @Min(0)
+            private int gracefulShutdownMaxWaitSeconds = 600;
+
+            public int getMergeDelaySeconds() {
+                return mergeDelaySeconds;
+            }
+
+            public void setMergeDelaySeconds(int mergeDelaySeconds) {
+                this.mergeDelaySeconds = mergeDelaySeconds;
+            }
+
+            public int getMigrationIntervalSeconds() {
+                return migrationIntervalSeconds;
+            }
+
+            public void setMigrationIntervalSeconds(int migrationIntervalSeconds) {
+                this.migrationIntervalSeconds = migrationIntervalSeconds;
+            }
+
+            public int getGracefulShutdownMaxWaitSeconds() {
+                return gracefulShutdownMaxWaitSeconds;
+            }
+
+            public void setGracefulShutdownMaxWaitSeconds(int gracefulShutdownMaxWaitSeconds) {
+                this.gracefulShutdownMaxWaitSeconds = gracefulShutdownMaxWaitSeconds;
+            }
+        }
+
+        /**
+         * Preloading of the caches when the application starts, before it reports UP and takes traffic.
+         */
+        public static class WarmUp {
+
+            private boolean enabled = false;
+
+            /**
+             * Time after which the warm-up stops, and the application reports UP with the caches loaded so far.
+             */
+            @Min(1)
+            private long timeoutSeconds = 120;
+
+            /**
+             * Used heap ratio above which the warm-up stops, so that it never pushes the node into GC pressure.
+             */
+            @DecimalMin("0.0")
+            @DecimalMax("1.0")
+            private double maxHeapUsage = 0.7;
+
+            /**
+             * Number of rows read per query.
+             */
+            @Min(1)
+            private int pageSize = 500;
+
+            /**
+             * Maximum number of entries loaded in each cache.
+             */
+            @Min(1)
+            private long maxEntriesPerCache = 100000;
+
+            /**
+             * JPA names of the cached entities whose second-level cache region is preloaded.
+             */
+            private List<String> entities = new ArrayList<>();
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getTimeoutSeconds() {
+                return timeoutSeconds;
+            }
+
+            public void setTimeoutSeconds(long timeoutSeconds) {
+                this.timeoutSeconds = timeoutSeconds;
+            }
+
+            public double getMaxHeapUsage() {
+                return maxHeapUsage;
+            }
+
+            public void setMaxHeapUsage(double maxHeapUsage) {
+                this.maxHeapUsage = maxHeapUsage;
+            }
+
+            public int getPageSize() {
+                return pageSize;
+            }
+
+            public void setPageSize(int pageSize) {
+                this.pageSize = pageSize;
+            }
+
+            public long getMaxEntriesPerCache() {
+                return maxEntriesPerCache;
+            }
+
+            public void setMaxEntriesPerCache(long maxEntriesPerCache) {
+                this.maxEntriesPerCache = maxEntriesPerCache;
+            }
+
+            public List<String> getEntities() {
+                return entities;
+            }
+
+            public void setEntities(List<String> entities) {
+                this.entities = entities;
+            }
+        }
+
+        /**
+         * Default settings of the local (L1) cache kept by each node in front of the Hazelcast (L2) maps.
+         */
+        public static class Local {
+
+            private boolean enabled = true;
+
+            /**
+             * Maximum number of entries each local cache holds.
+             */
+            private long maxSize = 1000;
+
+            /**
+             * Time an entry stays in a local cache after being loaded or written.
+             * Bounds how long a node may serve a value that was changed elsewhere if an invalidation is lost.
+             */
+            private long timeToLiveSeconds = 60;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getMaxSize() {
+                return maxSize;
+            }
+
+            public void setMaxSize(long maxSize) {
+                this.maxSize = maxSize;
+            }
+
+            public long getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+        }
+
+        /**
+         * Settings of a cache. Unset Hazelcast settings are inherited from the {@code default} map config,
+         * except the time-to-live, which defaults to {@code jhipster.cache.hazelcast.time-to-live-seconds}.
+         */
+        public static class CacheSpec {
+
+            /**
+             * Time an entry stays in the Hazelcast map after its last write; 0 means forever.
+             */
+            @Min(0)
+            private Integer timeToLiveSeconds;
+
+            /**
+             * Time an entry stays in the Hazelcast map after its last access; 0 means forever.
+             */
+            @Min(0)
+            private Integer maxIdleSeconds;
+
+            /**
+             * Maximum size of the Hazelcast map, in the unit of {@code max-size-policy}; 0 means unbounded.
+             */
+            @Min(0)
+            private Integer maxSize;
+
+            private MaxSizeConfig.MaxSizePolicy maxSizePolicy;
+
+            private EvictionPolicy evictionPolicy;
+
+            /**
+             * Number of synchronous backups of each entry.
+             */
+            @Min(0)
+            @Max(6)
+            private Integer backupCount;
+
+            /**
+             * Number of asynchronous backups of each entry.
+             */
+            @Min(0)
+            @Max(6)
+            private Integer asyncBackupCount;
+
+            /**
+             * Whether reads may be served from a local backup copy, which may be stale.
+             */
+            private Boolean readBackupData;
+
+            /**
+             * {@code BINARY} stores serialized entries, {@code OBJECT} stores deserialized ones,
+             * which is faster for entry processors and queries, but copies on every read.
+             */
+            private InMemoryFormat inMemoryFormat;
+
+            /**
+             * Maximum number of entries of the local cache; 0 disables the local cache for this cache.
+             */
+            private Long localMaxSize;
+
+            /**
+             * Time an entry stays in the local cache.
+             */
+            private Long localTimeToLiveSeconds;
+
+            /**
+             * Whether loads lock the key cluster-wide, overriding {@code application.cache.load.cluster-lock}.
+             */
+            private Boolean clusterLock;
+
+            /**
+             * Eagerness of the early refresh, overriding {@code application.cache.load.early-refresh-beta}.
+             */
+            @DecimalMin("0.0")
+            private Double earlyRefreshBeta;
+
+            public Long getLocalMaxSize() {
+                return localMaxSize;
+            }
+
+            public void setLocalMaxSize(Long localMaxSize) {
+                this.localMaxSize = localMaxSize;
+            }
+
+            public Long getLocalTimeToLiveSeconds() {
+                return localTimeToLiveSeconds;
+            }
+
+            public void setLocalTimeToLiveSeconds(Long localTimeToLiveSeconds) {
+                this.localTimeToLiveSeconds = localTimeToLiveSeconds;
+            }
+
+            public Boolean getClusterLock() {
+                return clusterLock;
+            }
+
+            public void setClusterLock(Boolean clusterLock) {
+                this.clusterLock = clusterLock;
+            }
+
+            public Double getEarlyRefreshBeta() {
+                return earlyRefreshBeta;
+            }
+
+            public void setEarlyRefreshBeta(Double earlyRefreshBeta) {
+                this.earlyRefreshBeta = earlyRefreshBeta;
+            }
+
+            public Integer getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(Integer timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public Integer getMaxIdleSeconds() {
+                return maxIdleSeconds;
+            }
+
+            public void setMaxIdleSeconds(Integer maxIdleSeconds) {
+                this.maxIdleSeconds = maxIdleSeconds;
+            }
+
+            public Integer getMaxSize() {
+                return maxSize;
+            }
+
+            public void setMaxSize(Integer maxSize) {
+                this.maxSize = maxSize;
+            }
+
+            public MaxSizeConfig.MaxSizePolicy getMaxSizePolicy() {
+                return maxSizePolicy;
+            }
+
+            public void setMaxSizePolicy(MaxSizeConfig.MaxSizePolicy maxSizePolicy) {
+                this.maxSizePolicy = maxSizePolicy;
+            }
+
+            public EvictionPolicy getEvictionPolicy() {
+                return evictionPolicy;
+            }
+
+            public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+                this.evictionPolicy = evictionPolicy;
+            }
+
+            public Integer getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(Integer backupCount) {
+                this.backupCount = backupCount;
+            }
+
+            public Integer getAsyncBackupCount() {
+                return asyncBackupCount;
+            }
+
+            public void setAsyncBackupCount(Integer asyncBackupCount) {
+                this.asyncBackupCount = asyncBackupCount;
+            }
+
+            public Boolean getReadBackupData() {
+                return readBackupData;
+            }
+
+            public void setReadBackupData(Boolean readBackupData) {
+                this.readBackupData = readBackupData;
+            }
+
+            public InMemoryFormat getInMemoryFormat() {
+                return inMemoryFormat;
+            }
+
+            public void setInMemoryFormat(InMemoryFormat inMemoryFormat) {
+                this.inMemoryFormat = inMemoryFormat;
+            }
+        }
+    }
 }
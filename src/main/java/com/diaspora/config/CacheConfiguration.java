@@ -1,15 +1,27 @@
 package com.diaspora.config;
 
+import com.diaspora.config.cache.CacheWarmUp;
+import com.diaspora.config.cache.CacheWarmer;
+import com.diaspora.config.cache.EntityCacheWarmer;
+import com.diaspora.config.cache.HazelcastMapConfigRegistry;
+import com.diaspora.config.cache.TwoTierCacheManager;
+import com.diaspora.config.hazelcast.DiscoveryClientDiscoveryStrategy;
+import com.diaspora.config.hazelcast.FlakeIdentifierGenerator;
+import com.diaspora.config.hazelcast.HazelcastSerializationRegistry;
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
 
 import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Hazelcast;
+import com.hazelcast.spi.properties.GroupProperty;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 
 import org.springframework.cache.CacheManager;
@@ -22,11 +34,24 @@ import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 
 import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 @Configuration
 @EnableCaching
 public class CacheConfiguration {
 
+    public static final String HAZELCAST_INSTANCE_NAME = "MSSecureCardBank";
+
+    /**
+     * Ids each node fetches at once from the entity id generator, see {@link FlakeIdentifierGenerator}.
+     */
+    private static final int ENTITY_IDS_PREFETCH_COUNT = 1000;
+
     private final Logger log = LoggerFactory.getLogger(CacheConfiguration.class);
 
     private final Environment env;
@@ -55,21 +80,45 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public CacheManager cacheManager(HazelcastInstance hazelcastInstance) {
-        log.debug("Starting HazelcastCacheManager");
-        return new com.hazelcast.spring.cache.HazelcastCacheManager(hazelcastInstance);
+    public CacheManager cacheManager(HazelcastInstance hazelcastInstance, ApplicationProperties applicationProperties,
+                                     MeterRegistry meterRegistry) {
+        log.debug("Starting HazelcastCacheManager with local caches");
+        return new TwoTierCacheManager(new com.hazelcast.spring.cache.HazelcastCacheManager(hazelcastInstance),
+            hazelcastInstance, applicationProperties.getCache(), meterRegistry);
     }
 
+    /**
+     * Preloads the second-level cache regions listed under {@code application.cache.warm-up.entities},
+     * and the caches of the {@link CacheWarmer} beans, on the async task executor.
+     */
     @Bean
-    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties) {
+    public CacheWarmUp cacheWarmUp(ApplicationProperties applicationProperties, EntityManagerFactory entityManagerFactory,
+                                   ObjectProvider<CacheWarmer> cacheWarmers, @Qualifier("taskExecutor") Executor taskExecutor) {
+        ApplicationProperties.Cache.WarmUp warmUp = applicationProperties.getCache().getWarmUp();
+        List<CacheWarmer> warmers = new ArrayList<>();
+        if (warmUp.isEnabled()) {
+            for (String entity : warmUp.getEntities()) {
+                try {
+                    warmers.add(new EntityCacheWarmer(entityManagerFactory, entity, warmUp.getPageSize()));
+                } catch (IllegalArgumentException e) {
+                    log.warn("Not warming up entity {}: {}", entity, e.getMessage());
+                }
+            }
+            cacheWarmers.orderedStream().forEach(warmers::add);
+        }
+        return new CacheWarmUp(warmUp, warmers, taskExecutor);
+    }
+
+    @Bean
+    public HazelcastInstance hazelcastInstance(JHipsterProperties jHipsterProperties, ApplicationProperties applicationProperties) {
         log.debug("Configuring Hazelcast");
-        HazelcastInstance hazelCastInstance = Hazelcast.getHazelcastInstanceByName("MSSecureCardBank");
+        HazelcastInstance hazelCastInstance = Hazelcast.getHazelcastInstanceByName(HAZELCAST_INSTANCE_NAME);
         if (hazelCastInstance != null) {
             log.debug("Hazelcast already initialized");
             return hazelCastInstance;
         }
         Config config = new Config();
-        config.setInstanceName("MSSecureCardBank");
+        config.setInstanceName(HAZELCAST_INSTANCE_NAME);
         config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
         if (this.registration == null) {
             log.warn("No discovery service is set up, Hazelcast cannot create a cluster.");
@@ -78,6 +127,7 @@ public class CacheConfiguration {
             // see the "spring.application.name" standard Spring property
             String serviceId = registration.getServiceId();
             log.debug("Configuring Hazelcast clustering for instanceId: {}", serviceId);
+            Function<ServiceInstance, InetSocketAddress> memberAddress;
             // In development, everything goes through 127.0.0.1, with a different port
             if (env.acceptsProfiles(Profiles.of(JHipsterConstants.SPRING_PROFILE_DEVELOPMENT))) {
                 log.debug("Application is running with the \"dev\" profile, Hazelcast " +
@@ -85,29 +135,36 @@ public class CacheConfiguration {
 
                 System.setProperty("hazelcast.local.localAddress", "127.0.0.1");
                 config.getNetworkConfig().setPort(serverProperties.getPort() + 5701);
-                config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true);
-                for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
-                    String clusterMember = "127.0.0.1:" + (instance.getPort() + 5701);
-                    log.debug("Adding Hazelcast (dev) cluster member {}", clusterMember);
-                    config.getNetworkConfig().getJoin().getTcpIpConfig().addMember(clusterMember);
-                }
+                memberAddress = instance -> InetSocketAddress.createUnresolved("127.0.0.1", instance.getPort() + 5701);
             } else { // Production configuration, one host per instance all using port 5701
                 config.getNetworkConfig().setPort(5701);
-                config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true);
-                for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
-                    String clusterMember = instance.getHost() + ":5701";
-                    log.debug("Adding Hazelcast (prod) cluster member {}", clusterMember);
-                    config.getNetworkConfig().getJoin().getTcpIpConfig().addMember(clusterMember);
-                }
+                memberAddress = instance -> InetSocketAddress.createUnresolved(instance.getHost(), 5701);
             }
+            // The members are read from the registry on each lookup, so that instances started later join the cluster
+            config.setProperty(GroupProperty.DISCOVERY_SPI_ENABLED.getName(), "true");
+            config.getNetworkConfig().getJoin().getDiscoveryConfig().addDiscoveryStrategyConfig(
+                new DiscoveryStrategyConfig(new DiscoveryClientDiscoveryStrategy.Factory(discoveryClient, serviceId, memberAddress)));
+            initializeClusterProperties(config, applicationProperties.getCache().getCluster());
         }
-        config.getMapConfigs().put("default", initializeDefaultMapConfig(jHipsterProperties));
+        new HazelcastMapConfigRegistry(jHipsterProperties, applicationProperties.getCache()).registerWith(config);
+        new HazelcastSerializationRegistry().registerWith(config.getSerializationConfig());
+        config.addFlakeIdGeneratorConfig(new FlakeIdGeneratorConfig(FlakeIdentifierGenerator.DEFAULT_FLAKE_ID_GENERATOR)
+            .setPrefetchCount(ENTITY_IDS_PREFETCH_COUNT));
 
         // Full reference is available at: http://docs.hazelcast.org/docs/management-center/3.9/manual/html/Deploying_and_Starting.html
         config.setManagementCenterConfig(initializeDefaultManagementCenterConfig(jHipsterProperties));
         return Hazelcast.newHazelcastInstance(config);
     }
 
+    private void initializeClusterProperties(Config config, ApplicationProperties.Cache.Cluster cluster) {
+        // How soon an instance outside of the cluster is found and merged in
+        config.setProperty(GroupProperty.MERGE_FIRST_RUN_DELAY_SECONDS.getName(), String.valueOf(cluster.getMergeDelaySeconds()));
+        config.setProperty(GroupProperty.MERGE_NEXT_RUN_DELAY_SECONDS.getName(), String.valueOf(cluster.getMergeDelaySeconds()));
+        // Pace of the partition migrations when a member joins or leaves
+        config.setProperty(GroupProperty.PARTITION_MIGRATION_INTERVAL.getName(), String.valueOf(cluster.getMigrationIntervalSeconds()));
+        config.setProperty(GroupProperty.GRACEFUL_SHUTDOWN_MAX_WAIT.getName(), String.valueOf(cluster.getGracefulShutdownMaxWaitSeconds()));
+    }
+
     private ManagementCenterConfig initializeDefaultManagementCenterConfig(JHipsterProperties jHipsterProperties) {
         ManagementCenterConfig managementCenterConfig = new ManagementCenterConfig();
         managementCenterConfig.setEnabled(jHipsterProperties.getCache().getHazelcast().getManagementCenter().isEnabled());
@@ -115,41 +172,4 @@ public class CacheConfiguration {
         managementCenterConfig.setUpdateInterval(jHipsterProperties.getCache().getHazelcast().getManagementCenter().getUpdateInterval());
         return managementCenterConfig;
     }
-
-    private MapConfig initializeDefaultMapConfig(JHipsterProperties jHipsterProperties) {
-        MapConfig mapConfig = new MapConfig();
-
-        /*
-        Number of backups. If 1 is set as the backup-count for example,
-        then all entries of the map will be copied to another JVM for
-        fail-safety. Valid numbers are 0 (no backup), 1, 2, 3.
-        */
-        mapConfig.setBackupCount(jHipsterProperties.getCache().getHazelcast().getBackupCount());
-
-        /*
-        Valid values are:
-        NONE (no eviction),
-        LRU (Least Recently Used),
-        LFU (Least Frequently Used).
-        NONE is the default.
-        */
-        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
-
-        /*
-        Maximum size of the map. When max size is reached,
-        map is evicted based on the policy defined.
-        Any integer between 0 and Integer.MAX_VALUE. 0 means
-        Integer.MAX_VALUE. Default is 0.
-        */
-        mapConfig.setMaxSizeConfig(new MaxSizeConfig(0, MaxSizeConfig.MaxSizePolicy.USED_HEAP_SIZE));
-
-        return mapConfig;
-    }
-
-    private MapConfig initializeDomainMapConfig(JHipsterProperties jHipsterProperties) {
-        MapConfig mapConfig = new MapConfig();
-        mapConfig.setTimeToLiveSeconds(jHipsterProperties.getCache().getHazelcast().getTimeToLiveSeconds());
-        return mapConfig;
-    }
-
 }
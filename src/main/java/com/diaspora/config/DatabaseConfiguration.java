@@ -1,6 +1,12 @@
 package com.diaspora.config;
 
+import com.diaspora.config.audit.AuditEventWriter;
+import com.diaspora.config.hazelcast.FlakeIdentifierGenerator;
+import com.diaspora.service.AuditEventRollupService;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.flakeidgen.FlakeIdGenerator;
 import io.github.jhipster.config.JHipsterConstants;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.Bean;
@@ -10,6 +16,9 @@ import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
 
 @Configuration
 @EnableJpaRepositories("com.diaspora.repository")
@@ -18,4 +27,18 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 public class DatabaseConfiguration {
 
     private final Logger log = LoggerFactory.getLogger(DatabaseConfiguration.class);
+
+    /**
+     * Writes the audit events asynchronously, in JDBC batches, see {@code application.audit.writer}, from a local
+     * journal with {@code application.audit.journal.enabled}. The events written are counted by the
+     * {@link AuditEventRollupService}.
+     */
+    @Bean
+    public AuditEventWriter auditEventWriter(ApplicationProperties applicationProperties, DataSource dataSource,
+                                             HazelcastInstance hazelcastInstance, EntityManagerFactory entityManagerFactory,
+                                             MeterRegistry meterRegistry, AuditEventRollupService auditEventRollupService) {
+        FlakeIdGenerator idGenerator = hazelcastInstance.getFlakeIdGenerator(FlakeIdentifierGenerator.DEFAULT_FLAKE_ID_GENERATOR);
+        return new AuditEventWriter(applicationProperties.getAudit().getWriter(), applicationProperties.getAudit().getJournal(),
+            dataSource, idGenerator::newId, entityManagerFactory, meterRegistry, auditEventRollupService::record);
+    }
 }
@@ -0,0 +1,89 @@
+package com.diaspora.config;
+
+import com.diaspora.config.datasource.ReadWriteRoutingDataSource;
+import com.diaspora.config.datasource.ReplicaLagMonitor;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.github.jhipster.config.JHipsterConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serves the read-only transactions from the read replicas of {@code application.datasource.replicas}, when there
+ * are, see {@link ReadWriteRoutingDataSource}. Without replicas, the data source is the one of Spring Boot.
+ */
+@Configuration
+@Profile("!" + JHipsterConstants.SPRING_PROFILE_CLOUD)
+@ConditionalOnProperty("application.datasource.replicas[0].url")
+public class ReplicaDataSourceConfiguration {
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaDataSourceConfiguration.class);
+
+    private static final String HIKARI_PREFIX = "spring.datasource.hikari";
+
+    @Bean
+    @ConfigurationProperties(HIKARI_PREFIX)
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * The pools of the replicas copy the settings of the primary, once bound, and are read-only, with its credentials unless set. They are named after
+     * the pool of the primary, {@code Hikari} by default.
+     */
+    @Bean
+    public ReadWriteRoutingDataSource readWriteRoutingDataSource(HikariDataSource primaryDataSource,
+                                                                 ApplicationProperties applicationProperties,
+                                                                 MeterRegistry meterRegistry) {
+        ApplicationProperties.Datasource properties = applicationProperties.getDatasource();
+        if (primaryDataSource.getPoolName() == null) {
+            primaryDataSource.setPoolName("Hikari");
+        }
+        List<ReadWriteRoutingDataSource.Replica> replicas = new ArrayList<>();
+        for (ApplicationProperties.Datasource.Replica replica : properties.getReplicas()) {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setJdbcUrl(replica.getUrl());
+            if (replica.getUsername() != null) {
+                config.setUsername(replica.getUsername());
+                config.setPassword(replica.getPassword());
+            }
+            config.setPoolName(primaryDataSource.getPoolName() + "-Replica-" + (replicas.size() + 1));
+            config.setReadOnly(true);
+            config.setMetricRegistry(null);
+            config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(ReadWriteRoutingDataSource.Replica.of(new HikariDataSource(config)));
+        }
+        log.info("Serving the read-only transactions from {} replicas", replicas.size());
+        return new ReadWriteRoutingDataSource(primaryDataSource, primaryDataSource.getPoolName(), replicas,
+            properties.getStickyWindowMs(), meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource readWriteRoutingDataSource) {
+        return readWriteRoutingDataSource.lazy();
+    }
+
+    @Bean
+    public ReplicaLagMonitor replicaLagHealthIndicator(HikariDataSource primaryDataSource,
+                                                       ReadWriteRoutingDataSource readWriteRoutingDataSource,
+                                                       ApplicationProperties applicationProperties,
+                                                       MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(primaryDataSource, readWriteRoutingDataSource,
+            applicationProperties.getDatasource().getMaxLagMs(), meterRegistry);
+    }
+}
@@ -2,13 +2,16 @@ package com.diaspora.config;
 
 import com.diaspora.config.oauth2.OAuth2JwtAccessTokenConverter;
 import com.diaspora.config.oauth2.OAuth2Properties;
-import com.diaspora.security.oauth2.OAuth2SignatureVerifierClient;
+import com.diaspora.security.oauth2.SignatureVerifierRegistry;
+import com.diaspora.security.oauth2.TokenRevocationStore;
 import com.diaspora.security.AuthoritiesConstants;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.cloud.client.loadbalancer.RestTemplateCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
@@ -21,6 +24,7 @@ import org.springframework.web.client.RestTemplate;
 
 @Configuration
 @EnableResourceServer
+@EnableGlobalMethodSecurity(prePostEnabled = true, securedEnabled = true)
 public class SecurityConfiguration extends ResourceServerConfigurerAdapter {
     private final OAuth2Properties oAuth2Properties;
 
@@ -54,8 +58,10 @@ public class SecurityConfiguration extends ResourceServerConfigurerAdapter {
     }
 
     @Bean
-    public JwtAccessTokenConverter jwtAccessTokenConverter(OAuth2SignatureVerifierClient signatureVerifierClient) {
-        return new OAuth2JwtAccessTokenConverter(oAuth2Properties, signatureVerifierClient);
+    public JwtAccessTokenConverter jwtAccessTokenConverter(SignatureVerifierRegistry signatureVerifierRegistry,
+                                                           TokenRevocationStore tokenRevocationStore,
+                                                           MeterRegistry meterRegistry) {
+        return new OAuth2JwtAccessTokenConverter(oAuth2Properties, signatureVerifierRegistry, tokenRevocationStore, meterRegistry);
     }
 
     @Bean
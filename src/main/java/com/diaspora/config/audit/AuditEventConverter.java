@@ -21,7 +21,8 @@ public class AuditEventConverter {
         if (persistentAuditEvents == null) {
             return Collections.emptyList();
         }
-        List<AuditEvent> auditEvents = new ArrayList<>();
+        List<AuditEvent> auditEvents = persistentAuditEvents instanceof Collection ?
+            new ArrayList<>(((Collection<PersistentAuditEvent>) persistentAuditEvents).size()) : new ArrayList<>();
         for (PersistentAuditEvent persistentAuditEvent : persistentAuditEvents) {
             auditEvents.add(convertToAuditEvent(persistentAuditEvent));
         }
@@ -44,19 +45,18 @@ public class AuditEventConverter {
 
     /**
      * Internal conversion. This is needed to support the current SpringBoot actuator {@code AuditEventRepository} interface.
+     * <p>
+     * The data of a loaded event is decoded from its single column into a map of its own, see
+     * {@link com.diaspora.domain.AuditEventDataConverter}, so it is returned as a read-only view rather than copied.
      *
      * @param data the data to convert.
-     * @return a map of {@link String}, {@link Object}.
+     * @return a read-only map of {@link String}, {@link Object}.
      */
     public Map<String, Object> convertDataToObjects(Map<String, String> data) {
-        Map<String, Object> results = new HashMap<>();
-
-        if (data != null) {
-            for (Map.Entry<String, String> entry : data.entrySet()) {
-                results.put(entry.getKey(), entry.getValue());
-            }
+        if (data == null) {
+            return Collections.emptyMap();
         }
-        return results;
+        return Collections.unmodifiableMap(data);
     }
 
     /**
@@ -0,0 +1,155 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.AuditEventDataConverter;
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.SetupException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Liquibase change moving the audit event data from the {@code jhi_persistent_audit_evt_data} table, one row per
+ * entry, to the {@code event_data} column of the events, encoded by the {@link AuditEventDataConverter}.
+ * <p>
+ * Events are moved in batches of {@code batchSize} in the order of their ids, each batch committed on its own, so that
+ * the migration of a large audit trail holds no long transaction. A migration interrupted midway is run again from the
+ * start on the next start, which writes the same columns again.
+ */
+public class AuditEventDataMigration implements CustomTaskChange {
+
+    private static final String SELECT_EVENT_IDS =
+        "select distinct event_id from jhi_persistent_audit_evt_data where event_id > ? order by event_id";
+
+    private static final String SELECT_EVENT_DATA =
+        "select event_id, name, value from jhi_persistent_audit_evt_data where event_id between ? and ?";
+
+    private static final String UPDATE_EVENT_DATA =
+        "update jhi_persistent_audit_event set event_data = ? where event_id = ?";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventDataMigration.class);
+
+    private int batchSize = 1000;
+
+    private long migrated;
+
+    public void setBatchSize(String batchSize) {
+        this.batchSize = Integer.parseInt(batchSize);
+    }
+
+    @Override
+    public void execute(Database database) throws CustomChangeException {
+        JdbcConnection connection = (JdbcConnection) database.getConnection();
+        try {
+            long lastId = Long.MIN_VALUE;
+            List<Long> ids;
+            while (!(ids = nextEventIds(connection.getUnderlyingConnection(), lastId)).isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+                Map<Long, Map<String, String>> data = eventData(connection.getUnderlyingConnection(), ids.get(0), lastId);
+                updateEvents(connection.getUnderlyingConnection(), data);
+                connection.commit();
+                migrated += data.size();
+                log.debug("Moved the data of {} audit events, up to id {}", migrated, lastId);
+            }
+        } catch (SQLException | DatabaseException e) {
+            throw new CustomChangeException("Could not move the audit event data: " + e.getMessage(), e);
+        }
+    }
+
+    private List<Long> nextEventIds(Connection connection, long lastId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_EVENT_IDS)) {
+            statement.setMaxRows(batchSize);
+            statement.setLong(1, lastId);
+            List<Long> ids = new ArrayList<>(batchSize);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    ids.add(resultSet.getLong(1));
+                }
+            }
+            return ids;
+        }
+    }
+
+    private Map<Long, Map<String, String>> eventData(Connection connection, long firstId, long lastId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_EVENT_DATA)) {
+            statement.setLong(1, firstId);
+            statement.setLong(2, lastId);
+            Map<Long, Map<String, String>> data = new LinkedHashMap<>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    data.computeIfAbsent(resultSet.getLong(1), id -> new HashMap<>())
+                        .put(resultSet.getString(2), resultSet.getString(3));
+                }
+            }
+            return data;
+        }
+    }
+
+    private void updateEvents(Connection connection, Map<Long, Map<String, String>> data) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_EVENT_DATA)) {
+            for (Map.Entry<Long, Map<String, String>> event : data.entrySet()) {
+                statement.setBytes(1, AuditEventDataConverter.encode(fit(event.getKey(), event.getValue())));
+                statement.setLong(2, event.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    /**
+     * Leave out the entries not fitting in the column, which the old table had room for.
+     */
+    private Map<String, String> fit(Long id, Map<String, String> data) {
+        if (AuditEventDataConverter.encodedLength(data) <= AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH) {
+            return data;
+        }
+        Map<String, String> fitting = new HashMap<>();
+        int length = AuditEventDataConverter.HEADER_LENGTH;
+        for (Map.Entry<String, String> entry : new TreeMap<>(data).entrySet()) {
+            length += AuditEventDataConverter.encodedLength(entry.getKey(), entry.getValue());
+            if (length > AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH) {
+                log.warn("Left out the data {} of audit event {}, which does not fit in the event_data column", entry.getKey(), id);
+                break;
+            }
+            fitting.put(entry.getKey(), entry.getValue());
+        }
+        return fitting;
+    }
+
+    @Override
+    public String getConfirmationMessage() {
+        return "Moved the data of " + migrated + " audit events to the event_data column";
+    }
+
+    @Override
+    public void setUp() throws SetupException {
+    }
+
+    @Override
+    public void setFileOpener(ResourceAccessor resourceAccessor) {
+    }
+
+    @Override
+    public ValidationErrors validate(Database database) {
+        ValidationErrors errors = new ValidationErrors();
+        if (batchSize <= 0) {
+            errors.addError("batchSize must be positive");
+        }
+        return errors;
+    }
+}
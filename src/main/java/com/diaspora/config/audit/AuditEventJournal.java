@@ -0,0 +1,546 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.AuditEventDataConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the audit events on the local disk, so that an event is durable before it reaches the
+ * database.
+ * <p>
+ * The journal is a sequence of segment files, {@code audit-<sequence>.journal}, of a fixed size and mapped in memory.
+ * An event is appended to the current segment as a record made of its length, the CRC-32 of its content and its
+ * content, in a compact binary form with the data encoded by the {@link AuditEventDataConverter}; a full segment is
+ * synced then replaced by a new one. A dedicated thread syncs the current segment to the disk as soon as events are
+ * appended to it: the events appended while a sync is running are all made durable by the next one, so the callers
+ * waiting for {@link #awaitSync} share the cost of a sync.
+ * <p>
+ * Durable events are shipped by {@link #ship}, in batches, from the oldest segment; a segment is deleted once all its
+ * events were shipped. The segments found when the journal is opened were left by a previous run, which may have
+ * shipped part of them: they are shipped again, except for the events already in the database. So is a batch
+ * shipped again after a failure, which may have happened once the batch was committed. A record whose checksum does
+ * not match, written by a crash before it was synced, ends its segment.
+ */
+class AuditEventJournal {
+
+    private static final int MAGIC = 0x41554a31;
+
+    private static final int HEADER_LENGTH = 4;
+
+    private static final int RECORD_HEADER_LENGTH = 8;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long SYNC_RETRY_DELAY_MS = 10;
+
+    private static final String PREFIX = "audit-";
+
+    private static final String SUFFIX = ".journal";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventJournal.class);
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition appendedCondition = lock.newCondition();
+
+    private final Condition syncedCondition = lock.newCondition();
+
+    /**
+     * Segments not shipped yet, oldest first, ending with the current one.
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private Segment current;
+
+    private long appended;
+
+    private long synced;
+
+    private boolean closed = true;
+
+    private Thread syncThread;
+
+    /**
+     * Offset of the next record to ship in the oldest segment, only used by the shipping thread.
+     */
+    private int shipOffset = HEADER_LENGTH;
+
+    /**
+     * Whether the last batch failed to be shipped, and may have been written all the same, only used by the shipping
+     * thread.
+     */
+    private boolean shipFailed;
+
+    /**
+     * @param directory the directory of the segments.
+     * @param segmentSize the size of a segment, in bytes.
+     */
+    AuditEventJournal(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open the journal: queue the segments left by a previous run for shipping, then start a new segment.
+     *
+     * @throws IOException if the segments cannot be read or created.
+     */
+    void open() throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())), file);
+            }
+        }
+        lock.lock();
+        try {
+            for (Map.Entry<Long, Path> file : files.entrySet()) {
+                MappedByteBuffer buffer;
+                try (FileChannel channel = FileChannel.open(file.getValue(), StandardOpenOption.READ)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+                if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+                    log.error("Ignored the audit journal segment {}, it is not a journal segment", file.getValue());
+                    continue;
+                }
+                segments.add(new Segment(file.getKey(), file.getValue(), buffer, true));
+            }
+            if (!segments.isEmpty()) {
+                log.info("Recovering {} audit journal segments not shipped by the previous run", segments.size());
+            }
+            closed = false;
+            roll(files.isEmpty() ? 1 : files.lastKey() + 1);
+        } finally {
+            lock.unlock();
+        }
+        syncThread = new Thread(this::sync, "audit-journal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    /**
+     * @return true from {@link #open} until {@link #close}.
+     */
+    boolean isOpen() {
+        lock.lock();
+        try {
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append an event to the journal. The event is durable once {@link #awaitSync} returns true for the returned
+     * position.
+     *
+     * @param event the event, with its id.
+     * @return the position of the event in the journal.
+     * @throws IOException if the event cannot be appended, in which case it is not in the journal.
+     */
+    long append(PersistentAuditEvent event) throws IOException {
+        byte[] record = encode(event);
+        if (record.length + RECORD_HEADER_LENGTH > segmentSize - HEADER_LENGTH) {
+            throw new IOException("The audit event is larger than a journal segment");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("The audit journal is closed");
+            }
+            if (current.buffer.remaining() < record.length + RECORD_HEADER_LENGTH) {
+                roll(current.sequence + 1);
+            }
+            current.buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+            appended++;
+            appendedCondition.signalAll();
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the events up to a position are synced to the disk.
+     *
+     * @param position the position of the last event to wait for.
+     * @param timeoutMs the maximum time to wait.
+     * @return true if the events are durable, false if the wait timed out or the journal was closed first.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    boolean awaitSync(long position, long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (synced < position && !closed && remaining > 0) {
+                remaining = syncedCondition.awaitNanos(remaining);
+            }
+            return synced >= position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ship a batch of durable events from the oldest segment, waiting for some if there are none yet.
+     *
+     * @param batchSize the maximum size of the batch.
+     * @param timeoutMs the maximum time to wait for durable events.
+     * @param writer writes the batch; if it throws, the events are shipped again by the next call, as events which may
+     * already be in the database, since the batch may have failed once committed.
+     * @return the number of events shipped.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    int ship(int batchSize, long timeoutMs, BatchWriter writer) throws InterruptedException {
+        Segment segment;
+        boolean sealed;
+        int limit;
+        lock.lock();
+        try {
+            segment = segments.peekFirst();
+            if (segment == current && current.syncedLimit <= shipOffset && !closed) {
+                syncedCondition.await(timeoutMs, TimeUnit.MILLISECONDS);
+                segment = segments.peekFirst();
+            }
+            if (segment == null) {
+                return 0;
+            }
+            sealed = segment != current;
+            limit = sealed ? segment.buffer.capacity() : segment.syncedLimit;
+        } finally {
+            lock.unlock();
+        }
+
+        ByteBuffer records = segment.buffer.duplicate();
+        records.limit(limit).position(shipOffset);
+        List<PersistentAuditEvent> batch = new ArrayList<>(batchSize);
+        int end = shipOffset;
+        boolean exhausted = false;
+        while (batch.size() < batchSize && !exhausted) {
+            PersistentAuditEvent event = read(records, segment);
+            if (event == null) {
+                exhausted = true;
+            } else {
+                batch.add(event);
+                end = records.position();
+            }
+        }
+        if (!batch.isEmpty()) {
+            try {
+                writer.write(batch, segment.recovered || shipFailed);
+            } catch (RuntimeException e) {
+                shipFailed = true;
+                throw e;
+            }
+            shipFailed = false;
+            shipOffset = end;
+        }
+        if (sealed && exhausted) {
+            delete(segment);
+        }
+        return batch.size();
+    }
+
+    /**
+     * @return true if events were appended and not shipped yet.
+     */
+    boolean hasUnshippedEvents() {
+        lock.lock();
+        try {
+            return segments.size() > 1 || synced < appended ||
+                (current != null && segments.peekFirst() == current && current.buffer.position() > shipOffset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sync the journal and stop the sync thread. The current segment is deleted if all its events were shipped.
+     */
+    void close() {
+        Thread thread;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            thread = syncThread;
+            appendedCondition.signalAll();
+            syncedCondition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            current.buffer.force();
+            if (segments.size() == 1 && current.buffer.position() == shipOffset) {
+                delete(current);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sync the current segment as soon as events are appended to it, until the journal is closed.
+     */
+    private void sync() {
+        while (true) {
+            Segment segment;
+            int offset;
+            long position;
+            lock.lock();
+            try {
+                while (appended == synced && !closed) {
+                    appendedCondition.awaitUninterruptibly();
+                }
+                if (appended == synced) {
+                    return;
+                }
+                segment = current;
+                offset = current.buffer.position();
+                position = appended;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                segment.buffer.force();
+            } catch (RuntimeException e) {
+                log.error("Could not sync the audit journal, will retry: {}", e.getMessage());
+                lock.lock();
+                try {
+                    if (closed) {
+                        // The events not synced are replayed on the next start if they reached the disk anyway
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SYNC_RETRY_DELAY_MS));
+                continue;
+            }
+            lock.lock();
+            try {
+                synced = Math.max(synced, position);
+                segment.syncedLimit = Math.max(segment.syncedLimit, offset);
+                syncedCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sync the current segment, if any, then start a new one. Called with the lock held.
+     */
+    private void roll(long sequence) throws IOException {
+        if (current != null) {
+            current.buffer.force();
+            current.syncedLimit = current.buffer.position();
+            synced = appended;
+            syncedCondition.signalAll();
+        }
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, sequence, SUFFIX));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        buffer.putInt(MAGIC);
+        buffer.force();
+        syncDirectory();
+        current = new Segment(sequence, file, buffer, false);
+        current.syncedLimit = HEADER_LENGTH;
+        segments.add(current);
+    }
+
+    /**
+     * Sync the directory, so that a new segment file is still there after a crash.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported by all the platforms
+            log.trace("Could not sync the audit journal directory: {}", e.getMessage());
+        }
+    }
+
+    private void delete(Segment segment) {
+        lock.lock();
+        try {
+            segments.remove(segment);
+            shipOffset = HEADER_LENGTH;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.warn("Could not delete the shipped audit journal segment {}: {}", segment.file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the next event of the records, or null at the end of the records.
+     */
+    private PersistentAuditEvent read(ByteBuffer records, Segment segment) {
+        if (records.remaining() < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        int start = records.position();
+        int length = records.getInt();
+        int checksum = records.getInt();
+        if (length <= 0 || length > records.remaining()) {
+            if (length != 0) {
+                log.warn("Truncated record at {} of the audit journal segment {}, ending it", start, segment.file);
+            }
+            records.position(start);
+            return null;
+        }
+        byte[] record = new byte[length];
+        records.get(record);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            log.warn("Corrupted record at {} of the audit journal segment {}, ending it", start, segment.file);
+            records.position(start);
+            return null;
+        }
+        try {
+            return decode(record);
+        } catch (IOException e) {
+            log.warn("Unreadable record at {} of the audit journal segment {}, ending it: {}", start, segment.file,
+                e.getMessage());
+            records.position(start);
+            return null;
+        }
+    }
+
+    static byte[] encode(PersistentAuditEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(event.getId());
+            out.writeUTF(event.getPrincipal());
+            Instant date = event.getAuditEventDate();
+            out.writeBoolean(date != null);
+            if (date != null) {
+                out.writeLong(date.getEpochSecond());
+                out.writeInt(date.getNano());
+            }
+            out.writeBoolean(event.getAuditEventType() != null);
+            if (event.getAuditEventType() != null) {
+                out.writeUTF(event.getAuditEventType());
+            }
+            byte[] data = AuditEventDataConverter.encode(event.getData());
+            out.writeInt(data != null ? data.length : -1);
+            if (data != null) {
+                out.write(data);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    static PersistentAuditEvent decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unknown audit journal record version " + version);
+            }
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setId(in.readLong());
+            event.setPrincipal(in.readUTF());
+            if (in.readBoolean()) {
+                event.setAuditEventDate(Instant.ofEpochSecond(in.readLong(), in.readInt()));
+            }
+            if (in.readBoolean()) {
+                event.setAuditEventType(in.readUTF());
+            }
+            int length = in.readInt();
+            byte[] data = null;
+            if (length >= 0) {
+                data = new byte[length];
+                in.readFully(data);
+            }
+            event.setData(AuditEventDataConverter.decode(data));
+            return event;
+        }
+    }
+
+    /**
+     * Writes a batch of shipped events to the database.
+     */
+    @FunctionalInterface
+    interface BatchWriter {
+
+        /**
+         * @param batch the events.
+         * @param replace whether the events may already be in the database, and should then be skipped.
+         */
+        void write(List<PersistentAuditEvent> batch, boolean replace);
+    }
+
+    private static final class Segment {
+
+        private final long sequence;
+
+        private final Path file;
+
+        private final MappedByteBuffer buffer;
+
+        private final boolean recovered;
+
+        /**
+         * End of the synced records of the current segment.
+         */
+        private int syncedLimit;
+
+        private Segment(long sequence, Path file, MappedByteBuffer buffer, boolean recovered) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+            this.recovered = recovered;
+        }
+    }
+}
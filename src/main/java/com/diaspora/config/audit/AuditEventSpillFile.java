@@ -0,0 +1,192 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.PersistentAuditEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * File holding the audit events which overflowed the queue of the {@link AuditEventWriter}, until they are written
+ * to the database.
+ * <p>
+ * Events are appended to {@code audit-spill.bin}. To replay them, the file is first renamed to
+ * {@code audit-spill.replay}, so that new events go to a new file meanwhile; a replay file left by a crash is replayed
+ * on the next start, as is a spill file. A record truncated by a crash ends the replay.
+ * <p>
+ * Each record keeps the id of its event, so that a replay failing part way writes again only the events not written
+ * yet, as the {@link AuditEventJournal} does. The records of the first version have none.
+ * <p>
+ * Once closed, the file takes no more events.
+ */
+class AuditEventSpillFile {
+
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Version of the records written without the event id.
+     */
+    private static final int FORMAT_VERSION_WITHOUT_ID = 1;
+
+    private final Path file;
+
+    private final Path replayFile;
+
+    private DataOutputStream out;
+
+    private boolean closed;
+
+    AuditEventSpillFile(Path directory) {
+        this.file = directory.resolve("audit-spill.bin");
+        this.replayFile = directory.resolve("audit-spill.replay");
+    }
+
+    /**
+     * Append an event to the file.
+     *
+     * @param event the event.
+     * @throws IOException if the event cannot be written, or the file was closed.
+     */
+    synchronized void append(PersistentAuditEvent event) throws IOException {
+        if (closed) {
+            throw new IOException("The audit spill file is closed");
+        }
+        if (out == null) {
+            Files.createDirectories(file.getParent());
+            OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            out = new DataOutputStream(new BufferedOutputStream(stream));
+        }
+        out.writeByte(FORMAT_VERSION);
+        out.writeBoolean(event.getId() != null);
+        if (event.getId() != null) {
+            out.writeLong(event.getId());
+        }
+        out.writeUTF(event.getPrincipal());
+        Instant date = event.getAuditEventDate();
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.getEpochSecond());
+            out.writeInt(date.getNano());
+        }
+        out.writeBoolean(event.getAuditEventType() != null);
+        if (event.getAuditEventType() != null) {
+            out.writeUTF(event.getAuditEventType());
+        }
+        out.writeInt(event.getData().size());
+        for (Map.Entry<String, String> entry : event.getData().entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeBoolean(entry.getValue() != null);
+            if (entry.getValue() != null) {
+                out.writeUTF(entry.getValue());
+            }
+        }
+        // Flushed on each event, so that a crash loses at most the event being written
+        out.flush();
+    }
+
+    /**
+     * @return true if events are waiting in the file.
+     */
+    synchronized boolean hasEvents() {
+        return out != null || Files.exists(file) || Files.exists(replayFile);
+    }
+
+    /**
+     * Read back the spilled events, in batches, then delete them.
+     *
+     * @param batchSize the maximum size of a batch.
+     * @param writer writes a batch, leaving out its events already written; if it throws, the events are kept for
+     * the next replay.
+     * @return the number of events replayed.
+     * @throws IOException if the file cannot be read.
+     */
+    long replay(int batchSize, Consumer<List<PersistentAuditEvent>> writer) throws IOException {
+        synchronized (this) {
+            if (!Files.exists(replayFile)) {
+                closeOutput();
+                if (!Files.exists(file)) {
+                    return 0;
+                }
+                Files.move(file, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        long replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(replayFile)))) {
+            List<PersistentAuditEvent> batch = new ArrayList<>(batchSize);
+            PersistentAuditEvent event;
+            while ((event = read(in)) != null) {
+                batch.add(event);
+                if (batch.size() == batchSize) {
+                    writer.accept(batch);
+                    replayed += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                writer.accept(batch);
+                replayed += batch.size();
+            }
+        }
+        Files.delete(replayFile);
+        return replayed;
+    }
+
+    private static PersistentAuditEvent read(DataInputStream in) throws IOException {
+        try {
+            int version = in.read();
+            if (version == -1) {
+                return null;
+            }
+            if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_ID) {
+                throw new IOException("Unknown audit spill record version " + version);
+            }
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            if (version == FORMAT_VERSION && in.readBoolean()) {
+                event.setId(in.readLong());
+            }
+            event.setPrincipal(in.readUTF());
+            if (in.readBoolean()) {
+                event.setAuditEventDate(Instant.ofEpochSecond(in.readLong(), in.readInt()));
+            }
+            if (in.readBoolean()) {
+                event.setAuditEventType(in.readUTF());
+            }
+            int size = in.readInt();
+            Map<String, String> data = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                data.put(name, in.readBoolean() ? in.readUTF() : null);
+            }
+            event.setData(data);
+            return event;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        closed = true;
+        closeOutput();
+    }
+
+    private synchronized void closeOutput() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+}
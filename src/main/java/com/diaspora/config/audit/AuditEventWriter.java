@@ -0,0 +1,571 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.domain.AuditEventDataConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Writes the audit events to the database asynchronously, so that auditing adds no database latency to the requests.
+ * <p>
+ * Events are put in a bounded queue, an array based ring buffer, and written by a dedicated thread in JDBC batches
+ * of one row per event, with ids from the entity id generator and the data encoded by the
+ * {@link AuditEventDataConverter}. A batch is written once it holds {@code batch-size} events, or
+ * {@code flush-interval-ms} after its first event. When the queue is full, the {@code overflow-policy} either blocks
+ * the caller for a while, drops the event, or spills it to a file replayed once the queue is empty again.
+ * <p>
+ * With {@code application.audit.journal.enabled}, an event is instead appended to the {@link AuditEventJournal} on the
+ * local disk, and {@link #write} returns once the journal is synced, so that no acknowledged event is lost even if
+ * the application stops before it reaches the database. A dedicated thread ships the journal to the database in
+ * batches; the events the journal cannot take are queued as above.
+ * <p>
+ * Events written before the writer starts are queued, and written once it started. The writer stops early in the
+ * application shutdown, while the data source is still open, after writing the queued, spilled and journaled events,
+ * within {@code shutdown-timeout-seconds}. The requests still served afterwards, until the web server stops, keep
+ * auditing: their events are appended to the journal, which stays open until the writer is destroyed and is shipped
+ * on the next start, or else written right away by the caller. Only the events written once the writer is destroyed
+ * are dropped. Events failing to be written are logged and dropped, spilled with the {@code SPILL} policy, or written
+ * again later from the journal. Spilled and journaled events keep their id, so that writing them again leaves out
+ * those already written.
+ * <p>
+ * The metrics are the {@code audit.writer.queue.depth} gauge, the {@code audit.writer.flush} latency timer, the
+ * {@code audit.journal.append} timer of the time until an event is durable in the journal, and the
+ * {@code audit.writer.events} counter, by result, whose rate is the number of events written per second.
+ */
+public class AuditEventWriter implements SmartLifecycle {
+
+    static final String EVENT_TABLE = "jhi_persistent_audit_event";
+
+    private static final String INSERT_EVENT = "insert into " + EVENT_TABLE +
+        " (event_id, principal, event_date, event_type, event_data) values (?, ?, ?, ?, ?)";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventWriter.class);
+
+    private final ApplicationProperties.Audit.Writer properties;
+
+    private final DataSource dataSource;
+
+    private final LongSupplier idGenerator;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final BlockingQueue<PersistentAuditEvent> queue;
+
+    private final AuditEventSpillFile spillFile;
+
+    private final AuditEventJournal journal;
+
+    private final long journalSyncTimeoutMs;
+
+    private final Consumer<List<PersistentAuditEvent>> writtenListener;
+
+    private final Timer flushTimer;
+
+    private final Timer journalTimer;
+
+    private final Counter writtenEvents;
+
+    private final Counter droppedEvents;
+
+    private final Counter spilledEvents;
+
+    private final Counter failedEvents;
+
+    private final Counter journaledEvents;
+
+    private volatile boolean running;
+
+    /**
+     * Set once the writer stopped, after which the events are journaled, or written by the caller.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Set once the writer is destroyed, after which the events are dropped.
+     */
+    private volatile boolean destroyed;
+
+    private Thread thread;
+
+    private Thread shipperThread;
+
+    /**
+     * @param properties the writer settings.
+     * @param dataSource the data source of the audit tables.
+     * @param idGenerator generates the event ids, as Hibernate does, see
+     * {@link com.diaspora.config.hazelcast.FlakeIdentifierGenerator}.
+     * @param entityManagerFactory the entity manager factory whose query cache is invalidated by the writes.
+     * @param meterRegistry the registry of the writer metrics.
+     */
+    public AuditEventWriter(ApplicationProperties.Audit.Writer properties, DataSource dataSource, LongSupplier idGenerator,
+                            EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this(properties, new ApplicationProperties.Audit.Journal(), dataSource, idGenerator, entityManagerFactory,
+            meterRegistry);
+    }
+
+    /**
+     * @param properties the writer settings.
+     * @param journalProperties the journal settings.
+     * @param dataSource the data source of the audit tables.
+     * @param idGenerator generates the event ids, as Hibernate does, see
+     * {@link com.diaspora.config.hazelcast.FlakeIdentifierGenerator}.
+     * @param entityManagerFactory the entity manager factory whose query cache is invalidated by the writes.
+     * @param meterRegistry the registry of the writer metrics.
+     */
+    public AuditEventWriter(ApplicationProperties.Audit.Writer properties, ApplicationProperties.Audit.Journal journalProperties,
+                            DataSource dataSource, LongSupplier idGenerator, EntityManagerFactory entityManagerFactory,
+                            MeterRegistry meterRegistry) {
+        this(properties, journalProperties, dataSource, idGenerator, entityManagerFactory, meterRegistry, batch -> {
+        });
+    }
+
+    /**
+     * @param properties the writer settings.
+     * @param journalProperties the journal settings.
+     * @param dataSource the data source of the audit tables.
+     * @param idGenerator generates the event ids, as Hibernate does, see
+     * {@link com.diaspora.config.hazelcast.FlakeIdentifierGenerator}.
+     * @param entityManagerFactory the entity manager factory whose query cache is invalidated by the writes.
+     * @param meterRegistry the registry of the writer metrics.
+     * @param writtenListener called with each batch of events once written, by the writer threads, or by the caller
+     * once the writer stopped, each event being written once.
+     */
+    public AuditEventWriter(ApplicationProperties.Audit.Writer properties, ApplicationProperties.Audit.Journal journalProperties,
+                            DataSource dataSource, LongSupplier idGenerator, EntityManagerFactory entityManagerFactory,
+                            MeterRegistry meterRegistry, Consumer<List<PersistentAuditEvent>> writtenListener) {
+        this.writtenListener = writtenListener;
+        this.properties = properties;
+        this.dataSource = dataSource;
+        this.idGenerator = idGenerator;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.spillFile = properties.getOverflowPolicy() == ApplicationProperties.Audit.Writer.OverflowPolicy.SPILL ?
+            new AuditEventSpillFile(Paths.get(properties.getSpillDirectory())) : null;
+        this.journal = journalProperties.isEnabled() ? new AuditEventJournal(Paths.get(journalProperties.getDirectory()),
+            journalProperties.getSegmentSizeMb() * 1024 * 1024) : null;
+        this.journalSyncTimeoutMs = journalProperties.getSyncTimeoutMs();
+        Gauge.builder("audit.writer.queue.depth", queue, BlockingQueue::size)
+            .description("Audit events waiting to be written")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("audit.writer.flush")
+            .description("Time spent writing a batch of audit events")
+            .register(meterRegistry);
+        this.journalTimer = Timer.builder("audit.journal.append")
+            .description("Time spent appending an audit event to the journal, until it is synced")
+            .register(meterRegistry);
+        this.writtenEvents = eventsCounter(meterRegistry, "written");
+        this.droppedEvents = eventsCounter(meterRegistry, "dropped");
+        this.spilledEvents = eventsCounter(meterRegistry, "spilled");
+        this.failedEvents = eventsCounter(meterRegistry, "failed");
+        this.journaledEvents = eventsCounter(meterRegistry, "journaled");
+    }
+
+    private static Counter eventsCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("audit.writer.events")
+            .description("Audit events handled by the writer, by result")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Queue an event to be written, applying the overflow policy if the queue is full.
+     *
+     * @param event the event.
+     */
+    public void write(PersistentAuditEvent event) {
+        if (destroyed) {
+            drop(event);
+            return;
+        }
+        if (journal != null && (running || stopped) && journal(event)) {
+            return;
+        }
+        if (stopped) {
+            flush(new ArrayList<>(Collections.singletonList(event)));
+            return;
+        }
+        if (queue.offer(event)) {
+            return;
+        }
+        switch (properties.getOverflowPolicy()) {
+            case BLOCK:
+                try {
+                    if (queue.offer(event, properties.getBlockTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                drop(event);
+                break;
+            case SPILL:
+                spill(event);
+                break;
+            default:
+                drop(event);
+        }
+    }
+
+    /**
+     * Append an event to the journal, then wait for it to be synced.
+     *
+     * @return false if the event could not be appended, and should be queued.
+     */
+    private boolean journal(PersistentAuditEvent event) {
+        long start = System.nanoTime();
+        if (event.getId() == null) {
+            event.setId(idGenerator.getAsLong());
+        }
+        long position;
+        try {
+            position = journal.append(event);
+        } catch (IOException e) {
+            log.error("Could not append audit event {} to the journal, writing it without: {}", event, e.getMessage());
+            return false;
+        }
+        try {
+            if (!journal.awaitSync(position, journalSyncTimeoutMs)) {
+                // Still in the journal, so shipped once synced
+                log.warn("Audit event {} not synced to the journal within {} ms", event, journalSyncTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journalTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        journaledEvents.increment();
+        return true;
+    }
+
+    private void drop(PersistentAuditEvent event) {
+        droppedEvents.increment();
+        log.warn("Dropped audit event {}, the audit queue is full or destroyed", event);
+    }
+
+    private void spill(PersistentAuditEvent event) {
+        if (event.getId() == null) {
+            event.setId(idGenerator.getAsLong());
+        }
+        try {
+            spillFile.append(event);
+            spilledEvents.increment();
+        } catch (IOException e) {
+            droppedEvents.increment();
+            log.error("Dropped audit event {}, it could not be spilled: {}", event, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (journal != null) {
+            try {
+                if (!journal.isOpen()) {
+                    journal.open();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open the audit journal: " + e.getMessage(), e);
+            }
+            shipperThread = new Thread(this::ship, "audit-journal-shipper");
+            shipperThread.setDaemon(true);
+        }
+        running = true;
+        stopped = false;
+        thread = new Thread(this::run, "audit-writer");
+        thread.setDaemon(true);
+        thread.start();
+        if (shipperThread != null) {
+            shipperThread.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        Thread writerThread;
+        Thread journalShipperThread;
+        synchronized (this) {
+            running = false;
+            stopped = thread != null;
+            writerThread = thread;
+            journalShipperThread = shipperThread;
+        }
+        if (writerThread == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(properties.getShutdownTimeoutSeconds());
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(properties.getShutdownTimeoutSeconds()));
+            if (journalShipperThread != null) {
+                journalShipperThread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Audit writer stopped with {} events not written, writing them on destroy", queue.size());
+            writerThread.interrupt();
+        }
+        if (journalShipperThread != null && journalShipperThread.isAlive()) {
+            log.warn("Audit journal shipper stopped with events not shipped, they will be on the next start");
+            journalShipperThread.interrupt();
+        }
+    }
+
+    /**
+     * Stop the writer if it is still running, write the events left in the queue, then close the journal and the
+     * spill file: the events written afterwards are dropped.
+     */
+    @PreDestroy
+    public void destroy() {
+        stop();
+        destroyed = true;
+        List<PersistentAuditEvent> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        if (!queued.isEmpty()) {
+            flush(queued);
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (RuntimeException e) {
+                log.warn("Could not close the audit journal: {}", e.getMessage());
+            }
+        }
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                log.warn("Could not close the audit spill file: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Stop before the other lifecycle beans, so that the queue is drained while the database is still available.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MAX_VALUE - 1;
+    }
+
+    private void run() {
+        List<PersistentAuditEvent> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            } else if (spillFile != null && spillFile.hasEvents()) {
+                replaySpill();
+            }
+        }
+        if (spillFile != null && spillFile.hasEvents()) {
+            replaySpill();
+        }
+    }
+
+    /**
+     * Wait for a first event, then for more until the batch is full or the flush interval elapsed.
+     */
+    private void fillBatch(List<PersistentAuditEvent> batch) throws InterruptedException {
+        PersistentAuditEvent first = queue.poll(properties.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFlushIntervalMs());
+        while (batch.size() < properties.getBatchSize()) {
+            queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.getBatchSize() || remaining <= 0 || !running) {
+                return;
+            }
+            PersistentAuditEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PersistentAuditEvent> batch) {
+        try {
+            writeBatch(batch);
+        } catch (RuntimeException e) {
+            if (spillFile != null) {
+                log.warn("Could not write {} audit events, spilling them: {}", batch.size(), e.getMessage());
+                batch.forEach(this::spill);
+            } else {
+                failedEvents.increment(batch.size());
+                log.error("Could not write {} audit events: {}", batch.size(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ship the journaled events to the database until the writer is stopped and all of them are shipped.
+     */
+    private void ship() {
+        while (running || journal.hasUnshippedEvents()) {
+            try {
+                journal.ship(properties.getBatchSize(), properties.getFlushIntervalMs(), this::writeBatch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Could not ship the audit journal, will retry: {}", e.getMessage());
+                try {
+                    Thread.sleep(properties.getFlushIntervalMs());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void replaySpill() {
+        try {
+            long replayed = spillFile.replay(properties.getBatchSize(), batch -> writeBatch(batch, true));
+            log.info("Wrote {} spilled audit events", replayed);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write the spilled audit events, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Write a batch of events in a single transaction.
+     *
+     * @param batch the events.
+     */
+    void writeBatch(List<PersistentAuditEvent> batch) {
+        writeBatch(batch, false);
+    }
+
+    /**
+     * Write a batch of events in a single transaction.
+     *
+     * @param batch the events.
+     * @param replace whether the events may already have been written, and should then be left as they are: an
+     * event never changes, and its row may have been sealed into a block since.
+     */
+    void writeBatch(List<PersistentAuditEvent> batch, boolean replace) {
+        long start = System.nanoTime();
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (replace) {
+                    batch = unwritten(connection, batch);
+                }
+                insert(connection, batch);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        writtenEvents.increment(batch.size());
+        invalidateQueryCache();
+        writtenListener.accept(batch);
+    }
+
+    private static List<PersistentAuditEvent> unwritten(Connection connection, List<PersistentAuditEvent> batch)
+        throws SQLException {
+        if (batch.isEmpty()) {
+            return batch;
+        }
+        List<Long> ids = batch.stream().map(PersistentAuditEvent::getId).filter(Objects::nonNull)
+            .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return batch;
+        }
+        Set<Long> written = new HashSet<>();
+        try (PreparedStatement events = connection.prepareStatement("select event_id from " + EVENT_TABLE +
+            " where event_id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")")) {
+            for (int i = 0; i < ids.size(); i++) {
+                events.setLong(i + 1, ids.get(i));
+            }
+            try (ResultSet resultSet = events.executeQuery()) {
+                while (resultSet.next()) {
+                    written.add(resultSet.getLong(1));
+                }
+            }
+        }
+        return batch.stream().filter(event -> event.getId() == null || !written.contains(event.getId()))
+            .collect(Collectors.toList());
+    }
+
+    private void insert(Connection connection, List<PersistentAuditEvent> batch) throws SQLException {
+        try (PreparedStatement events = connection.prepareStatement(INSERT_EVENT)) {
+            for (PersistentAuditEvent event : batch) {
+                if (event.getId() == null) {
+                    event.setId(idGenerator.getAsLong());
+                }
+                events.setLong(1, event.getId());
+                events.setString(2, event.getPrincipal());
+                events.setTimestamp(3, event.getAuditEventDate() != null ? Timestamp.from(event.getAuditEventDate()) : null);
+                events.setString(4, event.getAuditEventType());
+                events.setBytes(5, AuditEventDataConverter.encode(event.getData()));
+                events.addBatch();
+            }
+            events.executeBatch();
+        }
+    }
+
+    /**
+     * Tell Hibernate that the audit table changed, as it was not written through it, so that the cached query
+     * results over it are not used anymore.
+     */
+    private void invalidateQueryCache() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            sessionFactory.getCache().getTimestampsCache()
+                .invalidate(new String[]{EVENT_TABLE}, (SharedSessionContractImplementor) session);
+        }
+    }
+}
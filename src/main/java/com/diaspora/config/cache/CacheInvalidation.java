@@ -0,0 +1,85 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.hazelcast.SerializationIds;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * Message telling the other nodes to drop an entry, or all the entries, of one of their local caches.
+ */
+public class CacheInvalidation implements Serializable, IdentifiedDataSerializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String origin;
+
+    private String cacheName;
+
+    private Object key;
+
+    /**
+     * Constructor used when reading a message.
+     */
+    public CacheInvalidation() {
+    }
+
+    /**
+     * @param origin the id of the cache manager that changed the entry, which ignores its own messages.
+     * @param cacheName the name of the cache.
+     * @param key the key of the entry; or {@code null} if the cache was cleared.
+     */
+    public CacheInvalidation(String origin, String cacheName, Object key) {
+        this.origin = origin;
+        this.cacheName = cacheName;
+        this.key = key;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return SerializationIds.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return SerializationIds.CACHE_INVALIDATION;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(origin);
+        out.writeUTF(cacheName);
+        out.writeObject(key);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        origin = in.readUTF();
+        cacheName = in.readUTF();
+        key = in.readObject();
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidation{" +
+            "origin='" + origin + '\'' +
+            ", cacheName='" + cacheName + '\'' +
+            ", key=" + key +
+            '}';
+    }
+}
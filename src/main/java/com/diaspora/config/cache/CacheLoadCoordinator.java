@@ -0,0 +1,279 @@
+package com.diaspora.config.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coordinates the loads of the missing entries of a {@link TwoTierCache}, so that a popular key which expires
+ * does not make every concurrent caller hit the underlying method and the database.
+ * <p>
+ * On each node, at most one load of a key runs at a time: the callers missing the key meanwhile wait for it and get
+ * the same value, or the same exception. With the cluster lock enabled, the load also holds a lock on the key of the
+ * Hazelcast map, so that a single node loads it; the others find the loaded value in the map once they get the lock.
+ * <p>
+ * With a positive {@code early-refresh-beta}, an entry loaded by this node may be reloaded before it expires, with a
+ * probability growing as its expiry gets closer and as its load was slower ("XFetch", Vattani et al.,
+ * "Optimal Probabilistic Cache Stampede Prevention"). A single caller then reloads it, while the others keep being
+ * served the cached value.
+ */
+class CacheLoadCoordinator {
+
+    private final Logger log = LoggerFactory.getLogger(CacheLoadCoordinator.class);
+
+    private final String cacheName;
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    private final IMap<Object, Object> lockMap;
+
+    private final long lockTimeoutSeconds;
+
+    private final long lockLeaseSeconds;
+
+    private final double earlyRefreshBeta;
+
+    private final long timeToLiveNanos;
+
+    /**
+     * When and how fast the entries were loaded by this node, for the early refreshes.
+     */
+    private final com.github.benmanes.caffeine.cache.Cache<Object, LoadStamp> loadStamps;
+
+    private final Timer successfulLoads;
+
+    private final Timer failedLoads;
+
+    private final Counter coalescedLoads;
+
+    private final Counter earlyRefreshes;
+
+    private final Timer lockWaits;
+
+    /**
+     * @param cacheName the name of the cache.
+     * @param settings the load settings of the cache.
+     * @param lockMap the Hazelcast map whose keys are locked during the loads; or {@code null} for no cluster lock.
+     * @param timeToLiveSeconds the time-to-live of the distributed entries; 0 if they do not expire.
+     * @param maxStamps the maximum number of entries whose load is remembered for the early refreshes.
+     * @param meterRegistry the registry of the load metrics.
+     * @param tags the tags of the load metrics.
+     */
+    CacheLoadCoordinator(String cacheName, Settings settings, IMap<Object, Object> lockMap, long timeToLiveSeconds,
+                         long maxStamps, MeterRegistry meterRegistry, Iterable<Tag> tags) {
+        this.cacheName = cacheName;
+        this.lockMap = lockMap;
+        this.lockTimeoutSeconds = settings.lockTimeoutSeconds;
+        this.lockLeaseSeconds = settings.lockLeaseSeconds;
+        this.earlyRefreshBeta = settings.earlyRefreshBeta;
+        this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLiveSeconds);
+        this.loadStamps = earlyRefreshBeta > 0 && timeToLiveSeconds > 0 ?
+            Caffeine.newBuilder().maximumSize(maxStamps).expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS).build() : null;
+        this.successfulLoads = loadTimer(meterRegistry, tags, "success");
+        this.failedLoads = loadTimer(meterRegistry, tags, "failure");
+        this.coalescedLoads = Counter.builder("cache.loads.coalesced")
+            .description("Cache misses which waited for the load of the same key by another caller, instead of loading it")
+            .tags(tags)
+            .register(meterRegistry);
+        this.earlyRefreshes = Counter.builder("cache.loads.early")
+            .description("Entries reloaded before their expiry")
+            .tags(tags)
+            .register(meterRegistry);
+        this.lockWaits = Timer.builder("cache.loads.lock.wait")
+            .description("Time spent waiting for the cluster lock of a key before loading it")
+            .tags(tags)
+            .register(meterRegistry);
+    }
+
+    private static Timer loadTimer(MeterRegistry meterRegistry, Iterable<Tag> tags, String result) {
+        return Timer.builder("cache.loads")
+            .description("Loads of missing cache entries, by result")
+            .tags(tags)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Load a missing entry, or wait for the load of the same key already running on this node.
+     *
+     * @param key the key of the entry.
+     * @param loader loads the entry, and stores it in the cache.
+     * @return the value of the entry, in its store format.
+     */
+    Object load(Object key, Supplier<Object> loader) {
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> runningLoad = loads.putIfAbsent(key, load);
+        if (runningLoad != null) {
+            coalescedLoads.increment();
+            return await(runningLoad);
+        }
+        return run(key, load, loader);
+    }
+
+    /**
+     * Reload an entry before it expires, unless it is already being loaded.
+     *
+     * @param key the key of the entry.
+     * @param loader loads the entry, and stores it in the cache.
+     * @return the new value of the entry, in its store format; or {@code null} if another load of the key is running.
+     */
+    Object refresh(Object key, Supplier<Object> loader) {
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, load) != null) {
+            return null;
+        }
+        earlyRefreshes.increment();
+        return run(key, load, loader);
+    }
+
+    private Object run(Object key, CompletableFuture<Object> load, Supplier<Object> loader) {
+        long start = System.nanoTime();
+        try {
+            Object value = lockMap != null ? loadLocked(key, loader) : loader.get();
+            successfulLoads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            load.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            failedLoads.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    private Object loadLocked(Object key, Supplier<Object> loader) {
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = lockMap.tryLock(key, lockTimeoutSeconds, TimeUnit.SECONDS, lockLeaseSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the lock of key " + key + " of cache " + cacheName, e);
+        }
+        lockWaits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!locked) {
+            // Better a duplicate load than a caller failing, or waiting forever for a stuck node
+            log.warn("Loading key {} of cache {} without its cluster lock, not acquired after {} s", key, cacheName, lockTimeoutSeconds);
+            return loader.get();
+        }
+        try {
+            return loader.get();
+        } finally {
+            lockMap.unlock(key);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> load) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a cache load", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return true if the cluster lock is enabled, so that the loader should look for a value loaded by another node.
+     */
+    boolean isClusterLocked() {
+        return lockMap != null;
+    }
+
+    /**
+     * Remember that an entry was just loaded, and how long its load took.
+     *
+     * @param key the key of the entry.
+     * @param loadNanos the duration of the load.
+     */
+    void loaded(Object key, long loadNanos) {
+        if (loadStamps != null) {
+            loadStamps.put(key, new LoadStamp(System.nanoTime() + timeToLiveNanos, loadNanos));
+        }
+    }
+
+    /**
+     * @param key the key of a cached entry.
+     * @return true if the entry should be reloaded now.
+     */
+    boolean shouldRefreshEarly(Object key) {
+        if (loadStamps == null) {
+            return false;
+        }
+        LoadStamp stamp = loadStamps.getIfPresent(key);
+        if (stamp == null) {
+            return false;
+        }
+        // -log(random) is exponentially distributed: most callers do not refresh until the expiry is close
+        double headStart = -stamp.loadNanos * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.nanoTime() + headStart >= stamp.expiresAt;
+    }
+
+    /**
+     * Forget the loads of an entry, after it was changed or evicted.
+     *
+     * @param key the key of the entry; or {@code null} for all the entries.
+     */
+    void forget(Object key) {
+        if (loadStamps == null) {
+            return;
+        }
+        if (key == null) {
+            loadStamps.invalidateAll();
+        } else {
+            loadStamps.invalidate(key);
+        }
+    }
+
+    private static final class LoadStamp {
+
+        private final long expiresAt;
+
+        private final long loadNanos;
+
+        LoadStamp(long expiresAt, long loadNanos) {
+            this.expiresAt = expiresAt;
+            this.loadNanos = loadNanos;
+        }
+    }
+
+    /**
+     * Lock and early refresh settings of a cache.
+     */
+    static final class Settings {
+
+        private final long lockTimeoutSeconds;
+
+        private final long lockLeaseSeconds;
+
+        private final double earlyRefreshBeta;
+
+        Settings(long lockTimeoutSeconds, long lockLeaseSeconds, double earlyRefreshBeta) {
+            this.lockTimeoutSeconds = lockTimeoutSeconds;
+            this.lockLeaseSeconds = lockLeaseSeconds;
+            this.earlyRefreshBeta = earlyRefreshBeta;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preloads the caches in parallel when the application is ready, before it takes traffic.
+ * <p>
+ * Each {@link CacheWarmer} runs as a task of the given executor, within a shared time and heap budget and a per cache
+ * entry budget, see {@code application.cache.warm-up}. As a health indicator, the warm-up reports
+ * {@code OUT_OF_SERVICE}, with its progress, until all the warmers are done or the budget is exhausted: with the
+ * Eureka health check enabled, the instance is only marked UP in the registry, and load balanced to, after that.
+ * A failing warmer, or one the executor rejects, is logged and reported, but does not keep the instance out of service.
+ */
+public class CacheWarmUp implements HealthIndicator {
+
+    private final Logger log = LoggerFactory.getLogger(CacheWarmUp.class);
+
+    private final ApplicationProperties.Cache.WarmUp properties;
+
+    private final List<Progress> progresses = new ArrayList<>();
+
+    private final Executor executor;
+
+    private volatile WarmUpBudget.Limits limits;
+
+    private volatile long startTime;
+
+    private volatile long duration = -1;
+
+    public CacheWarmUp(ApplicationProperties.Cache.WarmUp properties, List<CacheWarmer> warmers, Executor executor) {
+        this.properties = properties;
+        this.executor = executor;
+        warmers.forEach(warmer -> progresses.add(new Progress(warmer)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        log.info("Warming up {} caches", progresses.size());
+        startTime = System.nanoTime();
+        limits = new WarmUpBudget.Limits(TimeUnit.SECONDS.toNanos(properties.getTimeoutSeconds()), properties.getMaxHeapUsage());
+        CompletableFuture<?>[] tasks = progresses.stream()
+            .map(this::submit)
+            .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(tasks).whenComplete((result, e) -> finish());
+    }
+
+    private CompletableFuture<Void> submit(Progress progress) {
+        try {
+            return CompletableFuture.runAsync(() -> progress.run(limits), executor)
+                .exceptionally(e -> {
+                    progress.fail(e);
+                    return null;
+                });
+        } catch (RejectedExecutionException e) {
+            progress.fail(e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void finish() {
+        duration = System.nanoTime() - startTime;
+        if (limits.getExhaustedReason() != null) {
+            log.warn("Cache warm-up stopped after {} ms, on {}", TimeUnit.NANOSECONDS.toMillis(duration), limits.getExhaustedReason());
+        } else {
+            log.info("Cache warm-up done in {} ms", TimeUnit.NANOSECONDS.toMillis(duration));
+        }
+    }
+
+    /**
+     * @return true if the warm-up is disabled, or is over.
+     */
+    public boolean isDone() {
+        return !properties.isEnabled() || duration >= 0;
+    }
+
+    @Override
+    public Health health() {
+        if (!properties.isEnabled()) {
+            return Health.up().withDetail("enabled", false).build();
+        }
+        Health.Builder builder = isDone() ? Health.up() : Health.outOfService();
+        if (startTime != 0) {
+            long elapsed = isDone() ? duration : System.nanoTime() - startTime;
+            builder.withDetail("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        WarmUpBudget.Limits currentLimits = limits;
+        if (currentLimits != null && currentLimits.getExhaustedReason() != null) {
+            builder.withDetail("stoppedOn", currentLimits.getExhaustedReason());
+        }
+        Map<String, Object> caches = new LinkedHashMap<>();
+        progresses.forEach(progress -> caches.put(progress.warmer.getCacheName(), progress.toDetails()));
+        return builder.withDetail("caches", caches).build();
+    }
+
+    private class Progress {
+
+        private final CacheWarmer warmer;
+
+        private volatile String state = "pending";
+
+        private volatile WarmUpBudget budget;
+
+        private volatile String error;
+
+        Progress(CacheWarmer warmer) {
+            this.warmer = warmer;
+        }
+
+        void run(WarmUpBudget.Limits limits) {
+            budget = new WarmUpBudget(limits, properties.getMaxEntriesPerCache());
+            state = "running";
+            long start = System.nanoTime();
+            try {
+                warmer.warmUp(budget);
+            } catch (Exception e) {
+                fail(e);
+                return;
+            }
+            state = "done";
+            log.debug("Warmed up cache {} with {} entries in {} ms", warmer.getCacheName(), budget.getLoaded(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        void fail(Throwable e) {
+            state = "failed";
+            error = e.getMessage();
+            log.warn("Could not warm up cache {}: {}", warmer.getCacheName(), e.getMessage());
+        }
+
+        Map<String, Object> toDetails() {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", state);
+            details.put("loaded", budget != null ? budget.getLoaded() : 0);
+            if (error != null) {
+                details.put("error", error);
+            }
+            return details;
+        }
+    }
+}
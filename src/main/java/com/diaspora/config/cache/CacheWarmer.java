@@ -0,0 +1,23 @@
+package com.diaspora.config.cache;
+
+/**
+ * Preloads one cache when the application starts, see {@link CacheWarmUp}.
+ * <p>
+ * Beans implementing this interface are run along with the second-level cache regions listed under
+ * {@code application.cache.warm-up.entities}.
+ */
+public interface CacheWarmer {
+
+    /**
+     * @return the name of the cache, or of the second-level cache region, this warmer loads.
+     */
+    String getCacheName();
+
+    /**
+     * Load entries in the cache, page by page, until there are no more or the budget is exhausted.
+     *
+     * @param budget the warm-up budget, to check and charge after each page.
+     * @throws Exception if loading fails; the warm-up of the other caches goes on.
+     */
+    void warmUp(WarmUpBudget budget) throws Exception;
+}
@@ -0,0 +1,127 @@
+package com.diaspora.config.cache;
+
+import org.hibernate.Hibernate;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preloads the second-level cache region of an entity, and of its cached collections, by reading the entities in
+ * keyset-paginated pages ordered by id: each page starts after the last id of the previous one, so that it stays
+ * an index range scan however deep the warm-up goes.
+ * <p>
+ * Each page is read by its own entity manager, closed afterwards, so the warm-up holds at most one page in memory
+ * besides the cache itself.
+ */
+public class EntityCacheWarmer implements CacheWarmer {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final EntityType<?> entityType;
+
+    private final String idAttribute;
+
+    private final List<PluralAttribute<?, ?, ?>> cachedCollections = new ArrayList<>();
+
+    private final int pageSize;
+
+    /**
+     * @param entityManagerFactory the entity manager factory.
+     * @param entityName the JPA name of the entity, which must be cached.
+     * @param pageSize the number of entities read per query.
+     * @throws IllegalArgumentException if there is no such entity, or it is not cached.
+     */
+    public EntityCacheWarmer(EntityManagerFactory entityManagerFactory, String entityName, int pageSize) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+        this.entityType = entityManagerFactory.getMetamodel().getEntities().stream()
+            .filter(type -> type.getName().equals(entityName) || type.getJavaType().getName().equals(entityName))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException("Unknown entity to warm up: " + entityName));
+        MetamodelImplementor metamodel = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getMetamodel();
+        String hibernateEntityName = entityType.getJavaType().getName();
+        if (!metamodel.entityPersister(hibernateEntityName).canWriteToCache()) {
+            throw new IllegalArgumentException("Entity " + entityName + " is not in the second-level cache");
+        }
+        SingularAttribute<?, ?> id = entityType.getId(entityType.getIdType().getJavaType());
+        this.idAttribute = id.getName();
+        for (PluralAttribute<?, ?, ?> attribute : entityType.getPluralAttributes()) {
+            if (metamodel.collectionPersister(hibernateEntityName + "." + attribute.getName()).hasCache()) {
+                cachedCollections.add(attribute);
+            }
+        }
+    }
+
+    @Override
+    public String getCacheName() {
+        return entityType.getJavaType().getName();
+    }
+
+    @Override
+    public void warmUp(WarmUpBudget budget) {
+        Object lastId = null;
+        long remaining;
+        while ((remaining = budget.remainingEntries()) > 0) {
+            int limit = (int) Math.min(pageSize, remaining);
+            int count;
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            try {
+                List<?> page = readPage(entityManager, lastId, limit);
+                for (Object entity : page) {
+                    for (PluralAttribute<?, ?, ?> collection : cachedCollections) {
+                        Hibernate.initialize(read(collection, entity));
+                    }
+                }
+                count = page.size();
+                if (count > 0) {
+                    lastId = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(page.get(count - 1));
+                }
+            } finally {
+                entityManager.close();
+            }
+            budget.loaded(count);
+            if (count < limit) {
+                return;
+            }
+        }
+    }
+
+    private List<?> readPage(EntityManager entityManager, Object lastId, int limit) {
+        String entity = entityType.getName();
+        String query = lastId == null ?
+            "select e from " + entity + " e order by e." + idAttribute :
+            "select e from " + entity + " e where e." + idAttribute + " > :lastId order by e." + idAttribute;
+        TypedQuery<?> typedQuery = entityManager.createQuery(query, entityType.getJavaType())
+            .setMaxResults(limit);
+        if (lastId != null) {
+            typedQuery.setParameter("lastId", lastId);
+        }
+        return typedQuery.getResultList();
+    }
+
+    private static Object read(Attribute<?, ?> attribute, Object entity) {
+        Member member = attribute.getJavaMember();
+        try {
+            if (member instanceof Field) {
+                Field field = (Field) member;
+                field.setAccessible(true);
+                return field.get(entity);
+            }
+            return ((Method) member).invoke(entity);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read " + attribute.getName() + " of " + entity, e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import io.github.jhipster.config.JHipsterProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hazelcast map configs of the application: the {@code default} one, the ones of the Hibernate second-level cache
+ * regions, and one per cache listed under {@code application.cache.caches}.
+ * <p>
+ * Entity and collection regions, named after the entity class, and query result regions expire after the
+ * {@code jhipster.cache.hazelcast.time-to-live-seconds} time-to-live. The update timestamps region never expires,
+ * as Hibernate relies on it to know whether a cached query result is stale. A region can be given other settings
+ * by listing it under {@code application.cache.caches}, e.g. {@code "[com.diaspora.domain.PersistentAuditEvent]"}.
+ * <p>
+ * A listed cache starts from a copy of the {@code default} map config, with the
+ * {@code jhipster.cache.hazelcast.time-to-live-seconds} time-to-live, and overrides the settings it sets.
+ * All the configs are validated when the registry is created, so that a wrong setting fails the startup
+ * instead of being silently ignored or rejected by Hazelcast on the first use of the map.
+ */
+public class HazelcastMapConfigRegistry {
+
+    public static final String DEFAULT_MAP_CONFIG = "default";
+
+    public static final String DOMAIN_MAP_CONFIG = "com.diaspora.domain.*";
+
+    public static final String QUERY_RESULTS_REGION = "default-query-results-region";
+
+    public static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    /**
+     * Maximum number of synchronous and asynchronous backups of a Hazelcast map.
+     */
+    private static final int MAX_BACKUP_COUNT = 6;
+
+    private final Logger log = LoggerFactory.getLogger(HazelcastMapConfigRegistry.class);
+
+    private final MapConfig defaultMapConfig;
+
+    private final Map<String, MapConfig> mapConfigs = new LinkedHashMap<>();
+
+    /**
+     * @param jHipsterProperties the JHipster properties, giving the default backup count and time-to-live.
+     * @param cacheProperties the per cache settings.
+     * @throws IllegalStateException if the settings of a cache are not valid.
+     */
+    public HazelcastMapConfigRegistry(JHipsterProperties jHipsterProperties, ApplicationProperties.Cache cacheProperties) {
+        JHipsterProperties.Cache.Hazelcast hazelcastProperties = jHipsterProperties.getCache().getHazelcast();
+        this.defaultMapConfig = initializeDefaultMapConfig(hazelcastProperties);
+        mapConfigs.put(DOMAIN_MAP_CONFIG, initializeDomainMapConfig(DOMAIN_MAP_CONFIG, hazelcastProperties));
+        mapConfigs.put(QUERY_RESULTS_REGION, initializeDomainMapConfig(QUERY_RESULTS_REGION, hazelcastProperties));
+        mapConfigs.put(UPDATE_TIMESTAMPS_REGION, initializeUpdateTimestampsMapConfig());
+        List<String> errors = new ArrayList<>();
+        cacheProperties.getCaches().forEach((name, spec) -> {
+            List<String> cacheErrors = validate(name, spec, hazelcastProperties);
+            if (cacheErrors.isEmpty()) {
+                mapConfigs.put(name, initializeCacheMapConfig(name, spec, hazelcastProperties));
+            }
+            errors.addAll(cacheErrors);
+        });
+        if (!errors.isEmpty()) {
+            throw new IllegalStateException("Invalid Hazelcast cache configuration: " + String.join("; ", errors));
+        }
+    }
+
+    /**
+     * @return the config of the maps which have no config of their own.
+     */
+    public MapConfig getDefaultMapConfig() {
+        return defaultMapConfig;
+    }
+
+    /**
+     * @return the configs of the second-level cache regions and of the caches listed under
+     * {@code application.cache.caches}, by map name.
+     */
+    public Map<String, MapConfig> getMapConfigs() {
+        return Collections.unmodifiableMap(mapConfigs);
+    }
+
+    /**
+     * Add all the map configs to a Hazelcast config.
+     *
+     * @param config the Hazelcast config.
+     */
+    public void registerWith(Config config) {
+        config.getMapConfigs().put(DEFAULT_MAP_CONFIG, defaultMapConfig);
+        mapConfigs.forEach((name, mapConfig) -> {
+            log.debug("Configuring Hazelcast map {}: {}", name, mapConfig);
+            config.getMapConfigs().put(name, mapConfig);
+        });
+    }
+
+    private MapConfig initializeDefaultMapConfig(JHipsterProperties.Cache.Hazelcast hazelcastProperties) {
+        MapConfig mapConfig = new MapConfig(DEFAULT_MAP_CONFIG);
+
+        /*
+        Number of backups. If 1 is set as the backup-count for example,
+        then all entries of the map will be copied to another JVM for
+        fail-safety. Valid numbers are 0 (no backup), 1, 2, 3.
+        */
+        mapConfig.setBackupCount(hazelcastProperties.getBackupCount());
+
+        /*
+        Valid values are:
+        NONE (no eviction),
+        LRU (Least Recently Used),
+        LFU (Least Frequently Used).
+        NONE is the default.
+        */
+        mapConfig.setEvictionPolicy(EvictionPolicy.LRU);
+
+        /*
+        Maximum size of the map. When max size is reached,
+        map is evicted based on the policy defined.
+        Any integer between 0 and Integer.MAX_VALUE. 0 means
+        Integer.MAX_VALUE. Default is 0.
+        */
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(0, MaxSizeConfig.MaxSizePolicy.USED_HEAP_SIZE));
+
+        return mapConfig;
+    }
+
+    private MapConfig initializeDomainMapConfig(String name, JHipsterProperties.Cache.Hazelcast hazelcastProperties) {
+        MapConfig mapConfig = new MapConfig(defaultMapConfig);
+        mapConfig.setName(name);
+        mapConfig.setTimeToLiveSeconds(hazelcastProperties.getTimeToLiveSeconds());
+        return mapConfig;
+    }
+
+    private MapConfig initializeUpdateTimestampsMapConfig() {
+        MapConfig mapConfig = new MapConfig(defaultMapConfig);
+        mapConfig.setName(UPDATE_TIMESTAMPS_REGION);
+        mapConfig.setEvictionPolicy(EvictionPolicy.NONE);
+        mapConfig.setTimeToLiveSeconds(0);
+        return mapConfig;
+    }
+
+    private MapConfig initializeCacheMapConfig(String name, ApplicationProperties.Cache.CacheSpec spec,
+                                               JHipsterProperties.Cache.Hazelcast hazelcastProperties) {
+        MapConfig mapConfig = new MapConfig(defaultMapConfig);
+        mapConfig.setName(name);
+        mapConfig.setTimeToLiveSeconds(spec.getTimeToLiveSeconds() != null ? spec.getTimeToLiveSeconds() :
+            hazelcastProperties.getTimeToLiveSeconds());
+        if (spec.getMaxIdleSeconds() != null) {
+            mapConfig.setMaxIdleSeconds(spec.getMaxIdleSeconds());
+        }
+        if (spec.getMaxSize() != null || spec.getMaxSizePolicy() != null) {
+            MaxSizeConfig defaultMaxSize = defaultMapConfig.getMaxSizeConfig();
+            mapConfig.setMaxSizeConfig(new MaxSizeConfig(
+                spec.getMaxSize() != null ? spec.getMaxSize() : defaultMaxSize.getSize(),
+                spec.getMaxSizePolicy() != null ? spec.getMaxSizePolicy() : defaultMaxSize.getMaxSizePolicy()));
+        }
+        if (spec.getEvictionPolicy() != null) {
+            mapConfig.setEvictionPolicy(spec.getEvictionPolicy());
+        }
+        // Both counts are set together, as Hazelcast checks their sum against the current value of the other one
+        int backupCount = spec.getBackupCount() != null ? spec.getBackupCount() : mapConfig.getBackupCount();
+        int asyncBackupCount = spec.getAsyncBackupCount() != null ? spec.getAsyncBackupCount() : mapConfig.getAsyncBackupCount();
+        mapConfig.setAsyncBackupCount(0);
+        mapConfig.setBackupCount(backupCount);
+        mapConfig.setAsyncBackupCount(asyncBackupCount);
+        if (spec.getReadBackupData() != null) {
+            mapConfig.setReadBackupData(spec.getReadBackupData());
+        }
+        if (spec.getInMemoryFormat() != null) {
+            mapConfig.setInMemoryFormat(spec.getInMemoryFormat());
+        }
+        if (mapConfig.isReadBackupData() && backupCount == 0) {
+            log.warn("Hazelcast cache {} reads backup data, but has no synchronous backup", name);
+        }
+        return mapConfig;
+    }
+
+    private List<String> validate(String name, ApplicationProperties.Cache.CacheSpec spec,
+                                  JHipsterProperties.Cache.Hazelcast hazelcastProperties) {
+        List<String> errors = new ArrayList<>();
+        int backupCount = spec.getBackupCount() != null ? spec.getBackupCount() : hazelcastProperties.getBackupCount();
+        int asyncBackupCount = spec.getAsyncBackupCount() != null ? spec.getAsyncBackupCount() : 0;
+        if (backupCount < 0 || asyncBackupCount < 0 || backupCount + asyncBackupCount > MAX_BACKUP_COUNT) {
+            errors.add(name + ": backup-count and async-backup-count must be positive, with a sum of at most " + MAX_BACKUP_COUNT);
+        }
+        if (negative(spec.getTimeToLiveSeconds()) || negative(spec.getMaxIdleSeconds()) || negative(spec.getMaxSize())) {
+            errors.add(name + ": time-to-live-seconds, max-idle-seconds and max-size must be positive");
+        }
+        if (spec.getInMemoryFormat() == InMemoryFormat.NATIVE) {
+            errors.add(name + ": the NATIVE in-memory-format needs Hazelcast Enterprise HD");
+        }
+        MaxSizeConfig.MaxSizePolicy maxSizePolicy = spec.getMaxSizePolicy();
+        if (maxSizePolicy != null && maxSizePolicy.name().contains("NATIVE_MEMORY")) {
+            errors.add(name + ": the " + maxSizePolicy + " max-size-policy needs Hazelcast Enterprise HD");
+        }
+        if ((maxSizePolicy == MaxSizeConfig.MaxSizePolicy.USED_HEAP_PERCENTAGE ||
+            maxSizePolicy == MaxSizeConfig.MaxSizePolicy.FREE_HEAP_PERCENTAGE) &&
+            spec.getMaxSize() != null && spec.getMaxSize() > 100) {
+            errors.add(name + ": max-size is a percentage with the " + maxSizePolicy + " max-size-policy");
+        }
+        if (spec.getEvictionPolicy() == EvictionPolicy.NONE && spec.getMaxSize() != null && spec.getMaxSize() > 0) {
+            errors.add(name + ": max-size is never enforced with the NONE eviction-policy");
+        }
+        return errors;
+    }
+
+    private static boolean negative(Integer value) {
+        return value != null && value < 0;
+    }
+}
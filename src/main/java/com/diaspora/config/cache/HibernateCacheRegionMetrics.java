@@ -0,0 +1,69 @@
+package com.diaspora.config.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Per region metrics of the Hibernate second-level cache.
+ * <p>
+ * Spring Boot binds the Hibernate statistics totals only; these meters tell which entity, collection or query region
+ * is missing, and how many entries each region holds on this node. They need {@code hibernate.generate_statistics}.
+ */
+@Component
+public class HibernateCacheRegionMetrics implements SmartInitializingSingleton {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final MeterRegistry meterRegistry;
+
+    public HibernateCacheRegionMetrics(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Bind the regions once the session factory knows all of them.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            if (statistics.getCacheRegionStatistics(region) == null) {
+                continue;
+            }
+            regionCounter(statistics, region, "hibernate.cache.region.requests", "hit", CacheRegionStatistics::getHitCount);
+            regionCounter(statistics, region, "hibernate.cache.region.requests", "miss", CacheRegionStatistics::getMissCount);
+            FunctionCounter.builder("hibernate.cache.region.puts", statistics,
+                s -> s.getCacheRegionStatistics(region).getPutCount())
+                .description("Entries put in a second-level cache region")
+                .tag("region", region)
+                .register(meterRegistry);
+            Gauge.builder("hibernate.cache.region.entries", statistics,
+                s -> s.getCacheRegionStatistics(region).getElementCountInMemory())
+                .description("Entries of a second-level cache region held in memory by this node, or -1 if unknown")
+                .tag("region", region)
+                .register(meterRegistry);
+        }
+    }
+
+    private void regionCounter(Statistics statistics, String region, String name, String result,
+                               ToDoubleFunction<CacheRegionStatistics> count) {
+        FunctionCounter.builder(name, statistics, s -> count.applyAsDouble(s.getCacheRegionStatistics(region)))
+            .description("Lookups of a second-level cache region, by result")
+            .tag("region", region)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,284 @@
+package com.diaspora.config.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring {@link Cache} made of a bounded local (L1) Caffeine cache in front of a distributed (L2) cache.
+ * <p>
+ * Reads are served from L1 when possible, and fill it from L2 otherwise.
+ * Writes go to L2, then to L1, and are published by the {@link TwoTierCacheManager} so that the other nodes
+ * drop their local copy. The L1 time-to-live bounds how long a node may serve a stale value if such an
+ * invalidation is lost, or races with a concurrent L2 read.
+ * <p>
+ * Misses of {@link #get(Object, Callable)}, used by {@code @Cacheable(sync = true)}, are loaded through a
+ * {@link CacheLoadCoordinator}: concurrent callers missing the same key share a single load.
+ */
+public class TwoTierCache extends AbstractValueAdaptingCache {
+
+    private static final String GETS_METRIC = "cache.tier.gets";
+
+    private static final String LATENCY_METRIC = "cache.tier.latency";
+
+    private static final String GET_LATENCY_METRIC = "cache.gets.latency";
+
+    private final String name;
+
+    private final Cache remoteCache;
+
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> localCache;
+
+    private final TwoTierCacheManager cacheManager;
+
+    private final CacheLoadCoordinator loads;
+
+    private final Counter localHits;
+
+    private final Counter localMisses;
+
+    private final Counter remoteHits;
+
+    private final Counter remoteMisses;
+
+    private final Timer localTimer;
+
+    private final Timer remoteTimer;
+
+    private final Timer getTimer;
+
+    /**
+     * @param name the name of the cache.
+     * @param remoteCache the distributed cache.
+     * @param localCache the local cache; or {@code null} to only use the distributed one.
+     * @param cacheManager the cache manager publishing the invalidations.
+     * @param loads coordinates the loads of the missing entries.
+     * @param meterRegistry the registry of the per tier metrics.
+     * @param tags the tags of the metrics.
+     */
+    TwoTierCache(String name, Cache remoteCache, com.github.benmanes.caffeine.cache.Cache<Object, Object> localCache,
+                 TwoTierCacheManager cacheManager, CacheLoadCoordinator loads, MeterRegistry meterRegistry,
+                 Iterable<Tag> tags) {
+        super(true);
+        this.name = name;
+        this.remoteCache = remoteCache;
+        this.localCache = localCache;
+        this.cacheManager = cacheManager;
+        this.loads = loads;
+        this.localHits = getsCounter(meterRegistry, tags, "l1", "hit");
+        this.localMisses = getsCounter(meterRegistry, tags, "l1", "miss");
+        this.remoteHits = getsCounter(meterRegistry, tags, "l2", "hit");
+        this.remoteMisses = getsCounter(meterRegistry, tags, "l2", "miss");
+        this.localTimer = latencyTimer(meterRegistry, tags, "l1");
+        this.remoteTimer = latencyTimer(meterRegistry, tags, "l2");
+        this.getTimer = Timer.builder(GET_LATENCY_METRIC)
+            .description("Time spent looking up the cache, all tiers included, as seen by the callers")
+            .tags(tags)
+            .register(meterRegistry);
+        if (localCache != null) {
+            meterRegistry.gauge("cache.tier.size", Tags.of(tags).and("tier", "l1"),
+                localCache, com.github.benmanes.caffeine.cache.Cache::estimatedSize);
+        }
+    }
+
+    private static Counter getsCounter(MeterRegistry meterRegistry, Iterable<Tag> tags, String tier, String result) {
+        return Counter.builder(GETS_METRIC)
+            .description("Cache lookups, by tier and result")
+            .tags(tags)
+            .tag("tier", tier)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    private static Timer latencyTimer(MeterRegistry meterRegistry, Iterable<Tag> tags, String tier) {
+        return Timer.builder(LATENCY_METRIC)
+            .description("Time spent looking up a cache tier")
+            .tags(tags)
+            .tag("tier", tier)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the native cache of the distributed tier.
+     */
+    @Override
+    public Object getNativeCache() {
+        return remoteCache.getNativeCache();
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long start = System.nanoTime();
+        try {
+            return lookupTiers(key);
+        } finally {
+            getTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Object lookupTiers(Object key) {
+        if (localCache != null) {
+            long start = System.nanoTime();
+            Object value = localCache.getIfPresent(key);
+            localTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (value != null) {
+                localHits.increment();
+                return value;
+            }
+            localMisses.increment();
+        }
+        long start = System.nanoTime();
+        ValueWrapper wrapper = remoteCache.get(key);
+        remoteTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (wrapper == null) {
+            remoteMisses.increment();
+            return null;
+        }
+        remoteHits.increment();
+        Object storeValue = toStoreValue(wrapper.get());
+        if (localCache != null) {
+            localCache.put(key, storeValue);
+        }
+        return storeValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            if (loads.shouldRefreshEarly(key)) {
+                Object refreshed = loads.refresh(key, () -> load(key, valueLoader, false, true));
+                if (refreshed != null) {
+                    return (T) fromStoreValue(refreshed);
+                }
+            }
+            return (T) wrapper.get();
+        }
+        return (T) fromStoreValue(loads.load(key, () -> load(key, valueLoader, loads.isClusterLocked(), false)));
+    }
+
+    /**
+     * Load an entry and store it in both tiers.
+     *
+     * @param key the key of the entry.
+     * @param valueLoader loads the value.
+     * @param recheck whether to look for a value loaded meanwhile by another node first.
+     * @param publish whether to tell the other nodes to drop their local copy, which a missing entry has not.
+     * @return the value, in its store format.
+     */
+    private Object load(Object key, Callable<?> valueLoader, boolean recheck, boolean publish) {
+        if (recheck) {
+            ValueWrapper wrapper = remoteCache.get(key);
+            if (wrapper != null) {
+                Object storeValue = toStoreValue(wrapper.get());
+                if (localCache != null) {
+                    localCache.put(key, storeValue);
+                }
+                return storeValue;
+            }
+        }
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        long loadNanos = System.nanoTime() - start;
+        remoteCache.put(key, value);
+        Object storeValue = toStoreValue(value);
+        if (localCache != null) {
+            localCache.put(key, storeValue);
+        }
+        if (publish) {
+            cacheManager.publishInvalidation(name, key);
+        }
+        loads.loaded(key, loadNanos);
+        return storeValue;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key, value);
+        if (localCache != null) {
+            localCache.put(key, toStoreValue(value));
+        }
+        cacheManager.publishInvalidation(name, key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remoteCache.putIfAbsent(key, value);
+        if (localCache != null) {
+            localCache.put(key, toStoreValue(existing == null ? value : existing.get()));
+        }
+        if (existing == null) {
+            cacheManager.publishInvalidation(name, key);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        loads.forget(key);
+        remoteCache.evict(key);
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+        cacheManager.publishInvalidation(name, key);
+    }
+
+    @Override
+    public void clear() {
+        loads.forget(null);
+        remoteCache.clear();
+        if (localCache != null) {
+            localCache.invalidateAll();
+        }
+        cacheManager.publishInvalidation(name, null);
+    }
+
+    /**
+     * @return the number of lookups answered by either tier.
+     */
+    long hitCount() {
+        return (long) (localHits.count() + remoteHits.count());
+    }
+
+    /**
+     * @return the number of lookups answered by no tier.
+     */
+    long missCount() {
+        return (long) remoteMisses.count();
+    }
+
+    /**
+     * Drop an entry of the local tier only, after it was changed on another node.
+     *
+     * @param key the key of the entry; or {@code null} to drop all the entries.
+     */
+    void invalidateLocal(Object key) {
+        loads.forget(key);
+        if (localCache == null) {
+            return;
+        }
+        if (key == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(key);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CacheManager} putting a {@link TwoTierCache} local (L1) cache in front of every cache of a distributed (L2)
+ * cache manager.
+ * <p>
+ * Local caches are sized by {@code application.cache.local}, and by {@code application.cache.caches.<name>} for the
+ * caches needing other settings. Changes made through this manager are published on a Hazelcast topic,
+ * so that the other nodes drop the entries from their local caches.
+ * <p>
+ * Every cache backed by a Hazelcast map gets the standard {@code cache.*} metrics when it is created, see
+ * {@link TwoTierCacheMetrics}. They are tagged like the ones Spring Boot binds, with the {@code cache} and
+ * {@code name} of the cache and the {@code cacheManager} bean name, as Prometheus needs all the meters of a name to
+ * have the same tags; the tier and load metrics of the cache get the same tags. Only the caches created by this
+ * manager are listed by {@link #getCacheNames()}, and so bound by Spring Boot: the other Hazelcast maps, such as the
+ * Hibernate second-level cache regions, get no cache metrics.
+ * <p>
+ * The loads of missing entries are coordinated per cache, see {@link CacheLoadCoordinator} and
+ * {@code application.cache.load}.
+ */
+public class TwoTierCacheManager implements CacheManager, AutoCloseable {
+
+    public static final String INVALIDATIONS_TOPIC = "spring-cache-invalidations";
+
+    /**
+     * Name of the cache manager bean, used as the {@code cacheManager} tag of the cache metrics.
+     */
+    public static final String CACHE_MANAGER_NAME = "cacheManager";
+
+    /**
+     * Maximum number of loads remembered for the early refreshes of a cache.
+     */
+    private static final long MAX_LOAD_STAMPS = 10000;
+
+    private final Logger log = LoggerFactory.getLogger(TwoTierCacheManager.class);
+
+    private final CacheManager remoteCacheManager;
+
+    private final ApplicationProperties.Cache properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final ITopic<CacheInvalidation> invalidations;
+
+    /**
+     * Id of this cache manager in the invalidation messages, so that it ignores its own ones.
+     */
+    private final String origin = UUID.randomUUID().toString();
+
+    private final ConcurrentMap<String, TwoTierCache> caches = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, TwoTierCacheMetrics> metrics = new ConcurrentHashMap<>();
+
+    public TwoTierCacheManager(CacheManager remoteCacheManager, HazelcastInstance hazelcastInstance,
+                               ApplicationProperties.Cache properties, MeterRegistry meterRegistry) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.hazelcastInstance = hazelcastInstance;
+        this.invalidations = hazelcastInstance.getTopic(INVALIDATIONS_TOPIC);
+        this.invalidations.addMessageListener(this::onInvalidation);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * Remove the listeners of the cache metrics from the Hazelcast maps.
+     */
+    @Override
+    public void close() {
+        metrics.values().forEach(TwoTierCacheMetrics::close);
+        metrics.clear();
+    }
+
+    private TwoTierCache createCache(String name) {
+        Cache remoteCache = remoteCacheManager.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        Tags tags = Tags.of("cache", name, "name", name, "cacheManager", CACHE_MANAGER_NAME);
+        TwoTierCache cache = new TwoTierCache(name, remoteCache, createLocalCache(name), this,
+            createLoadCoordinator(name, remoteCache, tags), meterRegistry, tags);
+        if (remoteCache.getNativeCache() instanceof IMap) {
+            TwoTierCacheMetrics cacheMetrics = new TwoTierCacheMetrics(cache, (IMap<?, ?>) remoteCache.getNativeCache(), tags);
+            cacheMetrics.bindTo(meterRegistry);
+            metrics.put(name, cacheMetrics);
+        }
+        return cache;
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<Object, Object> createLocalCache(String name) {
+        ApplicationProperties.Cache.Local local = properties.getLocal();
+        if (!local.isEnabled()) {
+            return null;
+        }
+        ApplicationProperties.Cache.CacheSpec spec = properties.getCaches().get(name);
+        long maxSize = spec != null && spec.getLocalMaxSize() != null ? spec.getLocalMaxSize() : local.getMaxSize();
+        long timeToLiveSeconds = spec != null && spec.getLocalTimeToLiveSeconds() != null ?
+            spec.getLocalTimeToLiveSeconds() : local.getTimeToLiveSeconds();
+        if (maxSize <= 0 || timeToLiveSeconds <= 0) {
+            log.debug("Local cache disabled for cache {}", name);
+            return null;
+        }
+        log.debug("Creating local cache for cache {} with max. size {} and time-to-live {} s", name, maxSize, timeToLiveSeconds);
+        return Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+            .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private CacheLoadCoordinator createLoadCoordinator(String name, Cache remoteCache, Tags tags) {
+        ApplicationProperties.Cache.Load load = properties.getLoad();
+        ApplicationProperties.Cache.CacheSpec spec = properties.getCaches().get(name);
+        boolean clusterLock = spec != null && spec.getClusterLock() != null ? spec.getClusterLock() : load.isClusterLock();
+        double earlyRefreshBeta = spec != null && spec.getEarlyRefreshBeta() != null ?
+            spec.getEarlyRefreshBeta() : load.getEarlyRefreshBeta();
+        CacheLoadCoordinator.Settings settings = new CacheLoadCoordinator.Settings(load.getLockTimeoutSeconds(),
+            load.getLockLeaseSeconds(), earlyRefreshBeta);
+        IMap<Object, Object> map = remoteCache.getNativeCache() instanceof IMap ? (IMap<Object, Object>) remoteCache.getNativeCache() : null;
+        if (clusterLock && map == null) {
+            log.warn("Cache {} is not backed by a Hazelcast map, its loads cannot be locked cluster-wide", name);
+        }
+        long timeToLiveSeconds = map != null ? hazelcastInstance.getConfig().findMapConfig(name).getTimeToLiveSeconds() : 0;
+        return new CacheLoadCoordinator(name, settings, clusterLock ? map : null, timeToLiveSeconds, MAX_LOAD_STAMPS,
+            meterRegistry, tags);
+    }
+
+    /**
+     * Tell the other nodes that an entry changed.
+     *
+     * @param cacheName the name of the cache.
+     * @param key the key of the entry; or {@code null} if the cache was cleared.
+     */
+    void publishInvalidation(String cacheName, Object key) {
+        invalidations.publish(new CacheInvalidation(origin, cacheName, key));
+    }
+
+    private void onInvalidation(Message<CacheInvalidation> message) {
+        CacheInvalidation invalidation = message.getMessageObject();
+        if (origin.equals(invalidation.getOrigin())) {
+            return;
+        }
+        TwoTierCache cache = caches.get(invalidation.getCacheName());
+        if (cache != null) {
+            log.trace("Received {}", invalidation);
+            cache.invalidateLocal(invalidation.getKey());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.diaspora.config.cache;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Binds the standard {@code cache.*} metrics of a {@link TwoTierCache} backed by a Hazelcast map.
+ * <p>
+ * Gets, hits and misses are counted by the cache, as seen by its callers, whichever tier answered.
+ * Puts, entries and memory costs come from the statistics of the map entries owned or backed up by this member,
+ * and evictions and expirations from a local listener on the map, so each member reports its own share. The listener
+ * is removed when the metrics are closed.
+ */
+public class TwoTierCacheMetrics extends CacheMeterBinder implements AutoCloseable {
+
+    private final TwoTierCache cache;
+
+    private final IMap<?, ?> map;
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final String listenerId;
+
+    public TwoTierCacheMetrics(TwoTierCache cache, IMap<?, ?> map, Iterable<Tag> tags) {
+        super(cache, cache.getName(), tags);
+        this.cache = cache;
+        this.map = map;
+        this.listenerId = map.addLocalEntryListener(new EvictionListener());
+    }
+
+    @Override
+    public void close() {
+        map.removeEntryListener(listenerId);
+    }
+
+    @Override
+    protected Long size() {
+        return map.getLocalMapStats().getOwnedEntryCount();
+    }
+
+    @Override
+    protected long hitCount() {
+        return cache.hitCount();
+    }
+
+    @Override
+    protected Long missCount() {
+        return cache.missCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    protected long putCount() {
+        return map.getLocalMapStats().getPutOperationCount();
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        Gauge.builder("cache.entries", map, m -> m.getLocalMapStats().getOwnedEntryCount())
+            .tags(getTagsWithCacheName())
+            .tag("ownership", "owned")
+            .description("The number of owned entries held by this member")
+            .register(registry);
+        Gauge.builder("cache.entries", map, m -> m.getLocalMapStats().getBackupEntryCount())
+            .tags(getTagsWithCacheName())
+            .tag("ownership", "backup")
+            .description("The number of backup entries held by this member")
+            .register(registry);
+        Gauge.builder("cache.entry.memory", map, m -> m.getLocalMapStats().getOwnedEntryMemoryCost())
+            .tags(getTagsWithCacheName())
+            .tag("ownership", "owned")
+            .description("Memory cost of the owned entries held by this member")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("cache.entry.memory", map, m -> m.getLocalMapStats().getBackupEntryMemoryCost())
+            .tags(getTagsWithCacheName())
+            .tag("ownership", "backup")
+            .description("Memory cost of the backup entries held by this member")
+            .baseUnit("bytes")
+            .register(registry);
+        FunctionCounter.builder("cache.expirations", expirations, LongAdder::sum)
+            .tags(getTagsWithCacheName())
+            .description("The number of entries removed from the cache because their time-to-live or max-idle elapsed")
+            .register(registry);
+    }
+
+    private class EvictionListener implements EntryEvictedListener<Object, Object>, EntryExpiredListener<Object, Object> {
+
+        @Override
+        public void entryEvicted(EntryEvent<Object, Object> event) {
+            evictions.increment();
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<Object, Object> event) {
+            expirations.increment();
+        }
+    }
+}
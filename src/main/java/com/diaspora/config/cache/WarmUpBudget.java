@@ -0,0 +1,82 @@
+package com.diaspora.config.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time and memory budget of a {@link CacheWarmer}, shared with the other warmers for the deadline and the heap,
+ * and counting the entries loaded in its own cache.
+ */
+public class WarmUpBudget {
+
+    private final Limits limits;
+
+    private final long maxEntries;
+
+    private final AtomicLong loaded = new AtomicLong();
+
+    WarmUpBudget(Limits limits, long maxEntries) {
+        this.limits = limits;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the number of entries the warmer may still load in its cache; 0 once the budget is exhausted.
+     */
+    public long remainingEntries() {
+        if (limits.isExhausted()) {
+            return 0;
+        }
+        return Math.max(0, maxEntries - loaded.get());
+    }
+
+    /**
+     * Charge entries loaded in the cache.
+     *
+     * @param count the number of entries.
+     */
+    public void loaded(long count) {
+        loaded.addAndGet(count);
+    }
+
+    public long getLoaded() {
+        return loaded.get();
+    }
+
+    /**
+     * Limits shared by all the warmers of a warm-up.
+     */
+    static class Limits {
+
+        private final long deadlineNanos;
+
+        private final double maxHeapUsage;
+
+        private final Runtime runtime = Runtime.getRuntime();
+
+        private volatile String exhaustedReason;
+
+        Limits(long timeoutNanos, double maxHeapUsage) {
+            this.deadlineNanos = System.nanoTime() + timeoutNanos;
+            this.maxHeapUsage = maxHeapUsage;
+        }
+
+        boolean isExhausted() {
+            if (exhaustedReason != null) {
+                return true;
+            }
+            if (System.nanoTime() - deadlineNanos > 0) {
+                exhaustedReason = "timeout";
+            } else if ((double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory() > maxHeapUsage) {
+                exhaustedReason = "heap usage";
+            }
+            return exhaustedReason != null;
+        }
+
+        /**
+         * @return why the warm-up stopped early; or {@code null} if it did not.
+         */
+        String getExhaustedReason() {
+            return exhaustedReason;
+        }
+    }
+}
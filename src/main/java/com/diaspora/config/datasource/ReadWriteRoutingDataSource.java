@@ -0,0 +1,222 @@
+package com.diaspora.config.datasource;
+
+import com.diaspora.security.SecurityUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data source serving the read-only transactions from the read replicas, and everything else from the primary.
+ * <p>
+ * The connection of a transaction is taken when the transaction starts, before Spring marks it read-only: this data
+ * source is wrapped in a {@link LazyConnectionDataSourceProxy}, see {@link #lazy()}, so that the connection is only
+ * taken at the first statement, once the transaction is known to be read-only. The connections taken outside of a
+ * transaction, such as those of the audit writer, are primary connections.
+ * <p>
+ * A read-only transaction is served by the primary instead:
+ * <ul>
+ * <li>if the current user had a read-write transaction in the sticky window, so that the user reads its own writes;</li>
+ * <li>if no replica is healthy, see {@link ReplicaLagMonitor}.</li>
+ * </ul>
+ * The healthy replicas are used in turn. The users' last writes are only known to the node which served them.
+ * <p>
+ * The connections taken from each pool are counted by the {@code datasource.connections.routed} counter, by pool.
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final long stickyWindowNanos;
+
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter primaryConnections;
+
+    /**
+     * @param primary the primary.
+     * @param primaryPoolName the name of the pool of the primary, for the metrics.
+     * @param replicas the replicas, left out until checked.
+     * @param stickyWindowMs the time after a read-write transaction of a user during which the user's read-only
+     * transactions are served by the primary.
+     * @param meterRegistry the registry of the routing metrics.
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, String primaryPoolName, List<Replica> replicas,
+                                      long stickyWindowMs, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.stickyWindowNanos = TimeUnit.MILLISECONDS.toNanos(stickyWindowMs);
+        this.primaryConnections = routedCounter(meterRegistry, primaryPoolName);
+        for (Replica replica : replicas) {
+            replica.connections = routedCounter(meterRegistry, replica.getName());
+        }
+    }
+
+    private static Counter routedCounter(MeterRegistry meterRegistry, String pool) {
+        return Counter.builder("datasource.connections.routed")
+            .description("Connections taken from each pool by the read/write routing")
+            .tag("pool", pool)
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return this data source, taking its connections at their first statement.
+     */
+    public DataSource lazy() {
+        return new LazyConnectionDataSourceProxy(this);
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return target().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return target().getConnection(username, password);
+    }
+
+    private DataSource target() {
+        Replica replica = route();
+        if (replica == null) {
+            primaryConnections.increment();
+            return primary;
+        }
+        replica.connections.increment();
+        return replica.getDataSource();
+    }
+
+    /**
+     * @return the replica serving the current connection, {@code null} for the primary.
+     */
+    private Replica route() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return null;
+        }
+        Optional<String> user = SecurityUtils.getCurrentUserLogin();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            user.ifPresent(login -> lastWrites.put(login, System.nanoTime()));
+            return null;
+        }
+        if (user.isPresent() && isSticky(user.get(), System.nanoTime())) {
+            return null;
+        }
+        int size = replicas.size();
+        int start = next.getAndIncrement();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get(Math.floorMod(start + i, size));
+            if (replica.isHealthy()) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private boolean isSticky(String login, long now) {
+        Long lastWrite = lastWrites.get(login);
+        if (lastWrite == null) {
+            return false;
+        }
+        if (now - lastWrite < stickyWindowNanos) {
+            return true;
+        }
+        lastWrites.remove(login, lastWrite);
+        return false;
+    }
+
+    /**
+     * Forget the users whose sticky window is over and who did not read since.
+     */
+    void expireLastWrites() {
+        long now = System.nanoTime();
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite >= stickyWindowNanos);
+    }
+
+    /**
+     * Close the pools of the replicas, the primary being closed by its owner.
+     */
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            if (replica.getDataSource() instanceof HikariDataSource) {
+                ((HikariDataSource) replica.getDataSource()).close();
+            }
+        }
+    }
+
+    /**
+     * A read replica, with its health as last checked.
+     */
+    public static class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean healthy;
+
+        private volatile long lagMs = -1;
+
+        private Counter connections;
+
+        /**
+         * @param name the name of the pool of the replica.
+         * @param dataSource the pool.
+         */
+        public Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        public static Replica of(HikariDataSource dataSource) {
+            return new Replica(dataSource.getPoolName(), dataSource);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DataSource getDataSource() {
+            return dataSource;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        /**
+         * @return the replication lag as last measured, {@code -1} if it could not be measured.
+         */
+        public long getLagMs() {
+            return lagMs;
+        }
+
+        void update(boolean healthy, long lagMs) {
+            this.healthy = healthy;
+            this.lagMs = lagMs;
+        }
+    }
+}
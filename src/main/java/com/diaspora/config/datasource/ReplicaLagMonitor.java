@@ -0,0 +1,153 @@
+package com.diaspora.config.datasource;
+
+import com.diaspora.config.datasource.ReadWriteRoutingDataSource.Replica;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the replication lag of the read replicas, and leaves out of the routing those lagging by more than
+ * {@code application.datasource.max-lag-ms}, or which cannot be reached, until they catch up.
+ * <p>
+ * The lag is measured with a heartbeat: the current time is written to the {@value #TABLE} table of the primary,
+ * then read back from each replica, whose lag is the age of the heartbeat it has. So the lag is measured as seen by
+ * the application, whatever the replication, and up to the clock skew between the nodes, which all write the
+ * heartbeat.
+ * <p>
+ * As a health indicator, the monitor reports each replica with its lag: it stays {@code UP} when replicas are left
+ * out, as the primary then serves their reads. The lag of each replica is also the {@code datasource.replica.lag}
+ * gauge, by pool, {@code NaN} when it could not be measured.
+ */
+public class ReplicaLagMonitor implements HealthIndicator {
+
+    static final String TABLE = "jhi_replication_heartbeat";
+
+    private static final String WRITE_HEARTBEAT = "update " + TABLE + " set beat = ? where id = 1";
+
+    private static final String READ_HEARTBEAT = "select beat from " + TABLE + " where id = 1";
+
+    private final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final DataSource primary;
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+
+    private final long maxLagMs;
+
+    private final LongSupplier clock;
+
+    /**
+     * @param primary the primary, where the heartbeat is written.
+     * @param routingDataSource the routing data source of the replicas.
+     * @param maxLagMs the lag over which a replica is left out.
+     * @param meterRegistry the registry of the lag metrics.
+     */
+    public ReplicaLagMonitor(DataSource primary, ReadWriteRoutingDataSource routingDataSource, long maxLagMs,
+                             MeterRegistry meterRegistry) {
+        this(primary, routingDataSource, maxLagMs, meterRegistry, System::currentTimeMillis);
+    }
+
+    ReplicaLagMonitor(DataSource primary, ReadWriteRoutingDataSource routingDataSource, long maxLagMs,
+                      MeterRegistry meterRegistry, LongSupplier clock) {
+        this.primary = primary;
+        this.routingDataSource = routingDataSource;
+        this.maxLagMs = maxLagMs;
+        this.clock = clock;
+        for (Replica replica : routingDataSource.getReplicas()) {
+            Gauge.builder("datasource.replica.lag", replica, r -> r.getLagMs() < 0 ? Double.NaN : r.getLagMs())
+                .description("Replication lag of the replica, in milliseconds")
+                .tag("pool", replica.getName())
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Write the heartbeat, then measure the lag of each replica.
+     * <p>
+     * This is scheduled to get fired every {@code application.datasource.lag-check-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${application.datasource.lag-check-interval-ms:2000}")
+    public void check() {
+        try {
+            writeHeartbeat();
+        } catch (SQLException e) {
+            log.warn("Could not write the replication heartbeat: {}", e.getMessage());
+        }
+        for (Replica replica : routingDataSource.getReplicas()) {
+            long lagMs = -1;
+            try {
+                lagMs = readHeartbeatAge(replica.getDataSource());
+            } catch (SQLException e) {
+                log.debug("Could not read the replication heartbeat of {}", replica.getName(), e);
+            }
+            boolean healthy = lagMs >= 0 && lagMs <= maxLagMs;
+            if (healthy != replica.isHealthy()) {
+                if (healthy) {
+                    log.info("Replica {} caught up, lagging by {} ms: serving reads", replica.getName(), lagMs);
+                } else {
+                    log.warn("Replica {} lagging by {} ms: reads fall back to the primary", replica.getName(),
+                        lagMs < 0 ? "unknown" : lagMs);
+                }
+            }
+            replica.update(healthy, lagMs);
+        }
+        routingDataSource.expireLastWrites();
+    }
+
+    private void writeHeartbeat() throws SQLException {
+        try (Connection connection = primary.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(WRITE_HEARTBEAT)) {
+                statement.setLong(1, clock.getAsLong());
+                statement.executeUpdate();
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+    }
+
+    /**
+     * @return the age of the heartbeat of the replica, in milliseconds.
+     */
+    private long readHeartbeatAge(DataSource replica) throws SQLException {
+        try (Connection connection = replica.getConnection();
+             PreparedStatement statement = connection.prepareStatement(READ_HEARTBEAT);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("No replication heartbeat");
+            }
+            return Math.max(0, clock.getAsLong() - resultSet.getLong(1));
+        }
+    }
+
+    @Override
+    public Health health() {
+        Map<String, Object> replicas = new LinkedHashMap<>();
+        boolean anyHealthy = false;
+        for (Replica replica : routingDataSource.getReplicas()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("status", replica.isHealthy() ? "UP" : "DOWN");
+            details.put("lagMs", replica.getLagMs());
+            replicas.put(replica.getName(), details);
+            anyHealthy |= replica.isHealthy();
+        }
+        return Health.up()
+            .withDetail("maxLagMs", maxLagMs)
+            .withDetail("readsFromPrimary", !anyHealthy)
+            .withDetail("replicas", replicas)
+            .build();
+    }
+}
@@ -0,0 +1,71 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.domain.AbstractAuditingEntity;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.io.IOException;
+
+/**
+ * Base Hazelcast serializer of the entities extending {@link AbstractAuditingEntity}: writes the auditing fields,
+ * then lets the subclass write the fields of the entity.
+ * <p>
+ * Every payload starts with a format version, so that a subclass adding a field can still read what older nodes
+ * wrote, during a rolling upgrade or from a backup.
+ *
+ * @param <T> the type of the entity.
+ */
+public abstract class AbstractAuditingEntitySerializer<T extends AbstractAuditingEntity> implements StreamSerializer<T> {
+
+    @Override
+    public void write(ObjectDataOutput out, T entity) throws IOException {
+        out.writeByte(getVersion());
+        out.writeUTF(entity.getCreatedBy());
+        SerializationUtils.writeInstant(out, entity.getCreatedDate());
+        out.writeUTF(entity.getLastModifiedBy());
+        SerializationUtils.writeInstant(out, entity.getLastModifiedDate());
+        writeEntity(out, entity);
+    }
+
+    @Override
+    public T read(ObjectDataInput in) throws IOException {
+        int version = in.readByte();
+        if (version > getVersion()) {
+            throw new IOException("Cannot read version " + version + " of " + getClass().getSimpleName() +
+                ", this node only knows up to version " + getVersion());
+        }
+        T entity = newEntity();
+        entity.setCreatedBy(in.readUTF());
+        entity.setCreatedDate(SerializationUtils.readInstant(in));
+        entity.setLastModifiedBy(in.readUTF());
+        entity.setLastModifiedDate(SerializationUtils.readInstant(in));
+        readEntity(in, entity, version);
+        return entity;
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * @return the current format version, to increase whenever {@link #writeEntity} changes.
+     */
+    protected int getVersion() {
+        return 1;
+    }
+
+    protected abstract T newEntity();
+
+    /**
+     * Write the fields of the entity, other than the auditing ones.
+     */
+    protected abstract void writeEntity(ObjectDataOutput out, T entity) throws IOException;
+
+    /**
+     * Read the fields of the entity, other than the auditing ones.
+     *
+     * @param version the format version the entity was written with.
+     */
+    protected abstract void readEntity(ObjectDataInput in, T entity, int version) throws IOException;
+}
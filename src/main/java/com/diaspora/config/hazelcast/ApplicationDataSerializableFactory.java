@@ -0,0 +1,25 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.config.cache.CacheInvalidation;
+import com.diaspora.security.oauth2.RevokedToken;
+import com.hazelcast.nio.serialization.DataSerializableFactory;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+
+/**
+ * Creates the application's {@link IdentifiedDataSerializable} objects when Hazelcast reads them,
+ * without the reflection and class name lookups of Java serialization.
+ */
+public class ApplicationDataSerializableFactory implements DataSerializableFactory {
+
+    @Override
+    public IdentifiedDataSerializable create(int typeId) {
+        switch (typeId) {
+            case SerializationIds.REVOKED_TOKEN:
+                return new RevokedToken();
+            case SerializationIds.CACHE_INVALIDATION:
+                return new CacheInvalidation();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.diaspora.config.hazelcast;
+
+import com.hazelcast.config.properties.PropertyDefinition;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.nio.Address;
+import com.hazelcast.spi.discovery.AbstractDiscoveryStrategy;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.discovery.DiscoveryStrategy;
+import com.hazelcast.spi.discovery.DiscoveryStrategyFactory;
+import com.hazelcast.spi.discovery.SimpleDiscoveryNode;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Hazelcast discovery strategy listing the cluster members from the Spring Cloud {@link DiscoveryClient}, i.e. from
+ * the Eureka registry.
+ * <p>
+ * Unlike a TCP-IP member list, built once at startup, the registry is read each time Hazelcast looks for members:
+ * when the node joins, and on each split-brain merge check, see {@code hazelcast.merge.next.run.delay.seconds}.
+ * A node started later, or a cluster formed apart from this one because its nodes started at the same time,
+ * is found at the next check and merged into a single cluster, over which the partitions are then migrated.
+ */
+public class DiscoveryClientDiscoveryStrategy extends AbstractDiscoveryStrategy {
+
+    private final DiscoveryClient discoveryClient;
+
+    private final String serviceId;
+
+    private final Function<ServiceInstance, InetSocketAddress> memberAddress;
+
+    DiscoveryClientDiscoveryStrategy(ILogger logger, Map<String, Comparable> properties, DiscoveryClient discoveryClient,
+                                     String serviceId, Function<ServiceInstance, InetSocketAddress> memberAddress) {
+        super(logger, properties);
+        this.discoveryClient = discoveryClient;
+        this.serviceId = serviceId;
+        this.memberAddress = memberAddress;
+    }
+
+    @Override
+    public Iterable<DiscoveryNode> discoverNodes() {
+        List<DiscoveryNode> nodes = new ArrayList<>();
+        for (ServiceInstance instance : discoveryClient.getInstances(serviceId)) {
+            InetSocketAddress address = memberAddress.apply(instance);
+            try {
+                nodes.add(new SimpleDiscoveryNode(new Address(address.getHostString(), address.getPort())));
+            } catch (UnknownHostException e) {
+                getLogger().warning("Ignoring the instance " + instance.getInstanceId() + " of " + serviceId +
+                    ", its host cannot be resolved: " + address.getHostString());
+            }
+        }
+        getLogger().finest("Discovered Hazelcast members " + nodes);
+        return nodes;
+    }
+
+    /**
+     * Creates the strategy, which cannot be instantiated by Hazelcast from a class name as it needs the
+     * {@link DiscoveryClient} bean.
+     */
+    public static class Factory implements DiscoveryStrategyFactory {
+
+        private final DiscoveryClient discoveryClient;
+
+        private final String serviceId;
+
+        private final Function<ServiceInstance, InetSocketAddress> memberAddress;
+
+        /**
+         * @param discoveryClient the discovery client.
+         * @param serviceId the id of the service whose instances are the cluster members.
+         * @param memberAddress gives the Hazelcast address of an instance.
+         */
+        public Factory(DiscoveryClient discoveryClient, String serviceId,
+                       Function<ServiceInstance, InetSocketAddress> memberAddress) {
+            this.discoveryClient = discoveryClient;
+            this.serviceId = serviceId;
+            this.memberAddress = memberAddress;
+        }
+
+        @Override
+        public Class<? extends DiscoveryStrategy> getDiscoveryStrategyType() {
+            return DiscoveryClientDiscoveryStrategy.class;
+        }
+
+        @Override
+        public DiscoveryStrategy newDiscoveryStrategy(DiscoveryNode discoveryNode, ILogger logger,
+                                                      Map<String, Comparable> properties) {
+            return new DiscoveryClientDiscoveryStrategy(logger, properties, discoveryClient, serviceId, memberAddress);
+        }
+
+        @Override
+        public Collection<PropertyDefinition> getConfigurationProperties() {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.config.CacheConfiguration;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.flakeidgen.FlakeIdGenerator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerationException;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * Hibernate identifier generator handing out the ids of a Hazelcast {@link FlakeIdGenerator}.
+ * <p>
+ * Each node prefetches blocks of ids from the cluster, so that an id costs no database round trip, unlike
+ * {@code IDENTITY} ids, which Hibernate must insert one row at a time to read back, and which thus disable the JDBC
+ * insert batching of {@code hibernate.jdbc.batch_size}. Ids are unique cluster-wide and roughly ordered by time,
+ * see {@link FlakeIdGenerator}; they fit a {@code bigint} column.
+ * <p>
+ * The generator is declared in the {@code com.diaspora.domain} package as {@link #GENERATOR}: entities use it with
+ * {@code @GeneratedValue(generator = FlakeIdentifierGenerator.GENERATOR)}. The {@value #FLAKE_ID_GENERATOR_PARAMETER}
+ * parameter names the Hazelcast generator, {@value #DEFAULT_FLAKE_ID_GENERATOR} by default.
+ */
+public class FlakeIdentifierGenerator implements IdentifierGenerator, Configurable {
+
+    /**
+     * Name of the Hibernate generator.
+     */
+    public static final String GENERATOR = "flakeIdGenerator";
+
+    public static final String FLAKE_ID_GENERATOR_PARAMETER = "flake_id_generator";
+
+    public static final String DEFAULT_FLAKE_ID_GENERATOR = "entity-ids";
+
+    private String flakeIdGeneratorName;
+
+    private volatile FlakeIdGenerator flakeIdGenerator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) {
+        flakeIdGeneratorName = ConfigurationHelper.getString(FLAKE_ID_GENERATOR_PARAMETER, params, DEFAULT_FLAKE_ID_GENERATOR);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        return getFlakeIdGenerator().newId();
+    }
+
+    /**
+     * The Hazelcast instance is looked up on first use, as it is not a bean Hibernate knows about.
+     */
+    private FlakeIdGenerator getFlakeIdGenerator() {
+        FlakeIdGenerator generator = flakeIdGenerator;
+        if (generator == null) {
+            HazelcastInstance hazelcastInstance = Hazelcast.getHazelcastInstanceByName(CacheConfiguration.HAZELCAST_INSTANCE_NAME);
+            if (hazelcastInstance == null) {
+                throw new IdentifierGenerationException("Hazelcast instance " + CacheConfiguration.HAZELCAST_INSTANCE_NAME +
+                    " is not running, no id can be generated");
+            }
+            generator = hazelcastInstance.getFlakeIdGenerator(flakeIdGeneratorName);
+            flakeIdGenerator = generator;
+        }
+        return generator;
+    }
+}
@@ -0,0 +1,152 @@
+package com.diaspora.config.hazelcast;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MembershipAdapter;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MigrationEvent;
+import com.hazelcast.core.MigrationListener;
+import com.hazelcast.core.PartitionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Size and partition migration metrics of the Hazelcast cluster.
+ * <p>
+ * {@code hazelcast.cluster.members} and {@code hazelcast.cluster.instances}, the instances of the service in the
+ * registry, differ while a new instance is being merged into the cluster; {@code hazelcast.partition.migrations} and
+ * {@code hazelcast.partition.migrations.active} then tell how the partitions are rebalanced over the members.
+ * Migration events are published to every member, so each one reports the migrations of the whole cluster.
+ */
+@Component
+public class HazelcastClusterMetrics implements MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(HazelcastClusterMetrics.class);
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final DiscoveryClient discoveryClient;
+
+    private final String serviceId;
+
+    private final Map<Integer, Long> activeMigrations = new ConcurrentHashMap<>();
+
+    public HazelcastClusterMetrics(HazelcastInstance hazelcastInstance, DiscoveryClient discoveryClient,
+                                   ObjectProvider<Registration> registration) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.discoveryClient = discoveryClient;
+        Registration currentRegistration = registration.getIfAvailable();
+        this.serviceId = currentRegistration != null ? currentRegistration.getServiceId() : null;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hazelcast.cluster.members", hazelcastInstance, instance -> instance.getCluster().getMembers().size())
+            .description("Members of the Hazelcast cluster")
+            .register(registry);
+        if (serviceId != null) {
+            Gauge.builder("hazelcast.cluster.instances", this, HazelcastClusterMetrics::registeredInstances)
+                .description("Instances of the service in the registry, which should all be members of the Hazelcast cluster")
+                .register(registry);
+        }
+        PartitionService partitionService = hazelcastInstance.getPartitionService();
+        Gauge.builder("hazelcast.cluster.safe", partitionService, service -> service.isLocalMemberSafe() ? 1 : 0)
+            .description("1 if all the partitions owned by this member have their backups in sync, 0 otherwise")
+            .register(registry);
+        Gauge.builder("hazelcast.partition.migrations.active", activeMigrations, Map::size)
+            .description("Partition migrations in progress in the cluster")
+            .register(registry);
+
+        Counter added = membershipCounter(registry, "added");
+        Counter removed = membershipCounter(registry, "removed");
+        hazelcastInstance.getCluster().addMembershipListener(new MembershipAdapter() {
+            @Override
+            public void memberAdded(MembershipEvent event) {
+                added.increment();
+                log.info("Hazelcast member {} joined, the cluster has {} members", event.getMember(), event.getMembers().size());
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                removed.increment();
+                log.info("Hazelcast member {} left, the cluster has {} members", event.getMember(), event.getMembers().size());
+            }
+        });
+
+        Timer completed = migrationTimer(registry, "completed");
+        Timer failed = migrationTimer(registry, "failed");
+        partitionService.addMigrationListener(new MigrationListener() {
+            @Override
+            public void migrationStarted(MigrationEvent event) {
+                activeMigrations.put(event.getPartitionId(), System.nanoTime());
+            }
+
+            @Override
+            public void migrationCompleted(MigrationEvent event) {
+                recordMigration(event, completed);
+            }
+
+            @Override
+            public void migrationFailed(MigrationEvent event) {
+                log.warn("Migration of Hazelcast partition {} from {} to {} failed", event.getPartitionId(),
+                    event.getOldOwner(), event.getNewOwner());
+                recordMigration(event, failed);
+            }
+        });
+    }
+
+    /**
+     * Log the instances of the service which are not yet members of the cluster, on each refresh of the registry.
+     * They are merged into the cluster on the next merge check, see {@code application.cache.cluster.merge-delay-seconds}.
+     */
+    @EventListener(HeartbeatEvent.class)
+    public void onRegistryRefresh() {
+        if (serviceId == null) {
+            return;
+        }
+        int instances = registeredInstances();
+        int members = hazelcastInstance.getCluster().getMembers().size();
+        if (instances > members) {
+            log.info("{} instances of {} are registered, but the Hazelcast cluster has {} members", instances, serviceId, members);
+        }
+    }
+
+    private int registeredInstances() {
+        return discoveryClient.getInstances(serviceId).size();
+    }
+
+    private void recordMigration(MigrationEvent event, Timer timer) {
+        Long start = activeMigrations.remove(event.getPartitionId());
+        if (start != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Counter membershipCounter(MeterRegistry registry, String type) {
+        return Counter.builder("hazelcast.cluster.membership.changes")
+            .description("Members which joined or left the Hazelcast cluster")
+            .tag("type", type)
+            .register(registry);
+    }
+
+    private static Timer migrationTimer(MeterRegistry registry, String result) {
+        return Timer.builder("hazelcast.partition.migrations")
+            .description("Partition migrations of the Hazelcast cluster, by result")
+            .tag("result", result)
+            .register(registry);
+    }
+}
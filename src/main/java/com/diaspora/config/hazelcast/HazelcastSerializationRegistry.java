@@ -0,0 +1,51 @@
+package com.diaspora.config.hazelcast;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.serialization.DataSerializableFactory;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hazelcast serializations of the application types, so that they do not fall back to Java serialization
+ * when they are stored in the maps, backed up, migrated between nodes or published on a topic.
+ * <p>
+ * Types owned by the application implement {@link com.hazelcast.nio.serialization.IdentifiedDataSerializable}
+ * and are created by the {@link ApplicationDataSerializableFactory}. JPA entities stored in Hazelcast are serialized
+ * by a {@link StreamSerializer} registered here, to keep the domain free of Hazelcast; entities extending
+ * {@link com.diaspora.domain.AbstractAuditingEntity} should get one based on {@link AbstractAuditingEntitySerializer}.
+ * No entity is stored in Hazelcast yet, so there is none registered.
+ */
+public class HazelcastSerializationRegistry {
+
+    private final Map<Integer, DataSerializableFactory> dataSerializableFactories = new LinkedHashMap<>();
+
+    private final Map<Class<?>, StreamSerializer<?>> serializers = new LinkedHashMap<>();
+
+    public HazelcastSerializationRegistry() {
+        dataSerializableFactories.put(SerializationIds.FACTORY_ID, new ApplicationDataSerializableFactory());
+    }
+
+    public Map<Integer, DataSerializableFactory> getDataSerializableFactories() {
+        return Collections.unmodifiableMap(dataSerializableFactories);
+    }
+
+    public Map<Class<?>, StreamSerializer<?>> getSerializers() {
+        return Collections.unmodifiableMap(serializers);
+    }
+
+    /**
+     * Add all the factories and serializers to a Hazelcast serialization config.
+     *
+     * @param serializationConfig the serialization config of the Hazelcast instance.
+     */
+    public void registerWith(SerializationConfig serializationConfig) {
+        serializationConfig.getDataSerializableFactories().putAll(dataSerializableFactories);
+        serializers.forEach((type, serializer) -> serializationConfig.addSerializerConfig(new SerializerConfig()
+            .setTypeClass(type)
+            .setImplementation(serializer)));
+    }
+}
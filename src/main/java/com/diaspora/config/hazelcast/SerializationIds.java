@@ -0,0 +1,24 @@
+package com.diaspora.config.hazelcast;
+
+/**
+ * Ids of the application types with a Hazelcast serialization of their own.
+ * <p>
+ * These ids are part of the cluster wire format and of the backups: never reuse or renumber them,
+ * only add new ones.
+ */
+public final class SerializationIds {
+
+    /**
+     * Id of the {@link ApplicationDataSerializableFactory}.
+     */
+    public static final int FACTORY_ID = 1;
+
+    public static final int REVOKED_TOKEN = 1;
+
+    public static final int CACHE_INVALIDATION = 2;
+
+    // 1001 was the type id of the stream serializer of the audit events, which are not stored in Hazelcast anymore
+
+    private SerializationIds() {
+    }
+}
@@ -0,0 +1,36 @@
+package com.diaspora.config.hazelcast;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Compact encodings of the field types shared by the application serializers.
+ * Strings are written with {@link ObjectDataOutput#writeUTF}, which supports {@code null}.
+ */
+public final class SerializationUtils {
+
+    private SerializationUtils() {
+    }
+
+    /**
+     * Write an instant without losing its nanoseconds; a negative nanosecond field stands for {@code null}.
+     */
+    public static void writeInstant(ObjectDataOutput out, Instant instant) throws IOException {
+        if (instant == null) {
+            out.writeLong(0);
+            out.writeInt(-1);
+        } else {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    public static Instant readInstant(ObjectDataInput in) throws IOException {
+        long epochSecond = in.readLong();
+        int nano = in.readInt();
+        return nano < 0 ? null : Instant.ofEpochSecond(epochSecond, nano);
+    }
+}
@@ -1,85 +1,129 @@
 package com.diaspora.config.oauth2;
 
-import com.diaspora.security.oauth2.OAuth2SignatureVerifierClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.diaspora.security.oauth2.AuthoritySetOAuth2Authentication;
+import com.diaspora.security.oauth2.SignatureVerifierRegistry;
+import com.diaspora.security.oauth2.TokenRevocationStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
 import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 import java.util.Map;
 
 /**
- * Improved {@link JwtAccessTokenConverter} that can handle lazy fetching of public verifier keys.
+ * Improved {@link JwtAccessTokenConverter} that verifies tokens with the public key named by their {@code kid} header.
+ * <p>
+ * Public keys are held by a {@link SignatureVerifierRegistry}, which refreshes them in the background.
+ * Tokens whose signature has already been verified are kept in a {@link VerifiedTokenCache},
+ * so repeated requests with the same bearer token skip the RSA verification.
+ * Tokens revoked in the {@link TokenRevocationStore} are rejected, even if they were already cached.
  */
 public class OAuth2JwtAccessTokenConverter extends JwtAccessTokenConverter {
-    private final Logger log = LoggerFactory.getLogger(OAuth2JwtAccessTokenConverter.class);
+    private static final String KEY_ID_HEADER = "kid";
 
-    private final OAuth2Properties oAuth2Properties;
-    private final OAuth2SignatureVerifierClient signatureVerifierClient;
-    /**
-     * When did we last fetch the public key?
-     */
-    private long lastKeyFetchTimestamp;
+    private final SignatureVerifierRegistry verifierRegistry;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final JsonParser jsonParser = JsonParserFactory.create();
+
+    public OAuth2JwtAccessTokenConverter(OAuth2Properties oAuth2Properties, SignatureVerifierRegistry verifierRegistry) {
+        this(oAuth2Properties, verifierRegistry, null, null);
+    }
 
-    public OAuth2JwtAccessTokenConverter(OAuth2Properties oAuth2Properties, OAuth2SignatureVerifierClient signatureVerifierClient) {
-        this.oAuth2Properties = oAuth2Properties;
-        this.signatureVerifierClient = signatureVerifierClient;
-        tryCreateSignatureVerifier();
+    public OAuth2JwtAccessTokenConverter(OAuth2Properties oAuth2Properties, SignatureVerifierRegistry verifierRegistry,
+                                         TokenRevocationStore tokenRevocationStore, MeterRegistry meterRegistry) {
+        this.verifierRegistry = verifierRegistry;
+        this.tokenRevocationStore = oAuth2Properties.getTokenRevocation().isEnabled() ? tokenRevocationStore : null;
+        if (oAuth2Properties.getTokenCache().isEnabled()) {
+            this.verifiedTokenCache = new VerifiedTokenCache(oAuth2Properties.getTokenCache(), meterRegistry);
+            verifierRegistry.addKeyChangeListener(verifiedTokenCache::invalidateAll);
+        } else {
+            this.verifiedTokenCache = null;
+        }
     }
 
     /**
-     * Try to decode the token with the current public key.
-     * If it fails, contact the OAuth2 server to get a new public key, then try again.
-     * We might not have fetched it in the first place or it might have changed.
+     * Try to decode the token with the public key named by its {@code kid} header.
+     * If it fails, contact the OAuth2 server to get new public keys, then try again.
+     * We might not have fetched them in the first place or they might have changed.
+     * <p>
+     * Expired keys are refreshed in the background and stay in use until the new ones are installed,
+     * so that requests are not blocked by the OAuth2 server.
+     * Tokens that were already verified with the current keys are served from the {@link VerifiedTokenCache}.
      *
      * @param token the JWT token to decode.
      * @return the resulting claims.
-     * @throws InvalidTokenException if we cannot decode the token.
+     * @throws InvalidTokenException if we cannot decode the token, or if it was revoked.
      */
     @Override
     protected Map<String, Object> decode(String token) {
+        //check if our public keys and thus SignatureVerifiers have expired
+        if (verifierRegistry.isExpired()) {
+            verifierRegistry.refreshInBackground();
+        }
+        Map<String, Object> claims;
         try {
-            //check if our public key and thus SignatureVerifier have expired
-            long ttl = oAuth2Properties.getSignatureVerification().getTtl();
-            if (ttl > 0 && System.currentTimeMillis() - lastKeyFetchTimestamp > ttl) {
-                throw new InvalidTokenException("public key expired");
-            }
-            return super.decode(token);
+            claims = verifyAndCache(token);
         } catch (InvalidTokenException ex) {
-            if (tryCreateSignatureVerifier()) {
-                return super.decode(token);
+            if (!verifierRegistry.tryRefresh()) {
+                throw ex;
             }
-            throw ex;
+            claims = verifyAndCache(token);
+        }
+        Object jti = claims.get(JTI);
+        if (tokenRevocationStore != null && jti instanceof String && tokenRevocationStore.isRevoked((String) jti)) {
+            throw new InvalidTokenException("Access token has been revoked");
         }
+        return claims;
+    }
+
+    private Map<String, Object> verifyAndCache(String token) {
+        if (verifiedTokenCache == null) {
+            return verify(token);
+        }
+        Map<String, Object> claims = verifiedTokenCache.get(token);
+        if (claims == null) {
+            claims = verify(token);
+            verifiedTokenCache.put(token, claims);
+        }
+        return claims;
     }
 
     /**
-     * Fetch a new public key from the AuthorizationServer.
-     *
-     * @return true, if we could fetch it; false, if we could not.
+     * Verify the token signature with the key named by its {@code kid} header, then parse its claims.
      */
-    private boolean tryCreateSignatureVerifier() {
-        long t = System.currentTimeMillis();
-        if (t - lastKeyFetchTimestamp < oAuth2Properties.getSignatureVerification().getPublicKeyRefreshRateLimit()) {
-            return false;
+    private Map<String, Object> verify(String token) {
+        SignatureVerifier verifier;
+        try {
+            verifier = verifierRegistry.getVerifier(JwtHelper.headers(token).get(KEY_ID_HEADER));
+        } catch (RuntimeException e) {
+            throw new InvalidTokenException("Cannot read access token headers", e);
+        }
+        if (verifier == null) {
+            throw new InvalidTokenException("no public key available to verify the access token");
         }
         try {
-            SignatureVerifier verifier = signatureVerifierClient.getSignatureVerifier();
-            if (verifier != null) {
-                setVerifier(verifier);
-                lastKeyFetchTimestamp = t;
-                log.debug("Public key retrieved from OAuth2 server to create SignatureVerifier");
-                return true;
+            Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+            Map<String, Object> claims = jsonParser.parseMap(jwt.getClaims());
+            if (claims.get(EXP) instanceof Integer) {
+                claims.put(EXP, ((Integer) claims.get(EXP)).longValue());
             }
-        } catch (Throwable ex) {
-            log.error("could not get public key from OAuth2 server to create SignatureVerifier", ex);
+            getJwtClaimsSetVerifier().verify(claims);
+            return claims;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
         }
-        return false;
     }
+
     /**
      * Extract JWT claims and set it to OAuth2Authentication decoded details.
+     * The returned authentication carries a precomputed {@link com.diaspora.security.AuthoritySet},
+     * so that {@link com.diaspora.security.SecurityUtils} role checks do not iterate over its authorities.
      * Here is how to get details:
      *
      * <pre>
@@ -102,7 +146,7 @@ public class OAuth2JwtAccessTokenConverter extends JwtAccessTokenConverter {
      */
     @Override
     public OAuth2Authentication extractAuthentication(Map<String, ?> claims) {
-        OAuth2Authentication authentication = super.extractAuthentication(claims);
+        OAuth2Authentication authentication = new AuthoritySetOAuth2Authentication(super.extractAuthentication(claims));
         authentication.setDetails(claims);
         return authentication;
     }
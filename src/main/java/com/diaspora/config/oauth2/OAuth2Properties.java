@@ -13,6 +13,12 @@ public class OAuth2Properties {
 
     private SignatureVerification signatureVerification = new SignatureVerification();
 
+    private TokenCache tokenCache = new TokenCache();
+
+    private ClientCredentials clientCredentials = new ClientCredentials();
+
+    private TokenRevocation tokenRevocation = new TokenRevocation();
+
     public WebClientConfiguration getWebClientConfiguration() {
         return webClientConfiguration;
     }
@@ -21,6 +27,18 @@ public class OAuth2Properties {
         return signatureVerification;
     }
 
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    public ClientCredentials getClientCredentials() {
+        return clientCredentials;
+    }
+
+    public TokenRevocation getTokenRevocation() {
+        return tokenRevocation;
+    }
+
     public static class WebClientConfiguration {
         private String clientId = "web_app";
         private String secret = "changeit";
@@ -86,10 +104,20 @@ public class OAuth2Properties {
          * That way, we make sure that we get the newest keys always in case they are updated there.
          */
         private long ttl = 24 * 60 * 60 * 1000L;
+        /**
+         * Maximum time in ms a request waits for new public keys when its token cannot be verified with the current ones.
+         * Requests whose token can be verified never wait: they keep using the current keys while new ones are fetched.
+         */
+        private long refreshWaitTimeout = 5 * 1000L;
         /**
          * Endpoint where to retrieve the public key used to verify token signatures.
          */
         private String publicKeyEndpointUri = "http://uaa/oauth/token_key";
+        /**
+         * Optional JWK set endpoint exposing every active public key by {@code kid}.
+         * If set, it is used instead of the single public key endpoint.
+         */
+        private String jwkSetUri;
 
         public long getPublicKeyRefreshRateLimit() {
             return publicKeyRefreshRateLimit;
@@ -107,6 +135,14 @@ public class OAuth2Properties {
             this.ttl = ttl;
         }
 
+        public long getRefreshWaitTimeout() {
+            return refreshWaitTimeout;
+        }
+
+        public void setRefreshWaitTimeout(long refreshWaitTimeout) {
+            this.refreshWaitTimeout = refreshWaitTimeout;
+        }
+
         public String getPublicKeyEndpointUri() {
             return publicKeyEndpointUri;
         }
@@ -114,5 +150,185 @@ public class OAuth2Properties {
         public void setPublicKeyEndpointUri(String publicKeyEndpointUri) {
             this.publicKeyEndpointUri = publicKeyEndpointUri;
         }
+
+        public String getJwkSetUri() {
+            return jwkSetUri;
+        }
+
+        public void setJwkSetUri(String jwkSetUri) {
+            this.jwkSetUri = jwkSetUri;
+        }
+    }
+
+    public static class TokenCache {
+        /**
+         * Whether tokens whose signature has already been verified are cached,
+         * so that the same bearer token is not verified again on every request.
+         */
+        private boolean enabled = true;
+        /**
+         * Maximum number of verified tokens kept in memory.
+         */
+        private long maxSize = 10000;
+        /**
+         * Maximum time in ms a verified token stays cached.
+         * Tokens are evicted earlier if their {@code exp} claim is reached first.
+         */
+        private long maxTtl = 5 * 60 * 1000L;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public long getMaxTtl() {
+            return maxTtl;
+        }
+
+        public void setMaxTtl(long maxTtl) {
+            this.maxTtl = maxTtl;
+        }
+    }
+
+    public static class ClientCredentials {
+        /**
+         * Fraction of the token lifetime after which the client-credentials token is refreshed in the background.
+         * Calls keep using the current token until the new one is installed.
+         */
+        private double refreshAheadRatio = 0.75;
+        /**
+         * Minimum time in ms between two background refreshes of the client-credentials token,
+         * so that a failing Authorization server is not retried on every outbound call.
+         */
+        private long refreshRateLimit = 1000L;
+        /**
+         * Maximum time in ms an outbound call waits for a client-credentials token when there is no valid one.
+         */
+        private long fetchWaitTimeout = 5 * 1000L;
+        /**
+         * Time in ms before retrying a failed fetch of the client-credentials token, doubled after each failure.
+         */
+        private long retryInitialDelay = 1000L;
+        /**
+         * Maximum time in ms between two retries of a failed fetch of the client-credentials token.
+         */
+        private long retryMaxDelay = 60 * 1000L;
+
+        public double getRefreshAheadRatio() {
+            return refreshAheadRatio;
+        }
+
+        public void setRefreshAheadRatio(double refreshAheadRatio) {
+            this.refreshAheadRatio = refreshAheadRatio;
+        }
+
+        public long getRefreshRateLimit() {
+            return refreshRateLimit;
+        }
+
+        public void setRefreshRateLimit(long refreshRateLimit) {
+            this.refreshRateLimit = refreshRateLimit;
+        }
+
+        public long getFetchWaitTimeout() {
+            return fetchWaitTimeout;
+        }
+
+        public void setFetchWaitTimeout(long fetchWaitTimeout) {
+            this.fetchWaitTimeout = fetchWaitTimeout;
+        }
+
+        public long getRetryInitialDelay() {
+            return retryInitialDelay;
+        }
+
+        public void setRetryInitialDelay(long retryInitialDelay) {
+            this.retryInitialDelay = retryInitialDelay;
+        }
+
+        public long getRetryMaxDelay() {
+            return retryMaxDelay;
+        }
+
+        public void setRetryMaxDelay(long retryMaxDelay) {
+            this.retryMaxDelay = retryMaxDelay;
+        }
+    }
+
+    public static class TokenRevocation {
+        /**
+         * Whether access tokens are checked against the revocation list, by their {@code jti} claim.
+         */
+        private boolean enabled = true;
+        /**
+         * Number of revoked tokens the local Bloom filter is sized for.
+         * The false positive rate degrades beyond that, but revoked tokens are still always rejected.
+         */
+        private int expectedRevocations = 10000;
+        /**
+         * Target false positive probability of the local Bloom filter.
+         * False positives cost a lookup in the distributed revocation list.
+         */
+        private double falsePositiveProbability = 0.001;
+        /**
+         * Interval in ms at which the local Bloom filter is rebuilt from the distributed revocation list,
+         * to drop the revocations of tokens that have since expired.
+         */
+        private long rebuildInterval = 60 * 60 * 1000L;
+        /**
+         * Time in ms a revocation is kept when the expiry time of the token is not given.
+         */
+        private long defaultTtl = 24 * 60 * 60 * 1000L;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getExpectedRevocations() {
+            return expectedRevocations;
+        }
+
+        public void setExpectedRevocations(int expectedRevocations) {
+            this.expectedRevocations = expectedRevocations;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public long getRebuildInterval() {
+            return rebuildInterval;
+        }
+
+        public void setRebuildInterval(long rebuildInterval) {
+            this.rebuildInterval = rebuildInterval;
+        }
+
+        public long getDefaultTtl() {
+            return defaultTtl;
+        }
+
+        public void setDefaultTtl(long defaultTtl) {
+            this.defaultTtl = defaultTtl;
+        }
     }
 }
@@ -0,0 +1,149 @@
+package com.diaspora.config.oauth2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of JWT claims whose signature has already been verified.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the raw token, so the token itself is never kept in memory.
+ * Each entry expires at the token's {@code exp} claim (capped by the configured maximum TTL),
+ * and the whole cache is cleared when the verifier key changes.
+ */
+public class VerifiedTokenCache {
+
+    static final String CACHE_NAME = "oauth2.verifiedTokens";
+
+    private static final String EXP = "exp";
+
+    private final Cache<String, CachedClaims> cache;
+
+    public VerifiedTokenCache(OAuth2Properties.TokenCache properties, MeterRegistry meterRegistry) {
+        long maxTtlNanos = TimeUnit.MILLISECONDS.toNanos(properties.getMaxTtl());
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxSize())
+            .expireAfter(new ClaimsExpiry(maxTtlNanos))
+            .recordStats()
+            .build();
+        if (meterRegistry != null) {
+            // Same tag keys as the Spring caches bound by Spring Boot, as Prometheus requires them to match per meter name
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME, Tags.of("name", CACHE_NAME, "cacheManager", "oauth2"));
+        }
+    }
+
+    /**
+     * Get the verified claims of a token.
+     *
+     * @param token the raw JWT.
+     * @return a mutable copy of the cached claims; or {@code null} if the token is not cached.
+     */
+    public Map<String, Object> get(String token) {
+        CachedClaims cached = cache.getIfPresent(digest(token));
+        if (cached == null) {
+            return null;
+        }
+        if (cached.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return new LinkedHashMap<>(cached.claims);
+    }
+
+    /**
+     * Store the claims of a token whose signature has just been verified.
+     *
+     * @param token the raw JWT.
+     * @param claims the verified claims.
+     */
+    public void put(String token, Map<String, Object> claims) {
+        long expiresAt = expiresAt(claims);
+        if (expiresAt != Long.MAX_VALUE && expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        cache.put(digest(token), new CachedClaims(Collections.unmodifiableMap(new LinkedHashMap<>(claims)), expiresAt));
+    }
+
+    /**
+     * Drop every cached token, typically because the verifier key has changed.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static long expiresAt(Map<String, Object> claims) {
+        Object exp = claims.get(EXP);
+        if (exp instanceof Number) {
+            return TimeUnit.SECONDS.toMillis(((Number) exp).longValue());
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class CachedClaims {
+
+        private final Map<String, Object> claims;
+
+        private final long expiresAt;
+
+        private CachedClaims(Map<String, Object> claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    private static final class ClaimsExpiry implements Expiry<String, CachedClaims> {
+
+        private final long maxTtlNanos;
+
+        private ClaimsExpiry(long maxTtlNanos) {
+            this.maxTtlNanos = maxTtlNanos;
+        }
+
+        @Override
+        public long expireAfterCreate(String key, CachedClaims value, long currentTime) {
+            if (value.expiresAt == Long.MAX_VALUE) {
+                return maxTtlNanos;
+            }
+            long remaining = TimeUnit.MILLISECONDS.toNanos(value.expiresAt - System.currentTimeMillis());
+            return Math.max(0, Math.min(remaining, maxTtlNanos));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedClaims value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedClaims value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
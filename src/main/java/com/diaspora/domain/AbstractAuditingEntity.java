@@ -16,6 +16,9 @@ import javax.persistence.MappedSuperclass;
 /**
  * Base abstract class for entities which will hold definitions for created, last modified by and created,
  * last modified by date.
+ * <p>
+ * Subclasses generate their id with {@code @GeneratedValue(generator = FlakeIdentifierGenerator.GENERATOR)}, so that
+ * their inserts are batched, see {@link com.diaspora.config.hazelcast.FlakeIdentifierGenerator}.
  */
 @MappedSuperclass
 @EntityListeners(AuditingEntityListener.class)
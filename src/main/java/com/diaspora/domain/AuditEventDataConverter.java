@@ -0,0 +1,132 @@
+package com.diaspora.domain;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores the data of a {@link PersistentAuditEvent} in the single {@code event_data} column of its row, so that an
+ * event is read and written as one row, with no collection table to join or to insert into.
+ * <p>
+ * The encoding is length-prefixed binary: a format version byte, the number of entries on two bytes, then each key
+ * and value as written by {@link DataOutputStream#writeUTF}, the value preceded by a flag as it may be {@code null}.
+ * An empty map is stored as {@code null}.
+ */
+@Converter
+public class AuditEventDataConverter implements AttributeConverter<Map<String, String>, byte[]> {
+
+    /**
+     * Should be the same as in Liquibase migration.
+     */
+    public static final int EVENT_DATA_COLUMN_MAX_LENGTH = 4000;
+
+    /**
+     * Length of the encoding of an empty map, before the entries.
+     */
+    public static final int HEADER_LENGTH = 3;
+
+    private static final int FORMAT_VERSION = 1;
+
+    @Override
+    public byte[] convertToDatabaseColumn(Map<String, String> data) {
+        return encode(data);
+    }
+
+    @Override
+    public Map<String, String> convertToEntityAttribute(byte[] column) {
+        return decode(column);
+    }
+
+    /**
+     * @param data the event data.
+     * @return its encoding, or {@code null} if there is no data.
+     */
+    public static byte[] encode(Map<String, String> data) {
+        if (data == null || data.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(encodedLength(data));
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeShort(data.size());
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeBoolean(entry.getValue() != null);
+                if (entry.getValue() != null) {
+                    out.writeUTF(entry.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param column the encoded event data, may be {@code null}.
+     * @return the event data, a mutable map.
+     */
+    public static Map<String, String> decode(byte[] column) {
+        if (column == null || column.length == 0) {
+            return new HashMap<>();
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(column))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unknown audit event data format version " + version);
+            }
+            int size = in.readUnsignedShort();
+            Map<String, String> data = new HashMap<>(Math.max(4, size * 4 / 3 + 1));
+            for (int i = 0; i < size; i++) {
+                String name = in.readUTF();
+                data.put(name, in.readBoolean() ? in.readUTF() : null);
+            }
+            return data;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed audit event data", e);
+        }
+    }
+
+    /**
+     * @param data the event data.
+     * @return the length of its encoding.
+     */
+    public static int encodedLength(Map<String, String> data) {
+        int length = HEADER_LENGTH;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            length += encodedLength(entry.getKey(), entry.getValue());
+        }
+        return length;
+    }
+
+    /**
+     * @param name the key of an entry.
+     * @param value the value of the entry, may be {@code null}.
+     * @return the length of the encoding of the entry.
+     */
+    public static int encodedLength(String name, String value) {
+        return 2 + utfLength(name) + 1 + (value != null ? 2 + utfLength(value) : 0);
+    }
+
+    private static int utfLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if (c <= 0x07FF) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
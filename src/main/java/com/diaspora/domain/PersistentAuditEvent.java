@@ -1,5 +1,7 @@
 package com.diaspora.domain;
 
+import com.diaspora.config.hazelcast.FlakeIdentifierGenerator;
+
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.io.Serializable;
@@ -10,6 +12,10 @@ import java.util.Map;
 /**
  * Persist AuditEvent managed by the Spring Boot actuator.
  *
+ * <p>
+ * Audit events are written once and rarely read again, so they are not kept in the second-level cache. Their data is
+ * stored in a single column, see {@link AuditEventDataConverter}.
+ *
  * @see org.springframework.boot.actuate.audit.AuditEvent
  */
 @Entity
@@ -19,7 +25,7 @@ public class PersistentAuditEvent implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = FlakeIdentifierGenerator.GENERATOR)
     @Column(name = "event_id")
     private Long id;
 
@@ -33,10 +39,12 @@ public class PersistentAuditEvent implements Serializable {
     @Column(name = "event_type")
     private String auditEventType;
 
-    @ElementCollection
-    @MapKeyColumn(name = "name")
-    @Column(name = "value")
-    @CollectionTable(name = "jhi_persistent_audit_evt_data", joinColumns=@JoinColumn(name="event_id"))
+    /**
+     * The column definition is that of the Liquibase migration, as a converted {@code byte[]} would be expected to
+     * be a {@code longvarbinary} column.
+     */
+    @Convert(converter = AuditEventDataConverter.class)
+    @Column(name = "event_data", columnDefinition = "varbinary(4000)")
     private Map<String, String> data = new HashMap<>();
 
     public Long getId() {
@@ -1,4 +1,11 @@
 /**
  * JPA domain objects.
+ * <p>
+ * Entity ids are generated by the {@link com.diaspora.config.hazelcast.FlakeIdentifierGenerator}, declared here so
+ * that every entity can use it.
  */
+@GenericGenerator(name = FlakeIdentifierGenerator.GENERATOR, strategy = "com.diaspora.config.hazelcast.FlakeIdentifierGenerator")
 package com.diaspora.domain;
+
+import com.diaspora.config.hazelcast.FlakeIdentifierGenerator;
+import org.hibernate.annotations.GenericGenerator;
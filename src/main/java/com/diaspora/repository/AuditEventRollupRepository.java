@@ -0,0 +1,303 @@
+package com.diaspora.repository;
+
+import com.diaspora.service.dto.AuditEventRollupDTO;
+import org.hibernate.Session;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.stream.Collectors;
+
+/**
+ * Repository of the number of audit events per minute, type and principal, in the {@value #TABLE} table.
+ * <p>
+ * The counts are added to rather than set, so that each node of the cluster adds the events it wrote. The aggregate
+ * queries sum these rows, in the range of minutes of the primary key, and never read the events themselves.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class AuditEventRollupRepository {
+
+    private static final String TABLE = "jhi_audit_event_rollup";
+
+    private static final String UPSERT_MYSQL = "insert into " + TABLE +
+        " (bucket_start, event_type, principal, event_count) values (?, ?, ?, ?)" +
+        " on duplicate key update event_count = event_count + values(event_count)";
+
+    private static final String UPDATE = "update " + TABLE + " set event_count = event_count + ?" +
+        " where bucket_start = ? and event_type = ? and principal = ?";
+
+    private static final String INSERT = "insert into " + TABLE +
+        " (bucket_start, event_type, principal, event_count) values (?, ?, ?, ?)";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Add counts of events to the rows of their keys, in a single transaction.
+     *
+     * @param counts the counts, by key.
+     */
+    @Transactional
+    public void add(Map<Key, Long> counts) {
+        List<Map.Entry<Key, Long>> entries = new ArrayList<>(counts.entrySet());
+        boolean mySQL = isMySQL();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            Calendar calendar = Calendar.getInstance(UTC);
+            if (mySQL) {
+                try (PreparedStatement upsert = connection.prepareStatement(UPSERT_MYSQL)) {
+                    for (Map.Entry<Key, Long> entry : entries) {
+                        bindKey(upsert, 1, entry.getKey(), calendar);
+                        upsert.setLong(4, entry.getValue());
+                        upsert.addBatch();
+                    }
+                    upsert.executeBatch();
+                }
+                return;
+            }
+            int[] updated;
+            try (PreparedStatement update = connection.prepareStatement(UPDATE)) {
+                for (Map.Entry<Key, Long> entry : entries) {
+                    update.setLong(1, entry.getValue());
+                    bindKey(update, 2, entry.getKey(), calendar);
+                    update.addBatch();
+                }
+                updated = update.executeBatch();
+            }
+            try (PreparedStatement insert = connection.prepareStatement(INSERT)) {
+                for (int i = 0; i < entries.size(); i++) {
+                    if (updated[i] == 0) {
+                        bindKey(insert, 1, entries.get(i).getKey(), calendar);
+                        insert.setLong(4, entries.get(i).getValue());
+                        insert.addBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Sum the counts matching the criteria, by the given dimensions.
+     *
+     * @param criteria the criteria.
+     * @param dimensions the dimensions of the rows, the total count only if empty.
+     * @param limit the maximum number of rows.
+     * @return the rows, in the order of the dimensions.
+     */
+    public List<AuditEventRollupDTO> sum(Criteria criteria, EnumSet<Dimension> dimensions, int limit) {
+        String columns = dimensions.stream().map(Dimension::getColumn).collect(Collectors.joining(", "));
+        StringBuilder sql = new StringBuilder("select ");
+        if (!dimensions.isEmpty()) {
+            sql.append(columns).append(", ");
+        }
+        sql.append("sum(event_count) from " + TABLE + " where 1 = 1");
+        List<Object> parameters = new ArrayList<>();
+        if (criteria.getFromDate() != null) {
+            sql.append(" and bucket_start >= ?");
+            parameters.add(Timestamp.from(criteria.getFromDate()));
+        }
+        if (criteria.getToDate() != null) {
+            sql.append(" and bucket_start < ?");
+            parameters.add(Timestamp.from(criteria.getToDate()));
+        }
+        if (criteria.getEventType() != null) {
+            sql.append(" and event_type = ?");
+            parameters.add(criteria.getEventType());
+        }
+        if (criteria.getPrincipal() != null) {
+            sql.append(" and principal = ?");
+            parameters.add(criteria.getPrincipal());
+        }
+        if (!dimensions.isEmpty()) {
+            sql.append(" group by ").append(columns).append(" order by ").append(columns);
+        }
+        sql.append(" limit ?");
+        parameters.add(limit);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Calendar calendar = Calendar.getInstance(UTC);
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    Object parameter = parameters.get(i);
+                    if (parameter instanceof Timestamp) {
+                        statement.setTimestamp(i + 1, (Timestamp) parameter, calendar);
+                    } else {
+                        statement.setObject(i + 1, parameter);
+                    }
+                }
+                List<AuditEventRollupDTO> rows = new ArrayList<>();
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        AuditEventRollupDTO row = new AuditEventRollupDTO();
+                        int column = 1;
+                        if (dimensions.contains(Dimension.MINUTE)) {
+                            row.setMinute(resultSet.getTimestamp(column++, calendar).toInstant());
+                        }
+                        if (dimensions.contains(Dimension.TYPE)) {
+                            row.setEventType(resultSet.getString(column++));
+                        }
+                        if (dimensions.contains(Dimension.PRINCIPAL)) {
+                            row.setPrincipal(resultSet.getString(column++));
+                        }
+                        row.setCount(resultSet.getLong(column));
+                        rows.add(row);
+                    }
+                }
+                return rows;
+            }
+        });
+    }
+
+    private static void bindKey(PreparedStatement statement, int first, Key key, Calendar calendar) throws SQLException {
+        statement.setTimestamp(first, Timestamp.from(key.getMinute()), calendar);
+        statement.setString(first + 1, key.getEventType());
+        statement.setString(first + 2, key.getPrincipal());
+    }
+
+    private boolean isMySQL() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+            .getJdbcServices().getDialect() instanceof MySQLDialect;
+    }
+
+    /**
+     * Dimension of the sums, in the order of the primary key.
+     */
+    public enum Dimension {
+        MINUTE("bucket_start"),
+        TYPE("event_type"),
+        PRINCIPAL("principal");
+
+        private final String column;
+
+        Dimension(String column) {
+            this.column = column;
+        }
+
+        String getColumn() {
+            return column;
+        }
+    }
+
+    /**
+     * Criteria of the counts, a {@code null} criterion matching all the counts.
+     */
+    public static class Criteria {
+
+        private final Instant fromDate;
+
+        private final Instant toDate;
+
+        private final String eventType;
+
+        private final String principal;
+
+        /**
+         * @param fromDate the date from which the events happened, inclusive, rounded down to the minute.
+         * @param toDate the date until which the events happened, exclusive, rounded up to the minute.
+         * @param eventType the type of the events.
+         * @param principal the principal of the events.
+         */
+        public Criteria(Instant fromDate, Instant toDate, String eventType, String principal) {
+            this.fromDate = fromDate != null ? fromDate.truncatedTo(ChronoUnit.MINUTES) : null;
+            Instant toMinute = toDate != null ? toDate.truncatedTo(ChronoUnit.MINUTES) : null;
+            this.toDate = toMinute != null && toMinute.isBefore(toDate) ? toMinute.plus(1, ChronoUnit.MINUTES) : toMinute;
+            this.eventType = eventType;
+            this.principal = principal;
+        }
+
+        public Instant getFromDate() {
+            return fromDate;
+        }
+
+        public Instant getToDate() {
+            return toDate;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+    }
+
+    /**
+     * Minute, type and principal of events.
+     */
+    public static class Key {
+
+        private final Instant minute;
+
+        private final String eventType;
+
+        private final String principal;
+
+        /**
+         * @param date the date of the events, rounded down to the minute.
+         * @param eventType the type of the events, {@code null} being counted as an empty type.
+         * @param principal the principal of the events.
+         */
+        public Key(Instant date, String eventType, String principal) {
+            this.minute = date.truncatedTo(ChronoUnit.MINUTES);
+            this.eventType = eventType != null ? eventType : "";
+            this.principal = Objects.requireNonNull(principal);
+        }
+
+        public Instant getMinute() {
+            return minute;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return minute.equals(key.minute) && eventType.equals(key.eventType) && principal.equals(key.principal);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(minute, eventType, principal);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" +
+                "minute=" + minute +
+                ", eventType='" + eventType + "'" +
+                ", principal='" + principal + "'" +
+                "}";
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.diaspora.repository;
+
+import com.diaspora.domain.AuditEventDataConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+import org.hibernate.Session;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Repository searching the {@link PersistentAuditEvent}s by principal and date range with keyset pagination.
+ * <p>
+ * Events are sorted by {@code (principal, event_date, event_id)}, most recent first, the order of the
+ * {@code idx_persistent_audit_event} index, whose InnoDB entries end with the {@code event_id} primary key. A page
+ * starts right after the {@link Key} of the last event of the previous page: the query seeks to it in the index and
+ * reads the page only, instead of skipping all the previous pages as an {@code OFFSET} does, so a page takes the same
+ * time at any depth. Events without a date are not searched.
+ * <p>
+ * The events can also be streamed, for exports too large to be loaded at once.
+ */
+@Repository
+@Transactional(readOnly = true)
+public class AuditEventSearchRepository {
+
+    private static final String TABLE = "jhi_persistent_audit_event";
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Find a page of events.
+     *
+     * @param criteria the search criteria.
+     * @param after the key of the last event of the previous page, {@code null} for the first page.
+     * @param size the maximum number of events.
+     * @return the events, most recent first.
+     */
+    public List<PersistentAuditEvent> findPage(Criteria criteria, Key after, int size) {
+        StringBuilder jpql = new StringBuilder("select e from PersistentAuditEvent e");
+        List<Object> parameters = new ArrayList<>();
+        where(jpql, parameters, criteria, e -> "e." + e);
+        if (after != null) {
+            String date = parameter(parameters, after.getAuditEventDate());
+            String id = parameter(parameters, after.getId());
+            String seek = "e.auditEventDate < " + date + " or (e.auditEventDate = " + date + " and e.id < " + id + ")";
+            if (criteria.getPrincipal() == null) {
+                // The rest of the events of the principal of the last event, then those of the next principals
+                String principal = parameter(parameters, after.getPrincipal());
+                seek = "e.principal < " + principal + " or (e.principal = " + principal + " and (" + seek + "))";
+            }
+            jpql.append(" and (").append(seek).append(")");
+        }
+        jpql.append(" order by ");
+        if (criteria.getPrincipal() == null) {
+            jpql.append("e.principal desc, ");
+        }
+        jpql.append("e.auditEventDate desc, e.id desc");
+        TypedQuery<PersistentAuditEvent> query = entityManager.createQuery(jpql.toString(), PersistentAuditEvent.class);
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        return query.setMaxResults(size).getResultList();
+    }
+
+    /**
+     * Estimate the number of events matching the criteria, without counting them all: MySQL estimates it from the
+     * index statistics, other databases count up to a limit.
+     *
+     * @param criteria the search criteria.
+     * @param limit the number of events counted at most when there is no estimate.
+     * @return the estimated number of events.
+     */
+    public long estimateCount(Criteria criteria, long limit) {
+        StringBuilder sql = new StringBuilder("select 1 from " + TABLE);
+        List<Object> parameters = new ArrayList<>();
+        where(sql, parameters, criteria, AuditEventSearchRepository::column);
+        if (isMySQL()) {
+            String explain = "explain " + jdbc(sql);
+            return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(explain)) {
+                    bind(statement, parameters);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? resultSet.getLong("rows") : 0L;
+                    }
+                }
+            });
+        }
+        Query query = entityManager.createNativeQuery(
+            "select count(*) from (" + sql + " limit " + limit + ") matching");
+        for (int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
+    /**
+     * Read the events matching the criteria, oldest first in the order of the {@code idx_persistent_audit_event_date}
+     * index, from a forward-only cursor fetching {@code fetchSize} rows at a time, so that the memory used does not
+     * depend on the number of events. On MySQL, the rows are only fetched a batch at a time with
+     * {@code useCursorFetch=true} in the connection URL.
+     *
+     * @param criteria the search criteria.
+     * @param fetchSize the number of rows fetched at once.
+     * @param consumer handles each event as it is read.
+     * @return the number of events read.
+     */
+    public long stream(Criteria criteria, int fetchSize, Consumer<PersistentAuditEvent> consumer) {
+        StringBuilder sql = new StringBuilder(
+            "select event_id, principal, event_date, event_type, event_data from " + TABLE);
+        List<Object> parameters = new ArrayList<>();
+        where(sql, parameters, criteria, AuditEventSearchRepository::column);
+        sql.append(" order by event_date, event_id");
+        String select = jdbc(sql);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(select, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                bind(statement, parameters);
+                Calendar calendar = Calendar.getInstance(UTC);
+                long count = 0;
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        PersistentAuditEvent event = new PersistentAuditEvent();
+                        event.setId(resultSet.getLong(1));
+                        event.setPrincipal(resultSet.getString(2));
+                        event.setAuditEventDate(resultSet.getTimestamp(3, calendar).toInstant());
+                        event.setAuditEventType(resultSet.getString(4));
+                        event.setData(AuditEventDataConverter.decode(resultSet.getBytes(5)));
+                        consumer.accept(event);
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
+    private static void where(StringBuilder query, List<Object> parameters, Criteria criteria,
+                              Function<String, String> property) {
+        query.append(" where ").append(property.apply("auditEventDate")).append(" is not null");
+        if (criteria.getPrincipal() != null) {
+            query.append(" and ").append(property.apply("principal")).append(" = ")
+                .append(parameter(parameters, criteria.getPrincipal()));
+        }
+        if (criteria.getFromDate() != null) {
+            query.append(" and ").append(property.apply("auditEventDate")).append(" >= ")
+                .append(parameter(parameters, criteria.getFromDate()));
+        }
+        if (criteria.getToDate() != null) {
+            query.append(" and ").append(property.apply("auditEventDate")).append(" < ")
+                .append(parameter(parameters, criteria.getToDate()));
+        }
+    }
+
+    /**
+     * @return the query with JDBC placeholders.
+     */
+    private static String jdbc(StringBuilder query) {
+        return query.toString().replaceAll("\\?\\d+", "?");
+    }
+
+    /**
+     * @return the placeholder of a new positional parameter.
+     */
+    private static String parameter(List<Object> parameters, Object value) {
+        parameters.add(value);
+        return "?" + parameters.size();
+    }
+
+    private static String column(String property) {
+        return "auditEventDate".equals(property) ? "event_date" : property;
+    }
+
+    /**
+     * Bind the parameters as Hibernate does, with {@code hibernate.jdbc.time_zone} set to UTC.
+     */
+    private static void bind(PreparedStatement statement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            Object parameter = parameters.get(i);
+            if (parameter instanceof Instant) {
+                statement.setTimestamp(i + 1, Timestamp.from((Instant) parameter), Calendar.getInstance(UTC));
+            } else {
+                statement.setObject(i + 1, parameter);
+            }
+        }
+    }
+
+    private boolean isMySQL() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+            .getJdbcServices().getDialect() instanceof MySQLDialect;
+    }
+
+    /**
+     * Criteria of a search, a {@code null} criterion matching all the events.
+     */
+    public static class Criteria {
+
+        private final String principal;
+
+        private final Instant fromDate;
+
+        private final Instant toDate;
+
+        /**
+         * @param principal the principal of the events.
+         * @param fromDate the date from which the events happened, inclusive.
+         * @param toDate the date until which the events happened, exclusive.
+         */
+        public Criteria(String principal, Instant fromDate, Instant toDate) {
+            this.principal = principal;
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        public Instant getFromDate() {
+            return fromDate;
+        }
+
+        public Instant getToDate() {
+            return toDate;
+        }
+    }
+
+    /**
+     * Position of an event in the search order.
+     */
+    public static class Key {
+
+        private final String principal;
+
+        private final Instant auditEventDate;
+
+        private final long id;
+
+        public Key(String principal, Instant auditEventDate, long id) {
+            this.principal = Objects.requireNonNull(principal);
+            this.auditEventDate = Objects.requireNonNull(auditEventDate);
+            this.id = id;
+        }
+
+        public static Key of(PersistentAuditEvent event) {
+            return new Key(event.getPrincipal(), event.getAuditEventDate(), event.getId());
+        }
+
+        public String getPrincipal() {
+            return principal;
+        }
+
+        public Instant getAuditEventDate() {
+            return auditEventDate;
+        }
+
+        public long getId() {
+            return id;
+        }
+    }
+}
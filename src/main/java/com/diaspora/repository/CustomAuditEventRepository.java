@@ -0,0 +1,106 @@
+package com.diaspora.repository;
+
+import com.diaspora.config.audit.AuditEventConverter;
+import com.diaspora.config.audit.AuditEventWriter;
+import com.diaspora.domain.AuditEventDataConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.actuate.audit.AuditEventRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * An implementation of Spring Boot's {@link AuditEventRepository}.
+ * <p>
+ * Events are saved asynchronously by the {@link AuditEventWriter}, so an event may be found a little after it was
+ * added. With {@code application.audit.journal.enabled}, an event is durable on the local disk once it was added.
+ */
+@Repository
+public class CustomAuditEventRepository implements AuditEventRepository {
+
+    private static final String AUTHORIZATION_FAILURE = "AUTHORIZATION_FAILURE";
+
+    /**
+     * Maximum length of a data value.
+     */
+    protected static final int EVENT_DATA_COLUMN_MAX_LENGTH = 255;
+
+    /**
+     * Should be the same as in Liquibase migration.
+     */
+    protected static final int PRINCIPAL_COLUMN_MAX_LENGTH = 50;
+
+    private final PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    private final AuditEventConverter auditEventConverter;
+
+    private final AuditEventWriter auditEventWriter;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    public CustomAuditEventRepository(PersistenceAuditEventRepository persistenceAuditEventRepository,
+                                      AuditEventConverter auditEventConverter, AuditEventWriter auditEventWriter) {
+        this.persistenceAuditEventRepository = persistenceAuditEventRepository;
+        this.auditEventConverter = auditEventConverter;
+        this.auditEventWriter = auditEventWriter;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<AuditEvent> find(String principal, Instant after, String type) {
+        Iterable<PersistentAuditEvent> persistentAuditEvents =
+            persistenceAuditEventRepository.findEvents(principal, after, type);
+        return auditEventConverter.convertToAuditEvent(persistentAuditEvents);
+    }
+
+    @Override
+    public void add(AuditEvent event) {
+        if (!AUTHORIZATION_FAILURE.equals(event.getType())) {
+            PersistentAuditEvent persistentAuditEvent = new PersistentAuditEvent();
+            persistentAuditEvent.setPrincipal(truncate(event.getPrincipal(), PRINCIPAL_COLUMN_MAX_LENGTH));
+            persistentAuditEvent.setAuditEventType(event.getType());
+            persistentAuditEvent.setAuditEventDate(event.getTimestamp());
+            Map<String, String> eventData = auditEventConverter.convertDataToStrings(event.getData());
+            persistentAuditEvent.setData(truncate(eventData));
+            auditEventWriter.write(persistentAuditEvent);
+        }
+    }
+
+    /**
+     * Truncate event data that might exceed column length: values are truncated, and the entries which do not fit in
+     * the event data column anymore are left out.
+     */
+    private Map<String, String> truncate(Map<String, String> data) {
+        Map<String, String> results = new HashMap<>();
+
+        if (data != null) {
+            int length = AuditEventDataConverter.HEADER_LENGTH;
+            for (Map.Entry<String, String> entry : data.entrySet()) {
+                String value = entry.getValue();
+                if (value != null && value.length() > EVENT_DATA_COLUMN_MAX_LENGTH) {
+                    log.warn("Event data for {} too long ({}) has been truncated to {}. Consider increasing column width.",
+                        entry.getKey(), value.length(), EVENT_DATA_COLUMN_MAX_LENGTH);
+                    value = truncate(value, EVENT_DATA_COLUMN_MAX_LENGTH);
+                }
+                length += AuditEventDataConverter.encodedLength(entry.getKey(), value);
+                if (length > AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH) {
+                    log.warn("Event data for {} has been left out, the event data exceeds {} bytes. Consider increasing column width.",
+                        entry.getKey(), AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH);
+                    continue;
+                }
+                results.put(entry.getKey(), value);
+            }
+        }
+        return results;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
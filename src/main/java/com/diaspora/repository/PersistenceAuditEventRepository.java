@@ -0,0 +1,39 @@
+package com.diaspora.repository;
+
+import com.diaspora.domain.PersistentAuditEvent;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Spring Data JPA repository for the {@link PersistentAuditEvent} entity.
+ */
+public interface PersistenceAuditEventRepository extends JpaRepository<PersistentAuditEvent, Long> {
+
+    List<PersistentAuditEvent> findByPrincipal(String principal);
+
+    List<PersistentAuditEvent> findByPrincipalAndAuditEventDateAfterAndAuditEventType(String principal, Instant after, String type);
+
+    /**
+     * Find the events matching all the given criteria, a {@code null} criterion matching all the events.
+     *
+     * @param principal the principal of the events.
+     * @param after the date after which the events happened.
+     * @param type the type of the events.
+     * @return the matching events.
+     */
+    @Query("select e from PersistentAuditEvent e where (:principal is null or e.principal = :principal)" +
+        " and (:after is null or e.auditEventDate > :after) and (:type is null or e.auditEventType = :type)" +
+        " order by e.auditEventDate")
+    List<PersistentAuditEvent> findEvents(@Param("principal") String principal, @Param("after") Instant after,
+                                          @Param("type") String type);
+
+    Page<PersistentAuditEvent> findAllByAuditEventDateBetween(Instant fromDate, Instant toDate, Pageable pageable);
+
+    List<PersistentAuditEvent> findByAuditEventDateBefore(Instant before);
+}
@@ -0,0 +1,106 @@
+package com.diaspora.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable set of the authority names granted to an authentication, built once per authentication.
+ * <p>
+ * The {@link AuthoritiesConstants} are resolved to flags when the set is built, so that role checks
+ * are allocation-free lookups instead of streams over {@link GrantedAuthority} objects.
+ */
+public final class AuthoritySet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<String> authorities;
+
+    private final boolean admin;
+
+    private final boolean user;
+
+    private final boolean anonymous;
+
+    private AuthoritySet(Set<String> authorities) {
+        this.authorities = Collections.unmodifiableSet(authorities);
+        this.admin = authorities.contains(AuthoritiesConstants.ADMIN);
+        this.user = authorities.contains(AuthoritiesConstants.USER);
+        this.anonymous = authorities.contains(AuthoritiesConstants.ANONYMOUS);
+    }
+
+    /**
+     * Build the set of the names of the given authorities.
+     *
+     * @param grantedAuthorities the granted authorities.
+     * @return the authority set.
+     */
+    public static AuthoritySet of(Collection<? extends GrantedAuthority> grantedAuthorities) {
+        Set<String> authorities = new HashSet<>(grantedAuthorities.size() * 2);
+        for (GrantedAuthority grantedAuthority : grantedAuthorities) {
+            String authority = grantedAuthority.getAuthority();
+            if (authority != null) {
+                authorities.add(authority);
+            }
+        }
+        return new AuthoritySet(authorities);
+    }
+
+    /**
+     * Check if an authority is in the set.
+     * <p>
+     * The {@link AuthoritiesConstants} are answered by reference comparison, without hashing.
+     *
+     * @param authority the authority to check.
+     * @return true if the authority is in the set, false otherwise.
+     */
+    public boolean contains(String authority) {
+        if (authority == AuthoritiesConstants.ADMIN) {
+            return admin;
+        } else if (authority == AuthoritiesConstants.USER) {
+            return user;
+        } else if (authority == AuthoritiesConstants.ANONYMOUS) {
+            return anonymous;
+        }
+        return authority != null && authorities.contains(authority);
+    }
+
+    /**
+     * @return true if the set contains {@link AuthoritiesConstants#ANONYMOUS}.
+     */
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    /**
+     * @return the unmodifiable set of authority names.
+     */
+    public Set<String> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AuthoritySet)) {
+            return false;
+        }
+        return authorities.equals(((AuthoritySet) o).authorities);
+    }
+
+    @Override
+    public int hashCode() {
+        return authorities.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AuthoritySet" + authorities;
+    }
+}
@@ -0,0 +1,14 @@
+package com.diaspora.security;
+
+import org.springframework.security.core.Authentication;
+
+/**
+ * {@link Authentication} that carries a precomputed {@link AuthoritySet}, used by {@link SecurityUtils} role checks.
+ */
+public interface AuthoritySetAware {
+
+    /**
+     * @return the set of the authorities granted to this authentication.
+     */
+    AuthoritySet getAuthoritySet();
+}
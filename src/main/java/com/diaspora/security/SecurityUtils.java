@@ -7,7 +7,6 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
 /**
  * Utility class for Spring Security.
@@ -47,27 +46,39 @@ public final class SecurityUtils {
      */
     public static boolean isAuthenticated() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof AuthoritySetAware) {
+            return !((AuthoritySetAware) authentication).getAuthoritySet().isAnonymous();
+        }
         return authentication != null &&
-            getAuthorities(authentication).noneMatch(AuthoritiesConstants.ANONYMOUS::equals);
+            !hasAuthority(authentication, AuthoritiesConstants.ANONYMOUS);
     }
 
     /**
      * If the current user has a specific authority (security role).
      * <p>
      * The name of this method comes from the {@code isUserInRole()} method in the Servlet API.
+     * Authentications created from access tokens carry a precomputed {@link AuthoritySet}, which makes this an
+     * allocation-free lookup.
      *
      * @param authority the authority to check.
      * @return true if the current user has the authority, false otherwise.
      */
     public static boolean isCurrentUserInRole(String authority) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof AuthoritySetAware) {
+            return ((AuthoritySetAware) authentication).getAuthoritySet().contains(authority);
+        }
         return authentication != null &&
-            getAuthorities(authentication).anyMatch(authority::equals);
+            hasAuthority(authentication, authority);
     }
 
-    private static Stream<String> getAuthorities(Authentication authentication) {
-        return authentication.getAuthorities().stream()
-            .map(GrantedAuthority::getAuthority);
+    private static boolean hasAuthority(Authentication authentication, String authority) {
+        for (GrantedAuthority grantedAuthority : authentication.getAuthorities()) {
+            if (authority.equals(grantedAuthority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
     }
 
 }
@@ -0,0 +1,26 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.security.AuthoritySet;
+import com.diaspora.security.AuthoritySetAware;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * {@link OAuth2Authentication} whose {@link AuthoritySet} is built once, when the access token is converted.
+ */
+public class AuthoritySetOAuth2Authentication extends OAuth2Authentication implements AuthoritySetAware {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AuthoritySet authoritySet;
+
+    public AuthoritySetOAuth2Authentication(OAuth2Authentication authentication) {
+        super(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+        this.authoritySet = AuthoritySet.of(getAuthorities());
+        setDetails(authentication.getDetails());
+    }
+
+    @Override
+    public AuthoritySet getAuthoritySet() {
+        return authoritySet;
+    }
+}
@@ -0,0 +1,302 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.oauth2.OAuth2Properties;
+import io.github.jhipster.security.uaa.LoadBalancedResourceDetails;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the client-credentials access token used by {@link com.diaspora.client.AuthorizedFeignClient} calls.
+ * <p>
+ * The token is fetched from {@code jhipster.security.client-authorization} on first use, then refreshed in the
+ * background once {@code oauth2.client-credentials.refresh-ahead-ratio} of its lifetime has passed.
+ * Callers never wait while a valid token exists: only the very first calls, or calls made after the token
+ * expired, wait for a fetch, at most {@code oauth2.client-credentials.fetch-wait-timeout}.
+ * <p>
+ * At most one fetch is in flight at any time: concurrent callers are coalesced onto it. Fetches run on the task
+ * scheduler, and a failed fetch is retried after {@code oauth2.client-credentials.retry-initial-delay}, doubled after
+ * each failure up to {@code oauth2.client-credentials.retry-max-delay}.
+ */
+@Component
+public class ClientCredentialsTokenManager {
+
+    private static final String FETCH_METRIC = "oauth2.client.token.fetch";
+
+    private static final String REQUESTS_METRIC = "oauth2.client.token.requests";
+
+    private final Logger log = LoggerFactory.getLogger(ClientCredentialsTokenManager.class);
+
+    private final LoadBalancedResourceDetails resourceDetails;
+
+    private final OAuth2Properties oAuth2Properties;
+
+    private final TaskScheduler taskScheduler;
+
+    private final AtomicReference<CompletableFuture<CachedToken>> inFlightFetch = new AtomicReference<>();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final Timer fetchSuccessTimer;
+
+    private final Timer fetchFailureTimer;
+
+    private final Counter coalescedCounter;
+
+    private final Counter hitCounter;
+
+    private final Counter refreshAheadCounter;
+
+    private final Counter missCounter;
+
+    private AccessTokenProvider accessTokenProvider = new ClientCredentialsAccessTokenProvider();
+
+    private volatile CachedToken current;
+
+    /**
+     * When did we last try to fetch a token?
+     */
+    private volatile long lastFetchAttemptTimestamp;
+
+    private volatile ScheduledFuture<?> refreshTask;
+
+    public ClientCredentialsTokenManager(LoadBalancedResourceDetails resourceDetails, OAuth2Properties oAuth2Properties,
+                                         TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.resourceDetails = resourceDetails;
+        this.oAuth2Properties = oAuth2Properties;
+        this.taskScheduler = taskScheduler;
+        this.fetchSuccessTimer = Timer.builder(FETCH_METRIC)
+            .description("Time spent fetching the client-credentials token from the OAuth2 server")
+            .tag("outcome", "success")
+            .register(meterRegistry);
+        this.fetchFailureTimer = Timer.builder(FETCH_METRIC)
+            .description("Time spent fetching the client-credentials token from the OAuth2 server")
+            .tag("outcome", "failure")
+            .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("oauth2.client.token.fetch.coalesced")
+            .description("Token requests served by a client-credentials token fetch that was already in flight")
+            .register(meterRegistry);
+        this.hitCounter = requestCounter(meterRegistry, "hit");
+        this.refreshAheadCounter = requestCounter(meterRegistry, "refresh-ahead");
+        this.missCounter = requestCounter(meterRegistry, "miss");
+        meterRegistry.gauge("oauth2.client.token.remaining", this, ClientCredentialsTokenManager::getRemainingValidity);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(REQUESTS_METRIC)
+            .description("Client-credentials token requests, by whether a valid token was available")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Set the provider used to request tokens; defaults to a {@link ClientCredentialsAccessTokenProvider}.
+     *
+     * @param accessTokenProvider the provider.
+     */
+    public void setAccessTokenProvider(AccessTokenProvider accessTokenProvider) {
+        this.accessTokenProvider = accessTokenProvider;
+    }
+
+    @PreDestroy
+    public void stop() {
+        ScheduledFuture<?> task = refreshTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Get a valid client-credentials token.
+     * If the current token is due for refresh, it is still returned while a new one is fetched in the background.
+     *
+     * @return the access token.
+     * @throws OAuth2AccessDeniedException if there is no valid token and none could be fetched in time.
+     */
+    public OAuth2AccessToken getAccessToken() {
+        CachedToken token = current;
+        long now = System.currentTimeMillis();
+        if (token != null && now < token.expiresAt) {
+            if (now >= token.refreshAt) {
+                refreshAheadCounter.increment();
+                refreshInBackground();
+            } else {
+                hitCounter.increment();
+            }
+            return token.accessToken;
+        }
+        missCounter.increment();
+        return fetchAndWait().accessToken;
+    }
+
+    /**
+     * Fetch a new token without waiting for the result; the current token stays in use meanwhile.
+     * Nothing happens if a fetch is already in flight or was tried within {@code oauth2.client-credentials.refresh-rate-limit}.
+     */
+    public void refreshInBackground() {
+        if (inFlightFetch.get() != null ||
+            System.currentTimeMillis() - lastFetchAttemptTimestamp < oAuth2Properties.getClientCredentials().getRefreshRateLimit()) {
+            return;
+        }
+        startFetch();
+    }
+
+    private CachedToken fetchAndWait() {
+        CompletableFuture<CachedToken> fetch = startFetch();
+        long timeout = oAuth2Properties.getClientCredentials().getFetchWaitTimeout();
+        try {
+            return fetch.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OAuth2AccessDeniedException("Interrupted while waiting for a client-credentials token", resourceDetails);
+        } catch (ExecutionException e) {
+            throw new OAuth2AccessDeniedException("Unable to obtain a client-credentials token for resource '" +
+                resourceDetails.getId() + "': " + e.getCause().getMessage(), resourceDetails);
+        } catch (TimeoutException e) {
+            throw new OAuth2AccessDeniedException("Gave up waiting for a client-credentials token after " + timeout + " ms",
+                resourceDetails);
+        }
+    }
+
+    /**
+     * Start a fetch, or join the one in flight.
+     * <p>
+     * The fetch runs on the task scheduler, or on the common pool without one, so that the caller may give up
+     * waiting for it.
+     *
+     * @return the fetch result.
+     */
+    private CompletableFuture<CachedToken> startFetch() {
+        CompletableFuture<CachedToken> fetch = new CompletableFuture<>();
+        if (!inFlightFetch.compareAndSet(null, fetch)) {
+            CompletableFuture<CachedToken> inFlight = inFlightFetch.get();
+            if (inFlight != null) {
+                coalescedCounter.increment();
+                return inFlight;
+            }
+            return startFetch();
+        }
+        lastFetchAttemptTimestamp = System.currentTimeMillis();
+        Runnable task = () -> {
+            try {
+                CachedToken token = fetchToken();
+                inFlightFetch.set(null);
+                fetch.complete(token);
+            } catch (Throwable ex) {
+                inFlightFetch.set(null);
+                fetch.completeExceptionally(ex);
+                scheduleRetry();
+            }
+        };
+        try {
+            if (taskScheduler != null) {
+                taskScheduler.schedule(task, new Date());
+            } else {
+                ForkJoinPool.commonPool().execute(task);
+            }
+        } catch (RuntimeException ex) {
+            inFlightFetch.set(null);
+            fetch.completeExceptionally(ex);
+        }
+        return fetch;
+    }
+
+    private CachedToken fetchToken() {
+        long start = System.nanoTime();
+        try {
+            OAuth2AccessToken accessToken = accessTokenProvider.obtainAccessToken(resourceDetails, new DefaultAccessTokenRequest());
+            long now = System.currentTimeMillis();
+            CachedToken token = new CachedToken(accessToken, now, oAuth2Properties.getClientCredentials().getRefreshAheadRatio());
+            current = token;
+            fetchSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.debug("Client-credentials token retrieved from OAuth2 server, valid until {}", accessToken.getExpiration());
+            consecutiveFailures.set(0);
+            scheduleRefresh(token);
+            return token;
+        } catch (RuntimeException ex) {
+            fetchFailureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.error("could not get client-credentials token from OAuth2 server", ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Refresh the token when it is due even if there are no outbound calls, so that the next call finds a fresh one.
+     */
+    private void scheduleRefresh(CachedToken token) {
+        if (taskScheduler == null || token.refreshAt == Long.MAX_VALUE) {
+            return;
+        }
+        stop();
+        long refreshAt = Math.max(token.refreshAt,
+            System.currentTimeMillis() + oAuth2Properties.getClientCredentials().getRefreshRateLimit());
+        refreshTask = taskScheduler.schedule(this::startFetch, new Date(refreshAt));
+    }
+
+    /**
+     * Fetch again after a failure, backing off exponentially, so that a token is ready for the next call once the
+     * Authorization server is back.
+     */
+    private void scheduleRetry() {
+        if (taskScheduler == null) {
+            return;
+        }
+        OAuth2Properties.ClientCredentials properties = oAuth2Properties.getClientCredentials();
+        int failures = consecutiveFailures.getAndIncrement();
+        long delay = properties.getRetryMaxDelay();
+        if (failures < Long.SIZE - 1 && properties.getRetryInitialDelay() < properties.getRetryMaxDelay() >> failures) {
+            delay = properties.getRetryInitialDelay() << failures;
+        }
+        log.debug("Retrying to fetch the client-credentials token in {} ms", delay);
+        stop();
+        refreshTask = taskScheduler.schedule(this::startFetch, new Date(System.currentTimeMillis() + delay));
+    }
+
+    private double getRemainingValidity() {
+        CachedToken token = current;
+        if (token == null || token.expiresAt == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(0, token.expiresAt - System.currentTimeMillis());
+    }
+
+    private static final class CachedToken {
+
+        private final OAuth2AccessToken accessToken;
+
+        private final long expiresAt;
+
+        private final long refreshAt;
+
+        private CachedToken(OAuth2AccessToken accessToken, long fetchedAt, double refreshAheadRatio) {
+            this.accessToken = accessToken;
+            if (accessToken.getExpiration() == null) {
+                this.expiresAt = Long.MAX_VALUE;
+                this.refreshAt = Long.MAX_VALUE;
+            } else {
+                this.expiresAt = accessToken.getExpiration().getTime();
+                this.refreshAt = fetchedAt + (long) (Math.max(0, expiresAt - fetchedAt) * refreshAheadRatio);
+            }
+        }
+    }
+}
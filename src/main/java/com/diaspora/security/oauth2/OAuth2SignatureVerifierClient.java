@@ -2,6 +2,9 @@ package com.diaspora.security.oauth2;
 
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Abstracts how to create a {@link SignatureVerifier} to verify JWT tokens with a public key.
  * Implementations will have to contact the OAuth2 authorization server to fetch the public key
@@ -10,6 +13,13 @@ import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
  * @see UaaSignatureVerifierClient
  */
 public interface OAuth2SignatureVerifierClient {
+
+    /**
+     * Key id under which a verifier is registered when the authorization server does not name its keys.
+     * It is used for tokens without a {@code kid} header.
+     */
+    String DEFAULT_KEY_ID = "default";
+
     /**
      * Returns the {@link SignatureVerifier} used to verify JWT tokens.
      * Fetches the public key from the Authorization server to create
@@ -20,4 +30,21 @@ public interface OAuth2SignatureVerifierClient {
      * @throws Exception if we could not create a {@link SignatureVerifier} or contact the token endpoint.
      */
     SignatureVerifier getSignatureVerifier() throws Exception;
+
+    /**
+     * Returns a {@link SignatureVerifier} for every active key of the Authorization server, indexed by key id.
+     * <p>
+     * By default, only the key returned by {@link #getSignatureVerifier()} is used, under {@link #DEFAULT_KEY_ID}.
+     *
+     * @return the verifiers indexed by key id.
+     * Will be null if we cannot contact the token endpoint.
+     * @throws Exception if we could not create the verifiers or contact the token endpoint.
+     */
+    default Map<String, SignatureVerifier> getSignatureVerifiers() throws Exception {
+        SignatureVerifier verifier = getSignatureVerifier();
+        if (verifier == null) {
+            return null;
+        }
+        return Collections.singletonMap(DEFAULT_KEY_ID, verifier);
+    }
 }
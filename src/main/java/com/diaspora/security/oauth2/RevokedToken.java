@@ -0,0 +1,136 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.hazelcast.SerializationIds;
+import com.diaspora.config.hazelcast.SerializationUtils;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * An access token revoked before its expiry, identified by its {@code jti} claim.
+ */
+public class RevokedToken implements Serializable, IdentifiedDataSerializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String jti;
+
+    private Instant revokedAt;
+
+    private Instant expiresAt;
+
+    private String revokedBy;
+
+    private String reason;
+
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String jti, Instant revokedAt, Instant expiresAt, String revokedBy, String reason) {
+        this.jti = jti;
+        this.revokedAt = revokedAt;
+        this.expiresAt = expiresAt;
+        this.revokedBy = revokedBy;
+        this.reason = reason;
+    }
+
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public Instant getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(Instant revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public String getRevokedBy() {
+        return revokedBy;
+    }
+
+    public void setRevokedBy(String revokedBy) {
+        this.revokedBy = revokedBy;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return SerializationIds.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return SerializationIds.REVOKED_TOKEN;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(jti);
+        SerializationUtils.writeInstant(out, revokedAt);
+        SerializationUtils.writeInstant(out, expiresAt);
+        out.writeUTF(revokedBy);
+        out.writeUTF(reason);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        jti = in.readUTF();
+        revokedAt = SerializationUtils.readInstant(in);
+        expiresAt = SerializationUtils.readInstant(in);
+        revokedBy = in.readUTF();
+        reason = in.readUTF();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RevokedToken)) {
+            return false;
+        }
+        return Objects.equals(jti, ((RevokedToken) o).jti);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(jti);
+    }
+
+    @Override
+    public String toString() {
+        return "RevokedToken{" +
+            "jti='" + jti + '\'' +
+            ", revokedAt=" + revokedAt +
+            ", expiresAt=" + expiresAt +
+            ", revokedBy='" + revokedBy + '\'' +
+            ", reason='" + reason + '\'' +
+            '}';
+    }
+}
@@ -0,0 +1,272 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.oauth2.OAuth2Properties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Registry of the {@link SignatureVerifier}s of every active public key, indexed by key id.
+ * <p>
+ * Keys are fetched when the registry starts, then refreshed in the background before
+ * {@code oauth2.signature-verification.ttl} runs out, so that requests do not have to contact
+ * the Authorization server themselves.
+ * <p>
+ * At most one fetch is in flight at any time: concurrent refresh requests are coalesced onto it,
+ * and the current keys stay in use until the new ones are installed.
+ */
+@Component
+public class SignatureVerifierRegistry {
+
+    /**
+     * Keys are refreshed in the background once they reach this fraction of their TTL.
+     */
+    private static final double REFRESH_AHEAD_RATIO = 0.75;
+
+    private static final long MIN_REFRESH_CHECK_INTERVAL = 1000L;
+
+    private static final String FETCH_METRIC = "oauth2.public.keys.fetch";
+
+    private final Logger log = LoggerFactory.getLogger(SignatureVerifierRegistry.class);
+
+    private final OAuth2SignatureVerifierClient signatureVerifierClient;
+
+    private final OAuth2Properties oAuth2Properties;
+
+    private final TaskScheduler taskScheduler;
+
+    private final List<Runnable> keyChangeListeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicReference<CompletableFuture<Boolean>> inFlightFetch = new AtomicReference<>();
+
+    private final Timer fetchSuccessTimer;
+
+    private final Timer fetchFailureTimer;
+
+    private final Counter coalescedCounter;
+
+    private volatile Map<String, SignatureVerifier> verifiers = Collections.emptyMap();
+
+    /**
+     * When did we last fetch the public keys?
+     */
+    private volatile long lastKeyFetchTimestamp;
+
+    /**
+     * When did we last try to fetch the public keys?
+     */
+    private volatile long lastKeyFetchAttemptTimestamp;
+
+    private ScheduledFuture<?> refreshTask;
+
+    public SignatureVerifierRegistry(OAuth2SignatureVerifierClient signatureVerifierClient, OAuth2Properties oAuth2Properties,
+                                     TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.signatureVerifierClient = signatureVerifierClient;
+        this.oAuth2Properties = oAuth2Properties;
+        this.taskScheduler = taskScheduler;
+        this.fetchSuccessTimer = Timer.builder(FETCH_METRIC)
+            .description("Time spent fetching the public keys from the OAuth2 server")
+            .tag("outcome", "success")
+            .register(meterRegistry);
+        this.fetchFailureTimer = Timer.builder(FETCH_METRIC)
+            .description("Time spent fetching the public keys from the OAuth2 server")
+            .tag("outcome", "failure")
+            .register(meterRegistry);
+        this.coalescedCounter = Counter.builder("oauth2.public.keys.fetch.coalesced")
+            .description("Refresh requests served by a public key fetch that was already in flight")
+            .register(meterRegistry);
+        meterRegistry.gauge("oauth2.public.keys.age", this, registry -> System.currentTimeMillis() - registry.lastKeyFetchTimestamp);
+    }
+
+    /**
+     * Fetch the public keys, and schedule their background refresh.
+     */
+    @PostConstruct
+    public void start() {
+        lastKeyFetchAttemptTimestamp = System.currentTimeMillis();
+        fetchVerifiers(lastKeyFetchAttemptTimestamp);
+        if (taskScheduler != null) {
+            long interval = Math.max(MIN_REFRESH_CHECK_INTERVAL,
+                oAuth2Properties.getSignatureVerification().getPublicKeyRefreshRateLimit());
+            refreshTask = taskScheduler.scheduleWithFixedDelay(this::refreshIfStale, interval);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+    }
+
+    /**
+     * Get the verifier of a key.
+     * Tokens without key id, or with a key id the Authorization server does not name, use the default key.
+     *
+     * @param keyId the {@code kid} header of the token; may be {@code null}.
+     * @return the verifier; or {@code null} if the key is unknown.
+     */
+    public SignatureVerifier getVerifier(String keyId) {
+        Map<String, SignatureVerifier> current = verifiers;
+        if (keyId != null) {
+            SignatureVerifier verifier = current.get(keyId);
+            if (verifier != null) {
+                return verifier;
+            }
+        }
+        SignatureVerifier verifier = current.get(OAuth2SignatureVerifierClient.DEFAULT_KEY_ID);
+        if (verifier == null && keyId == null && current.size() == 1) {
+            verifier = current.values().iterator().next();
+        }
+        return verifier;
+    }
+
+    /**
+     * Have our public keys expired, i.e. are they older than {@code oauth2.signature-verification.ttl}?
+     *
+     * @return true if the keys should be fetched again.
+     */
+    public boolean isExpired() {
+        long ttl = oAuth2Properties.getSignatureVerification().getTtl();
+        return ttl > 0 && System.currentTimeMillis() - lastKeyFetchTimestamp > ttl;
+    }
+
+    /**
+     * Fetch the public keys again and wait for the result.
+     * If a fetch is already in flight, wait for it instead of starting another one.
+     * Otherwise, nothing is fetched if we already tried within {@code oauth2.signature-verification.public-key-refresh-rate-limit}.
+     *
+     * @return true, if new keys were installed; false, if they were not.
+     */
+    public boolean tryRefresh() {
+        CompletableFuture<Boolean> fetch = startFetch(false);
+        if (fetch == null) {
+            return false;
+        }
+        long timeout = oAuth2Properties.getSignatureVerification().getRefreshWaitTimeout();
+        try {
+            return fetch.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Gave up waiting for the public keys after {} ms", timeout);
+            return false;
+        }
+    }
+
+    /**
+     * Fetch the public keys again without waiting for the result; the current keys stay in use meanwhile.
+     * Nothing happens if a fetch is already in flight or was tried too recently.
+     */
+    public void refreshInBackground() {
+        startFetch(true);
+    }
+
+    /**
+     * Register a callback invoked every time the public keys are replaced.
+     *
+     * @param listener the callback.
+     */
+    public void addKeyChangeListener(Runnable listener) {
+        keyChangeListeners.add(listener);
+    }
+
+    void refreshIfStale() {
+        long ttl = oAuth2Properties.getSignatureVerification().getTtl();
+        if (ttl > 0 && System.currentTimeMillis() - lastKeyFetchTimestamp > ttl * REFRESH_AHEAD_RATIO) {
+            log.debug("Public keys are about to expire, refreshing them");
+            startFetch(false);
+        }
+    }
+
+    /**
+     * Start a fetch, or join the one in flight.
+     * <p>
+     * The rate limit is checked again once the fetch is claimed: a fetch may have started and ended since the first
+     * check, and only the claimant updates the time of the last attempt.
+     *
+     * @param background true to run the fetch on the task scheduler, false to run it on the calling thread.
+     * @return the fetch result; or {@code null} if we are rate limited.
+     */
+    private CompletableFuture<Boolean> startFetch(boolean background) {
+        CompletableFuture<Boolean> current = inFlightFetch.get();
+        if (current != null) {
+            coalescedCounter.increment();
+            return current;
+        }
+        if (isRateLimited(System.currentTimeMillis())) {
+            return null;
+        }
+        CompletableFuture<Boolean> fetch = new CompletableFuture<>();
+        if (!inFlightFetch.compareAndSet(null, fetch)) {
+            coalescedCounter.increment();
+            return inFlightFetch.get();
+        }
+        long t = System.currentTimeMillis();
+        if (isRateLimited(t)) {
+            inFlightFetch.set(null);
+            fetch.complete(false);
+            return null;
+        }
+        lastKeyFetchAttemptTimestamp = t;
+        Runnable task = () -> {
+            boolean result = false;
+            try {
+                result = fetchVerifiers(t);
+            } finally {
+                inFlightFetch.set(null);
+                fetch.complete(result);
+            }
+        };
+        if (background && taskScheduler != null) {
+            taskScheduler.schedule(task, new Date());
+        } else {
+            task.run();
+        }
+        return fetch;
+    }
+
+    private boolean isRateLimited(long t) {
+        return t - lastKeyFetchAttemptTimestamp < oAuth2Properties.getSignatureVerification().getPublicKeyRefreshRateLimit();
+    }
+
+    private boolean fetchVerifiers(long t) {
+        long start = System.nanoTime();
+        try {
+            Map<String, SignatureVerifier> fetched = signatureVerifierClient.getSignatureVerifiers();
+            if (fetched != null && !fetched.isEmpty()) {
+                verifiers = Collections.unmodifiableMap(new HashMap<>(fetched));
+                lastKeyFetchTimestamp = t;
+                fetchSuccessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                log.debug("Public keys {} retrieved from OAuth2 server to create SignatureVerifiers", fetched.keySet());
+                keyChangeListeners.forEach(Runnable::run);
+                return true;
+            }
+        } catch (Throwable ex) {
+            log.error("could not get public keys from OAuth2 server to create SignatureVerifiers", ex);
+        }
+        fetchFailureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return false;
+    }
+}
@@ -0,0 +1,218 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.oauth2.OAuth2Properties;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Distributed list of the access tokens revoked before their expiry, identified by their {@code jti} claim.
+ * <p>
+ * Revocations are stored in a Hazelcast map, each entry living until its token expires.
+ * Every node keeps a local {@link BloomFilter} of the revoked ids, fed with the revocations published on a
+ * Hazelcast topic, so that checking a token which is not revoked is a single in-memory probe.
+ * Only Bloom filter hits are confirmed against the distributed map.
+ * <p>
+ * Bloom filters cannot forget: the local one is rebuilt from the map every
+ * {@code oauth2.token-revocation.rebuild-interval}, to drop the revocations of expired tokens,
+ * and to pick up any topic message this node missed.
+ */
+@Component
+public class TokenRevocationStore {
+
+    public static final String REVOKED_TOKENS_MAP = "oauth2-revoked-tokens";
+
+    public static final String REVOCATIONS_TOPIC = "oauth2-token-revocations";
+
+    private static final String CHECKS_METRIC = "oauth2.token.revocation.checks";
+
+    private final Logger log = LoggerFactory.getLogger(TokenRevocationStore.class);
+
+    private final OAuth2Properties oAuth2Properties;
+
+    private final TaskScheduler taskScheduler;
+
+    private final IMap<String, RevokedToken> revokedTokens;
+
+    private final ITopic<String> revocations;
+
+    private final Counter bloomNegativeCounter;
+
+    private final Counter falsePositiveCounter;
+
+    private final Counter revokedCounter;
+
+    private volatile BloomFilter filter;
+
+    /**
+     * Filter being rebuilt, which must also receive the revocations published meanwhile.
+     */
+    private volatile BloomFilter nextFilter;
+
+    private String listenerRegistration;
+
+    private ScheduledFuture<?> rebuildTask;
+
+    public TokenRevocationStore(HazelcastInstance hazelcastInstance, OAuth2Properties oAuth2Properties,
+                                TaskScheduler taskScheduler, MeterRegistry meterRegistry) {
+        this.oAuth2Properties = oAuth2Properties;
+        this.taskScheduler = taskScheduler;
+        this.revokedTokens = hazelcastInstance.getMap(REVOKED_TOKENS_MAP);
+        this.revocations = hazelcastInstance.getTopic(REVOCATIONS_TOPIC);
+        this.filter = newFilter();
+        this.bloomNegativeCounter = checkCounter(meterRegistry, "bloom-negative");
+        this.falsePositiveCounter = checkCounter(meterRegistry, "false-positive");
+        this.revokedCounter = checkCounter(meterRegistry, "revoked");
+        meterRegistry.gauge("oauth2.token.revocation.size", revokedTokens, IMap::size);
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder(CHECKS_METRIC)
+            .description("Access token revocation checks, by how they were answered")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Subscribe to the revocations published by the other nodes, then load the current ones.
+     */
+    @PostConstruct
+    public void start() {
+        if (!oAuth2Properties.getTokenRevocation().isEnabled()) {
+            return;
+        }
+        listenerRegistration = revocations.addMessageListener(message -> addToFilters(message.getMessageObject()));
+        rebuildFilter();
+        if (taskScheduler != null) {
+            long interval = oAuth2Properties.getTokenRevocation().getRebuildInterval();
+            rebuildTask = taskScheduler.scheduleWithFixedDelay(this::rebuildFilter, new Date(System.currentTimeMillis() + interval), interval);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuildTask != null) {
+            rebuildTask.cancel(false);
+        }
+        if (listenerRegistration != null) {
+            revocations.removeMessageListener(listenerRegistration);
+        }
+    }
+
+    /**
+     * Check whether a token was revoked.
+     *
+     * @param jti the {@code jti} claim of the token; may be {@code null}.
+     * @return true if the token was revoked.
+     */
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        if (!filter.mightContain(jti)) {
+            bloomNegativeCounter.increment();
+            return false;
+        }
+        if (revokedTokens.containsKey(jti)) {
+            revokedCounter.increment();
+            return true;
+        }
+        falsePositiveCounter.increment();
+        return false;
+    }
+
+    /**
+     * Revoke a token until its expiry time, and tell the other nodes.
+     *
+     * @param jti the {@code jti} claim of the token.
+     * @param expiresAt the expiry time of the token; or {@code null} to keep the revocation for
+     * {@code oauth2.token-revocation.default-ttl}.
+     * @param revokedBy the login of the user revoking the token.
+     * @param reason why the token is revoked; may be {@code null}.
+     * @return the revocation.
+     */
+    public RevokedToken revoke(String jti, Instant expiresAt, String revokedBy, String reason) {
+        Instant now = Instant.now();
+        Instant expiry = expiresAt != null ? expiresAt : now.plusMillis(oAuth2Properties.getTokenRevocation().getDefaultTtl());
+        RevokedToken revokedToken = new RevokedToken(jti, now, expiry, revokedBy, reason);
+        long ttl = Math.max(1, expiry.toEpochMilli() - now.toEpochMilli());
+        revokedTokens.put(jti, revokedToken, ttl, TimeUnit.MILLISECONDS);
+        addToFilters(jti);
+        revocations.publish(jti);
+        log.info("Revoked access token {} until {}", jti, expiry);
+        return revokedToken;
+    }
+
+    /**
+     * @return the current revocations, most recent first.
+     */
+    public List<RevokedToken> findAll() {
+        List<RevokedToken> result = new ArrayList<>(revokedTokens.values());
+        result.sort(Comparator.comparing(RevokedToken::getRevokedAt, Comparator.nullsLast(Comparator.reverseOrder())));
+        return result;
+    }
+
+    /**
+     * Get the revocation of a token.
+     *
+     * @param jti the {@code jti} claim of the token.
+     * @return the revocation; or empty if the token is not revoked.
+     */
+    public Optional<RevokedToken> findOne(String jti) {
+        return Optional.ofNullable(revokedTokens.get(jti));
+    }
+
+    /**
+     * Replace the local Bloom filter with one built from the distributed map.
+     */
+    void rebuildFilter() {
+        BloomFilter rebuilt = newFilter();
+        nextFilter = rebuilt;
+        try {
+            Collection<String> jtis = revokedTokens.keySet();
+            jtis.forEach(rebuilt::add);
+            filter = rebuilt;
+            log.debug("Rebuilt the revoked token Bloom filter with {} ids", jtis.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the revoked token Bloom filter: {}", e.getMessage());
+        } finally {
+            nextFilter = null;
+        }
+    }
+
+    /**
+     * Add a revoked id to the local filter, and to the one being rebuilt if any.
+     * The filter being rebuilt is read first: if there is none, either the rebuild has not started yet and will
+     * read this id from the map, or it has finished and {@code filter} is already the rebuilt one.
+     */
+    private void addToFilters(String jti) {
+        BloomFilter next = nextFilter;
+        if (next != null) {
+            next.add(jti);
+        }
+        filter.add(jti);
+    }
+
+    private BloomFilter newFilter() {
+        OAuth2Properties.TokenRevocation properties = oAuth2Properties.getTokenRevocation();
+        return new BloomFilter(properties.getExpectedRevocations(), properties.getFalsePositiveProbability());
+    }
+}
@@ -14,10 +14,16 @@ import org.springframework.security.oauth2.common.exceptions.InvalidClientExcept
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.math.BigInteger;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Client fetching the public key from UAA to create a {@link SignatureVerifier}.
+ * <p>
+ * If a JWK set endpoint is configured, every active RSA key is fetched from it, indexed by its {@code kid}.
  */
 @Component
 public class UaaSignatureVerifierClient implements OAuth2SignatureVerifierClient {
@@ -52,6 +58,44 @@ public class UaaSignatureVerifierClient implements OAuth2SignatureVerifierClient
         }
     }
 
+    /**
+     * Fetches every active public key from the UAA JWK set endpoint, if one is configured.
+     * Otherwise, only the single public key is fetched.
+     *
+     * @return the verifiers indexed by key id; or {@code null}.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, SignatureVerifier> getSignatureVerifiers() throws Exception {
+        String jwkSetUri = oAuth2Properties.getSignatureVerification().getJwkSetUri();
+        if (jwkSetUri == null) {
+            return OAuth2SignatureVerifierClient.super.getSignatureVerifiers();
+        }
+        try {
+            HttpEntity<Void> request = new HttpEntity<Void>(new HttpHeaders());
+            List<Map<String, Object>> keys = (List<Map<String, Object>>) restTemplate
+                .exchange(jwkSetUri, HttpMethod.GET, request, Map.class).getBody()
+                .get("keys");
+            Map<String, SignatureVerifier> verifiers = new HashMap<>();
+            for (Map<String, Object> key : keys) {
+                if (!"RSA".equals(key.get("kty")) || "enc".equals(key.get("use"))) {
+                    continue;
+                }
+                String keyId = key.containsKey("kid") ? (String) key.get("kid") : DEFAULT_KEY_ID;
+                verifiers.put(keyId, new RsaVerifier(decodeUnsigned(key.get("n")), decodeUnsigned(key.get("e"))));
+            }
+            log.debug("Fetched {} public keys from UAA", verifiers.size());
+            return verifiers;
+        } catch (IllegalStateException ex) {
+            log.warn("could not contact UAA to get public keys");
+            return null;
+        }
+    }
+
+    private static BigInteger decodeUnsigned(Object base64UrlValue) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode((String) base64UrlValue));
+    }
+
     /**
      * Returns the configured endpoint URI to retrieve the public key.
      *
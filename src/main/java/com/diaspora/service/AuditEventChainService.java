@@ -0,0 +1,447 @@
+package com.diaspora.service;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.service.dto.AuditChainVerificationDTO;
+import com.diaspora.service.dto.AuditChainVerificationDTO.Failure;
+import com.diaspora.service.dto.AuditChainVerificationDTO.FailureReason;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.crypto.codec.Hex;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service sealing the audit events into a tamper-evident chain of blocks, and verifying ranges of the chain.
+ * <p>
+ * The events are not hashed when they are written, which would make every writer wait for the hash of the previous
+ * event. A scheduled job seals the events written since its previous run into blocks of at most
+ * {@code application.audit.chain.block-size} events, in the {@value #BLOCK_TABLE} table: so a block is bounded by
+ * its size, and by the time between two runs. Each block holds the Merkle tree hash of its events, see
+ * {@link AuditEventMerkleTree}, which are hashed in parallel across the blocks, and its own hash, which covers the
+ * hash of the previous block. An event belongs to the block set in its {@code block_id}: an event written late, such
+ * as one replayed from the journal, is sealed into a later block.
+ * <p>
+ * A range of blocks is verified by hashing again the events of these blocks only, and checking that each block
+ * follows the previous one. Changing, adding or removing an event is detected, and so is rewriting the blocks after
+ * it, by comparing the hash of the head block with one kept by the auditors. The events of a block may only be missing
+ * once its newest event, whose date the block hash covers, is older than the retention period: the
+ * {@link AuditEventRetentionService} never purges part of a block.
+ * <p>
+ * A single node of the cluster seals the events at a time.
+ */
+@Service
+public class AuditEventChainService {
+
+    private static final String EVENT_TABLE = "jhi_persistent_audit_event";
+
+    private static final String BLOCK_TABLE = "jhi_audit_event_block";
+
+    private static final String FIRST_BLOCK = "select min(block_id) from " + BLOCK_TABLE;
+
+    private static final String HEAD_BLOCK = "select block_id, block_hash from " + BLOCK_TABLE +
+        " order by block_id desc limit 1";
+
+    private static final String UNSEALED_EVENTS = "select event_id, principal, event_date, event_type, event_data from " +
+        EVENT_TABLE + " where block_id is null order by event_id limit ?";
+
+    private static final String INSERT_BLOCK = "insert into " + BLOCK_TABLE + " (block_id, event_count, first_event_id," +
+        " last_event_id, first_event_date, last_event_date, sealed_date, merkle_root, previous_hash, block_hash)" +
+        " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String BLOCKS = "select block_id, event_count, first_event_date, last_event_date, merkle_root," +
+        " previous_hash, block_hash from " + BLOCK_TABLE + " where block_id between ? and ? order by block_id";
+
+    private static final String BLOCK_EVENTS = "select block_id, event_id, principal, event_date, event_type, event_data" +
+        " from " + EVENT_TABLE + " where block_id between ? and ? order by block_id, event_id";
+
+    private static final String LOCK_MAP = "audit-chain";
+
+    /**
+     * Time after which the lock is released if the node holding it died, longer than any sealing.
+     */
+    private static final long LOCK_LEASE_MINUTES = 10;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventChainService.class);
+
+    private final DataSource dataSource;
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final ApplicationProperties.Audit.Chain properties;
+
+    private final ApplicationProperties.Audit.Retention retentionProperties;
+
+    public AuditEventChainService(DataSource dataSource, HazelcastInstance hazelcastInstance,
+                                  ApplicationProperties applicationProperties) {
+        this.dataSource = dataSource;
+        this.hazelcastInstance = hazelcastInstance;
+        this.properties = applicationProperties.getAudit().getChain();
+        this.retentionProperties = applicationProperties.getAudit().getRetention();
+    }
+
+    /**
+     * Seal the new events, unless another node of the cluster is already doing it.
+     * <p>
+     * This is scheduled to get fired every {@code application.audit.chain.seal-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${application.audit.chain.seal-interval-ms:10000}")
+    public void sealNewEvents() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        IMap<String, Boolean> locks = hazelcastInstance.getMap(LOCK_MAP);
+        try {
+            if (!locks.tryLock(BLOCK_TABLE, 0, TimeUnit.SECONDS, LOCK_LEASE_MINUTES, TimeUnit.MINUTES)) {
+                log.debug("Audit events already sealed by another node");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            seal();
+        } finally {
+            locks.unlock(BLOCK_TABLE);
+        }
+    }
+
+    /**
+     * Seal the events which are not in a block yet into new blocks, at most
+     * {@code application.audit.chain.max-blocks-per-run} of them.
+     *
+     * @return the number of blocks sealed.
+     */
+    public int seal() {
+        List<Block> blocks;
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long blockId = 0;
+                byte[] previousHash = null;
+                try (PreparedStatement select = connection.prepareStatement(HEAD_BLOCK);
+                     ResultSet resultSet = select.executeQuery()) {
+                    if (resultSet.next()) {
+                        blockId = resultSet.getLong(1);
+                        previousHash = resultSet.getBytes(2);
+                    }
+                }
+                blocks = unsealedBlocks(connection, blockId);
+                if (blocks.isEmpty()) {
+                    connection.commit();
+                    return 0;
+                }
+                // The Merkle trees are independent, only the chaining of the blocks is sequential
+                blocks.parallelStream().forEach(Block::hashEvents);
+                for (Block block : blocks) {
+                    block.previousHash = previousHash;
+                    block.blockHash = AuditEventMerkleTree.blockHash(block.id, block.eventIds.size(),
+                        block.firstEventDate, block.lastEventDate, block.merkleRoot, previousHash);
+                    previousHash = block.blockHash;
+                }
+                insertBlocks(connection, blocks, Instant.now());
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return blocks.size();
+    }
+
+    /**
+     * Verify a range of blocks: the blocks out of the chain are left out of the range.
+     *
+     * @param fromBlockId the first block of the range, by default the one
+     * {@code application.audit.chain.max-verified-blocks} blocks before the last block.
+     * @param toBlockId the last block of the range, by default the last block of the chain.
+     * @return the result of the verification.
+     */
+    public AuditChainVerificationDTO verify(Long fromBlockId, Long toBlockId) {
+        AuditChainVerificationDTO verification = new AuditChainVerificationDTO();
+        try (Connection connection = dataSource.getConnection()) {
+            long last;
+            try (PreparedStatement select = connection.prepareStatement(HEAD_BLOCK);
+                 ResultSet resultSet = select.executeQuery()) {
+                if (!resultSet.next()) {
+                    return verification;
+                }
+                last = resultSet.getLong(1);
+                verification.setHeadBlockId(last);
+                verification.setHeadBlockHash(new String(Hex.encode(resultSet.getBytes(2))));
+            }
+            long first;
+            try (PreparedStatement select = connection.prepareStatement(FIRST_BLOCK);
+                 ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                first = resultSet.getLong(1);
+            }
+            long to = toBlockId != null ? Math.min(toBlockId, last) : last;
+            long from = Math.max(fromBlockId != null ? fromBlockId : to - properties.getMaxVerifiedBlocks() + 1, first);
+            if (from > to) {
+                return verification;
+            }
+            verification.setFromBlockId(from);
+            verification.setToBlockId(to);
+            // The previous block is read to check that the first block of the range follows it
+            Map<Long, Block> blocks = blocks(connection, Math.max(from - 1, first), to);
+            readEvents(connection, blocks, from, to);
+            blocks.values().parallelStream()
+                .filter(block -> block.id >= from && block.id <= to)
+                .forEach(Block::hashEvents);
+
+            Instant cutoff = Instant.now().minus(retentionProperties.getMaxAgeDays(), ChronoUnit.DAYS);
+            for (long id = from; id <= to; id++) {
+                Block block = blocks.get(id);
+                FailureReason reason = block != null ? check(block, blocks.get(id - 1), cutoff) : FailureReason.MISSING_BLOCK;
+                if (reason != null) {
+                    verification.getFailures().add(new Failure(id, reason));
+                }
+                if (block != null) {
+                    verification.setVerifiedBlocks(verification.getVerifiedBlocks() + 1);
+                    verification.setVerifiedEvents(verification.getVerifiedEvents() + block.leaves.size());
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        if (!verification.isValid()) {
+            log.warn("Audit chain verification failed: {}", verification);
+        }
+        return verification;
+    }
+
+    /**
+     * @param block the block, with the Merkle tree hash of its events.
+     * @param previous the previous block, {@code null} if it was purged or is missing.
+     * @param cutoff the time before which the events are purged.
+     * @return why the block failed the verification, {@code null} if it passed it.
+     */
+    private static FailureReason check(Block block, Block previous, Instant cutoff) {
+        byte[] blockHash = AuditEventMerkleTree.blockHash(block.id, block.eventCount, block.firstEventDate,
+            block.lastEventDate, block.merkleRoot, block.previousHash);
+        if (!Arrays.equals(blockHash, block.blockHash)) {
+            return FailureReason.BLOCK_HASH_MISMATCH;
+        }
+        if (previous != null ? !Arrays.equals(block.previousHash, previous.blockHash) : block.previousHash == null && block.id > 1) {
+            return FailureReason.CHAIN_BROKEN;
+        }
+        if (block.leaves.size() < block.eventCount && block.lastEventDate != null && block.lastEventDate.isBefore(cutoff)) {
+            return FailureReason.EVENTS_PURGED;
+        }
+        if (block.leaves.size() != block.eventCount) {
+            return FailureReason.EVENT_COUNT_MISMATCH;
+        }
+        if (!Arrays.equals(block.computedMerkleRoot, block.merkleRoot)) {
+            return FailureReason.MERKLE_ROOT_MISMATCH;
+        }
+        return null;
+    }
+
+    private List<Block> unsealedBlocks(Connection connection, long headBlockId) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        List<Block> blocks = new ArrayList<>();
+        Block block = null;
+        try (PreparedStatement select = connection.prepareStatement(UNSEALED_EVENTS)) {
+            select.setInt(1, properties.getBlockSize() * properties.getMaxBlocksPerRun());
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    if (block == null || block.eventIds.size() == properties.getBlockSize()) {
+                        block = new Block(headBlockId + blocks.size() + 1);
+                        blocks.add(block);
+                    }
+                    long eventId = resultSet.getLong(1);
+                    Timestamp date = resultSet.getTimestamp(3, calendar);
+                    block.add(eventId, date != null ? date.toInstant() : null, leaf(eventId, resultSet.getString(2),
+                        date, resultSet.getString(4), resultSet.getBytes(5)));
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private void insertBlocks(Connection connection, List<Block> blocks, Instant now) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_BLOCK)) {
+            for (Block block : blocks) {
+                insert.setLong(1, block.id);
+                insert.setInt(2, block.eventIds.size());
+                insert.setLong(3, block.eventIds.get(0));
+                insert.setLong(4, block.eventIds.get(block.eventIds.size() - 1));
+                insert.setTimestamp(5, block.firstEventDate != null ? Timestamp.from(block.firstEventDate) : null, calendar);
+                insert.setTimestamp(6, block.lastEventDate != null ? Timestamp.from(block.lastEventDate) : null, calendar);
+                insert.setTimestamp(7, Timestamp.from(now), calendar);
+                insert.setBytes(8, block.merkleRoot);
+                insert.setBytes(9, block.previousHash);
+                insert.setBytes(10, block.blockHash);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+        for (Block block : blocks) {
+            try (PreparedStatement update = connection.prepareStatement("update " + EVENT_TABLE + " set block_id = ?" +
+                " where block_id is null and event_id in (" + String.join(", ", Collections.nCopies(block.eventIds.size(), "?")) + ")")) {
+                update.setLong(1, block.id);
+                for (int i = 0; i < block.eventIds.size(); i++) {
+                    update.setLong(i + 2, block.eventIds.get(i));
+                }
+                if (update.executeUpdate() != block.eventIds.size()) {
+                    throw new IllegalStateException("Audit events of block " + block.id + " sealed concurrently");
+                }
+            }
+        }
+        log.debug("Sealed {} audit event blocks, up to block {}", blocks.size(), blocks.get(blocks.size() - 1).id);
+    }
+
+    private static Map<Long, Block> blocks(Connection connection, long from, long to) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        Map<Long, Block> blocks = new LinkedHashMap<>();
+        try (PreparedStatement select = connection.prepareStatement(BLOCKS)) {
+            select.setLong(1, from);
+            select.setLong(2, to);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    Block block = new Block(resultSet.getLong(1));
+                    block.eventCount = resultSet.getInt(2);
+                    Timestamp firstEventDate = resultSet.getTimestamp(3, calendar);
+                    block.firstEventDate = firstEventDate != null ? firstEventDate.toInstant() : null;
+                    Timestamp lastEventDate = resultSet.getTimestamp(4, calendar);
+                    block.lastEventDate = lastEventDate != null ? lastEventDate.toInstant() : null;
+                    block.merkleRoot = resultSet.getBytes(5);
+                    block.previousHash = resultSet.getBytes(6);
+                    block.blockHash = resultSet.getBytes(7);
+                    blocks.put(block.id, block);
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Read the events of a range of blocks, an event of a missing block being left out.
+     */
+    private static void readEvents(Connection connection, Map<Long, Block> blocks, long from, long to) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        try (PreparedStatement select = connection.prepareStatement(BLOCK_EVENTS)) {
+            select.setLong(1, from);
+            select.setLong(2, to);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    Block block = blocks.get(resultSet.getLong(1));
+                    if (block != null) {
+                        long eventId = resultSet.getLong(2);
+                        block.leaves.add(leaf(eventId, resultSet.getString(3), resultSet.getTimestamp(4, calendar),
+                            resultSet.getString(5), resultSet.getBytes(6)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the content of the leaf of an event, made of all its columns as stored.
+     */
+    static byte[] leaf(long eventId, String principal, Timestamp date, String type, byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (data != null ? data.length : 0));
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeLong(eventId);
+            output.writeUTF(principal);
+            output.writeBoolean(date != null);
+            if (date != null) {
+                Instant instant = date.toInstant();
+                output.writeLong(instant.getEpochSecond());
+                output.writeInt(instant.getNano());
+            }
+            output.writeBoolean(type != null);
+            if (type != null) {
+                output.writeUTF(type);
+            }
+            output.writeInt(data != null ? data.length : -1);
+            if (data != null) {
+                output.write(data);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A block, being sealed or verified.
+     */
+    private static class Block {
+
+        private final long id;
+
+        private final List<Long> eventIds = new ArrayList<>();
+
+        private final List<byte[]> leaves = new ArrayList<>();
+
+        private int eventCount;
+
+        private Instant firstEventDate;
+
+        private Instant lastEventDate;
+
+        private byte[] merkleRoot;
+
+        private byte[] computedMerkleRoot;
+
+        private byte[] previousHash;
+
+        private byte[] blockHash;
+
+        Block(long id) {
+            this.id = id;
+        }
+
+        void add(long eventId, Instant date, byte[] leaf) {
+            eventIds.add(eventId);
+            leaves.add(leaf);
+            if (date != null && (firstEventDate == null || date.isBefore(firstEventDate))) {
+                firstEventDate = date;
+            }
+            if (date != null && (lastEventDate == null || date.isAfter(lastEventDate))) {
+                lastEventDate = date;
+            }
+        }
+
+        void hashEvents() {
+            computedMerkleRoot = AuditEventMerkleTree.root(leaves);
+            if (merkleRoot == null) {
+                merkleRoot = computedMerkleRoot;
+            }
+        }
+    }
+}
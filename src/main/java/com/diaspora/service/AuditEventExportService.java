@@ -0,0 +1,228 @@
+package com.diaspora.service;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.AuditEventSearchRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Service exporting the audit events as a stream, in NDJSON or CSV.
+ * <p>
+ * Each event is written to the output as soon as it is read from the database cursor, see
+ * {@link AuditEventSearchRepository#stream}, so that the memory used is the same whatever the number of events.
+ * <p>
+ * The {@code audit.export.rows} counter, by format, counts the exported events: its rate is the number of rows
+ * exported per second. The {@code audit.export} timer measures the exports, whose rate is also logged.
+ */
+@Service
+public class AuditEventExportService {
+
+    /**
+     * Format of an export.
+     */
+    public enum Format {
+        /**
+         * One JSON object per line.
+         */
+        NDJSON("application/x-ndjson", "ndjson"),
+        /**
+         * A header line, then one line per event, its data as a JSON object; the values read as formulas by the
+         * spreadsheets are prefixed with a {@code '}.
+         */
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "id,principal,timestamp,type,data\r\n";
+
+    /**
+     * First characters of the values read as formulas by the spreadsheets.
+     */
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventExportService.class);
+
+    private final AuditEventSearchRepository auditEventSearchRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final ApplicationProperties.Audit.Export properties;
+
+    private final Map<Format, Counter> exportedRows = new EnumMap<>(Format.class);
+
+    private final Map<Format, Timer> exportTimers = new EnumMap<>(Format.class);
+
+    public AuditEventExportService(AuditEventSearchRepository auditEventSearchRepository, ObjectMapper objectMapper,
+                                   ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.auditEventSearchRepository = auditEventSearchRepository;
+        this.objectMapper = objectMapper;
+        this.properties = applicationProperties.getAudit().getExport();
+        for (Format format : Format.values()) {
+            String tag = format.getExtension();
+            exportedRows.put(format, Counter.builder("audit.export.rows")
+                .description("Audit events exported")
+                .tag("format", tag)
+                .register(meterRegistry));
+            exportTimers.put(format, Timer.builder("audit.export")
+                .description("Time spent exporting audit events")
+                .tag("format", tag)
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Export the events matching the criteria, oldest first.
+     *
+     * @param criteria the search criteria.
+     * @param format the format of the export.
+     * @param out the output, which is flushed but not closed.
+     * @return the number of events exported.
+     * @throws IOException if the output cannot be written.
+     */
+    public long export(AuditEventSearchRepository.Criteria criteria, Format format, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+        long rows;
+        try {
+            if (format == Format.NDJSON) {
+                rows = exportNdjson(criteria, out);
+            } else {
+                rows = exportCsv(criteria, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        long elapsed = System.nanoTime() - start;
+        exportTimers.get(format).record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Exported {} audit events as {} in {} ms, {} rows/s", rows, format, TimeUnit.NANOSECONDS.toMillis(elapsed),
+            rows * TimeUnit.SECONDS.toNanos(1) / Math.max(elapsed, 1));
+        return rows;
+    }
+
+    private long exportNdjson(AuditEventSearchRepository.Criteria criteria, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            long rows = stream(criteria, Format.NDJSON, event -> {
+                writeJson(generator, event);
+                generator.writeRaw('\n');
+            });
+            generator.flush();
+            return rows;
+        }
+    }
+
+    private long exportCsv(AuditEventSearchRepository.Criteria criteria, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+        writer.write(CSV_HEADER);
+        long rows = stream(criteria, Format.CSV, event -> {
+            writer.write(Long.toString(event.getId()));
+            writer.write(',');
+            writeCsv(writer, event.getPrincipal());
+            writer.write(',');
+            writer.write(event.getAuditEventDate().toString());
+            writer.write(',');
+            writeCsv(writer, event.getAuditEventType());
+            writer.write(',');
+            writeCsv(writer, event.getData().isEmpty() ? null : objectMapper.writeValueAsString(event.getData()));
+            writer.write("\r\n");
+        });
+        writer.flush();
+        return rows;
+    }
+
+    private long stream(AuditEventSearchRepository.Criteria criteria, Format format, EventWriter eventWriter) {
+        Counter counter = exportedRows.get(format);
+        Consumer<PersistentAuditEvent> consumer = event -> {
+            try {
+                eventWriter.write(event);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            counter.increment();
+        };
+        return auditEventSearchRepository.stream(criteria, properties.getFetchSize(), consumer);
+    }
+
+    private static void writeJson(JsonGenerator generator, PersistentAuditEvent event) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", event.getId());
+        generator.writeStringField("principal", event.getPrincipal());
+        generator.writeStringField("timestamp", event.getAuditEventDate().toString());
+        generator.writeStringField("type", event.getAuditEventType());
+        generator.writeObjectFieldStart("data");
+        for (Map.Entry<String, String> entry : event.getData().entrySet()) {
+            generator.writeStringField(entry.getKey(), entry.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write a CSV field, quoted if needed as defined by RFC 4180.
+     * <p>
+     * A value which a spreadsheet would read as a formula, such as a principal typed in a failed login, is prefixed
+     * with a {@code '}, so that it is shown as text instead of being evaluated.
+     */
+    private static void writeCsv(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    @FunctionalInterface
+    private interface EventWriter {
+
+        void write(PersistentAuditEvent event) throws IOException;
+    }
+}
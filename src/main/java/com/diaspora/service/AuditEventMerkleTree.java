@@ -0,0 +1,97 @@
+package com.diaspora.service;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * SHA-256 hashes of the audit event blocks: the Merkle tree hash of the events of a block, as defined by RFC 6962,
+ * and the hash chaining the blocks.
+ * <p>
+ * Leaves, interior nodes and blocks are hashed with distinct prefixes, so that a hash of one kind cannot be passed
+ * off as another.
+ */
+final class AuditEventMerkleTree {
+
+    static final int HASH_LENGTH = 32;
+
+    private static final byte LEAF_PREFIX = 0;
+
+    private static final byte NODE_PREFIX = 1;
+
+    private static final byte BLOCK_PREFIX = 2;
+
+    private AuditEventMerkleTree() {
+    }
+
+    /**
+     * @param leaves the contents of the leaves, in order.
+     * @return the Merkle tree hash of the leaves.
+     */
+    static byte[] root(List<byte[]> leaves) {
+        MessageDigest digest = sha256();
+        byte[][] hashes = new byte[leaves.size()][];
+        for (int i = 0; i < hashes.length; i++) {
+            digest.update(LEAF_PREFIX);
+            hashes[i] = digest.digest(leaves.get(i));
+        }
+        return hashes.length == 0 ? digest.digest() : root(digest, hashes, 0, hashes.length);
+    }
+
+    /**
+     * The tree of {@code n} leaves is split after the largest power of two smaller than {@code n}.
+     */
+    private static byte[] root(MessageDigest digest, byte[][] hashes, int from, int to) {
+        int n = to - from;
+        if (n == 1) {
+            return hashes[from];
+        }
+        int split = Integer.highestOneBit(n - 1);
+        byte[] left = root(digest, hashes, from, from + split);
+        byte[] right = root(digest, hashes, from + split, to);
+        digest.update(NODE_PREFIX);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    /**
+     * @param blockId the id of the block.
+     * @param eventCount the number of events of the block.
+     * @param firstEventDate the date of the oldest event of the block, {@code null} if none of its events has a date.
+     * @param lastEventDate the date of the newest event of the block, {@code null} if none of its events has a date.
+     * @param merkleRoot the Merkle tree hash of the events of the block.
+     * @param previousHash the hash of the previous block, {@code null} for the first block.
+     * @return the hash of the block.
+     */
+    static byte[] blockHash(long blockId, int eventCount, Instant firstEventDate, Instant lastEventDate, byte[] merkleRoot,
+                            byte[] previousHash) {
+        MessageDigest digest = sha256();
+        digest.update(BLOCK_PREFIX);
+        ByteBuffer header = ByteBuffer.allocate(3 * Long.BYTES + 3 * Integer.BYTES + 2)
+            .putLong(blockId)
+            .putInt(eventCount);
+        putDate(header, firstEventDate);
+        putDate(header, lastEventDate);
+        digest.update(header.array(), 0, header.position());
+        digest.update(merkleRoot);
+        return digest.digest(previousHash != null ? previousHash : new byte[HASH_LENGTH]);
+    }
+
+    private static void putDate(ByteBuffer header, Instant date) {
+        if (date != null) {
+            header.put((byte) 1).putLong(date.getEpochSecond()).putInt(date.getNano());
+        } else {
+            header.put((byte) 0);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
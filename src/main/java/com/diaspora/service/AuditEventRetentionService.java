@@ -0,0 +1,474 @@
+package com.diaspora.service;
+
+import com.diaspora.config.ApplicationProperties;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Service purging the audit events older than {@code application.audit.retention.max-age-days}.
+ * <p>
+ * On MySQL the {@value #TABLE} table is partitioned by month of {@code event_date}, see the
+ * {@code 20261017000001_partition_audit_events.xml} changelog. The expired months are dropped a whole partition at a
+ * time, which locks no row and writes no undo log, and the partitions of the coming months are split ahead of time
+ * from the {@value #FUTURE_PARTITION} partition. The date range queries only read the partitions of their range, so
+ * the recent events are found as fast whatever the history kept. Beware that the first split of a populated
+ * {@value #FUTURE_PARTITION} partition, like the partitioning of the table by the changelog, copies all the events
+ * and blocks the writes meanwhile: on a large table, deploy off-peak or partition it beforehand with an online schema
+ * change tool.
+ * <p>
+ * On a table that is not partitioned, the expired events are deleted in small chunks, each in its own transaction,
+ * with a pause between two chunks. Each chunk starts after the last event of the previous one in the
+ * {@code idx_persistent_audit_event_date} index, instead of scanning again the entries of the deleted events that
+ * the database has not purged yet.
+ * <p>
+ * The events of a block of the audit event chain, see {@link AuditEventChainService}, are only purged once all of
+ * them expired, so that the verification of the chain tells them apart from removed events: the purge stops at the
+ * oldest event of the blocks whose newest event has not expired yet, keeping the expired events of these blocks until
+ * their newest event expires. The blocks are deleted once all their events were purged, the last block aside, which
+ * the next block follows. The counts of the events per minute, see {@link AuditEventRollupService}, are kept as long
+ * as the events.
+ * <p>
+ * A single node of the cluster runs the scheduled purge at a time, on a thread of its own.
+ */
+@Service
+public class AuditEventRetentionService {
+
+    static final String FUTURE_PARTITION = "p_future";
+
+    private static final String TABLE = "jhi_persistent_audit_event";
+
+    private static final String BLOCK_TABLE = "jhi_audit_event_block";
+
+    private static final String ROLLUP_TABLE = "jhi_audit_event_rollup";
+
+    private static final String FIRST_CHUNK = "select event_id, event_date from " + TABLE +
+        " where event_date < ? order by event_date, event_id limit ?";
+
+    private static final String NEXT_CHUNK = "select event_id, event_date from " + TABLE +
+        " where event_date < ? and (event_date > ? or (event_date = ? and event_id > ?))" +
+        " order by event_date, event_id limit ?";
+
+    private static final String LOCK_MAP = "audit-retention";
+
+    /**
+     * Time after which the lock is released if the node holding it died.
+     */
+    private static final long LOCK_LEASE_HOURS = 6;
+
+    /**
+     * Time before the end of the lease after which no chunk is deleted anymore, the next purge deleting the rest.
+     */
+    private static final long LOCK_LEASE_MARGIN_MINUTES = 30;
+
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventRetentionService.class);
+
+    private final DataSource dataSource;
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final SessionFactoryImplementor sessionFactory;
+
+    private final ApplicationProperties.Audit.Retention properties;
+
+    private final ExecutorService purgeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "audit-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicBoolean purging = new AtomicBoolean();
+
+    public AuditEventRetentionService(DataSource dataSource, HazelcastInstance hazelcastInstance,
+                                      EntityManagerFactory entityManagerFactory, ApplicationProperties applicationProperties) {
+        this.dataSource = dataSource;
+        this.hazelcastInstance = hazelcastInstance;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.properties = applicationProperties.getAudit().getRetention();
+    }
+
+    /**
+     * Start purging the expired events on a thread of its own, so that a long purge does not hold a thread of the
+     * scheduler, unless a purge is still running.
+     * <p>
+     * This is scheduled to get fired according to {@code application.audit.retention.cron}.
+     */
+    @Scheduled(cron = "${application.audit.retention.cron:0 30 3 * * ?}")
+    public void purgeExpiredEvents() {
+        if (!properties.isEnabled() || !purging.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            purgeExecutor.execute(() -> {
+                try {
+                    purgeUnlessPurgedElsewhere();
+                } finally {
+                    purging.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            purging.set(false);
+        }
+    }
+
+    /**
+     * Purge the expired events, unless another node of the cluster is already doing it. The chunks are not deleted
+     * anymore close to the end of the lease of the lock.
+     */
+    private void purgeUnlessPurgedElsewhere() {
+        IMap<String, Boolean> locks = hazelcastInstance.getMap(LOCK_MAP);
+        try {
+            if (!locks.tryLock(TABLE, 0, TimeUnit.SECONDS, LOCK_LEASE_HOURS, TimeUnit.HOURS)) {
+                log.debug("Audit events already purged by another node");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            Instant deadline = now.plus(LOCK_LEASE_HOURS, ChronoUnit.HOURS)
+                .minus(LOCK_LEASE_MARGIN_MINUTES, ChronoUnit.MINUTES);
+            purge(now, deadline);
+        } catch (RuntimeException e) {
+            log.error("Could not purge the expired audit events: {}", e.getMessage(), e);
+        } finally {
+            try {
+                locks.unlock(TABLE);
+            } catch (IllegalMonitorStateException e) {
+                log.warn("The purge of the audit events outlived the {} h lease of its lock", LOCK_LEASE_HOURS);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        purgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Purge the events older than the maximum age.
+     *
+     * @param now the current time.
+     */
+    public void purge(Instant now) {
+        purge(now, Instant.MAX);
+    }
+
+    /**
+     * Purge the events older than the maximum age.
+     *
+     * @param now the current time.
+     * @param deadline the time after which no chunk is deleted anymore.
+     */
+    void purge(Instant now, Instant deadline) {
+        Instant cutoff = now.minus(properties.getMaxAgeDays(), ChronoUnit.DAYS);
+        try (Connection connection = dataSource.getConnection()) {
+            Instant eventCutoff = unexpiredBlocksStart(connection, cutoff);
+            List<Partition> partitions = partitions(connection);
+            if (partitions.isEmpty()) {
+                purgeInChunks(connection, eventCutoff, deadline);
+            } else {
+                maintainPartitions(connection, partitions, now, eventCutoff);
+            }
+            deletePurgedBlocks(connection, cutoff);
+            deleteExpiredRollups(connection, cutoff);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        invalidateCachedQueries();
+    }
+
+    /**
+     * @return the cutoff, or the date of the oldest event of the oldest block whose newest event is not older than
+     * the cutoff if earlier, so that no block loses only part of its events.
+     */
+    private static Instant unexpiredBlocksStart(Connection connection, Instant cutoff) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        try (PreparedStatement select = connection.prepareStatement("select min(first_event_date) from " + BLOCK_TABLE +
+            " where last_event_date >= ?")) {
+            select.setTimestamp(1, Timestamp.from(cutoff), calendar);
+            try (ResultSet resultSet = select.executeQuery()) {
+                resultSet.next();
+                Timestamp start = resultSet.getTimestamp(1, calendar);
+                return start != null && start.toInstant().isBefore(cutoff) ? start.toInstant() : cutoff;
+            }
+        }
+    }
+
+    private void maintainPartitions(Connection connection, List<Partition> partitions, Instant now, Instant cutoff)
+        throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            Instant oldest = null;
+            if (partitions.size() == 1) {
+                // Nothing split yet: the monthly partitions start with the oldest event
+                try (ResultSet resultSet = statement.executeQuery("select min(event_date) from " + TABLE +
+                    " partition (" + FUTURE_PARTITION + ")")) {
+                    resultSet.next();
+                    Timestamp timestamp = resultSet.getTimestamp(1, Calendar.getInstance(UTC));
+                    oldest = timestamp != null ? timestamp.toInstant() : null;
+                }
+            }
+            if (oldest != null) {
+                log.warn("Splitting the monthly audit event partitions for the first time: this copies all the events");
+            }
+            for (String change : partitionChanges(partitions, oldest, now, cutoff, properties.getPartitionsAhead())) {
+                log.info("Changing the audit event partitions: {}", change);
+                statement.execute(change);
+            }
+        }
+    }
+
+    /**
+     * Plan the changes of the partitions: split the monthly partitions up to {@code partitionsAhead} months after
+     * the current one from the {@value #FUTURE_PARTITION} partition, then drop the partitions of the months that
+     * ended before the cutoff.
+     *
+     * @param partitions the partitions of the table, in order.
+     * @param oldest the date of the oldest event of the {@value #FUTURE_PARTITION} partition, only needed when it is
+     * the only partition.
+     * @param now the current time.
+     * @param cutoff the time before which the events are purged.
+     * @param partitionsAhead the number of months to create ahead of the current one.
+     * @return the {@code alter table} statements.
+     */
+    static List<String> partitionChanges(List<Partition> partitions, Instant oldest, Instant now, Instant cutoff,
+                                         int partitionsAhead) {
+        List<Partition> bounded = partitions.stream()
+            .filter(partition -> partition.getLessThan() != Long.MAX_VALUE)
+            .collect(Collectors.toCollection(ArrayList::new));
+        YearMonth month;
+        if (!bounded.isEmpty()) {
+            month = month(Instant.ofEpochSecond(bounded.get(bounded.size() - 1).getLessThan()));
+        } else if (oldest != null && oldest.isBefore(now)) {
+            month = month(oldest);
+        } else {
+            month = month(now);
+        }
+        YearMonth until = month(now).plusMonths(partitionsAhead + 1L);
+        List<String> created = new ArrayList<>();
+        for (; month.isBefore(until); month = month.plusMonths(1)) {
+            Partition partition = new Partition(month.format(PARTITION_NAME),
+                month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond());
+            created.add("partition " + partition.getName() + " values less than (" + partition.getLessThan() + ")");
+            bounded.add(partition);
+        }
+
+        List<String> changes = new ArrayList<>();
+        if (!created.isEmpty()) {
+            changes.add("alter table " + TABLE + " reorganize partition " + FUTURE_PARTITION + " into (" +
+                String.join(", ", created) + ", partition " + FUTURE_PARTITION + " values less than maxvalue)");
+        }
+        String expired = bounded.stream()
+            .filter(partition -> partition.getLessThan() <= cutoff.getEpochSecond())
+            .map(Partition::getName)
+            .collect(Collectors.joining(", "));
+        if (!expired.isEmpty()) {
+            changes.add("alter table " + TABLE + " drop partition " + expired);
+        }
+        return changes;
+    }
+
+    private void purgeInChunks(Connection connection, Instant cutoff, Instant deadline) throws SQLException {
+        Calendar calendar = Calendar.getInstance(UTC);
+        long deleted = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            Timestamp lastDate = null;
+            long lastId = 0;
+            List<Long> ids;
+            do {
+                ids = new ArrayList<>(properties.getChunkSize());
+                try (PreparedStatement select = connection.prepareStatement(lastDate == null ? FIRST_CHUNK : NEXT_CHUNK)) {
+                    int parameter = 1;
+                    select.setTimestamp(parameter++, Timestamp.from(cutoff), calendar);
+                    if (lastDate != null) {
+                        select.setTimestamp(parameter++, lastDate, calendar);
+                        select.setTimestamp(parameter++, lastDate, calendar);
+                        select.setLong(parameter++, lastId);
+                    }
+                    select.setInt(parameter, properties.getChunkSize());
+                    try (ResultSet resultSet = select.executeQuery()) {
+                        while (resultSet.next()) {
+                            ids.add(resultSet.getLong(1));
+                            lastDate = resultSet.getTimestamp(2, calendar);
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                lastId = ids.get(ids.size() - 1);
+                try (PreparedStatement delete = connection.prepareStatement("delete from " + TABLE +
+                    " where event_id in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")")) {
+                    for (int i = 0; i < ids.size(); i++) {
+                        delete.setLong(i + 1, ids.get(i));
+                    }
+                    delete.executeUpdate();
+                }
+                connection.commit();
+                deleted += ids.size();
+            } while (ids.size() == properties.getChunkSize() && pause(deadline));
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        log.info("Purged {} audit events older than {}", deleted, cutoff);
+    }
+
+    private void deletePurgedBlocks(Connection connection, Instant cutoff) throws SQLException {
+        long lastBlockId;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select max(block_id) from " + BLOCK_TABLE)) {
+            resultSet.next();
+            lastBlockId = resultSet.getLong(1);
+        }
+        try (PreparedStatement delete = connection.prepareStatement("delete from " + BLOCK_TABLE +
+            " where last_event_date < ? and block_id < ? and not exists (select 1 from " + TABLE +
+            " where " + TABLE + ".block_id = " + BLOCK_TABLE + ".block_id)")) {
+            delete.setTimestamp(1, Timestamp.from(cutoff), Calendar.getInstance(UTC));
+            delete.setLong(2, lastBlockId);
+            int deleted = delete.executeUpdate();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            if (deleted > 0) {
+                log.info("Deleted {} audit event blocks whose events were all purged", deleted);
+            }
+        }
+    }
+
+    private void deleteExpiredRollups(Connection connection, Instant cutoff) throws SQLException {
+        try (PreparedStatement delete = connection.prepareStatement("delete from " + ROLLUP_TABLE +
+            " where bucket_start < ?")) {
+            delete.setTimestamp(1, Timestamp.from(cutoff), Calendar.getInstance(UTC));
+            int deleted = delete.executeUpdate();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            log.info("Deleted {} audit event counts older than {}", deleted, cutoff);
+        }
+    }
+
+    /**
+     * @return {@code false} if the deadline passed or the thread was interrupted during the pause, and the purge should
+     * stop.
+     */
+    private boolean pause(Instant deadline) {
+        if (Instant.now().isAfter(deadline)) {
+            log.warn("Stopped purging the audit events at the end of the time allowed, the next purge will go on");
+            return false;
+        }
+        try {
+            Thread.sleep(properties.getChunkPauseMs());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The events were removed behind Hibernate's back: they may still be in cached query results.
+     */
+    private void invalidateCachedQueries() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            sessionFactory.getCache().getTimestampsCache()
+                .invalidate(new String[]{TABLE}, (SharedSessionContractImplementor) session);
+        }
+    }
+
+    /**
+     * @return the partitions of the table, in order, none if it is not partitioned.
+     */
+    private static List<Partition> partitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+        if (!"MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName())) {
+            return partitions;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("select partition_name, partition_description" +
+            " from information_schema.partitions where table_schema = database() and table_name = ?" +
+            " and partition_name is not null order by partition_ordinal_position")) {
+            statement.setString(1, TABLE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String description = resultSet.getString(2);
+                    partitions.add(new Partition(resultSet.getString(1),
+                        "MAXVALUE".equalsIgnoreCase(description) ? Long.MAX_VALUE : Long.parseLong(description)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    private static YearMonth month(Instant instant) {
+        return YearMonth.from(instant.atOffset(ZoneOffset.UTC));
+    }
+
+    /**
+     * Partition of the events whose {@code UNIX_TIMESTAMP(event_date)} is less than a bound.
+     */
+    static class Partition {
+
+        private final String name;
+
+        private final long lessThan;
+
+        /**
+         * @param name the name of the partition.
+         * @param lessThan the bound in epoch seconds, {@link Long#MAX_VALUE} for {@code MAXVALUE}.
+         */
+        Partition(String name, long lessThan) {
+            this.name = name;
+            this.lessThan = lessThan;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getLessThan() {
+            return lessThan;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.diaspora.service;
+
+import com.diaspora.repository.AuditEventRollupRepository.Key;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts of audit events by key, added to by any number of threads without locking, and drained by one thread at a
+ * time.
+ * <p>
+ * A counter is drained by swapping its count with zero, so that no count added concurrently is lost. A counter found
+ * empty by a drain, its minute being over, is retired before it is removed from the map: a thread which looked it up
+ * just before finds it retired when adding to it, and adds to a new counter instead.
+ */
+class AuditEventRollupCounters {
+
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final ConcurrentMap<Key, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param key the key of the events.
+     * @param count the number of events, positive.
+     */
+    void add(Key key, long count) {
+        while (true) {
+            AtomicLong counter = counters.get(key);
+            if (counter == null) {
+                counter = counters.computeIfAbsent(key, k -> new AtomicLong());
+            }
+            if (counter.getAndAdd(count) >= 0) {
+                return;
+            }
+            counters.remove(key, counter);
+        }
+    }
+
+    /**
+     * Take the counts added since the previous drain. Not to be called by several threads at once.
+     *
+     * @return the counts, by key.
+     */
+    Map<Key, Long> drain() {
+        Map<Key, Long> counts = new HashMap<>();
+        for (Map.Entry<Key, AtomicLong> entry : counters.entrySet()) {
+            AtomicLong counter = entry.getValue();
+            long count = counter.getAndSet(0);
+            if (count > 0) {
+                counts.put(entry.getKey(), count);
+            } else if (counter.compareAndSet(0, RETIRED)) {
+                counters.remove(entry.getKey(), counter);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of keys counted.
+     */
+    int size() {
+        return counters.size();
+    }
+}
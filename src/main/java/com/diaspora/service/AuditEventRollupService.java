@@ -0,0 +1,99 @@
+package com.diaspora.service;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.AuditEventRollupRepository;
+import com.diaspora.repository.AuditEventRollupRepository.Criteria;
+import com.diaspora.repository.AuditEventRollupRepository.Dimension;
+import com.diaspora.service.dto.AuditEventRollupDTO;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service counting the audit events per minute, type and principal, for the dashboards and the fraud rules, which
+ * then read a few precomputed rows instead of grouping the events themselves.
+ * <p>
+ * The events are counted once written to the database, by the {@link com.diaspora.config.audit.AuditEventWriter},
+ * in counters kept in memory without locks, see {@link AuditEventRollupCounters}. The counts are added to the
+ * {@code jhi_audit_event_rollup} table every {@code application.audit.rollup.flush-interval-ms}, and on shutdown:
+ * the events of the last interval are not counted if the node dies. Events without a date are not counted.
+ */
+@Service
+public class AuditEventRollupService {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventRollupService.class);
+
+    private final AuditEventRollupRepository auditEventRollupRepository;
+
+    private final ApplicationProperties.Audit.Rollup properties;
+
+    private final AuditEventRollupCounters counters = new AuditEventRollupCounters();
+
+    public AuditEventRollupService(AuditEventRollupRepository auditEventRollupRepository,
+                                   ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.auditEventRollupRepository = auditEventRollupRepository;
+        this.properties = applicationProperties.getAudit().getRollup();
+        Gauge.builder("audit.rollup.keys", counters, AuditEventRollupCounters::size)
+            .description("Audit event counters kept in memory, by minute, type and principal")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Count events written to the database.
+     *
+     * @param events the events.
+     */
+    public void record(List<PersistentAuditEvent> events) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        for (PersistentAuditEvent event : events) {
+            if (event.getAuditEventDate() != null) {
+                counters.add(new AuditEventRollupRepository.Key(event.getAuditEventDate(), event.getAuditEventType(),
+                    event.getPrincipal()), 1);
+            }
+        }
+    }
+
+    /**
+     * Add the counts since the previous flush to the database. The counts are kept for the next flush if they
+     * cannot be added.
+     * <p>
+     * This is scheduled to get fired every {@code application.audit.rollup.flush-interval-ms}.
+     */
+    @Scheduled(fixedDelayString = "${application.audit.rollup.flush-interval-ms:5000}")
+    @PreDestroy
+    public synchronized void flush() {
+        Map<AuditEventRollupRepository.Key, Long> counts = counters.drain();
+        if (counts.isEmpty()) {
+            return;
+        }
+        try {
+            auditEventRollupRepository.add(counts);
+        } catch (RuntimeException e) {
+            log.warn("Could not flush {} audit event counts, retrying with the next flush: {}", counts.size(), e.getMessage());
+            counts.forEach(counters::add);
+        }
+    }
+
+    /**
+     * Sum the counts of the events matching the criteria.
+     *
+     * @param criteria the criteria.
+     * @param dimensions the dimensions of the sums, the total count only if empty.
+     * @return the sums, at most {@code application.audit.rollup.max-rows} plus one, so that the caller knows whether
+     * there are more.
+     */
+    public List<AuditEventRollupDTO> sum(Criteria criteria, EnumSet<Dimension> dimensions) {
+        return auditEventRollupRepository.sum(criteria, dimensions, properties.getMaxRows() + 1);
+    }
+}
@@ -0,0 +1,180 @@
+package com.diaspora.service.dto;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for the verification of a range of blocks of the audit event chain.
+ */
+public class AuditChainVerificationDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long fromBlockId;
+
+    private Long toBlockId;
+
+    private int verifiedBlocks;
+
+    private long verifiedEvents;
+
+    private Long headBlockId;
+
+    private String headBlockHash;
+
+    private List<Failure> failures = new ArrayList<>();
+
+    public Long getFromBlockId() {
+        return fromBlockId;
+    }
+
+    public void setFromBlockId(Long fromBlockId) {
+        this.fromBlockId = fromBlockId;
+    }
+
+    public Long getToBlockId() {
+        return toBlockId;
+    }
+
+    public void setToBlockId(Long toBlockId) {
+        this.toBlockId = toBlockId;
+    }
+
+    public int getVerifiedBlocks() {
+        return verifiedBlocks;
+    }
+
+    public void setVerifiedBlocks(int verifiedBlocks) {
+        this.verifiedBlocks = verifiedBlocks;
+    }
+
+    public long getVerifiedEvents() {
+        return verifiedEvents;
+    }
+
+    public void setVerifiedEvents(long verifiedEvents) {
+        this.verifiedEvents = verifiedEvents;
+    }
+
+    public Long getHeadBlockId() {
+        return headBlockId;
+    }
+
+    public void setHeadBlockId(Long headBlockId) {
+        this.headBlockId = headBlockId;
+    }
+
+    /**
+     * @return the hash of the last block of the chain, in hexadecimal, which auditors may keep to check later that
+     * the chain up to this block was not rewritten.
+     */
+    public String getHeadBlockHash() {
+        return headBlockHash;
+    }
+
+    public void setHeadBlockHash(String headBlockHash) {
+        this.headBlockHash = headBlockHash;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    public void setFailures(List<Failure> failures) {
+        this.failures = failures;
+    }
+
+    /**
+     * @return whether the range is intact, the blocks whose events were all older than the retention period aside.
+     */
+    public boolean isValid() {
+        return failures.stream().allMatch(failure -> failure.getReason() == FailureReason.EVENTS_PURGED);
+    }
+
+    @Override
+    public String toString() {
+        return "AuditChainVerificationDTO{" +
+            "fromBlockId=" + fromBlockId +
+            ", toBlockId=" + toBlockId +
+            ", verifiedBlocks=" + verifiedBlocks +
+            ", verifiedEvents=" + verifiedEvents +
+            ", headBlockId=" + headBlockId +
+            ", failures=" + failures +
+            "}";
+    }
+
+    /**
+     * Why a block failed the verification.
+     */
+    public enum FailureReason {
+        /**
+         * The block is missing from the range.
+         */
+        MISSING_BLOCK,
+        /**
+         * Events of the block were added or removed.
+         */
+        EVENT_COUNT_MISMATCH,
+        /**
+         * Events of the block were changed.
+         */
+        MERKLE_ROOT_MISMATCH,
+        /**
+         * The block itself was changed.
+         */
+        BLOCK_HASH_MISMATCH,
+        /**
+         * The block does not follow the previous block.
+         */
+        CHAIN_BROKEN,
+        /**
+         * Events of the block are missing, as they were all older than the retention period.
+         */
+        EVENTS_PURGED
+    }
+
+    /**
+     * A block which failed the verification.
+     */
+    public static class Failure implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long blockId;
+
+        private FailureReason reason;
+
+        public Failure() {
+        }
+
+        public Failure(long blockId, FailureReason reason) {
+            this.blockId = blockId;
+            this.reason = reason;
+        }
+
+        public long getBlockId() {
+            return blockId;
+        }
+
+        public void setBlockId(long blockId) {
+            this.blockId = blockId;
+        }
+
+        public FailureReason getReason() {
+            return reason;
+        }
+
+        public void setReason(FailureReason reason) {
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                "blockId=" + blockId +
+                ", reason=" + reason +
+                "}";
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.diaspora.service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * A DTO for a number of audit events, by the dimensions asked for: the dimensions not asked for are left out.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AuditEventRollupDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Instant minute;
+
+    private String eventType;
+
+    private String principal;
+
+    private long count;
+
+    public Instant getMinute() {
+        return minute;
+    }
+
+    public void setMinute(Instant minute) {
+        this.minute = minute;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getPrincipal() {
+        return principal;
+    }
+
+    public void setPrincipal(String principal) {
+        this.principal = principal;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditEventRollupDTO{" +
+            "minute=" + minute +
+            ", eventType='" + eventType + "'" +
+            ", principal='" + principal + "'" +
+            ", count=" + count +
+            "}";
+    }
+}
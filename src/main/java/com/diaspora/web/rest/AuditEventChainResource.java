@@ -0,0 +1,59 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.service.AuditEventChainService;
+import com.diaspora.service.dto.AuditChainVerificationDTO;
+import com.diaspora.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller for verifying the tamper-evident chain of the audit events.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AuditEventChainResource {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventChainResource.class);
+
+    private final AuditEventChainService auditEventChainService;
+
+    private final int maxVerifiedBlocks;
+
+    public AuditEventChainResource(AuditEventChainService auditEventChainService, ApplicationProperties applicationProperties) {
+        this.auditEventChainService = auditEventChainService;
+        this.maxVerifiedBlocks = applicationProperties.getAudit().getChain().getMaxVerifiedBlocks();
+    }
+
+    /**
+     * {@code GET  /admin/audit-chain/verify} : verify a range of blocks of the audit event chain, by hashing again
+     * their events.
+     * <p>
+     * The range is limited to {@code application.audit.chain.max-verified-blocks} blocks, so a whole chain is
+     * verified a range at a time, the first block of a range following the last block of the previous one.
+     *
+     * @param fromBlock the first block of the range, by default as many blocks before the last one as may be verified.
+     * @param toBlock the last block of the range, by default the last block of the chain.
+     * @return the result of the verification.
+     */
+    @GetMapping("/audit-chain/verify")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public AuditChainVerificationDTO verifyAuditChain(@RequestParam(required = false) Long fromBlock,
+                                                      @RequestParam(required = false) Long toBlock) {
+        log.debug("REST request to verify the audit chain from block {} to block {}", fromBlock, toBlock);
+        if (fromBlock != null && toBlock != null && (fromBlock > toBlock || toBlock - fromBlock >= maxVerifiedBlocks)) {
+            throw new BadRequestAlertException("The range must hold between 1 and " + maxVerifiedBlocks + " blocks",
+                "auditChain", "invalidrange");
+        }
+        if (fromBlock != null && toBlock == null) {
+            toBlock = fromBlock + maxVerifiedBlocks - 1;
+        }
+        return auditEventChainService.verify(fromBlock, toBlock);
+    }
+}
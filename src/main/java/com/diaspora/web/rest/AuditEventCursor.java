@@ -0,0 +1,66 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.repository.AuditEventSearchRepository;
+import com.diaspora.web.rest.errors.BadRequestAlertException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque continuation cursor of an audit event search: the URL-safe Base64 encoding of the
+ * {@link AuditEventSearchRepository.Key} of the last event of a page, prefixed by a format version.
+ */
+final class AuditEventCursor {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private AuditEventCursor() {
+    }
+
+    static String encode(AuditEventSearchRepository.Key key) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(key.getPrincipal());
+            out.writeLong(key.getAuditEventDate().getEpochSecond());
+            out.writeInt(key.getAuditEventDate().getNano());
+            out.writeLong(key.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @param cursor the cursor.
+     * @return the key of the cursor.
+     * @throws BadRequestAlertException if the cursor is not one returned by {@link #encode}.
+     */
+    static AuditEventSearchRepository.Key decode(String cursor) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (in.readUnsignedByte() != FORMAT_VERSION) {
+                throw invalid();
+            }
+            String principal = in.readUTF();
+            Instant auditEventDate = Instant.ofEpochSecond(in.readLong(), in.readInt());
+            long id = in.readLong();
+            if (in.read() != -1) {
+                throw invalid();
+            }
+            return new AuditEventSearchRepository.Key(principal, auditEventDate, id);
+        } catch (IOException | IllegalArgumentException | DateTimeException e) {
+            throw invalid();
+        }
+    }
+
+    private static BadRequestAlertException invalid() {
+        return new BadRequestAlertException("Invalid cursor", "auditEvent", "invalidcursor");
+    }
+}
@@ -0,0 +1,152 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.config.audit.AuditEventConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.AuditEventSearchRepository;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.service.AuditEventExportService;
+import com.diaspora.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * REST controller for searching and exporting the audit events.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AuditEventResource {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static final String TOTAL_COUNT_ESTIMATE_HEADER = "X-Total-Count-Estimate";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Events counted at most for the count estimate, where the database gives no estimate.
+     */
+    private static final long COUNT_ESTIMATE_LIMIT = 10000;
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventResource.class);
+
+    private final AuditEventSearchRepository auditEventSearchRepository;
+
+    private final AuditEventConverter auditEventConverter;
+
+    private final AuditEventExportService auditEventExportService;
+
+    public AuditEventResource(AuditEventSearchRepository auditEventSearchRepository, AuditEventConverter auditEventConverter,
+                              AuditEventExportService auditEventExportService) {
+        this.auditEventSearchRepository = auditEventSearchRepository;
+        this.auditEventConverter = auditEventConverter;
+        this.auditEventExportService = auditEventExportService;
+    }
+
+    /**
+     * {@code GET  /admin/audit-events} : search the audit events, most recent first, a page at a time.
+     * <p>
+     * The cursor of the next page is returned in the {@value #NEXT_CURSOR_HEADER} header, and in the {@code next}
+     * link of the {@code Link} header; there is none after the last page. A cursor should only be passed back with
+     * the criteria of the search it comes from.
+     *
+     * @param principal the principal of the events, all the principals if not set.
+     * @param fromDate the date from which the events happened, inclusive.
+     * @param toDate the date until which the events happened, exclusive.
+     * @param cursor the cursor of the page, the first page if not set.
+     * @param size the maximum number of events of the page.
+     * @param count whether to estimate the number of matching events, in the {@value #TOTAL_COUNT_ESTIMATE_HEADER} header.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the events in body.
+     */
+    @GetMapping("/audit-events")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<List<AuditEvent>> searchAuditEvents(@RequestParam(required = false) String principal,
+                                                              @RequestParam(required = false) Instant fromDate,
+                                                              @RequestParam(required = false) Instant toDate,
+                                                              @RequestParam(required = false) String cursor,
+                                                              @RequestParam(defaultValue = "20") int size,
+                                                              @RequestParam(defaultValue = "false") boolean count) {
+        log.debug("REST request to search audit events of {} from {} to {}", principal, fromDate, toDate);
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new BadRequestAlertException("The page size must be between 1 and " + MAX_PAGE_SIZE, "auditEvent", "invalidsize");
+        }
+        AuditEventSearchRepository.Criteria criteria = new AuditEventSearchRepository.Criteria(principal, fromDate, toDate);
+        AuditEventSearchRepository.Key after = cursor != null ? AuditEventCursor.decode(cursor) : null;
+        // One more event than asked for, to know whether there is a next page
+        List<PersistentAuditEvent> events = auditEventSearchRepository.findPage(criteria, after, size + 1);
+
+        HttpHeaders headers = new HttpHeaders();
+        if (events.size() > size) {
+            events = events.subList(0, size);
+            String nextCursor = AuditEventCursor.encode(AuditEventSearchRepository.Key.of(events.get(size - 1)));
+            headers.add(NEXT_CURSOR_HEADER, nextCursor);
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", nextCursor).replaceQueryParam("count").toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        if (count) {
+            headers.add(TOTAL_COUNT_ESTIMATE_HEADER,
+                Long.toString(auditEventSearchRepository.estimateCount(criteria, COUNT_ESTIMATE_LIMIT)));
+        }
+        return ResponseEntity.ok().headers(headers).body(auditEventConverter.convertToAuditEvent(events));
+    }
+
+    /**
+     * {@code GET  /admin/audit-events/export} : export the audit events, oldest first, as a file streamed to the
+     * response as the events are read.
+     *
+     * @param principal the principal of the events, all the principals if not set.
+     * @param fromDate the date from which the events happened, inclusive.
+     * @param toDate the date until which the events happened, exclusive.
+     * @param format the format of the export, {@code ndjson} or {@code csv}.
+     * @param gzip whether to compress the export with gzip.
+     * @param response the response the export is written to, with status {@code 200 (OK)}.
+     * @throws IOException if the export cannot be written.
+     */
+    @GetMapping("/audit-events/export")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public void exportAuditEvents(@RequestParam(required = false) String principal,
+                                  @RequestParam(required = false) Instant fromDate,
+                                  @RequestParam(required = false) Instant toDate,
+                                  @RequestParam(defaultValue = "ndjson") String format,
+                                  @RequestParam(defaultValue = "false") boolean gzip,
+                                  HttpServletResponse response) throws IOException {
+        log.debug("REST request to export audit events of {} from {} to {} as {}", principal, fromDate, toDate, format);
+        AuditEventExportService.Format exportFormat = Arrays.stream(AuditEventExportService.Format.values())
+            .filter(value -> value.getExtension().equalsIgnoreCase(format))
+            .findFirst()
+            .orElseThrow(() -> new BadRequestAlertException("Unknown export format " + format, "auditEvent", "invalidformat"));
+        AuditEventSearchRepository.Criteria criteria = new AuditEventSearchRepository.Criteria(principal, fromDate, toDate);
+
+        String filename = "audit-events." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            GZIPOutputStream gzipOut = new GZIPOutputStream(out, GZIP_BUFFER_SIZE);
+            auditEventExportService.export(criteria, exportFormat, gzipOut);
+            gzipOut.finish();
+        } else {
+            auditEventExportService.export(criteria, exportFormat, out);
+        }
+        out.flush();
+    }
+}
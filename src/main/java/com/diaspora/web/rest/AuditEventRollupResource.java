@@ -0,0 +1,82 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.repository.AuditEventRollupRepository.Criteria;
+import com.diaspora.repository.AuditEventRollupRepository.Dimension;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.service.AuditEventRollupService;
+import com.diaspora.service.dto.AuditEventRollupDTO;
+import com.diaspora.web.rest.errors.BadRequestAlertException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * REST controller for the counts of the audit events per minute, type and principal.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class AuditEventRollupResource {
+
+    private final Logger log = LoggerFactory.getLogger(AuditEventRollupResource.class);
+
+    private final AuditEventRollupService auditEventRollupService;
+
+    private final int maxRows;
+
+    public AuditEventRollupResource(AuditEventRollupService auditEventRollupService, ApplicationProperties applicationProperties) {
+        this.auditEventRollupService = auditEventRollupService;
+        this.maxRows = applicationProperties.getAudit().getRollup().getMaxRows();
+    }
+
+    /**
+     * {@code GET  /admin/audit-rollups} : count the audit events, by the given dimensions.
+     * <p>
+     * The counts are read from the counts kept per minute, which lag the events by up to
+     * {@code application.audit.rollup.flush-interval-ms}. The dates are rounded to the minute.
+     *
+     * @param fromDate the date from which the events happened, inclusive.
+     * @param toDate the date until which the events happened, exclusive.
+     * @param eventType the type of the events, all the types if not set.
+     * @param principal the principal of the events, all the principals if not set.
+     * @param groupBy the dimensions of the counts, among {@code minute}, {@code type} and {@code principal}, the
+     * total count if none.
+     * @return the counts, in the order of the dimensions.
+     */
+    @GetMapping("/audit-rollups")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public List<AuditEventRollupDTO> getAuditEventRollups(@RequestParam(required = false) Instant fromDate,
+                                                          @RequestParam(required = false) Instant toDate,
+                                                          @RequestParam(required = false) String eventType,
+                                                          @RequestParam(required = false) String principal,
+                                                          @RequestParam(required = false) List<String> groupBy) {
+        log.debug("REST request to count audit events of type {} and principal {} from {} to {} by {}", eventType,
+            principal, fromDate, toDate, groupBy);
+        EnumSet<Dimension> dimensions = EnumSet.noneOf(Dimension.class);
+        if (groupBy != null) {
+            for (String dimension : groupBy) {
+                try {
+                    dimensions.add(Dimension.valueOf(dimension.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new BadRequestAlertException("Unknown dimension " + dimension, "auditEventRollup", "invaliddimension");
+                }
+            }
+        }
+        List<AuditEventRollupDTO> rollups = auditEventRollupService.sum(new Criteria(fromDate, toDate, eventType, principal),
+            dimensions);
+        if (rollups.size() > maxRows) {
+            throw new BadRequestAlertException("More than " + maxRows + " counts, the range should be narrowed",
+                "auditEventRollup", "toomanyrows");
+        }
+        return rollups;
+    }
+}
@@ -0,0 +1,81 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.security.SecurityUtils;
+import com.diaspora.security.oauth2.RevokedToken;
+import com.diaspora.security.oauth2.TokenRevocationStore;
+import com.diaspora.web.rest.vm.TokenRevocationVM;
+import io.github.jhipster.web.util.ResponseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.validation.Valid;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+/**
+ * REST controller for revoking access tokens before their expiry.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class TokenRevocationResource {
+
+    private final Logger log = LoggerFactory.getLogger(TokenRevocationResource.class);
+
+    private final TokenRevocationStore tokenRevocationStore;
+
+    public TokenRevocationResource(TokenRevocationStore tokenRevocationStore) {
+        this.tokenRevocationStore = tokenRevocationStore;
+    }
+
+    /**
+     * {@code POST  /admin/token-revocations} : Revoke an access token, by its {@code jti} claim.
+     *
+     * @param tokenRevocationVM the token to revoke.
+     * @return the {@link ResponseEntity} with status {@code 201 (Created)} and with body the revocation.
+     * @throws URISyntaxException if the Location URI syntax is incorrect.
+     */
+    @PostMapping("/token-revocations")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<RevokedToken> revokeToken(@Valid @RequestBody TokenRevocationVM tokenRevocationVM) throws URISyntaxException {
+        log.debug("REST request to revoke access token : {}", tokenRevocationVM);
+        RevokedToken revokedToken = tokenRevocationStore.revoke(tokenRevocationVM.getJti(), tokenRevocationVM.getExpiresAt(),
+            SecurityUtils.getCurrentUserLogin().orElse(null), tokenRevocationVM.getReason());
+        return ResponseEntity.created(new URI("/api/admin/token-revocations/" + revokedToken.getJti()))
+            .body(revokedToken);
+    }
+
+    /**
+     * {@code GET  /admin/token-revocations} : get the revocations of the access tokens that have not expired yet.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the revocations, most recent first.
+     */
+    @GetMapping("/token-revocations")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public List<RevokedToken> getAllTokenRevocations() {
+        log.debug("REST request to get all access token revocations");
+        return tokenRevocationStore.findAll();
+    }
+
+    /**
+     * {@code GET  /admin/token-revocations/:jti} : get the revocation of an access token.
+     *
+     * @param jti the {@code jti} claim of the token.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the revocation, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/token-revocations/{jti}")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public ResponseEntity<RevokedToken> getTokenRevocation(@PathVariable String jti) {
+        log.debug("REST request to get access token revocation : {}", jti);
+        return ResponseUtil.wrapOrNotFound(tokenRevocationStore.findOne(jti));
+    }
+}
@@ -0,0 +1,53 @@
+package com.diaspora.web.rest.vm;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Size;
+import java.time.Instant;
+
+/**
+ * View Model object for revoking an access token.
+ */
+public class TokenRevocationVM {
+
+    @NotBlank
+    @Size(max = 255)
+    private String jti;
+
+    private Instant expiresAt;
+
+    @Size(max = 255)
+    private String reason;
+
+    public String getJti() {
+        return jti;
+    }
+
+    public void setJti(String jti) {
+        this.jti = jti;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenRevocationVM{" +
+            "jti='" + jti + '\'' +
+            ", expiresAt=" + expiresAt +
+            ", reason='" + reason + '\'' +
+            '}';
+    }
+}
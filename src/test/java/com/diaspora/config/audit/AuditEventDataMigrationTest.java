@@ -0,0 +1,128 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.AuditEventDataConverter;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Test class for the {@link AuditEventDataMigration}, on the audit tables of the initial schema.
+ */
+public class AuditEventDataMigrationTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    public void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:AuditEventDataMigrationTest");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table jhi_persistent_audit_event (event_id bigint primary key, " +
+                "principal varchar(50) not null, event_date timestamp, event_type varchar(255), event_data varbinary(4000))");
+            statement.execute("create table jhi_persistent_audit_evt_data (event_id bigint not null, " +
+                "name varchar(150) not null, value varchar(255), primary key (event_id, name))");
+        }
+        connection.setAutoCommit(false);
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+        connection.close();
+    }
+
+    @Test
+    public void testDataIsMovedInBatches() throws Exception {
+        for (long id = 1; id <= 5; id++) {
+            insertEvent(id);
+        }
+        insertData(1, "remoteAddress", "10.0.0.12");
+        insertData(1, "sessionId", null);
+        insertData(3, "remoteAddress", "10.0.0.13");
+        insertData(4, "type", "org.springframework.security.authentication.BadCredentialsException");
+        insertData(4, "message", "Bad credentials");
+        insertData(5, "remoteAddress", "10.0.0.15");
+        connection.commit();
+        AuditEventDataMigration migration = new AuditEventDataMigration();
+        migration.setBatchSize("2");
+
+        migration.execute(database());
+
+        Map<Long, Map<String, String>> data = eventData();
+        assertThat(data.get(1L)).containsOnly(entry("remoteAddress", "10.0.0.12"), entry("sessionId", null));
+        assertThat(data.get(2L)).isEmpty();
+        assertThat(data.get(3L)).containsOnly(entry("remoteAddress", "10.0.0.13"));
+        assertThat(data.get(4L)).containsOnly(entry("type", "org.springframework.security.authentication.BadCredentialsException"),
+            entry("message", "Bad credentials"));
+        assertThat(data.get(5L)).containsOnly(entry("remoteAddress", "10.0.0.15"));
+        assertThat(migration.getConfirmationMessage()).contains("4 audit events");
+    }
+
+    @Test
+    public void testDataNotFittingInTheColumnIsLeftOut() throws Exception {
+        insertEvent(1);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 250; i++) {
+            value.append('a');
+        }
+        for (int i = 0; i < 20; i++) {
+            insertData(1, String.format("key-%02d", i), value.toString());
+        }
+        connection.commit();
+
+        new AuditEventDataMigration().execute(database());
+
+        Map<String, String> data = eventData().get(1L);
+        assertThat(data).hasSizeBetween(10, 19).containsKeys("key-00", "key-09");
+        assertThat(AuditEventDataConverter.encodedLength(data)).isLessThanOrEqualTo(AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH);
+    }
+
+    private Database database() throws Exception {
+        return DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+    }
+
+    private void insertEvent(long id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "insert into jhi_persistent_audit_event (event_id, principal, event_type) values (?, 'admin', 'AUTHENTICATION_SUCCESS')")) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private void insertData(long id, String name, String value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+            "insert into jhi_persistent_audit_evt_data (event_id, name, value) values (?, ?, ?)")) {
+            statement.setLong(1, id);
+            statement.setString(2, name);
+            statement.setString(3, value);
+            statement.executeUpdate();
+        }
+    }
+
+    private Map<Long, Map<String, String>> eventData() throws SQLException {
+        Map<Long, Map<String, String>> data = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select event_id, event_data from jhi_persistent_audit_event")) {
+            while (resultSet.next()) {
+                data.put(resultSet.getLong(1), AuditEventDataConverter.decode(resultSet.getBytes(2)));
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,216 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.PersistentAuditEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link AuditEventJournal}.
+ */
+public class AuditEventJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private AuditEventJournal journal;
+
+    private final List<PersistentAuditEvent> shipped = new ArrayList<>();
+
+    private final List<Boolean> replaced = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws IOException {
+        journal = new AuditEventJournal(directory, SEGMENT_SIZE);
+        journal.open();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        journal.close();
+    }
+
+    @Test
+    public void testEventsAreShippedOnceSynced() throws Exception {
+        PersistentAuditEvent event = event(1);
+        event.getData().put("remoteAddress", "10.0.0.12");
+        event.getData().put("sessionId", null);
+        journal.append(event);
+        long position = journal.append(event(2));
+
+        assertThat(journal.awaitSync(position, 1000)).isTrue();
+        assertThat(journal.ship(10, 1000, this::write)).isEqualTo(2);
+
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).containsExactly(1L, 2L);
+        PersistentAuditEvent first = shipped.get(0);
+        assertThat(first.getPrincipal()).isEqualTo("user-1");
+        assertThat(first.getAuditEventDate()).isEqualTo(event.getAuditEventDate());
+        assertThat(first.getAuditEventType()).isEqualTo("AUTHENTICATION_SUCCESS");
+        assertThat(first.getData()).containsOnlyKeys("remoteAddress", "sessionId").containsEntry("remoteAddress", "10.0.0.12");
+        assertThat(replaced).containsOnly(false);
+        assertThat(journal.hasUnshippedEvents()).isFalse();
+    }
+
+    @Test
+    public void testEventsAreShippedInBatches() throws Exception {
+        long position = 0;
+        for (long id = 1; id <= 5; id++) {
+            position = journal.append(event(id));
+        }
+        journal.awaitSync(position, 1000);
+
+        assertThat(journal.ship(2, 1000, this::write)).isEqualTo(2);
+        assertThat(journal.ship(2, 1000, this::write)).isEqualTo(2);
+        assertThat(journal.ship(2, 1000, this::write)).isEqualTo(1);
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void testFailedBatchIsShippedAgain() throws Exception {
+        journal.awaitSync(journal.append(event(1)), 1000);
+
+        assertThatThrownBy(() -> journal.ship(10, 1000, (batch, replace) -> {
+            throw new IllegalStateException("Database down");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(journal.hasUnshippedEvents()).isTrue();
+
+        assertThat(journal.ship(10, 1000, this::write)).isEqualTo(1);
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).containsExactly(1L);
+    }
+
+    @Test
+    public void testBatchFailingOnceCommittedIsShippedAgainSkippingWrittenEvents() throws Exception {
+        journal.awaitSync(journal.append(event(1)), 1000);
+
+        assertThatThrownBy(() -> journal.ship(10, 1000, (batch, replace) -> {
+            write(batch, replace);
+            throw new IllegalStateException("Failed once committed");
+        })).isInstanceOf(IllegalStateException.class);
+        journal.awaitSync(journal.append(event(2)), 1000);
+
+        assertThat(journal.ship(10, 1000, this::write)).isEqualTo(2);
+        assertThat(replaced).containsExactly(false, true);
+
+        journal.awaitSync(journal.append(event(3)), 1000);
+        assertThat(journal.ship(10, 1000, this::write)).isEqualTo(1);
+        assertThat(replaced).containsExactly(false, true, false);
+    }
+
+    @Test
+    public void testFullSegmentsAreRolledAndDeletedOnceShipped() throws Exception {
+        long position = 0;
+        for (long id = 1; id <= 300; id++) {
+            position = journal.append(event(id));
+        }
+        journal.awaitSync(position, 1000);
+        assertThat(segments()).hasSizeGreaterThan(2);
+
+        while (journal.hasUnshippedEvents()) {
+            journal.ship(30, 1000, this::write);
+        }
+
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).hasSize(300).isSorted().doesNotHaveDuplicates();
+        assertThat(segments()).hasSize(1);
+    }
+
+    @Test
+    public void testUnshippedSegmentsAreReplayedOnRestart() throws Exception {
+        long position = 0;
+        for (long id = 1; id <= 3; id++) {
+            position = journal.append(event(id));
+        }
+        journal.awaitSync(position, 1000);
+        journal.ship(1, 1000, this::write);
+        // Stopped before the other events were shipped
+        journal.close();
+        shipped.clear();
+        replaced.clear();
+
+        journal = new AuditEventJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        journal.append(event(4));
+        while (journal.hasUnshippedEvents()) {
+            journal.ship(10, 1000, this::write);
+        }
+
+        // The segment is shipped again from its start, as it may have been shipped in part
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(replaced).containsExactly(true, false);
+    }
+
+    @Test
+    public void testShippedSegmentIsDeletedOnClose() throws Exception {
+        journal.awaitSync(journal.append(event(1)), 1000);
+        journal.ship(10, 1000, this::write);
+
+        journal.close();
+
+        assertThat(segments()).isEmpty();
+    }
+
+    @Test
+    public void testCorruptedRecordEndsTheReplay() throws Exception {
+        journal.append(event(1));
+        journal.awaitSync(journal.append(event(2)), 1000);
+        journal.close();
+        Path segment = segments().get(0);
+        int secondRecord = 4 + 8 + AuditEventJournal.encode(event(1)).length;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // Torn write of the second event
+            file.seek(secondRecord + 8 + 10);
+            file.write(0xff);
+        }
+
+        journal = new AuditEventJournal(directory, SEGMENT_SIZE);
+        journal.open();
+        while (journal.hasUnshippedEvents()) {
+            journal.ship(10, 1000, this::write);
+        }
+
+        assertThat(shipped).extracting(PersistentAuditEvent::getId).containsExactly(1L);
+        assertThat(Files.exists(segment)).isFalse();
+    }
+
+    @Test
+    public void testAppendToClosedJournalFails() {
+        journal.close();
+
+        assertThatThrownBy(() -> journal.append(event(1))).isInstanceOf(IOException.class);
+    }
+
+    private void write(List<PersistentAuditEvent> batch, boolean replace) {
+        shipped.addAll(batch);
+        replaced.add(replace);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static PersistentAuditEvent event(long id) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setId(id);
+        event.setPrincipal("user-" + id);
+        event.setAuditEventDate(Instant.parse("2026-10-17T10:00:00.123456Z").plusSeconds(id));
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        return event;
+    }
+}
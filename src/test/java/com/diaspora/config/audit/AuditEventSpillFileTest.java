@@ -0,0 +1,145 @@
+package com.diaspora.config.audit;
+
+import com.diaspora.domain.PersistentAuditEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link AuditEventSpillFile}.
+ */
+public class AuditEventSpillFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testSpilledEventsAreReplayedInBatches() throws IOException {
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+        Instant date = Instant.parse("2020-02-01T10:15:30.123456789Z");
+        for (int i = 0; i < 5; i++) {
+            spillFile.append(event("user-" + i, date));
+        }
+        PersistentAuditEvent withoutData = new PersistentAuditEvent();
+        withoutData.setPrincipal("anonymous");
+        spillFile.append(withoutData);
+        assertThat(spillFile.hasEvents()).isTrue();
+
+        List<List<PersistentAuditEvent>> batches = new ArrayList<>();
+        long replayed = spillFile.replay(4, batch -> batches.add(new ArrayList<>(batch)));
+
+        assertThat(replayed).isEqualTo(6);
+        assertThat(batches).extracting(List::size).containsExactly(4, 2);
+        PersistentAuditEvent first = batches.get(0).get(0);
+        assertThat(first.getPrincipal()).isEqualTo("user-0");
+        assertThat(first.getAuditEventDate()).isEqualTo(date);
+        assertThat(first.getAuditEventType()).isEqualTo("AUTHENTICATION_SUCCESS");
+        assertThat(first.getData()).containsEntry("remoteAddress", "10.0.0.12").containsEntry("sessionId", null);
+        PersistentAuditEvent last = batches.get(1).get(1);
+        assertThat(last.getAuditEventDate()).isNull();
+        assertThat(last.getAuditEventType()).isNull();
+        assertThat(last.getData()).isEmpty();
+        assertThat(spillFile.hasEvents()).isFalse();
+    }
+
+    @Test
+    public void testEventIdsAreKept() throws IOException {
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+        PersistentAuditEvent event = event("user", Instant.now());
+        event.setId(42L);
+        spillFile.append(event);
+        spillFile.append(event("other-user", Instant.now()));
+
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        spillFile.replay(10, events::addAll);
+
+        assertThat(events).extracting(PersistentAuditEvent::getId).containsExactly(42L, null);
+    }
+
+    @Test
+    public void testRecordsWithoutIdAreReplayed() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(directory.resolve("audit-spill.bin")))) {
+            out.writeByte(1);
+            out.writeUTF("user");
+            out.writeBoolean(false);
+            out.writeBoolean(true);
+            out.writeUTF("AUTHENTICATION_SUCCESS");
+            out.writeInt(0);
+        }
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        spillFile.replay(10, events::addAll);
+
+        assertThat(events).extracting(PersistentAuditEvent::getPrincipal).containsExactly("user");
+        assertThat(events.get(0).getId()).isNull();
+        assertThat(events.get(0).getAuditEventType()).isEqualTo("AUTHENTICATION_SUCCESS");
+    }
+
+    @Test
+    public void testClosedFileTakesNoEvents() throws IOException {
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+        spillFile.close();
+
+        assertThatThrownBy(() -> spillFile.append(event("user", Instant.now()))).isInstanceOf(IOException.class);
+        assertThat(spillFile.hasEvents()).isFalse();
+    }
+
+    @Test
+    public void testFailedReplayKeepsTheEvents() throws IOException {
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+        spillFile.append(event("user", Instant.now()));
+
+        assertThatThrownBy(() -> spillFile.replay(10, batch -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+        spillFile.append(event("other-user", Instant.now()));
+
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        spillFile.replay(10, events::addAll);
+        spillFile.replay(10, events::addAll);
+        assertThat(events).extracting(PersistentAuditEvent::getPrincipal).containsExactly("user", "other-user");
+        assertThat(spillFile.hasEvents()).isFalse();
+    }
+
+    @Test
+    public void testEventsLeftByAPreviousRunAreReplayed() throws IOException {
+        AuditEventSpillFile previousRun = new AuditEventSpillFile(directory);
+        previousRun.append(event("user", Instant.now()));
+        previousRun.append(event("other-user", Instant.now()));
+        previousRun.close();
+        // A crash in the middle of the last record
+        Path file = directory.resolve("audit-spill.bin");
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, new byte[]{1, 0, 4}, StandardOpenOption.APPEND);
+        assertThat(Files.size(file)).isEqualTo(content.length + 3);
+
+        AuditEventSpillFile spillFile = new AuditEventSpillFile(directory);
+        assertThat(spillFile.hasEvents()).isTrue();
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        spillFile.replay(10, events::addAll);
+
+        assertThat(events).extracting(PersistentAuditEvent::getPrincipal).containsExactly("user", "other-user");
+    }
+
+    private static PersistentAuditEvent event(String principal, Instant date) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventDate(date);
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        event.getData().put("remoteAddress", "10.0.0.12");
+        event.getData().put("sessionId", null);
+        return event;
+    }
+}
@@ -0,0 +1,196 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link CacheWarmUp}.
+ */
+public class CacheWarmUpTest {
+
+    private ApplicationProperties.Cache.WarmUp properties;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    public void setup() {
+        properties = new ApplicationProperties().getCache().getWarmUp();
+        properties.setEnabled(true);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testDisabledWarmUpIsUp() {
+        properties.setEnabled(false);
+        CacheWarmUp warmUp = new CacheWarmUp(properties, Collections.singletonList(new PagedWarmer("bins", 25, 0)), executor);
+
+        assertThat(warmUp.isDone()).isTrue();
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void testOutOfServiceUntilAllCachesAreWarm() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CacheWarmer blocking = new PagedWarmer("blocking", 25, 0) {
+            @Override
+            public void warmUp(WarmUpBudget budget) throws Exception {
+                release.await();
+                super.warmUp(budget);
+            }
+        };
+        CacheWarmUp warmUp = new CacheWarmUp(properties, Arrays.asList(new PagedWarmer("bins", 25, 0), blocking), executor);
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        warmUp.start();
+        awaitCacheState(warmUp, "bins", "done");
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        release.countDown();
+        awaitDone(warmUp);
+        Health health = warmUp.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(cacheDetails(health, "bins")).containsEntry("loaded", 25L);
+        assertThat(cacheDetails(health, "blocking")).containsEntry("state", "done");
+    }
+
+    @Test
+    public void testEntryBudgetPerCache() throws Exception {
+        properties.setMaxEntriesPerCache(15);
+        CacheWarmUp warmUp = new CacheWarmUp(properties, Collections.singletonList(new PagedWarmer("bins", 25, 0)), executor);
+
+        warmUp.start();
+        awaitDone(warmUp);
+
+        assertThat(cacheDetails(warmUp.health(), "bins")).containsEntry("loaded", 15L);
+    }
+
+    @Test
+    public void testTimeoutStopsTheWarmUp() throws Exception {
+        properties.setTimeoutSeconds(1);
+        PagedWarmer endless = new PagedWarmer("endless", Long.MAX_VALUE, 50);
+        CacheWarmUp warmUp = new CacheWarmUp(properties, Collections.singletonList(endless), executor);
+
+        warmUp.start();
+        awaitDone(warmUp);
+
+        Health health = warmUp.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("stoppedOn", "timeout");
+    }
+
+    @Test
+    public void testFailingCacheDoesNotBlockTheOthers() throws Exception {
+        CacheWarmer failing = new PagedWarmer("failing", 25, 0) {
+            @Override
+            public void warmUp(WarmUpBudget budget) {
+                throw new IllegalStateException("database unavailable");
+            }
+        };
+        CacheWarmUp warmUp = new CacheWarmUp(properties, Arrays.asList(failing, new PagedWarmer("bins", 25, 0)), executor);
+
+        warmUp.start();
+        awaitDone(warmUp);
+
+        Health health = warmUp.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(cacheDetails(health, "failing")).containsEntry("state", "failed").containsEntry("error", "database unavailable");
+        assertThat(cacheDetails(health, "bins")).containsEntry("state", "done");
+    }
+
+    @Test
+    public void testRejectedCacheDoesNotBlockTheOthers() throws Exception {
+        AtomicInteger submitted = new AtomicInteger();
+        Executor rejectingFirst = command -> {
+            if (submitted.getAndIncrement() == 0) {
+                throw new RejectedExecutionException("queue full");
+            }
+            executor.execute(command);
+        };
+        CacheWarmUp warmUp = new CacheWarmUp(properties,
+            Arrays.asList(new PagedWarmer("rejected", 25, 0), new PagedWarmer("bins", 25, 0)), rejectingFirst);
+
+        warmUp.start();
+        awaitDone(warmUp);
+
+        Health health = warmUp.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(cacheDetails(health, "rejected")).containsEntry("state", "failed").containsEntry("error", "queue full");
+        assertThat(cacheDetails(health, "bins")).containsEntry("state", "done");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> cacheDetails(Health health, String cacheName) {
+        return (Map<String, Object>) ((Map<String, Object>) health.getDetails().get("caches")).get(cacheName);
+    }
+
+    private static void awaitDone(CacheWarmUp warmUp) throws InterruptedException {
+        for (int i = 0; i < 200 && !warmUp.isDone(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(warmUp.isDone()).isTrue();
+    }
+
+    private static void awaitCacheState(CacheWarmUp warmUp, String cacheName, String state) throws InterruptedException {
+        for (int i = 0; i < 200 && !state.equals(cacheDetails(warmUp.health(), cacheName).get("state")); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(cacheDetails(warmUp.health(), cacheName)).containsEntry("state", state);
+    }
+
+    /**
+     * Warmer loading its entries in pages of 10.
+     */
+    private static class PagedWarmer implements CacheWarmer {
+
+        private final String cacheName;
+
+        private final long total;
+
+        private final long pageDelayMs;
+
+        PagedWarmer(String cacheName, long total, long pageDelayMs) {
+            this.cacheName = cacheName;
+            this.total = total;
+            this.pageDelayMs = pageDelayMs;
+        }
+
+        @Override
+        public String getCacheName() {
+            return cacheName;
+        }
+
+        @Override
+        public void warmUp(WarmUpBudget budget) throws Exception {
+            long loaded = 0;
+            long remaining;
+            while (loaded < total && (remaining = budget.remainingEntries()) > 0) {
+                long page = Math.min(Math.min(10, remaining), total - loaded);
+                TimeUnit.MILLISECONDS.sleep(pageDelayMs);
+                budget.loaded(page);
+                loaded += page;
+            }
+        }
+    }
+}
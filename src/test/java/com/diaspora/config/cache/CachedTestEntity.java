@@ -0,0 +1,44 @@
+package com.diaspora.config.cache;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * Entity kept in the second-level cache, for the tests of the cache: the entities of the application are not cached.
+ * Its table is created by the {@code test} context of the Liquibase changelog.
+ */
+@Entity
+@Table(name = "test_cached_entity")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+public class CachedTestEntity implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private Long id;
+
+    @Column(name = "name")
+    private String name;
+
+    public CachedTestEntity() {
+    }
+
+    public CachedTestEntity(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
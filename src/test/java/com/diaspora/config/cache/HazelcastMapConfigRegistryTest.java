@@ -0,0 +1,127 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import io.github.jhipster.config.JHipsterProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link HazelcastMapConfigRegistry}.
+ */
+public class HazelcastMapConfigRegistryTest {
+
+    private JHipsterProperties jHipsterProperties;
+
+    private ApplicationProperties.Cache cacheProperties;
+
+    @BeforeEach
+    public void setup() {
+        jHipsterProperties = new JHipsterProperties();
+        jHipsterProperties.getCache().getHazelcast().setBackupCount(1);
+        jHipsterProperties.getCache().getHazelcast().setTimeToLiveSeconds(3600);
+        cacheProperties = new ApplicationProperties().getCache();
+    }
+
+    @Test
+    public void testDefaultMapConfig() {
+        HazelcastMapConfigRegistry registry = new HazelcastMapConfigRegistry(jHipsterProperties, cacheProperties);
+
+        MapConfig mapConfig = registry.getDefaultMapConfig();
+        assertThat(mapConfig.getBackupCount()).isEqualTo(1);
+        assertThat(mapConfig.getEvictionPolicy()).isEqualTo(EvictionPolicy.LRU);
+        assertThat(mapConfig.getMaxSizeConfig().getMaxSizePolicy()).isEqualTo(MaxSizeConfig.MaxSizePolicy.USED_HEAP_SIZE);
+        assertThat(registry.getMapConfigs()).containsOnlyKeys(HazelcastMapConfigRegistry.DOMAIN_MAP_CONFIG,
+            HazelcastMapConfigRegistry.QUERY_RESULTS_REGION, HazelcastMapConfigRegistry.UPDATE_TIMESTAMPS_REGION);
+    }
+
+    @Test
+    public void testSecondLevelCacheRegions() {
+        Config config = new Config();
+        new HazelcastMapConfigRegistry(jHipsterProperties, cacheProperties).registerWith(config);
+
+        assertThat(config.getMapConfig("com.diaspora.domain.PersistentAuditEvent").getTimeToLiveSeconds()).isEqualTo(3600);
+        assertThat(config.getMapConfig("com.diaspora.domain.PersistentAuditEvent.data").getTimeToLiveSeconds()).isEqualTo(3600);
+        assertThat(config.getMapConfig(HazelcastMapConfigRegistry.QUERY_RESULTS_REGION).getTimeToLiveSeconds()).isEqualTo(3600);
+        MapConfig updateTimestamps = config.getMapConfig(HazelcastMapConfigRegistry.UPDATE_TIMESTAMPS_REGION);
+        assertThat(updateTimestamps.getTimeToLiveSeconds()).isZero();
+        assertThat(updateTimestamps.getEvictionPolicy()).isEqualTo(EvictionPolicy.NONE);
+        assertThat(config.getMapConfig("other").getTimeToLiveSeconds()).isZero();
+    }
+
+    @Test
+    public void testCacheInheritsDefaults() {
+        cacheProperties.getCaches().put("bins", new ApplicationProperties.Cache.CacheSpec());
+
+        MapConfig mapConfig = new HazelcastMapConfigRegistry(jHipsterProperties, cacheProperties).getMapConfigs().get("bins");
+
+        assertThat(mapConfig.getName()).isEqualTo("bins");
+        assertThat(mapConfig.getTimeToLiveSeconds()).isEqualTo(3600);
+        assertThat(mapConfig.getBackupCount()).isEqualTo(1);
+        assertThat(mapConfig.getEvictionPolicy()).isEqualTo(EvictionPolicy.LRU);
+        assertThat(mapConfig.getInMemoryFormat()).isEqualTo(InMemoryFormat.BINARY);
+    }
+
+    @Test
+    public void testCacheOverridesDefaults() {
+        ApplicationProperties.Cache.CacheSpec spec = new ApplicationProperties.Cache.CacheSpec();
+        spec.setTimeToLiveSeconds(60);
+        spec.setMaxIdleSeconds(30);
+        spec.setMaxSize(5000);
+        spec.setMaxSizePolicy(MaxSizeConfig.MaxSizePolicy.PER_NODE);
+        spec.setEvictionPolicy(EvictionPolicy.LFU);
+        spec.setBackupCount(2);
+        spec.setAsyncBackupCount(1);
+        spec.setReadBackupData(true);
+        spec.setInMemoryFormat(InMemoryFormat.OBJECT);
+        cacheProperties.getCaches().put("bins", spec);
+        HazelcastMapConfigRegistry registry = new HazelcastMapConfigRegistry(jHipsterProperties, cacheProperties);
+
+        Config config = new Config();
+        registry.registerWith(config);
+
+        MapConfig mapConfig = config.getMapConfig("bins");
+        assertThat(mapConfig.getTimeToLiveSeconds()).isEqualTo(60);
+        assertThat(mapConfig.getMaxIdleSeconds()).isEqualTo(30);
+        assertThat(mapConfig.getMaxSizeConfig().getSize()).isEqualTo(5000);
+        assertThat(mapConfig.getMaxSizeConfig().getMaxSizePolicy()).isEqualTo(MaxSizeConfig.MaxSizePolicy.PER_NODE);
+        assertThat(mapConfig.getEvictionPolicy()).isEqualTo(EvictionPolicy.LFU);
+        assertThat(mapConfig.getBackupCount()).isEqualTo(2);
+        assertThat(mapConfig.getAsyncBackupCount()).isEqualTo(1);
+        assertThat(mapConfig.isReadBackupData()).isTrue();
+        assertThat(mapConfig.getInMemoryFormat()).isEqualTo(InMemoryFormat.OBJECT);
+        // Other maps still use the default config
+        assertThat(config.getMapConfig("other").getEvictionPolicy()).isEqualTo(EvictionPolicy.LRU);
+        assertThat(config.getMapConfig("other").getMaxIdleSeconds()).isZero();
+        // The default config is not changed by the overrides
+        assertThat(registry.getDefaultMapConfig().getMaxSizeConfig().getSize()).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void testInvalidCachesFailTheStartup() {
+        ApplicationProperties.Cache.CacheSpec tooManyBackups = new ApplicationProperties.Cache.CacheSpec();
+        tooManyBackups.setBackupCount(4);
+        tooManyBackups.setAsyncBackupCount(3);
+        cacheProperties.getCaches().put("backups", tooManyBackups);
+        ApplicationProperties.Cache.CacheSpec neverEvicted = new ApplicationProperties.Cache.CacheSpec();
+        neverEvicted.setEvictionPolicy(EvictionPolicy.NONE);
+        neverEvicted.setMaxSize(100);
+        cacheProperties.getCaches().put("eviction", neverEvicted);
+        ApplicationProperties.Cache.CacheSpec nativeMemory = new ApplicationProperties.Cache.CacheSpec();
+        nativeMemory.setInMemoryFormat(InMemoryFormat.NATIVE);
+        cacheProperties.getCaches().put("native", nativeMemory);
+
+        assertThatThrownBy(() -> new HazelcastMapConfigRegistry(jHipsterProperties, cacheProperties))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("backups:")
+            .hasMessageContaining("eviction:")
+            .hasMessageContaining("native:");
+    }
+}
@@ -0,0 +1,212 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.config.CacheConfiguration;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Integration tests of the Hibernate second-level and query caches, stored in the application's Hazelcast instance.
+ */
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class SecondLevelCacheIT {
+
+    private static final String REGION = CachedTestEntity.class.getName();
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private ObjectProvider<CacheWarmer> cacheWarmers;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setup() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update("delete from test_cached_entity");
+            return null;
+        });
+        entityManagerFactory.getCache().evict(CachedTestEntity.class);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testEntityIsCached() {
+        persist(new CachedTestEntity(1L, "second-level-cache"));
+
+        assertThat(load(1L).getName()).isEqualTo("second-level-cache");
+        assertThat(load(1L).getName()).isEqualTo("second-level-cache");
+
+        assertThat(statistics.getDomainDataRegionStatistics(REGION).getHitCount()).isPositive();
+        assertThat(hazelcastInstance.getMap(REGION).size()).isPositive();
+        assertThat(meterRegistry.get("hibernate.cache.region.requests").tag("region", REGION)
+            .tag("result", "hit").functionCounter().count()).isPositive();
+    }
+
+    @Test
+    public void testAuditEventsAreNotCached() {
+        Long id = transactionTemplate.execute(status -> {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setPrincipal("second-level-cache");
+            event.setAuditEventDate(Instant.now());
+            event.setAuditEventType("AUTHENTICATION_SUCCESS");
+            event.getData().put("remoteAddress", "10.0.0.12");
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            entityManager.joinTransaction();
+            entityManager.persist(event);
+            entityManager.flush();
+            return event.getId();
+        });
+
+        assertThat(loadData(id)).containsEntry("remoteAddress", "10.0.0.12");
+        assertThat(loadData(id)).containsEntry("remoteAddress", "10.0.0.12");
+
+        assertThat(entityManagerFactory.getCache().contains(PersistentAuditEvent.class, id)).isFalse();
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(2);
+        // The data is stored in the event row, so no collection is loaded
+        assertThat(statistics.getCollectionLoadCount()).isZero();
+    }
+
+    @Test
+    public void testQueryResultsAreCachedUntilTheTableChanges() {
+        assertThat(countEvents("query-cache")).isZero();
+        assertThat(countEvents("query-cache")).isZero();
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+
+        transactionTemplate.execute(status -> {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setPrincipal("query-cache");
+            event.setAuditEventDate(Instant.now());
+            event.setAuditEventType("AUTHENTICATION_SUCCESS");
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            entityManager.joinTransaction();
+            entityManager.persist(event);
+            return null;
+        });
+
+        assertThat(countEvents("query-cache")).isEqualTo(1);
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEntityCacheWarmer() {
+        for (long id = 1; id <= 3; id++) {
+            persist(new CachedTestEntity(id, "warm-up-" + id));
+        }
+        entityManagerFactory.getCache().evict(CachedTestEntity.class);
+        WarmUpBudget budget = new WarmUpBudget(new WarmUpBudget.Limits(TimeUnit.MINUTES.toNanos(1), 1), 1000);
+
+        new EntityCacheWarmer(entityManagerFactory, "CachedTestEntity", 2).warmUp(budget);
+
+        assertThat(budget.getLoaded()).isEqualTo(3);
+        for (long id = 1; id <= 3; id++) {
+            assertThat(entityManagerFactory.getCache().contains(CachedTestEntity.class, id)).isTrue();
+        }
+        statistics.clear();
+        assertThat(load(3L).getName()).isEqualTo("warm-up-3");
+        assertThat(statistics.getSecondLevelCacheMissCount()).isZero();
+    }
+
+    @Test
+    public void testEntityCacheWarmerRejectsEntitiesNotCached() {
+        assertThatThrownBy(() -> new EntityCacheWarmer(entityManagerFactory, "PersistentAuditEvent", 2))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testMisconfiguredWarmUpEntitiesAreSkipped() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        ApplicationProperties.Cache.WarmUp properties = applicationProperties.getCache().getWarmUp();
+        properties.setEnabled(true);
+        properties.setEntities(Arrays.asList("PersistentAuditEvent", "UnknownEntity", "CachedTestEntity"));
+
+        CacheWarmUp warmUp = new CacheConfiguration(null, null, null)
+            .cacheWarmUp(applicationProperties, entityManagerFactory, cacheWarmers, Runnable::run);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> caches = (Map<String, Object>) warmUp.health().getDetails().get("caches");
+        assertThat(caches).containsOnlyKeys(REGION);
+    }
+
+    private void persist(CachedTestEntity entity) {
+        transactionTemplate.execute(status -> {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            entityManager.joinTransaction();
+            entityManager.persist(entity);
+            return null;
+        });
+    }
+
+    private CachedTestEntity load(Long id) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.find(CachedTestEntity.class, id);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private Map<String, String> loadData(Long id) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            PersistentAuditEvent event = entityManager.find(PersistentAuditEvent.class, id);
+            return new HashMap<>(event.getData());
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private long countEvents(String principal) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<Long> result = entityManager
+                .createQuery("select count(e) from PersistentAuditEvent e where e.principal = :principal", Long.class)
+                .setParameter("principal", principal)
+                .setHint("org.hibernate.cacheable", true)
+                .getResultList();
+            return result.get(0);
+        } finally {
+            entityManager.close();
+        }
+    }
+}
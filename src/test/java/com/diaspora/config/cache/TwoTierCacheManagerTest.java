@@ -0,0 +1,356 @@
+package com.diaspora.config.cache;
+
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.config.hazelcast.HazelcastSerializationRegistry;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.spring.cache.HazelcastCacheManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the {@link TwoTierCacheManager}.
+ * <p>
+ * Two cache managers on the same Hazelcast instance stand for two nodes of the cluster.
+ */
+public class TwoTierCacheManagerTest {
+
+    private static HazelcastInstance hazelcastInstance;
+
+    private ApplicationProperties.Cache properties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private String cacheName;
+
+    @BeforeAll
+    public static void startHazelcast() {
+        Config config = new Config();
+        config.setInstanceName("TwoTierCacheManagerTest");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.addMapConfig(new MapConfig("expiring-*").setTimeToLiveSeconds(60));
+        new HazelcastSerializationRegistry().registerWith(config.getSerializationConfig());
+        hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+    }
+
+    @AfterAll
+    public static void stopHazelcast() {
+        hazelcastInstance.shutdown();
+    }
+
+    @BeforeEach
+    public void setup() {
+        properties = new ApplicationProperties().getCache();
+        meterRegistry = new SimpleMeterRegistry();
+        cacheName = "cache-" + UUID.randomUUID();
+    }
+
+    @Test
+    public void testRepeatedReadsAreServedLocally() {
+        Cache cache = cacheManager().getCache(cacheName);
+        cache.put("bin", "411111");
+
+        assertThat(cache.get("bin").get()).isEqualTo("411111");
+        assertThat(cache.get("bin").get()).isEqualTo("411111");
+
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l1").tag("result", "hit").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l2").tag("result", "hit").counter().count()).isZero();
+        assertThat(meterRegistry.get("cache.tier.latency").tag("tier", "l1").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLocalMissIsFilledFromRemote() {
+        Cache cache = cacheManager().getCache(cacheName);
+        hazelcastInstance.getMap(cacheName).put("bin", "411111");
+
+        assertThat(cache.get("bin").get()).isEqualTo("411111");
+        assertThat(cache.get("bin").get()).isEqualTo("411111");
+
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l1").tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l2").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l1").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testNullValuesAreCached() {
+        Cache cache = cacheManager().getCache(cacheName);
+        cache.put("unknown", null);
+
+        assertThat(cache.get("unknown")).isNotNull();
+        assertThat(cache.get("unknown").get()).isNull();
+        assertThat(cache.get("unknown", () -> "loaded")).isNull();
+    }
+
+    @Test
+    public void testValueLoaderFillsBothTiers() {
+        Cache cache = cacheManager().getCache(cacheName);
+
+        assertThat(cache.get("bin", () -> "411111")).isEqualTo("411111");
+
+        assertThat(hazelcastInstance.getMap(cacheName).get("bin")).isEqualTo("411111");
+        assertThat(cache.get("bin", () -> "other")).isEqualTo("411111");
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l1").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneLoad() throws Exception {
+        Cache cache = cacheManager().getCache(cacheName);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<Object> values = getConcurrently(8, () -> cache.get("bin", slowLoader(loads, "411111")));
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(values).hasSize(8).containsOnly("411111");
+        assertThat(meterRegistry.get("cache.loads").tag("cache", cacheName).tag("result", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.loads.coalesced").tag("cache", cacheName).counter().count()).isEqualTo(7);
+    }
+
+    @Test
+    public void testWaitersGetTheLoadFailure() throws Exception {
+        Cache cache = cacheManager().getCache(cacheName);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<String> failingLoader = () -> {
+            loads.incrementAndGet();
+            Thread.sleep(200);
+            throw new IllegalStateException("database down");
+        };
+
+        List<Object> results = getConcurrently(4, () -> {
+            try {
+                return cache.get("bin", failingLoader);
+            } catch (Cache.ValueRetrievalException e) {
+                return e.getCause().getMessage();
+            }
+        });
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(results).containsOnly("database down");
+        assertThat(meterRegistry.get("cache.loads").tag("cache", cacheName).tag("result", "failure").timer().count()).isEqualTo(1);
+        // The failure is not cached
+        assertThat(cache.get("bin", () -> "411111")).isEqualTo("411111");
+        assertThatThrownBy(() -> cacheManager().getCache(cacheName).get("other", failingLoader))
+            .isInstanceOf(Cache.ValueRetrievalException.class);
+    }
+
+    @Test
+    public void testClusterLockLoadsOnce() throws Exception {
+        ApplicationProperties.Cache.CacheSpec spec = new ApplicationProperties.Cache.CacheSpec();
+        spec.setClusterLock(true);
+        properties.getCaches().put(cacheName, spec);
+        Cache node1 = cacheManager().getCache(cacheName);
+        Cache node2 = cacheManager().getCache(cacheName);
+        AtomicInteger loads = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+
+        List<Object> values = getConcurrently(6, () ->
+            (calls.incrementAndGet() % 2 == 0 ? node1 : node2).get("bin", slowLoader(loads, "411111")));
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(values).containsOnly("411111");
+        assertThat(meterRegistry.get("cache.loads.lock.wait").tag("cache", cacheName).timer().count()).isPositive();
+        assertThat(hazelcastInstance.getMap(cacheName).isLocked("bin")).isFalse();
+    }
+
+    @Test
+    public void testEntriesAreRefreshedEarly() throws Exception {
+        cacheName = "expiring-" + UUID.randomUUID();
+        ApplicationProperties.Cache.CacheSpec spec = new ApplicationProperties.Cache.CacheSpec();
+        // Far above the usual 1.0, so that the refresh is all but certain long before the expiry
+        spec.setEarlyRefreshBeta(1e9);
+        properties.getCaches().put(cacheName, spec);
+        Cache cache = cacheManager().getCache(cacheName);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("bin", slowLoader(loads, "411111"))).isEqualTo("411111");
+        assertThat(cache.get("bin", slowLoader(loads, "522222"))).isEqualTo("522222");
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.loads.early").tag("cache", cacheName).counter().count()).isEqualTo(1);
+        assertThat(hazelcastInstance.getMap(cacheName).get("bin")).isEqualTo("522222");
+    }
+
+    @Test
+    public void testNoEarlyRefreshByDefault() {
+        cacheName = "expiring-" + UUID.randomUUID();
+        Cache cache = cacheManager().getCache(cacheName);
+
+        assertThat(cache.get("bin", () -> "411111")).isEqualTo("411111");
+        assertThat(cache.get("bin", () -> "522222")).isEqualTo("411111");
+        assertThat(meterRegistry.get("cache.loads.early").tag("cache", cacheName).counter().count()).isZero();
+    }
+
+    @Test
+    public void testWritesInvalidateOtherNodes() throws Exception {
+        Cache node1 = cacheManager().getCache(cacheName);
+        Cache node2 = cacheManager().getCache(cacheName);
+        node1.put("bin", "411111");
+        assertThat(node2.get("bin").get()).isEqualTo("411111");
+
+        node1.put("bin", "522222");
+        awaitValue(node2, "bin", "522222");
+
+        node1.evict("bin");
+        awaitValue(node2, "bin", null);
+
+        node1.put("bin", "633333");
+        assertThat(node2.get("bin").get()).isEqualTo("633333");
+        node1.clear();
+        awaitValue(node2, "bin", null);
+    }
+
+    @Test
+    public void testPutIfAbsentInvalidatesOtherNodes() throws Exception {
+        Cache node1 = cacheManager().getCache(cacheName);
+        Cache node2 = cacheManager().getCache(cacheName);
+        node1.put("bin", "411111");
+        assertThat(node2.get("bin").get()).isEqualTo("411111");
+        // Expired from the remote tier, still in the local tier of the second node
+        hazelcastInstance.getMap(cacheName).delete("bin");
+
+        assertThat(node1.putIfAbsent("bin", "522222")).isNull();
+        awaitValue(node2, "bin", "522222");
+
+        assertThat(node1.putIfAbsent("bin", "633333").get()).isEqualTo("522222");
+        assertThat(node2.get("bin").get()).isEqualTo("522222");
+    }
+
+    @Test
+    public void testLocalCacheCanBeDisabledPerCache() {
+        ApplicationProperties.Cache.CacheSpec spec = new ApplicationProperties.Cache.CacheSpec();
+        spec.setLocalMaxSize(0L);
+        properties.getCaches().put(cacheName, spec);
+        Cache cache = cacheManager().getCache(cacheName);
+        cache.put("bin", "411111");
+
+        assertThat(cache.get("bin").get()).isEqualTo("411111");
+
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l1").tag("result", "miss").counter().count()).isZero();
+        assertThat(meterRegistry.get("cache.tier.gets").tag("tier", "l2").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCacheMetrics() throws Exception {
+        Cache cache = cacheManager().getCache(cacheName);
+        cache.put("bin", "411111");
+        cache.put("other", "522222");
+        cache.get("bin");
+        cache.get("unknown");
+        hazelcastInstance.getMap(cacheName).evict("other");
+
+        assertThat(meterRegistry.get("cache.gets").tag("cache", cacheName).tag("result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", cacheName).tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.puts").tag("cache", cacheName).functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cache.size").tag("cache", cacheName).gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.entries").tag("cache", cacheName).tag("ownership", "owned").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.entry.memory").tag("cache", cacheName).tag("ownership", "owned").gauge().value()).isPositive();
+        assertThat(meterRegistry.get("cache.gets.latency").tag("cache", cacheName).timer().count()).isEqualTo(2);
+        for (int i = 0; i < 50 && meterRegistry.get("cache.evictions").tag("cache", cacheName).functionCounter().count() == 0; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", cacheName).tag("cacheManager", "cacheManager")
+            .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCacheMetricsHaveTheSameTags() {
+        Cache cache = cacheManager().getCache(cacheName);
+        cache.put("bin", "411111");
+        cache.get("bin", () -> "411111");
+        cache.get("other", () -> "522222");
+
+        for (String metric : new String[]{"cache.gets", "cache.gets.latency", "cache.tier.gets", "cache.tier.latency",
+            "cache.tier.size", "cache.loads"}) {
+            assertThat(meterRegistry.get(metric).tag("cache", cacheName).tag("name", cacheName)
+                .tag("cacheManager", "cacheManager").meters()).as(metric).isNotEmpty();
+        }
+    }
+
+    @Test
+    public void testOnlyItsOwnCachesAreListed() {
+        hazelcastInstance.getMap("com.diaspora.domain.Region-" + cacheName).put(1L, "entity");
+        TwoTierCacheManager cacheManager = cacheManager();
+        cacheManager.getCache(cacheName);
+
+        assertThat(cacheManager.getCacheNames()).containsExactly(cacheName);
+        assertThat(meterRegistry.find("cache.gets").tag("cache", "com.diaspora.domain.Region-" + cacheName).meters())
+            .isEmpty();
+    }
+
+    @Test
+    public void testClosingRemovesTheEvictionListener() throws Exception {
+        TwoTierCacheManager cacheManager = cacheManager();
+        Cache cache = cacheManager.getCache(cacheName);
+        cacheManager.close();
+        cache.put("bin", "411111");
+        hazelcastInstance.getMap(cacheName).evict("bin");
+
+        Thread.sleep(200);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", cacheName).functionCounter().count()).isZero();
+    }
+
+    private static Callable<String> slowLoader(AtomicInteger loads, String value) {
+        return () -> {
+            loads.incrementAndGet();
+            Thread.sleep(200);
+            return value;
+        };
+    }
+
+    private static List<Object> getConcurrently(int callers, Callable<Object> get) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return get.call();
+                }));
+            }
+            start.countDown();
+            List<Object> results = new ArrayList<>();
+            for (Future<Object> future : futures) {
+                results.add(future.get(10, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TwoTierCacheManager cacheManager() {
+        return new TwoTierCacheManager(new HazelcastCacheManager(hazelcastInstance), hazelcastInstance, properties, meterRegistry);
+    }
+
+    private void awaitValue(Cache cache, Object key, Object expected) throws InterruptedException {
+        for (int i = 0; i < 50 && !isValue(cache, key, expected); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(isValue(cache, key, expected)).isTrue();
+    }
+
+    private boolean isValue(Cache cache, Object key, Object expected) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return expected == null ? wrapper == null : wrapper != null && expected.equals(wrapper.get());
+    }
+}
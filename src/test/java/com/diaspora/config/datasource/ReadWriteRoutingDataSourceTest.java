@@ -0,0 +1,182 @@
+package com.diaspora.config.datasource;
+
+import com.diaspora.config.datasource.ReadWriteRoutingDataSource.Replica;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link ReadWriteRoutingDataSource} and the {@link ReplicaLagMonitor}, with two H2 databases
+ * standing for the primary and its replica.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    private static final long NOW = 1_000_000_000L;
+
+    private static final long MAX_LAG_MS = 10000;
+
+    private JdbcTemplate primary;
+
+    private JdbcTemplate replica;
+
+    private MeterRegistry meterRegistry;
+
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    private ReplicaLagMonitor monitor;
+
+    private JdbcTemplate routed;
+
+    private TransactionTemplate readOnly;
+
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    public void setUp() {
+        primary = new JdbcTemplate(database("primary-routing"));
+        replica = new JdbcTemplate(database("replica-routing"));
+        meterRegistry = new SimpleMeterRegistry();
+        routingDataSource = new ReadWriteRoutingDataSource(primary.getDataSource(), "Hikari",
+            Collections.singletonList(new Replica("Hikari-Replica-1", replica.getDataSource())), 60000, meterRegistry);
+        monitor = new ReplicaLagMonitor(primary.getDataSource(), routingDataSource, MAX_LAG_MS, meterRegistry, () -> NOW);
+
+        DataSource dataSource = routingDataSource.lazy();
+        routed = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop all objects");
+        jdbcTemplate.execute("create table marker (name varchar(50))");
+        jdbcTemplate.update("insert into marker values (?)", name);
+        jdbcTemplate.execute("create table " + ReplicaLagMonitor.TABLE + " (id int primary key, beat bigint)");
+        jdbcTemplate.update("insert into " + ReplicaLagMonitor.TABLE + " values (1, 0)");
+        return dataSource;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private void replicate(long lagMs) {
+        replica.update("update " + ReplicaLagMonitor.TABLE + " set beat = ? where id = 1", NOW - lagMs);
+    }
+
+    private String readOnlyMarker() {
+        return readOnly.execute(status -> routed.queryForObject("select name from marker", String.class));
+    }
+
+    private String readWriteMarker() {
+        return readWrite.execute(status -> routed.queryForObject("select name from marker", String.class));
+    }
+
+    private double routedConnections(String pool) {
+        return meterRegistry.get("datasource.connections.routed").tag("pool", pool).counter().count();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> replicaDetails(Health health, String pool) {
+        return ((Map<String, Map<String, Object>>) health.getDetails().get("replicas")).get(pool);
+    }
+
+    @Test
+    public void testReplicaIsLeftOutUntilChecked() {
+        replicate(0);
+        assertThat(readOnlyMarker()).isEqualTo("primary-routing");
+
+        monitor.check();
+
+        assertThat(primary.queryForObject("select beat from " + ReplicaLagMonitor.TABLE, Long.class)).isEqualTo(NOW);
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+    }
+
+    @Test
+    public void testOnlyReadOnlyTransactionsAreRoutedToTheReplica() {
+        replicate(1000);
+        monitor.check();
+        assertThat(routed.queryForObject("select name from marker", String.class)).isEqualTo("primary-routing");
+        double primaryConnections = routedConnections("Hikari");
+
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+        assertThat(readWriteMarker()).isEqualTo("primary-routing");
+        assertThat(routedConnections("Hikari-Replica-1")).isEqualTo(1);
+        assertThat(routedConnections("Hikari")).isEqualTo(primaryConnections + 1);
+    }
+
+    @Test
+    public void testUserReadsItsOwnWrites() {
+        replicate(1000);
+        monitor.check();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("user", "user"));
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+
+        readWriteMarker();
+
+        assertThat(readOnlyMarker()).isEqualTo("primary-routing");
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("other", "other"));
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+    }
+
+    @Test
+    public void testLaggingReplicaFallsBackToThePrimary() {
+        replicate(1000);
+        monitor.check();
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+
+        replicate(MAX_LAG_MS + 1);
+        monitor.check();
+
+        assertThat(readOnlyMarker()).isEqualTo("primary-routing");
+        assertThat(meterRegistry.get("datasource.replica.lag").tag("pool", "Hikari-Replica-1").gauge().value())
+            .isEqualTo(MAX_LAG_MS + 1);
+
+        replicate(0);
+        monitor.check();
+
+        assertThat(readOnlyMarker()).isEqualTo("replica-routing");
+    }
+
+    @Test
+    public void testHealthReportsEachReplica() {
+        replicate(1000);
+        monitor.check();
+
+        Health health = monitor.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("readsFromPrimary", false);
+        assertThat(replicaDetails(health, "Hikari-Replica-1")).containsEntry("status", "UP").containsEntry("lagMs", 1000L);
+
+        replica.execute("drop table " + ReplicaLagMonitor.TABLE);
+        monitor.check();
+
+        health = monitor.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("readsFromPrimary", true);
+        assertThat(replicaDetails(health, "Hikari-Replica-1")).containsEntry("status", "DOWN").containsEntry("lagMs", -1L);
+        assertThat(readOnlyMarker()).isEqualTo("primary-routing");
+    }
+}
@@ -0,0 +1,72 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the {@link FlakeIdentifierGenerator}.
+ */
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class FlakeIdentifierGeneratorIT {
+
+    private static final int EVENT_COUNT = 60;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    public void testPersistedEntitiesGetIdsWithoutInsertingThem() {
+        List<Long> ids = transactionTemplate.execute(status -> {
+            EntityManager entityManager = entityManagerFactory.createEntityManager();
+            entityManager.joinTransaction();
+            List<PersistentAuditEvent> events = new ArrayList<>();
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                PersistentAuditEvent event = new PersistentAuditEvent();
+                event.setPrincipal("flake-id-" + i);
+                event.setAuditEventDate(Instant.now());
+                event.setAuditEventType("AUTHENTICATION_SUCCESS");
+                entityManager.persist(event);
+                // The id is known on persist, unlike an IDENTITY id which needs the row inserted
+                assertThat(event.getId()).isNotNull();
+                events.add(event);
+            }
+            assertThat(statistics.getPrepareStatementCount()).isZero();
+            entityManager.flush();
+            List<Long> result = new ArrayList<>();
+            events.forEach(event -> result.add(event.getId()));
+            return result;
+        });
+
+        assertThat(ids).doesNotHaveDuplicates().isSorted();
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(EVENT_COUNT);
+        // Inserted in JDBC batches of hibernate.jdbc.batch_size, rather than one statement per row
+        assertThat(statistics.getPrepareStatementCount()).isLessThan(EVENT_COUNT / 10);
+    }
+}
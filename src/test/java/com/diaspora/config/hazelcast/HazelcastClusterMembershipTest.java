@@ -0,0 +1,150 @@
+package com.diaspora.config.hazelcast;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.DiscoveryStrategyConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.logging.Logger;
+import com.hazelcast.spi.discovery.DiscoveryNode;
+import com.hazelcast.spi.properties.GroupProperty;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link DiscoveryClientDiscoveryStrategy} and the {@link HazelcastClusterMetrics}.
+ * <p>
+ * The registry is a mocked {@link DiscoveryClient}, whose instances are Hazelcast members on 127.0.0.1,
+ * as with the "dev" profile.
+ */
+public class HazelcastClusterMembershipTest {
+
+    private static final String SERVICE_ID = "mssecurecardbank";
+
+    private static final Function<ServiceInstance, InetSocketAddress> MEMBER_ADDRESS =
+        instance -> InetSocketAddress.createUnresolved(instance.getHost(), instance.getPort());
+
+    private final List<ServiceInstance> registeredInstances = new CopyOnWriteArrayList<>();
+
+    private final List<HazelcastInstance> hazelcastInstances = new ArrayList<>();
+
+    private DiscoveryClient discoveryClient;
+
+    @BeforeEach
+    public void setup() {
+        discoveryClient = mock(DiscoveryClient.class);
+        when(discoveryClient.getInstances(SERVICE_ID)).thenAnswer(invocation -> new ArrayList<>(registeredInstances));
+    }
+
+    @AfterEach
+    public void stopHazelcast() {
+        hazelcastInstances.forEach(HazelcastInstance::shutdown);
+    }
+
+    @Test
+    public void testDiscoversRegisteredInstances() {
+        registeredInstances.add(instance("127.0.0.1", 5801));
+        registeredInstances.add(instance("unknown-host.invalid", 5801));
+        DiscoveryClientDiscoveryStrategy strategy = new DiscoveryClientDiscoveryStrategy(
+            Logger.getLogger(DiscoveryClientDiscoveryStrategy.class), Collections.emptyMap(), discoveryClient, SERVICE_ID, MEMBER_ADDRESS);
+
+        List<DiscoveryNode> nodes = new ArrayList<>();
+        strategy.discoverNodes().forEach(nodes::add);
+
+        assertThat(nodes).hasSize(1);
+        assertThat(nodes.get(0).getPrivateAddress().getHost()).isEqualTo("127.0.0.1");
+        assertThat(nodes.get(0).getPrivateAddress().getPort()).isEqualTo(5801);
+
+        registeredInstances.add(instance("127.0.0.1", 5802));
+        nodes.clear();
+        strategy.discoverNodes().forEach(nodes::add);
+
+        assertThat(nodes).hasSize(2);
+    }
+
+    @Test
+    public void testInstancesRegisteredLaterAreMergedIntoTheCluster() throws InterruptedException {
+        // Both instances start while the registry only knows about the first one
+        registeredInstances.add(instance("127.0.0.1", 5811));
+        HazelcastInstance first = startHazelcast(5811);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new HazelcastClusterMetrics(first, discoveryClient, registration()).bindTo(meterRegistry);
+        for (int i = 0; i < 1000; i++) {
+            first.getMap("bins").put(i, "bin-" + i);
+        }
+        registeredInstances.clear();
+        HazelcastInstance second = startHazelcast(5812);
+        assertThat(first.getCluster().getMembers()).hasSize(1);
+        assertThat(second.getCluster().getMembers()).hasSize(1);
+
+        registeredInstances.add(instance("127.0.0.1", 5811));
+        registeredInstances.add(instance("127.0.0.1", 5812));
+        assertThat(meterRegistry.get("hazelcast.cluster.instances").gauge().value()).isEqualTo(2);
+
+        await(() -> first.getCluster().getMembers().size() == 2 && second.getCluster().getMembers().size() == 2);
+        await(() -> first.getPartitionService().isClusterSafe());
+        await(() -> meterRegistry.get("hazelcast.partition.migrations.active").gauge().value() == 0);
+
+        assertThat(meterRegistry.get("hazelcast.cluster.members").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get("hazelcast.cluster.membership.changes").tag("type", "added").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("hazelcast.partition.migrations").tag("result", "completed").timer().count()).isPositive();
+        assertThat(meterRegistry.get("hazelcast.partition.migrations").tag("result", "failed").timer().count()).isZero();
+        assertThat(second.getMap("bins").size()).isEqualTo(1000);
+        assertThat(second.getMap("bins").getLocalMapStats().getOwnedEntryCount()).isPositive();
+    }
+
+    private HazelcastInstance startHazelcast(int port) {
+        Config config = new Config();
+        config.setInstanceName("HazelcastClusterMembershipTest-" + port);
+        config.getNetworkConfig().setPort(port).setPortAutoIncrement(false);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        config.setProperty(GroupProperty.DISCOVERY_SPI_ENABLED.getName(), "true");
+        config.setProperty(GroupProperty.WAIT_SECONDS_BEFORE_JOIN.getName(), "0");
+        config.setProperty(GroupProperty.MERGE_FIRST_RUN_DELAY_SECONDS.getName(), "1");
+        config.setProperty(GroupProperty.MERGE_NEXT_RUN_DELAY_SECONDS.getName(), "1");
+        config.getNetworkConfig().getJoin().getDiscoveryConfig().addDiscoveryStrategyConfig(
+            new DiscoveryStrategyConfig(new DiscoveryClientDiscoveryStrategy.Factory(discoveryClient, SERVICE_ID, MEMBER_ADDRESS)));
+        HazelcastInstance hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+        hazelcastInstances.add(hazelcastInstance);
+        return hazelcastInstance;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<Registration> registration() {
+        Registration registration = mock(Registration.class);
+        when(registration.getServiceId()).thenReturn(SERVICE_ID);
+        ObjectProvider<Registration> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(registration);
+        return provider;
+    }
+
+    private static ServiceInstance instance(String host, int port) {
+        return new DefaultServiceInstance(host + ":" + port, SERVICE_ID, host, port, false);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 600 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
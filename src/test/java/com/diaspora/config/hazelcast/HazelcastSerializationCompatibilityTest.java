@@ -0,0 +1,176 @@
+package com.diaspora.config.hazelcast;
+
+import com.diaspora.config.cache.CacheInvalidation;
+import com.diaspora.domain.AbstractAuditingEntity;
+import com.diaspora.security.oauth2.RevokedToken;
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.internal.serialization.impl.HeapData;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Data;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Compatibility tests of the {@link HazelcastSerializationRegistry} serializations.
+ * <p>
+ * The expected bytes were written by the first version of each serialization: a node must always be able to read
+ * them, as they may come from an older node during a rolling upgrade, or from a backup.
+ */
+public class HazelcastSerializationCompatibilityTest {
+
+    private static final String REVOKED_TOKEN_V1 = "00000000fffffffe01000000010000000100000007746f6b656e2d31000000005f5e" +
+        "100000000000000000005f5e1e10000000000000000561646d696e0000000b636f6d70726f6d69736564";
+
+    private static final String CACHE_INVALIDATION_V1 = "00000000fffffffe010000000100000002000000066e6f64652d310000000462" +
+        "696e73fffffff500000006343131313131";
+
+    private InternalSerializationService serializationService;
+
+    @BeforeEach
+    public void setup() {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        new HazelcastSerializationRegistry().registerWith(serializationConfig);
+        serializationService = new DefaultSerializationServiceBuilder().setConfig(serializationConfig).build();
+    }
+
+    @Test
+    public void testReadsFirstVersions() {
+        RevokedToken revokedToken = serializationService.toObject(data(REVOKED_TOKEN_V1));
+        assertThat(revokedToken.getJti()).isEqualTo("token-1");
+        assertThat(revokedToken.getRevokedAt()).isEqualTo(Instant.ofEpochSecond(1600000000L));
+        assertThat(revokedToken.getExpiresAt()).isEqualTo(Instant.ofEpochSecond(1600003600L));
+        assertThat(revokedToken.getRevokedBy()).isEqualTo("admin");
+        assertThat(revokedToken.getReason()).isEqualTo("compromised");
+
+        CacheInvalidation invalidation = serializationService.toObject(data(CACHE_INVALIDATION_V1));
+        assertThat(invalidation.getOrigin()).isEqualTo("node-1");
+        assertThat(invalidation.getCacheName()).isEqualTo("bins");
+        assertThat(invalidation.getKey()).isEqualTo("411111");
+    }
+
+    @Test
+    public void testWritesFirstVersions() {
+        assertThat(hex(serializationService.toData(revokedToken()))).isEqualTo(REVOKED_TOKEN_V1);
+        assertThat(hex(serializationService.toData(new CacheInvalidation("node-1", "bins", "411111")))).isEqualTo(CACHE_INVALIDATION_V1);
+    }
+
+    @Test
+    public void testPayloadsAreSmallerThanJavaSerialization() throws IOException {
+        assertThat(serializationService.toData(revokedToken()).totalSize())
+            .isLessThan(javaSerializedSize(revokedToken()) / 3);
+    }
+
+    @Test
+    public void testAuditingEntitySerializerRoundTrip() {
+        InternalSerializationService auditingSerializationService = auditingEntitySerializationService(1);
+        NamedEntity entity = new NamedEntity();
+        entity.setCreatedBy("admin");
+        entity.setCreatedDate(Instant.ofEpochSecond(1600000000L, 123456789));
+        entity.setLastModifiedBy(null);
+        entity.setLastModifiedDate(null);
+        entity.name = "bins";
+
+        NamedEntity read = auditingSerializationService.toObject(auditingSerializationService.toData(entity));
+
+        assertThat(read.getCreatedBy()).isEqualTo("admin");
+        assertThat(read.getCreatedDate()).isEqualTo(Instant.ofEpochSecond(1600000000L, 123456789));
+        assertThat(read.getLastModifiedBy()).isNull();
+        assertThat(read.getLastModifiedDate()).isNull();
+        assertThat(read.name).isEqualTo("bins");
+    }
+
+    @Test
+    public void testAuditingEntitySerializerRejectsNewerVersions() {
+        Data newer = auditingEntitySerializationService(2).toData(new NamedEntity());
+
+        assertThatThrownBy(() -> auditingEntitySerializationService(1).toObject(newer))
+            .hasRootCauseInstanceOf(IOException.class);
+    }
+
+    private static InternalSerializationService auditingEntitySerializationService(int version) {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        serializationConfig.addSerializerConfig(new SerializerConfig()
+            .setTypeClass(NamedEntity.class)
+            .setImplementation(new NamedEntitySerializer(version)));
+        return new DefaultSerializationServiceBuilder().setConfig(serializationConfig).build();
+    }
+
+    private static RevokedToken revokedToken() {
+        return new RevokedToken("token-1", Instant.ofEpochSecond(1600000000L), Instant.ofEpochSecond(1600003600L), "admin", "compromised");
+    }
+
+    private static int javaSerializedSize(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.size();
+    }
+
+    private static Data data(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return new HeapData(bytes);
+    }
+
+    private static String hex(Data data) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : data.toByteArray()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class NamedEntity extends AbstractAuditingEntity {
+
+        private String name;
+    }
+
+    private static class NamedEntitySerializer extends AbstractAuditingEntitySerializer<NamedEntity> {
+
+        private final int version;
+
+        NamedEntitySerializer(int version) {
+            this.version = version;
+        }
+
+        @Override
+        public int getTypeId() {
+            return 2001;
+        }
+
+        @Override
+        protected int getVersion() {
+            return version;
+        }
+
+        @Override
+        protected NamedEntity newEntity() {
+            return new NamedEntity();
+        }
+
+        @Override
+        protected void writeEntity(ObjectDataOutput out, NamedEntity entity) throws IOException {
+            out.writeUTF(entity.name);
+        }
+
+        @Override
+        protected void readEntity(ObjectDataInput in, NamedEntity entity, int version) throws IOException {
+            entity.name = in.readUTF();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.diaspora.config.oauth2;
+
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.security.AuthoritySetAware;
+import com.diaspora.security.oauth2.OAuth2SignatureVerifierClient;
+import com.diaspora.security.oauth2.SignatureVerifierRegistry;
+import com.diaspora.security.oauth2.TokenRevocationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link OAuth2JwtAccessTokenConverter}.
+ */
+public class OAuth2JwtAccessTokenConverterTest {
+
+    private KeyPair keyPair;
+
+    private KeyPair otherKeyPair;
+
+    private AtomicInteger verifications;
+
+    private OAuth2Properties oAuth2Properties;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+        verifications = new AtomicInteger();
+        oAuth2Properties = new OAuth2Properties();
+        oAuth2Properties.getSignatureVerification().setPublicKeyRefreshRateLimit(0);
+    }
+
+    @Test
+    public void testVerifiedTokenIsCached() {
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()));
+        String token = createToken("user", System.currentTimeMillis() / 1000 + 60);
+
+        Map<String, Object> first = converter.decode(token);
+        Map<String, Object> second = converter.decode(token);
+
+        assertThat(verifications.get()).isEqualTo(1);
+        assertThat(second).isEqualTo(first);
+        assertThat(second.get("user_name")).isEqualTo("user");
+    }
+
+    @Test
+    public void testCachedClaimsCannotBeModifiedByCallers() {
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()));
+        String token = createToken("user", System.currentTimeMillis() / 1000 + 60);
+
+        converter.decode(token).remove("user_name");
+
+        assertThat(converter.decode(token).get("user_name")).isEqualTo("user");
+    }
+
+    @Test
+    public void testCacheIsClearedWhenKeysChange() {
+        SignatureVerifierRegistry registry = registry(verifierClient());
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry);
+        String token = createToken("user", System.currentTimeMillis() / 1000 + 60);
+
+        converter.decode(token);
+        assertThat(registry.tryRefresh()).isTrue();
+        converter.decode(token);
+
+        assertThat(verifications.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testExpiredTokenIsNotCached() {
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()));
+        String token = createToken("user", System.currentTimeMillis() / 1000 - 60);
+
+        converter.decode(token);
+        converter.decode(token);
+
+        assertThat(verifications.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testCacheCanBeDisabled() {
+        oAuth2Properties.getTokenCache().setEnabled(false);
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()));
+        String token = createToken("user", System.currentTimeMillis() / 1000 + 60);
+
+        converter.decode(token);
+        converter.decode(token);
+
+        assertThat(verifications.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testKeyIsSelectedByKeyId() {
+        OAuth2SignatureVerifierClient client = new OAuth2SignatureVerifierClient() {
+            @Override
+            public SignatureVerifier getSignatureVerifier() {
+                return null;
+            }
+
+            @Override
+            public Map<String, SignatureVerifier> getSignatureVerifiers() {
+                Map<String, SignatureVerifier> verifiers = new HashMap<>();
+                verifiers.put("key-1", new RsaVerifier((RSAPublicKey) keyPair.getPublic()));
+                verifiers.put("key-2", new RsaVerifier((RSAPublicKey) otherKeyPair.getPublic()));
+                return verifiers;
+            }
+        };
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(client));
+        long exp = System.currentTimeMillis() / 1000 + 60;
+
+        assertThat(converter.decode(createToken("user", exp, keyPair, "key-1")).get("user_name")).isEqualTo("user");
+        assertThat(converter.decode(createToken("admin", exp, otherKeyPair, "key-2")).get("user_name")).isEqualTo("admin");
+        assertThatThrownBy(() -> converter.decode(createToken("user", exp, otherKeyPair, "key-1")))
+            .isInstanceOf(InvalidTokenException.class);
+        assertThatThrownBy(() -> converter.decode(createToken("user", exp, keyPair, "unknown")))
+            .isInstanceOf(InvalidTokenException.class);
+    }
+
+    @Test
+    public void testExtractedAuthenticationCarriesAuthoritySet() {
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()));
+        Map<String, Object> claims = converter.decode(createToken("user", System.currentTimeMillis() / 1000 + 60));
+
+        OAuth2Authentication authentication = converter.extractAuthentication(claims);
+
+        assertThat(authentication).isInstanceOf(AuthoritySetAware.class);
+        assertThat(((AuthoritySetAware) authentication).getAuthoritySet().getAuthorities()).containsExactly(AuthoritiesConstants.USER);
+        assertThat(((AuthoritySetAware) authentication).getAuthoritySet().contains(AuthoritiesConstants.USER)).isTrue();
+        assertThat(authentication.getDetails()).isEqualTo(claims);
+    }
+
+    @Test
+    public void testRevokedTokenIsRejectedEvenIfCached() {
+        TokenRevocationStore tokenRevocationStore = mock(TokenRevocationStore.class);
+        OAuth2JwtAccessTokenConverter converter = new OAuth2JwtAccessTokenConverter(oAuth2Properties, registry(verifierClient()),
+            tokenRevocationStore, new SimpleMeterRegistry());
+        String token = createToken("user", System.currentTimeMillis() / 1000 + 60);
+        converter.decode(token);
+
+        when(tokenRevocationStore.isRevoked("token-user")).thenReturn(true);
+
+        assertThatThrownBy(() -> converter.decode(token))
+            .isInstanceOf(InvalidTokenException.class)
+            .hasMessage("Access token has been revoked");
+        assertThat(verifications.get()).isEqualTo(1);
+    }
+
+    private String createToken(String username, long exp) {
+        return createToken(username, exp, keyPair, null);
+    }
+
+    private String createToken(String username, long exp, KeyPair signingKeyPair, String keyId) {
+        String claims = "{\"user_name\":\"" + username + "\",\"exp\":" + exp + ",\"jti\":\"token-" + username + "\"," +
+            "\"authorities\":[\"ROLE_USER\"]}";
+        Map<String, String> headers = keyId == null ? Collections.emptyMap() : Collections.singletonMap("kid", keyId);
+        return JwtHelper.encode(claims, new RsaSigner((RSAPrivateKey) signingKeyPair.getPrivate()), headers).getEncoded();
+    }
+
+    private SignatureVerifierRegistry registry(OAuth2SignatureVerifierClient client) {
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client, oAuth2Properties, null, new SimpleMeterRegistry());
+        registry.start();
+        return registry;
+    }
+
+    private OAuth2SignatureVerifierClient verifierClient() {
+        return this::countingVerifier;
+    }
+
+    private SignatureVerifier countingVerifier() {
+        RsaVerifier delegate = new RsaVerifier((RSAPublicKey) keyPair.getPublic());
+        return new SignatureVerifier() {
+            @Override
+            public void verify(byte[] content, byte[] signature) {
+                verifications.incrementAndGet();
+                delegate.verify(content, signature);
+            }
+
+            @Override
+            public String algorithm() {
+                return delegate.algorithm();
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.diaspora.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Test class for the {@link AuditEventDataConverter}.
+ * <p>
+ * The expected bytes were written by the first version of the encoding: stored events must always be readable.
+ */
+public class AuditEventDataConverterTest {
+
+    private static final String EVENT_DATA_V1 = "010001000d72656d6f74654164647265737301000931302e302e302e3132";
+
+    private final AuditEventDataConverter converter = new AuditEventDataConverter();
+
+    @Test
+    public void testRoundTrip() {
+        Map<String, String> data = new HashMap<>();
+        data.put("remoteAddress", "10.0.0.12");
+        data.put("sessionId", null);
+        data.put("message", "Mauvais identifiants é€\u0000");
+
+        byte[] column = converter.convertToDatabaseColumn(data);
+
+        assertThat(column).hasSize(AuditEventDataConverter.encodedLength(data));
+        assertThat(converter.convertToEntityAttribute(column)).isEqualTo(data);
+    }
+
+    @Test
+    public void testNoDataIsStoredAsNull() {
+        assertThat(converter.convertToDatabaseColumn(new HashMap<>())).isNull();
+        assertThat(converter.convertToDatabaseColumn(null)).isNull();
+
+        Map<String, String> data = converter.convertToEntityAttribute(null);
+        data.put("mutable", "true");
+        assertThat(data).containsOnly(entry("mutable", "true"));
+    }
+
+    @Test
+    public void testReadsFirstVersion() {
+        Map<String, String> data = new HashMap<>();
+        data.put("remoteAddress", "10.0.0.12");
+
+        assertThat(converter.convertToEntityAttribute(hex(EVENT_DATA_V1))).containsOnly(entry("remoteAddress", "10.0.0.12"));
+        assertThat(converter.convertToDatabaseColumn(data)).isEqualTo(hex(EVENT_DATA_V1));
+    }
+
+    @Test
+    public void testRejectsUnknownVersion() {
+        byte[] column = hex(EVENT_DATA_V1);
+        column[0] = 2;
+
+        assertThatThrownBy(() -> converter.convertToEntityAttribute(column)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
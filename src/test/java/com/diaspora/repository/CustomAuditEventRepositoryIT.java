@@ -0,0 +1,421 @@
+package com.diaspora.repository;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.config.audit.AuditEventWriter;
+import com.diaspora.config.hazelcast.FlakeIdentifierGenerator;
+import com.diaspora.domain.AuditEventDataConverter;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.flakeidgen.FlakeIdGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Integration tests for {@link CustomAuditEventRepository} and its {@link AuditEventWriter}.
+ */
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class CustomAuditEventRepositoryIT {
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private CustomAuditEventRepository customAuditEventRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private FlakeIdGenerator idGenerator;
+
+    @BeforeEach
+    public void setup() {
+        idGenerator = hazelcastInstance.getFlakeIdGenerator(FlakeIdentifierGenerator.DEFAULT_FLAKE_ID_GENERATOR);
+        transactionTemplate.execute(status -> {
+            persistenceAuditEventRepository.deleteAll();
+            return null;
+        });
+    }
+
+    @Test
+    public void addAuditEvent() throws InterruptedException {
+        Map<String, Object> data = new HashMap<>();
+        data.put("test-key", "test-value");
+        AuditEvent event = new AuditEvent("test-user", "test-type", data);
+
+        customAuditEventRepository.add(event);
+
+        await(() -> persistenceAuditEventRepository.count() == 1);
+        PersistentAuditEvent persistentAuditEvent = persistenceAuditEventRepository.findAll().get(0);
+        assertThat(persistentAuditEvent.getPrincipal()).isEqualTo(event.getPrincipal());
+        assertThat(persistentAuditEvent.getAuditEventType()).isEqualTo(event.getType());
+        assertThat(persistentAuditEvent.getAuditEventDate()).isEqualTo(event.getTimestamp());
+        assertThat(dataOf(persistentAuditEvent)).containsOnly(entry("test-key", "test-value"));
+        assertThat(meterRegistry.get("audit.writer.events").tag("result", "written").counter().count()).isPositive();
+        assertThat(meterRegistry.get("audit.writer.flush").timer().count()).isPositive();
+    }
+
+    @Test
+    public void addAuditEventTruncateLargeData() throws InterruptedException {
+        Map<String, Object> data = new HashMap<>();
+        StringBuilder largeData = new StringBuilder();
+        for (int i = 0; i < CustomAuditEventRepository.EVENT_DATA_COLUMN_MAX_LENGTH + 10; i++) {
+            largeData.append("a");
+        }
+        data.put("test-key", largeData);
+
+        customAuditEventRepository.add(new AuditEvent("test-user", "test-type", data));
+
+        await(() -> persistenceAuditEventRepository.count() == 1);
+        String actualData = dataOf(persistenceAuditEventRepository.findAll().get(0)).get("test-key");
+        assertThat(actualData.length()).isEqualTo(CustomAuditEventRepository.EVENT_DATA_COLUMN_MAX_LENGTH);
+        assertThat(actualData).isSubstringOf(largeData);
+    }
+
+    @Test
+    public void addAuditEventLeavesOutDataExceedingTheColumn() throws InterruptedException {
+        Map<String, Object> data = new HashMap<>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < CustomAuditEventRepository.EVENT_DATA_COLUMN_MAX_LENGTH; i++) {
+            value.append("a");
+        }
+        for (int i = 0; i < 20; i++) {
+            data.put("test-key-" + i, value.toString());
+        }
+
+        customAuditEventRepository.add(new AuditEvent("test-user", "test-type", data));
+
+        await(() -> persistenceAuditEventRepository.count() == 1);
+        Map<String, String> actualData = dataOf(persistenceAuditEventRepository.findAll().get(0));
+        assertThat(actualData).hasSizeBetween(1, 19);
+        assertThat(AuditEventDataConverter.encodedLength(actualData))
+            .isLessThanOrEqualTo(AuditEventDataConverter.EVENT_DATA_COLUMN_MAX_LENGTH);
+    }
+
+    @Test
+    public void addAuditEventIgnoresAuthorizationFailure() throws InterruptedException {
+        customAuditEventRepository.add(new AuditEvent("test-user", "AUTHORIZATION_FAILURE", new HashMap<>()));
+        customAuditEventRepository.add(new AuditEvent("test-user", "test-type", new HashMap<>()));
+
+        await(() -> persistenceAuditEventRepository.count() == 1);
+        assertThat(persistenceAuditEventRepository.findAll().get(0).getAuditEventType()).isEqualTo("test-type");
+    }
+
+    @Test
+    public void findAuditEvents() throws InterruptedException {
+        Instant start = Instant.now().minusSeconds(60);
+        customAuditEventRepository.add(new AuditEvent(start, "test-user", "AUTHENTICATION_SUCCESS", new HashMap<>()));
+        customAuditEventRepository.add(new AuditEvent(start.plusSeconds(10), "test-user", "AUTHENTICATION_FAILURE", new HashMap<>()));
+        customAuditEventRepository.add(new AuditEvent(start.plusSeconds(20), "other-user", "AUTHENTICATION_SUCCESS", new HashMap<>()));
+        await(() -> persistenceAuditEventRepository.count() == 3);
+
+        assertThat(customAuditEventRepository.find(null, null, null)).hasSize(3);
+        assertThat(customAuditEventRepository.find("test-user", null, null)).hasSize(2);
+        assertThat(customAuditEventRepository.find(null, start.plusSeconds(5), null)).hasSize(2);
+        List<AuditEvent> events = customAuditEventRepository.find("test-user", start.minusSeconds(1), "AUTHENTICATION_SUCCESS");
+        assertThat(events).hasSize(1);
+        assertThat(events.get(0).getTimestamp()).isEqualTo(start);
+    }
+
+    @Test
+    public void writeBatchOfEvents() throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setBatchSize(50);
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, dataSource, idGenerator::newId, entityManagerFactory, writerMeterRegistry);
+        writer.start();
+
+        for (int i = 0; i < 120; i++) {
+            writer.write(event("batch-user", "key", "value-" + i));
+        }
+        writer.stop();
+
+        assertThat(persistenceAuditEventRepository.count()).isEqualTo(120);
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "written").counter().count()).isEqualTo(120);
+        assertThat(writerMeterRegistry.get("audit.writer.flush").timer().count()).isBetween(3L, 120L);
+        assertThat(writerMeterRegistry.get("audit.writer.queue.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    public void writeEventsQueuedBeforeStart() throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setFlushIntervalMs(50);
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, dataSource, idGenerator::newId, entityManagerFactory, writerMeterRegistry);
+
+        writer.write(event("early-user", "key", "value-1"));
+        writer.write(event("early-user", "key", "value-2"));
+        assertThat(writerMeterRegistry.get("audit.writer.queue.depth").gauge().value()).isEqualTo(2);
+
+        writer.start();
+        await(() -> persistenceAuditEventRepository.count() == 2);
+        writer.destroy();
+
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "dropped").counter().count()).isZero();
+    }
+
+    @Test
+    public void dropEventsOnOverflow() {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setOverflowPolicy(ApplicationProperties.Audit.Writer.OverflowPolicy.DROP);
+        properties.setQueueCapacity(1);
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, dataSource, idGenerator::newId, entityManagerFactory, writerMeterRegistry);
+
+        // Not started, so that the queue stays full
+        writer.write(event("dropped-user", "key", "value-1"));
+        writer.write(event("dropped-user", "key", "value-2"));
+
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "dropped").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void spillEventsOnOverflow(@TempDir Path spillDirectory) throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setOverflowPolicy(ApplicationProperties.Audit.Writer.OverflowPolicy.SPILL);
+        properties.setSpillDirectory(spillDirectory.toString());
+        properties.setFlushIntervalMs(50);
+        properties.setQueueCapacity(1);
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, dataSource, idGenerator::newId, entityManagerFactory, writerMeterRegistry);
+
+        // Not started, so that the queue stays full
+        writer.write(event("spilled-user", "key", "value-1"));
+        writer.write(event("spilled-user", "key", "value-2"));
+        writer.write(event("spilled-user", "key", "value-3"));
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "spilled").counter().count()).isEqualTo(2);
+        assertThat(persistenceAuditEventRepository.count()).isZero();
+
+        writer.start();
+        await(() -> persistenceAuditEventRepository.count() == 3);
+        writer.destroy();
+
+        assertThat(customAuditEventRepository.find("spilled-user", null, null)).extracting(AuditEvent::getData)
+            .extracting(data -> data.get("key")).containsOnly("value-1", "value-2", "value-3");
+    }
+
+    @Test
+    public void replaySpilledEventsAgainAfterAFailureOnceCommitted(@TempDir Path spillDirectory) throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setOverflowPolicy(ApplicationProperties.Audit.Writer.OverflowPolicy.SPILL);
+        properties.setSpillDirectory(spillDirectory.toString());
+        properties.setFlushIntervalMs(50);
+        properties.setBatchSize(2);
+        properties.setQueueCapacity(1);
+        AtomicBoolean failed = new AtomicBoolean();
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, new ApplicationProperties.Audit.Journal(), dataSource,
+            idGenerator::newId, entityManagerFactory, writerMeterRegistry, batch -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Failed once committed");
+            }
+        });
+        for (int i = 1; i <= 3; i++) {
+            writer.write(event("replayed-user", "key", "value-" + i));
+        }
+
+        writer.start();
+        await(() -> writerMeterRegistry.get("audit.writer.events").tag("result", "written").counter().count() == 3);
+        writer.destroy();
+
+        assertThat(failed).isTrue();
+        assertThat(customAuditEventRepository.find("replayed-user", null, null)).extracting(AuditEvent::getData)
+            .extracting(data -> data.get("key")).containsExactlyInAnyOrder("value-1", "value-2", "value-3");
+    }
+
+    @Test
+    public void writeEventsOnceStoppedAndDropThemOnceDestroyed(@TempDir Path spillDirectory) {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setOverflowPolicy(ApplicationProperties.Audit.Writer.OverflowPolicy.SPILL);
+        properties.setSpillDirectory(spillDirectory.toString());
+        properties.setFlushIntervalMs(50);
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, dataSource, idGenerator::newId, entityManagerFactory, writerMeterRegistry);
+        writer.start();
+        writer.stop();
+
+        writer.write(event("late-user", "key", "value-1"));
+
+        assertThat(customAuditEventRepository.find("late-user", null, null)).hasSize(1);
+
+        writer.destroy();
+        writer.write(event("late-user", "key", "value-2"));
+
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "dropped").counter().count()).isEqualTo(1);
+        assertThat(spillDirectory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void journalEventsOnceStoppedForTheNextStart(@TempDir Path journalDirectory) throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setFlushIntervalMs(50);
+        ApplicationProperties.Audit.Journal journalProperties = new ApplicationProperties.Audit.Journal();
+        journalProperties.setEnabled(true);
+        journalProperties.setDirectory(journalDirectory.toString());
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId,
+            entityManagerFactory, writerMeterRegistry);
+        writer.start();
+        writer.stop();
+
+        writer.write(event("late-user", "key", "value"));
+        writer.destroy();
+
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "journaled").counter().count()).isEqualTo(1);
+        assertThat(persistenceAuditEventRepository.count()).isZero();
+
+        writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId, entityManagerFactory,
+            new SimpleMeterRegistry());
+        writer.start();
+        await(() -> persistenceAuditEventRepository.count() == 1);
+        writer.destroy();
+
+        assertThat(customAuditEventRepository.find("late-user", null, null)).hasSize(1);
+        assertThat(journalDirectory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void journalEventsBeforeWritingThem(@TempDir Path journalDirectory) throws InterruptedException {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setFlushIntervalMs(50);
+        ApplicationProperties.Audit.Journal journalProperties = new ApplicationProperties.Audit.Journal();
+        journalProperties.setEnabled(true);
+        journalProperties.setDirectory(journalDirectory.toString());
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId,
+            entityManagerFactory, writerMeterRegistry);
+        writer.start();
+
+        writer.write(event("journaled-user", "key", "value-1"));
+        writer.write(event("journaled-user", "key", "value-2"));
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "journaled").counter().count()).isEqualTo(2);
+        assertThat(writerMeterRegistry.get("audit.journal.append").timer().count()).isEqualTo(2);
+        await(() -> persistenceAuditEventRepository.count() == 2);
+        writer.destroy();
+
+        assertThat(customAuditEventRepository.find("journaled-user", null, null)).extracting(AuditEvent::getData)
+            .extracting(data -> data.get("key")).containsOnly("value-1", "value-2");
+        assertThat(journalDirectory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void replayJournalLeftByACrash(@TempDir Path journalDirectory) throws Exception {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setFlushIntervalMs(50);
+        ApplicationProperties.Audit.Journal journalProperties = new ApplicationProperties.Audit.Journal();
+        journalProperties.setEnabled(true);
+        journalProperties.setDirectory(journalDirectory.toString());
+        AuditEventWriter writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId,
+            entityManagerFactory, new SimpleMeterRegistry());
+        writer.start();
+        writer.write(event("replayed-user", "key", "value-1"));
+        writer.write(event("replayed-user", "key", "value-2"));
+        await(() -> persistenceAuditEventRepository.count() == 2);
+        // The events were written, but a crash left the segment behind
+        Path segment;
+        try (Stream<Path> segments = Files.list(journalDirectory)) {
+            segment = segments.findFirst().get();
+        }
+        byte[] content = Files.readAllBytes(segment);
+        writer.destroy();
+        Files.write(segment, content);
+
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId, entityManagerFactory,
+            writerMeterRegistry);
+        writer.start();
+        await(() -> writerMeterRegistry.get("audit.writer.flush").timer().count() == 1);
+        writer.destroy();
+
+        // The events already written were left as they were
+        assertThat(persistenceAuditEventRepository.count()).isEqualTo(2);
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "written").counter().count()).isZero();
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "failed").counter().count()).isZero();
+        assertThat(journalDirectory.toFile().list()).isEmpty();
+    }
+
+    @Test
+    public void shipJournalAgainAfterAFailureOnceCommitted(@TempDir Path journalDirectory) throws Exception {
+        ApplicationProperties.Audit.Writer properties = new ApplicationProperties.Audit.Writer();
+        properties.setFlushIntervalMs(50);
+        ApplicationProperties.Audit.Journal journalProperties = new ApplicationProperties.Audit.Journal();
+        journalProperties.setEnabled(true);
+        journalProperties.setDirectory(journalDirectory.toString());
+        AtomicBoolean failed = new AtomicBoolean();
+        SimpleMeterRegistry writerMeterRegistry = new SimpleMeterRegistry();
+        AuditEventWriter writer = new AuditEventWriter(properties, journalProperties, dataSource, idGenerator::newId,
+            entityManagerFactory, writerMeterRegistry, batch -> {
+            if (failed.compareAndSet(false, true)) {
+                throw new IllegalStateException("Failed once committed");
+            }
+        });
+        writer.start();
+
+        writer.write(event("reshipped-user", "key", "value-1"));
+        await(failed::get);
+        writer.write(event("reshipped-user", "key", "value-2"));
+        await(() -> persistenceAuditEventRepository.count() == 2);
+        writer.destroy();
+
+        assertThat(customAuditEventRepository.find("reshipped-user", null, null)).extracting(AuditEvent::getData)
+            .extracting(data -> data.get("key")).containsOnly("value-1", "value-2");
+        assertThat(writerMeterRegistry.get("audit.writer.events").tag("result", "written").counter().count()).isEqualTo(2);
+        assertThat(journalDirectory.toFile().list()).isEmpty();
+    }
+
+    private static PersistentAuditEvent event(String principal, String key, String value) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventDate(Instant.now());
+        event.setAuditEventType("test-type");
+        event.getData().put(key, value);
+        return event;
+    }
+
+    private Map<String, String> dataOf(PersistentAuditEvent event) {
+        return transactionTemplate.execute(status ->
+            new HashMap<>(persistenceAuditEventRepository.findById(event.getId()).get().getData()));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -1,11 +1,14 @@
 package com.diaspora.security;
 
+import com.diaspora.security.oauth2.AuthoritySetOAuth2Authentication;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -59,4 +62,33 @@ public class SecurityUtilsUnitTest {
         assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)).isFalse();
     }
 
+    @Test
+    public void testIsCurrentUserInRoleWithAuthoritySet() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+        authorities.add(new SimpleGrantedAuthority(new String("ROLE_CARD_READ")));
+        OAuth2Request request = new OAuth2Request(null, "web_app", authorities, true, null, null, null, null, null);
+        UsernamePasswordAuthenticationToken user = new UsernamePasswordAuthenticationToken("user", "user", authorities);
+        securityContext.setAuthentication(new AuthoritySetOAuth2Authentication(new OAuth2Authentication(request, user)));
+        SecurityContextHolder.setContext(securityContext);
+
+        assertThat(SecurityUtils.isAuthenticated()).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.USER)).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(new String(AuthoritiesConstants.USER))).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole("ROLE_CARD_READ")).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)).isFalse();
+    }
+
+    @Test
+    public void testAnonymousWithAuthoritySetIsNotAuthenticated() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
+        OAuth2Request request = new OAuth2Request(null, "web_app", authorities, true, null, null, null, null, null);
+        securityContext.setAuthentication(new AuthoritySetOAuth2Authentication(new OAuth2Authentication(request, null)));
+        SecurityContextHolder.setContext(securityContext);
+
+        assertThat(SecurityUtils.isAuthenticated()).isFalse();
+    }
 }
@@ -0,0 +1,52 @@
+package com.diaspora.security.oauth2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link BloomFilter}.
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void testAddedValuesAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        String[] values = new String[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = UUID.randomUUID().toString();
+            filter.add(values[i]);
+        }
+
+        for (String value : values) {
+            assertThat(filter.mightContain(value)).isTrue();
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRateIsBounded() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.add(UUID.randomUUID().toString());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(2000);
+    }
+
+    @Test
+    public void testFilterIsSizedFromExpectedInsertions() {
+        BloomFilter filter = new BloomFilter(10000, 0.001);
+
+        assertThat(filter.getBitCount()).isGreaterThanOrEqualTo(143776);
+        assertThat(filter.getHashCount()).isEqualTo(10);
+        assertThat(filter.mightContain("unknown")).isFalse();
+    }
+}
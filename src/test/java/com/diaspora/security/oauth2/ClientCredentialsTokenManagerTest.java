@@ -0,0 +1,207 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.oauth2.OAuth2Properties;
+import io.github.jhipster.security.uaa.LoadBalancedResourceDetails;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedException;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link ClientCredentialsTokenManager}.
+ */
+public class ClientCredentialsTokenManagerTest {
+
+    private OAuth2Properties oAuth2Properties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    private AtomicInteger fetches;
+
+    private CountDownLatch fetchReleased;
+
+    private volatile boolean blockFetches;
+
+    private volatile boolean failFetches;
+
+    private volatile long tokenValidity;
+
+    @BeforeEach
+    public void setup() {
+        oAuth2Properties = new OAuth2Properties();
+        oAuth2Properties.getClientCredentials().setRefreshRateLimit(0);
+        meterRegistry = new SimpleMeterRegistry();
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        fetches = new AtomicInteger();
+        fetchReleased = new CountDownLatch(1);
+        tokenValidity = 60 * 1000L;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void testTokenIsCached() {
+        ClientCredentialsTokenManager tokenManager = tokenManager(null);
+
+        OAuth2AccessToken first = tokenManager.getAccessToken();
+        OAuth2AccessToken second = tokenManager.getAccessToken();
+
+        assertThat(second).isSameAs(first);
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("oauth2.client.token.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConcurrentFetchesAreCoalesced() throws Exception {
+        ClientCredentialsTokenManager tokenManager = tokenManager(null);
+        blockFetches = true;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<OAuth2AccessToken>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(tokenManager::getAccessToken));
+        }
+        Thread.sleep(200);
+        fetchReleased.countDown();
+        OAuth2AccessToken token = results.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<OAuth2AccessToken> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(token);
+        }
+        executor.shutdown();
+
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("oauth2.client.token.fetch.coalesced").counter().count()).isEqualTo(7);
+    }
+
+    @Test
+    public void testTokenIsRefreshedAheadWithoutBlocking() throws Exception {
+        oAuth2Properties.getClientCredentials().setRefreshAheadRatio(0);
+        oAuth2Properties.getClientCredentials().setRefreshRateLimit(100);
+        ClientCredentialsTokenManager tokenManager = tokenManager(taskScheduler);
+        OAuth2AccessToken initialToken = tokenManager.getAccessToken();
+        blockFetches = true;
+
+        assertThat(tokenManager.getAccessToken()).isSameAs(initialToken);
+        assertThat(tokenManager.getAccessToken()).isSameAs(initialToken);
+
+        fetchReleased.countDown();
+        for (int i = 0; i < 50 && tokenManager.getAccessToken() == initialToken; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(tokenManager.getAccessToken()).isNotSameAs(initialToken);
+        tokenManager.stop();
+    }
+
+    @Test
+    public void testFailedFetchWithoutValidTokenIsDenied() {
+        ClientCredentialsTokenManager tokenManager = tokenManager(null);
+        failFetches = true;
+
+        assertThatThrownBy(tokenManager::getAccessToken).isInstanceOf(OAuth2AccessDeniedException.class);
+        assertThat(meterRegistry.get("oauth2.client.token.fetch").tag("outcome", "failure").timer().count()).isEqualTo(1);
+
+        failFetches = false;
+        assertThat(tokenManager.getAccessToken().getValue()).isEqualTo("token-2");
+    }
+
+    @Test
+    public void testWaitForAFetchIsBounded() {
+        oAuth2Properties.getClientCredentials().setFetchWaitTimeout(100);
+        ClientCredentialsTokenManager tokenManager = tokenManager(taskScheduler);
+        blockFetches = true;
+
+        long start = System.nanoTime();
+        assertThatThrownBy(tokenManager::getAccessToken).isInstanceOf(OAuth2AccessDeniedException.class)
+            .hasMessageContaining("Gave up waiting");
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+
+        fetchReleased.countDown();
+        assertThat(tokenManager.getAccessToken().getValue()).isEqualTo("token-1");
+        tokenManager.stop();
+    }
+
+    @Test
+    public void testFailedFetchIsRetriedWithBackoff() throws Exception {
+        oAuth2Properties.getClientCredentials().setRetryInitialDelay(50);
+        oAuth2Properties.getClientCredentials().setRetryMaxDelay(100);
+        ClientCredentialsTokenManager tokenManager = tokenManager(taskScheduler);
+        failFetches = true;
+        assertThatThrownBy(tokenManager::getAccessToken).isInstanceOf(OAuth2AccessDeniedException.class);
+
+        for (int i = 0; i < 50 && fetches.get() < 3; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(fetches.get()).isGreaterThanOrEqualTo(3);
+        failFetches = false;
+        for (int i = 0; i < 50 && meterRegistry.get("oauth2.client.token.fetch").tag("outcome", "success").timer().count() == 0; i++) {
+            Thread.sleep(20);
+        }
+
+        // Fetched by a retry, without waiting
+        int fetched = fetches.get();
+        assertThat(tokenManager.getAccessToken().getValue()).isEqualTo("token-" + fetched);
+        assertThat(meterRegistry.get("oauth2.client.token.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        tokenManager.stop();
+    }
+
+    @Test
+    public void testExpiredTokenIsFetchedAgain() {
+        tokenValidity = -1000L;
+        ClientCredentialsTokenManager tokenManager = tokenManager(null);
+
+        tokenManager.getAccessToken();
+        tokenManager.getAccessToken();
+
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(meterRegistry.get("oauth2.client.token.requests").tag("result", "miss").counter().count()).isEqualTo(2);
+    }
+
+    private ClientCredentialsTokenManager tokenManager(ThreadPoolTaskScheduler scheduler) {
+        LoadBalancedResourceDetails resourceDetails = new LoadBalancedResourceDetails(null);
+        resourceDetails.setClientId("internal");
+        ClientCredentialsTokenManager tokenManager = new ClientCredentialsTokenManager(resourceDetails, oAuth2Properties,
+            scheduler, meterRegistry);
+        AccessTokenProvider accessTokenProvider = mock(AccessTokenProvider.class);
+        when(accessTokenProvider.obtainAccessToken(any(), any())).thenAnswer(invocation -> {
+            int fetch = fetches.incrementAndGet();
+            if (blockFetches) {
+                fetchReleased.await(5, TimeUnit.SECONDS);
+            }
+            if (failFetches) {
+                throw new IllegalStateException("UAA is down");
+            }
+            DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token-" + fetch);
+            token.setExpiration(new Date(System.currentTimeMillis() + tokenValidity));
+            return token;
+        });
+        tokenManager.setAccessTokenProvider(accessTokenProvider);
+        return tokenManager;
+    }
+}
@@ -0,0 +1,165 @@
+package com.diaspora.security.oauth2;
+
+import com.diaspora.config.oauth2.OAuth2Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link SignatureVerifierRegistry}.
+ */
+public class SignatureVerifierRegistryTest {
+
+    private OAuth2Properties oAuth2Properties;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private AtomicInteger fetches;
+
+    private CountDownLatch fetchReleased;
+
+    private volatile boolean blockFetches;
+
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    @BeforeEach
+    public void setup() {
+        oAuth2Properties = new OAuth2Properties();
+        oAuth2Properties.getSignatureVerification().setPublicKeyRefreshRateLimit(0);
+        meterRegistry = new SimpleMeterRegistry();
+        fetches = new AtomicInteger();
+        fetchReleased = new CountDownLatch(1);
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        taskScheduler.shutdown();
+    }
+
+    @Test
+    public void testConcurrentRefreshesAreCoalesced() throws Exception {
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client(), oAuth2Properties, null, meterRegistry);
+        registry.start();
+        SignatureVerifier initialVerifier = registry.getVerifier(null);
+        blockFetches = true;
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(registry::tryRefresh));
+        }
+        // Waiters keep being able to verify with the current key while the fetch is in flight
+        assertThat(registry.getVerifier(null)).isSameAs(initialVerifier);
+        Thread.sleep(200);
+        fetchReleased.countDown();
+        for (Future<Boolean> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isTrue();
+        }
+        executor.shutdown();
+
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(registry.getVerifier(null)).isNotSameAs(initialVerifier);
+        assertThat(meterRegistry.get("oauth2.public.keys.fetch.coalesced").counter().count()).isEqualTo(7);
+    }
+
+    @Test
+    public void testBackgroundRefreshDoesNotBlock() throws Exception {
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client(), oAuth2Properties, taskScheduler, meterRegistry);
+        registry.start();
+        SignatureVerifier initialVerifier = registry.getVerifier(null);
+        blockFetches = true;
+
+        registry.refreshInBackground();
+        registry.refreshInBackground();
+
+        assertThat(registry.getVerifier(null)).isSameAs(initialVerifier);
+        fetchReleased.countDown();
+        for (int i = 0; i < 50 && registry.getVerifier(null) == initialVerifier; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(registry.getVerifier(null)).isNotSameAs(initialVerifier);
+        assertThat(fetches.get()).isEqualTo(2);
+        registry.stop();
+    }
+
+    @Test
+    public void testRefreshIsRateLimited() {
+        oAuth2Properties.getSignatureVerification().setPublicKeyRefreshRateLimit(60 * 1000L);
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client(), oAuth2Properties, null, meterRegistry);
+        registry.start();
+
+        assertThat(registry.tryRefresh()).isFalse();
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testRateLimitHoldsForConcurrentRefreshes() throws Exception {
+        oAuth2Properties.getSignatureVerification().setPublicKeyRefreshRateLimit(100);
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client(), oAuth2Properties, null, meterRegistry);
+        registry.start();
+        Thread.sleep(150);
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return registry.tryRefresh();
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        // The fetch at startup, and a single one once the rate limit elapsed
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailedFetchKeepsCurrentKeys() {
+        AtomicInteger calls = new AtomicInteger();
+        OAuth2SignatureVerifierClient client = () -> {
+            if (calls.incrementAndGet() > 1) {
+                throw new IllegalStateException("UAA is down");
+            }
+            return new MacSigner("secret");
+        };
+        SignatureVerifierRegistry registry = new SignatureVerifierRegistry(client, oAuth2Properties, null, meterRegistry);
+        registry.start();
+        SignatureVerifier initialVerifier = registry.getVerifier(null);
+
+        assertThat(registry.tryRefresh()).isFalse();
+        assertThat(registry.getVerifier(null)).isSameAs(initialVerifier);
+        assertThat(meterRegistry.get("oauth2.public.keys.fetch").tag("outcome", "failure").timer().count()).isEqualTo(1);
+    }
+
+    private OAuth2SignatureVerifierClient client() {
+        return () -> {
+            fetches.incrementAndGet();
+            if (blockFetches) {
+                fetchReleased.await(5, TimeUnit.SECONDS);
+            }
+            return new MacSigner("secret");
+        };
+    }
+}
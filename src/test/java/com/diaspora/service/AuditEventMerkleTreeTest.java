@@ -0,0 +1,92 @@
+package com.diaspora.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.codec.Hex;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link AuditEventMerkleTree}.
+ */
+public class AuditEventMerkleTreeTest {
+
+    /**
+     * Leaves of the test vectors of the Certificate Transparency implementation of RFC 6962.
+     */
+    private static final List<byte[]> LEAVES = Arrays.asList(
+        new byte[0],
+        bytes(0x00),
+        bytes(0x10),
+        bytes(0x20, 0x21),
+        bytes(0x30, 0x31),
+        bytes(0x40, 0x41, 0x42, 0x43),
+        bytes(0x50, 0x51, 0x52, 0x53, 0x54, 0x55, 0x56, 0x57),
+        bytes(0x60, 0x61, 0x62, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69, 0x6a, 0x6b, 0x6c, 0x6d, 0x6e, 0x6f));
+
+    @Test
+    public void testRootOfNoLeaf() {
+        assertThat(hex(AuditEventMerkleTree.root(Collections.emptyList())))
+            .isEqualTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+    }
+
+    @Test
+    public void testRootMatchesTheTestVectors() {
+        assertThat(hex(AuditEventMerkleTree.root(LEAVES.subList(0, 1))))
+            .isEqualTo("6e340b9cffb37a989ca544e6bb780a2c78901d3fb33738768511a30617afa01d");
+        assertThat(hex(AuditEventMerkleTree.root(LEAVES.subList(0, 2))))
+            .isEqualTo("fac54203e7cc696cf0dfcb42c92a1d9dbaf70ad9e621f4bd8d98662f00e3c125");
+        assertThat(hex(AuditEventMerkleTree.root(LEAVES.subList(0, 3))))
+            .isEqualTo("aeb6bcfe274b70a14fb067a5e5578264db0fa9b51af5e0ba159158f329e06e77");
+        assertThat(hex(AuditEventMerkleTree.root(LEAVES)))
+            .isEqualTo("5dc9da79a70659a9ad559cb701ded9a2ab9d823aad2f4960cfe370eff4604328");
+    }
+
+    @Test
+    public void testRootChangesWithAnyLeaf() {
+        byte[] root = AuditEventMerkleTree.root(LEAVES);
+        for (int i = 0; i < LEAVES.size(); i++) {
+            List<byte[]> changed = new ArrayList<>(LEAVES);
+            changed.set(i, bytes(0xff));
+            assertThat(AuditEventMerkleTree.root(changed)).isNotEqualTo(root);
+        }
+        List<byte[]> reordered = new ArrayList<>(LEAVES);
+        Collections.swap(reordered, 3, 4);
+        assertThat(AuditEventMerkleTree.root(reordered)).isNotEqualTo(root);
+    }
+
+    @Test
+    public void testBlockHashCoversTheBlockAndThePreviousHash() {
+        byte[] root = AuditEventMerkleTree.root(LEAVES);
+        Instant date = Instant.parse("2026-10-17T10:00:00.123456Z");
+        Instant last = date.plusSeconds(60);
+        byte[] first = AuditEventMerkleTree.blockHash(1, 8, date, last, root, null);
+        byte[] second = AuditEventMerkleTree.blockHash(2, 8, date, last, root, first);
+
+        assertThat(first).hasSize(AuditEventMerkleTree.HASH_LENGTH).isEqualTo(AuditEventMerkleTree.blockHash(1, 8, date, last, root, null));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, date, last, root, null));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 7, date, last, root, first));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, date.plusNanos(1000), last, root, first));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, null, last, root, first));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, date, date, root, first));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, date, null, root, first));
+        assertThat(second).isNotEqualTo(AuditEventMerkleTree.blockHash(2, 8, date, last, AuditEventMerkleTree.root(LEAVES.subList(0, 7)), first));
+    }
+
+    private static String hex(byte[] hash) {
+        return new String(Hex.encode(hash));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,208 @@
+package com.diaspora.service;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.PersistenceAuditEventRepository;
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the chunked purge of the {@link AuditEventRetentionService}, on a table that is not
+ * partitioned.
+ */
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class AuditEventRetentionServiceIT {
+
+    private static final Instant NOW = Instant.parse("2026-10-17T03:30:00Z");
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private AuditEventRetentionService auditEventRetentionService;
+
+    private AuditEventChainService auditEventChainService;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getAudit().getRetention().setMaxAgeDays(30);
+        applicationProperties.getAudit().getRetention().setChunkSize(2);
+        applicationProperties.getAudit().getRetention().setChunkPauseMs(0);
+        auditEventRetentionService = new AuditEventRetentionService(dataSource, hazelcastInstance, entityManagerFactory,
+            applicationProperties);
+        auditEventChainService = new AuditEventChainService(dataSource, hazelcastInstance, applicationProperties);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate.execute(status -> {
+            persistenceAuditEventRepository.deleteAll();
+            jdbcTemplate.update("delete from jhi_audit_event_block");
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void stop() {
+        auditEventRetentionService.stop();
+    }
+
+    @Test
+    public void testExpiredEventsArePurgedInChunks() {
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            // Events 1 and 2 happened at the same time, and are in different chunks
+            events.add(event("expired-" + i, NOW.minus(40, ChronoUnit.DAYS).plusSeconds(i == 2 ? 1 : i)));
+        }
+        events.add(event("recent", NOW.minus(29, ChronoUnit.DAYS)));
+        events.add(event("undated", null));
+        persistenceAuditEventRepository.saveAll(events);
+
+        auditEventRetentionService.purge(NOW);
+
+        assertThat(persistenceAuditEventRepository.findAll()).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactlyInAnyOrder("recent", "undated");
+    }
+
+    @Test
+    public void testPurgedEventsAreRemovedFromCachedQueryResults() {
+        persistenceAuditEventRepository.save(event("expired", NOW.minus(40, ChronoUnit.DAYS)));
+        assertThat(countCached("expired")).isEqualTo(1);
+        assertThat(countCached("expired")).isEqualTo(1);
+
+        auditEventRetentionService.purge(NOW);
+
+        assertThat(countCached("expired")).isZero();
+    }
+
+    @Test
+    public void testBlocksOfPurgedEventsAreDeleted() {
+        persistenceAuditEventRepository.save(event("expired", NOW.minus(40, ChronoUnit.DAYS)));
+        auditEventChainService.seal();
+        persistenceAuditEventRepository.save(event("recent", NOW.minus(29, ChronoUnit.DAYS)));
+        auditEventChainService.seal();
+
+        auditEventRetentionService.purge(NOW);
+
+        assertThat(jdbcTemplate.queryForList("select block_id from jhi_audit_event_block", Long.class))
+            .hasSize(1)
+            .allMatch(blockId -> blockId > 1);
+    }
+
+    @Test
+    public void testBlocksAreNotPurgedInPart() {
+        persistenceAuditEventRepository.save(event("expired", NOW.minus(40, ChronoUnit.DAYS)));
+        auditEventChainService.seal();
+        persistenceAuditEventRepository.save(event("expired-in-straddling-block", NOW.minus(31, ChronoUnit.DAYS)));
+        persistenceAuditEventRepository.save(event("recent", NOW.minus(29, ChronoUnit.DAYS)));
+        auditEventChainService.seal();
+
+        auditEventRetentionService.purge(NOW);
+
+        assertThat(persistenceAuditEventRepository.findAll()).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactlyInAnyOrder("expired-in-straddling-block", "recent");
+    }
+
+    @Test
+    public void testExpiredCountsAreDeleted() {
+        transactionTemplate.execute(status -> {
+            jdbcTemplate.update("delete from jhi_audit_event_rollup");
+            jdbcTemplate.update("insert into jhi_audit_event_rollup (bucket_start, event_type, principal, event_count)" +
+                " values (?, 'AUTHENTICATION_SUCCESS', 'expired', 3)", Timestamp.from(NOW.minus(40, ChronoUnit.DAYS)));
+            jdbcTemplate.update("insert into jhi_audit_event_rollup (bucket_start, event_type, principal, event_count)" +
+                " values (?, 'AUTHENTICATION_SUCCESS', 'recent', 2)", Timestamp.from(NOW.minus(29, ChronoUnit.DAYS)));
+            return null;
+        });
+
+        auditEventRetentionService.purge(NOW);
+
+        assertThat(jdbcTemplate.queryForList("select principal from jhi_audit_event_rollup where principal in ('expired', 'recent')",
+            String.class)).containsExactly("recent");
+    }
+
+    @Test
+    public void testPurgeStopsAtTheDeadline() {
+        List<PersistentAuditEvent> events = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            events.add(event("expired-" + i, NOW.minus(40, ChronoUnit.DAYS).plusSeconds(i)));
+        }
+        persistenceAuditEventRepository.saveAll(events);
+
+        auditEventRetentionService.purge(NOW, Instant.now().minusSeconds(1));
+
+        assertThat(persistenceAuditEventRepository.findAll()).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactlyInAnyOrder("expired-2", "expired-3", "expired-4");
+    }
+
+    @Test
+    public void testScheduledPurgeRunsOnItsOwnThreadAndReleasesTheLock() throws InterruptedException {
+        persistenceAuditEventRepository.save(event("expired", Instant.now().minus(40, ChronoUnit.DAYS)));
+        persistenceAuditEventRepository.save(event("recent", Instant.now().minus(29, ChronoUnit.DAYS)));
+
+        auditEventRetentionService.purgeExpiredEvents();
+
+        await(() -> persistenceAuditEventRepository.findAll().size() == 1 &&
+            !hazelcastInstance.getMap("audit-retention").isLocked("jhi_persistent_audit_event"));
+        assertThat(persistenceAuditEventRepository.findAll()).extracting(PersistentAuditEvent::getPrincipal)
+            .containsExactly("recent");
+    }
+
+    private long countCached(String principal) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager
+                .createQuery("select count(e) from PersistentAuditEvent e where e.principal = :principal", Long.class)
+                .setParameter("principal", principal)
+                .setHint("org.hibernate.cacheable", true)
+                .getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+    private static PersistentAuditEvent event(String principal, Instant date) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventDate(date);
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        return event;
+    }
+}
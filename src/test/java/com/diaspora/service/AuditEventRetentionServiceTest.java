@@ -0,0 +1,101 @@
+package com.diaspora.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.diaspora.service.AuditEventRetentionService.FUTURE_PARTITION;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the partition changes planned by the {@link AuditEventRetentionService}.
+ */
+public class AuditEventRetentionServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-10-17T03:30:00Z");
+
+    private static final Instant CUTOFF = NOW.minus(365, ChronoUnit.DAYS);
+
+    private static final AuditEventRetentionService.Partition FUTURE =
+        new AuditEventRetentionService.Partition(FUTURE_PARTITION, Long.MAX_VALUE);
+
+    @Test
+    public void testHistoryIsSplitByMonthThenExpiredMonthsAreDropped() {
+        List<String> changes = AuditEventRetentionService.partitionChanges(Collections.singletonList(FUTURE),
+            Instant.parse("2025-08-20T12:00:00Z"), NOW, CUTOFF, 2);
+
+        assertThat(changes).containsExactly(
+            "alter table jhi_persistent_audit_event reorganize partition p_future into (" +
+                "partition p202508 values less than (" + epoch("2025-09-01") + "), " +
+                "partition p202509 values less than (" + epoch("2025-10-01") + "), " +
+                "partition p202510 values less than (" + epoch("2025-11-01") + "), " +
+                "partition p202511 values less than (" + epoch("2025-12-01") + "), " +
+                "partition p202512 values less than (" + epoch("2026-01-01") + "), " +
+                "partition p202601 values less than (" + epoch("2026-02-01") + "), " +
+                "partition p202602 values less than (" + epoch("2026-03-01") + "), " +
+                "partition p202603 values less than (" + epoch("2026-04-01") + "), " +
+                "partition p202604 values less than (" + epoch("2026-05-01") + "), " +
+                "partition p202605 values less than (" + epoch("2026-06-01") + "), " +
+                "partition p202606 values less than (" + epoch("2026-07-01") + "), " +
+                "partition p202607 values less than (" + epoch("2026-08-01") + "), " +
+                "partition p202608 values less than (" + epoch("2026-09-01") + "), " +
+                "partition p202609 values less than (" + epoch("2026-10-01") + "), " +
+                "partition p202610 values less than (" + epoch("2026-11-01") + "), " +
+                "partition p202611 values less than (" + epoch("2026-12-01") + "), " +
+                "partition p202612 values less than (" + epoch("2027-01-01") + "), " +
+                "partition p_future values less than maxvalue)",
+            // October 2025 still has events younger than the maximum age
+            "alter table jhi_persistent_audit_event drop partition p202508, p202509");
+    }
+
+    @Test
+    public void testEmptyTableIsSplitFromTheCurrentMonth() {
+        List<String> changes = AuditEventRetentionService.partitionChanges(Collections.singletonList(FUTURE),
+            null, NOW, CUTOFF, 1);
+
+        assertThat(changes).containsExactly(
+            "alter table jhi_persistent_audit_event reorganize partition p_future into (" +
+                "partition p202610 values less than (" + epoch("2026-11-01") + "), " +
+                "partition p202611 values less than (" + epoch("2026-12-01") + "), " +
+                "partition p_future values less than maxvalue)");
+    }
+
+    @Test
+    public void testNothingChangesWhenThePartitionsAreUpToDate() {
+        List<AuditEventRetentionService.Partition> partitions = Arrays.asList(
+            new AuditEventRetentionService.Partition("p202510", epoch("2025-11-01")),
+            new AuditEventRetentionService.Partition("p202610", epoch("2026-11-01")),
+            new AuditEventRetentionService.Partition("p202611", epoch("2026-12-01")),
+            FUTURE);
+
+        assertThat(AuditEventRetentionService.partitionChanges(partitions, null, NOW, CUTOFF, 1)).isEmpty();
+    }
+
+    @Test
+    public void testNextMonthIsCreatedAndOldestMonthDropped() {
+        List<AuditEventRetentionService.Partition> partitions = Arrays.asList(
+            new AuditEventRetentionService.Partition("p202510", epoch("2025-11-01")),
+            new AuditEventRetentionService.Partition("p202511", epoch("2025-12-01")),
+            new AuditEventRetentionService.Partition("p202610", epoch("2026-11-01")),
+            FUTURE);
+        Instant now = Instant.parse("2026-11-02T03:30:00Z");
+
+        List<String> changes = AuditEventRetentionService.partitionChanges(partitions, null, now,
+            now.minus(365, ChronoUnit.DAYS), 1);
+
+        assertThat(changes).containsExactly(
+            "alter table jhi_persistent_audit_event reorganize partition p_future into (" +
+                "partition p202611 values less than (" + epoch("2026-12-01") + "), " +
+                "partition p202612 values less than (" + epoch("2027-01-01") + "), " +
+                "partition p_future values less than maxvalue)",
+            "alter table jhi_persistent_audit_event drop partition p202510");
+    }
+
+    private static long epoch(String date) {
+        return Instant.parse(date + "T00:00:00Z").getEpochSecond();
+    }
+}
@@ -0,0 +1,89 @@
+package com.diaspora.service;
+
+import com.diaspora.repository.AuditEventRollupRepository.Key;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link AuditEventRollupCounters}.
+ */
+public class AuditEventRollupCountersTest {
+
+    private static final Instant MINUTE = Instant.parse("2026-10-17T10:00:00Z");
+
+    private final AuditEventRollupCounters counters = new AuditEventRollupCounters();
+
+    @Test
+    public void testCountsAreDrainedByKey() {
+        counters.add(new Key(MINUTE.plusSeconds(1), "AUTHENTICATION_SUCCESS", "admin"), 1);
+        counters.add(new Key(MINUTE.plusSeconds(59), "AUTHENTICATION_SUCCESS", "admin"), 1);
+        counters.add(new Key(MINUTE.plusSeconds(60), "AUTHENTICATION_SUCCESS", "admin"), 1);
+        counters.add(new Key(MINUTE, null, "admin"), 1);
+
+        Map<Key, Long> counts = counters.drain();
+
+        assertThat(counts).hasSize(3)
+            .containsEntry(new Key(MINUTE, "AUTHENTICATION_SUCCESS", "admin"), 2L)
+            .containsEntry(new Key(MINUTE.plusSeconds(60), "AUTHENTICATION_SUCCESS", "admin"), 1L)
+            .containsEntry(new Key(MINUTE, "", "admin"), 1L);
+        assertThat(counters.drain()).isEmpty();
+    }
+
+    @Test
+    public void testIdleCountersAreRemoved() {
+        Key key = new Key(MINUTE, "AUTHENTICATION_SUCCESS", "admin");
+        counters.add(key, 1);
+        counters.drain();
+        assertThat(counters.size()).isEqualTo(1);
+
+        counters.drain();
+        assertThat(counters.size()).isZero();
+
+        counters.add(key, 1);
+        assertThat(counters.drain()).containsEntry(key, 1L);
+    }
+
+    @Test
+    public void testNoCountIsLostWhileDraining() throws Exception {
+        int threads = 8;
+        int eventsPerThread = 100000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String principal = "user-" + t % 2;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < eventsPerThread; i++) {
+                    // New minutes keep coming, so that counters are retired while being added to
+                    counters.add(new Key(MINUTE.plusSeconds(i / 1000 * 60L), "AUTHENTICATION_SUCCESS", principal), 1);
+                }
+                return null;
+            }));
+        }
+        long total = 0;
+        start.countDown();
+        while (!futures.stream().allMatch(Future::isDone)) {
+            total += counters.drain().values().stream().mapToLong(Long::longValue).sum();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        total += counters.drain().values().stream().mapToLong(Long::longValue).sum();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(total).isEqualTo((long) threads * eventsPerThread);
+    }
+}
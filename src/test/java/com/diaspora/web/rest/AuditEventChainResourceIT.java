@@ -0,0 +1,241 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.ApplicationProperties;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.PersistenceAuditEventRepository;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.service.AuditEventChainService;
+import com.hazelcast.core.HazelcastInstance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for the {@link AuditEventChainResource} REST controller and its {@link AuditEventChainService}.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class AuditEventChainResourceIT {
+
+    @Autowired
+    private MockMvc restAuditEventChainMockMvc;
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private AuditEventChainService auditEventChainService;
+
+    private List<PersistentAuditEvent> events;
+
+    @BeforeEach
+    public void setup() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getAudit().getChain().setBlockSize(3);
+        auditEventChainService = new AuditEventChainService(dataSource, hazelcastInstance, applicationProperties);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate.execute(status -> {
+            persistenceAuditEventRepository.deleteAll();
+            jdbcTemplate.update("delete from jhi_audit_event_block");
+            return null;
+        });
+        events = save(8);
+    }
+
+    @Test
+    public void verifySealedBlocks() throws Exception {
+        assertThat(auditEventChainService.seal()).isEqualTo(3);
+        assertThat(auditEventChainService.seal()).isZero();
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(true))
+            .andExpect(jsonPath("$.fromBlockId").value(1))
+            .andExpect(jsonPath("$.toBlockId").value(3))
+            .andExpect(jsonPath("$.verifiedBlocks").value(3))
+            .andExpect(jsonPath("$.verifiedEvents").value(8))
+            .andExpect(jsonPath("$.headBlockId").value(3))
+            .andExpect(jsonPath("$.headBlockHash").isString())
+            .andExpect(jsonPath("$.failures").isEmpty());
+    }
+
+    @Test
+    public void verifyNewBlocksOnly() throws Exception {
+        auditEventChainService.seal();
+        save(2);
+        assertThat(auditEventChainService.seal()).isEqualTo(1);
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify?fromBlock=4"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(true))
+            .andExpect(jsonPath("$.fromBlockId").value(4))
+            .andExpect(jsonPath("$.toBlockId").value(4))
+            .andExpect(jsonPath("$.verifiedEvents").value(2));
+    }
+
+    @Test
+    public void detectChangedEvent() throws Exception {
+        auditEventChainService.seal();
+        tamper("update jhi_persistent_audit_event set principal = 'someone-else' where event_id = ?",
+            events.get(4).getId());
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures", hasSize(1)))
+            .andExpect(jsonPath("$.failures[0].blockId").value(2))
+            .andExpect(jsonPath("$.failures[0].reason").value("MERKLE_ROOT_MISMATCH"));
+    }
+
+    @Test
+    public void detectRemovedEvent() throws Exception {
+        auditEventChainService.seal();
+        tamper("delete from jhi_persistent_audit_event where event_id = ?", events.get(0).getId());
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures[0].blockId").value(1))
+            .andExpect(jsonPath("$.failures[0].reason").value("EVENT_COUNT_MISMATCH"));
+    }
+
+    @Test
+    public void acceptPurgedBlock() throws Exception {
+        auditEventChainService.seal();
+        List<PersistentAuditEvent> expired = saveAt(Instant.now().minus(400, ChronoUnit.DAYS), 3);
+        auditEventChainService.seal();
+        tamper("delete from jhi_persistent_audit_event where event_id in (?, ?)", expired.get(0).getId(),
+            expired.get(1).getId());
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(true))
+            .andExpect(jsonPath("$.failures", hasSize(1)))
+            .andExpect(jsonPath("$.failures[0].blockId").value(4))
+            .andExpect(jsonPath("$.failures[0].reason").value("EVENTS_PURGED"));
+    }
+
+    @Test
+    public void detectRemovedRecentEventOfABlockStraddlingTheRetentionPeriod() throws Exception {
+        auditEventChainService.seal();
+        saveAt(Instant.now().minus(400, ChronoUnit.DAYS), 1);
+        List<PersistentAuditEvent> recent = saveAt(Instant.now(), 2);
+        auditEventChainService.seal();
+        tamper("delete from jhi_persistent_audit_event where event_id = ?", recent.get(0).getId());
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures", hasSize(1)))
+            .andExpect(jsonPath("$.failures[0].blockId").value(4))
+            .andExpect(jsonPath("$.failures[0].reason").value("EVENT_COUNT_MISMATCH"));
+    }
+
+    @Test
+    public void detectBackdatedBlock() throws Exception {
+        auditEventChainService.seal();
+        saveAt(Instant.now().minus(400, ChronoUnit.DAYS), 1);
+        List<PersistentAuditEvent> recent = saveAt(Instant.now(), 2);
+        auditEventChainService.seal();
+        tamper("delete from jhi_persistent_audit_event where event_id = ?", recent.get(0).getId());
+        tamper("update jhi_audit_event_block set last_event_date = first_event_date where block_id = 4");
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures[0].blockId").value(4))
+            .andExpect(jsonPath("$.failures[0].reason").value("BLOCK_HASH_MISMATCH"));
+    }
+
+    @Test
+    public void detectRewrittenBlock() throws Exception {
+        auditEventChainService.seal();
+        tamper("update jhi_audit_event_block set event_count = 3 where block_id = 3");
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures[0].blockId").value(3))
+            .andExpect(jsonPath("$.failures[0].reason").value("BLOCK_HASH_MISMATCH"));
+    }
+
+    @Test
+    public void detectRemovedBlock() throws Exception {
+        auditEventChainService.seal();
+        tamper("delete from jhi_audit_event_block where block_id = 2");
+
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(false))
+            .andExpect(jsonPath("$.failures", hasSize(1)))
+            .andExpect(jsonPath("$.failures[0].blockId").value(2))
+            .andExpect(jsonPath("$.failures[0].reason").value("MISSING_BLOCK"));
+    }
+
+    @Test
+    public void verifyEmptyChain() throws Exception {
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.valid").value(true))
+            .andExpect(jsonPath("$.verifiedBlocks").value(0));
+    }
+
+    @Test
+    public void verifyTooLargeRange() throws Exception {
+        restAuditEventChainMockMvc.perform(get("/api/admin/audit-chain/verify?fromBlock=1&toBlock=1000"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invalidrange"));
+    }
+
+    private void tamper(String sql, Object... args) {
+        transactionTemplate.execute(status -> jdbcTemplate.update(sql, args));
+    }
+
+    private List<PersistentAuditEvent> save(int count) {
+        return saveAt(Instant.now(), count);
+    }
+
+    private List<PersistentAuditEvent> saveAt(Instant date, int count) {
+        List<PersistentAuditEvent> saved = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            PersistentAuditEvent event = new PersistentAuditEvent();
+            event.setPrincipal("user-" + i);
+            event.setAuditEventDate(date);
+            event.setAuditEventType("AUTHENTICATION_SUCCESS");
+            event.getData().put("remoteAddress", "10.0.0." + i);
+            saved.add(event);
+        }
+        return persistenceAuditEventRepository.saveAll(saved);
+    }
+}
@@ -0,0 +1,255 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.PersistenceAuditEventRepository;
+import com.diaspora.security.AuthoritiesConstants;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for the {@link AuditEventResource} REST controller and its {@link com.diaspora.service.AuditEventExportService}.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class AuditEventResourceIT {
+
+    private static final Instant START = Instant.parse("2020-03-01T10:00:00Z");
+
+    @Autowired
+    private MockMvc restAuditEventMockMvc;
+
+    @Autowired
+    private PersistenceAuditEventRepository persistenceAuditEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        transactionTemplate.execute(status -> {
+            persistenceAuditEventRepository.deleteAll();
+            List<PersistentAuditEvent> events = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                // Events 2 and 3 happened at the same time, so that their order is given by their ids
+                events.add(event("admin", START.plusSeconds(i == 3 ? 2 : i), i));
+            }
+            for (int i = 0; i < 3; i++) {
+                events.add(event("user", START.plusSeconds(i), 10 + i));
+            }
+            events.add(event("user", null, 99));
+            persistenceAuditEventRepository.saveAll(events);
+            return null;
+        });
+    }
+
+    @Test
+    public void searchAuditEventsOfAPrincipalPageByPage() throws Exception {
+        List<String> indexes = pageThrough(() -> get("/api/admin/audit-events").param("principal", "admin"), 3, 3);
+
+        assertThat(indexes).hasSize(7).doesNotHaveDuplicates();
+        assertThat(indexes.subList(0, 2)).containsExactly("6", "5");
+        assertThat(indexes.subList(3, 5)).containsExactlyInAnyOrder("2", "3");
+        assertThat(indexes.subList(5, 7)).containsExactly("1", "0");
+    }
+
+    @Test
+    public void searchAuditEventsOfAllPrincipalsPageByPage() throws Exception {
+        List<String> indexes = pageThrough(() -> get("/api/admin/audit-events"), 4, 3);
+
+        assertThat(indexes).startsWith("12", "11", "10").hasSize(10).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void searchAuditEventsByDate() throws Exception {
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events")
+            .param("fromDate", START.plusSeconds(1).toString())
+            .param("toDate", START.plusSeconds(3).toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].data.index").value(contains("12", "11", "3", "2", "1")))
+            .andExpect(jsonPath("$.[0].principal").value("user"))
+            .andExpect(jsonPath("$.[0].type").value("AUTHENTICATION_SUCCESS"))
+            .andExpect(header().doesNotExist(AuditEventResource.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void searchAuditEventsWithCountEstimate() throws Exception {
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events").param("principal", "admin").param("size", "2")
+            .param("count", "true"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(AuditEventResource.TOTAL_COUNT_ESTIMATE_HEADER, "7"));
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events").param("principal", "admin"))
+            .andExpect(status().isOk())
+            .andExpect(header().doesNotExist(AuditEventResource.TOTAL_COUNT_ESTIMATE_HEADER));
+    }
+
+    @Test
+    public void searchAuditEventsWithAnInvalidCursor() throws Exception {
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events").param("cursor", "not-a-cursor"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invalidcursor"));
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events").param("size", "0"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invalidsize"));
+    }
+
+    @Test
+    public void exportAuditEventsAsNdjson() throws Exception {
+        MvcResult result = restAuditEventMockMvc.perform(get("/api/admin/audit-events/export").param("principal", "admin"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson;charset=UTF-8"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"audit-events.ndjson\""))
+            .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(7);
+        List<String> indexes = new ArrayList<>();
+        for (String line : lines) {
+            assertThat(JsonPath.<String>read(line, "$.principal")).isEqualTo("admin");
+            assertThat(JsonPath.<Number>read(line, "$.id")).isNotNull();
+            indexes.add(JsonPath.read(line, "$.data.index"));
+        }
+        assertThat(indexes).startsWith("0", "1").endsWith("4", "5", "6");
+        assertThat(JsonPath.<String>read(lines[0], "$.timestamp")).isEqualTo(START.toString());
+        assertThat(meterRegistry.get("audit.export.rows").tag("format", "ndjson").counter().count()).isGreaterThanOrEqualTo(7);
+    }
+
+    @Test
+    public void exportAuditEventsAsCsv() throws Exception {
+        transactionTemplate.execute(status -> {
+            PersistentAuditEvent event = event("csv", START, 20);
+            event.setAuditEventType("TYPE, WITH \"QUOTES\"");
+            return persistenceAuditEventRepository.save(event);
+        });
+
+        MvcResult result = restAuditEventMockMvc.perform(get("/api/admin/audit-events/export").param("principal", "csv")
+            .param("format", "CSV"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "text/csv;charset=UTF-8"))
+            .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\r\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).isEqualTo("id,principal,timestamp,type,data");
+        assertThat(lines[1]).endsWith(",csv," + START + ",\"TYPE, WITH \"\"QUOTES\"\"\",\"{\"\"index\"\":\"\"20\"\"}\"");
+    }
+
+    @Test
+    public void exportAuditEventsAsCsvWithoutFormulas() throws Exception {
+        transactionTemplate.execute(status -> {
+            PersistentAuditEvent event = event("=HYPERLINK(\"http://evil.example\",\"x\")", START, 21);
+            event.setAuditEventType("@SUM(1+1)");
+            return persistenceAuditEventRepository.save(event);
+        });
+
+        MvcResult result = restAuditEventMockMvc.perform(get("/api/admin/audit-events/export")
+            .param("principal", "=HYPERLINK(\"http://evil.example\",\"x\")")
+            .param("format", "CSV"))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\r\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[1]).endsWith(",\"'=HYPERLINK(\"\"http://evil.example\"\",\"\"x\"\")\"," + START +
+            ",'@SUM(1+1),\"{\"\"index\"\":\"\"21\"\"}\"");
+    }
+
+    @Test
+    public void exportAuditEventsGzipped() throws Exception {
+        MvcResult result = restAuditEventMockMvc.perform(get("/api/admin/audit-events/export").param("gzip", "true"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/gzip"))
+            .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"audit-events.ndjson.gz\""))
+            .andReturn();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray())), StandardCharsets.UTF_8))) {
+            // The events without a date are not exported
+            assertThat(reader.lines()).hasSize(10);
+        }
+    }
+
+    @Test
+    public void exportAuditEventsWithAnUnknownFormat() throws Exception {
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events/export").param("format", "xml"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invalidformat"));
+    }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.USER)
+    public void searchAuditEventsIsForbiddenForUsers() throws Exception {
+        restAuditEventMockMvc.perform(get("/api/admin/audit-events"))
+            .andExpect(status().isForbidden());
+    }
+
+    /**
+     * Follow the cursors from the first page to the last one.
+     *
+     * @return the indexes of the events found.
+     */
+    private List<String> pageThrough(Supplier<MockHttpServletRequestBuilder> request, int expectedPages, int size) throws Exception {
+        List<String> indexes = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MockHttpServletRequestBuilder page = request.get().param("size", String.valueOf(size));
+            if (cursor != null) {
+                page.param("cursor", cursor);
+            }
+            MvcResult result = restAuditEventMockMvc.perform(page).andExpect(status().isOk()).andReturn();
+            List<String> pageIndexes = JsonPath.read(result.getResponse().getContentAsString(), "$.[*].data.index");
+            indexes.addAll(pageIndexes);
+            pages++;
+            cursor = result.getResponse().getHeader(AuditEventResource.NEXT_CURSOR_HEADER);
+            if (cursor != null) {
+                assertThat(pageIndexes).hasSize(size);
+                assertThat(result.getResponse().getHeader(HttpHeaders.LINK)).contains("cursor=" + cursor).contains("rel=\"next\"");
+            }
+        } while (cursor != null);
+        assertThat(pages).isEqualTo(expectedPages);
+        return indexes;
+    }
+
+    private static PersistentAuditEvent event(String principal, Instant date, int index) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setPrincipal(principal);
+        event.setAuditEventDate(date);
+        event.setAuditEventType("AUTHENTICATION_SUCCESS");
+        event.getData().put("index", String.valueOf(index));
+        return event;
+    }
+}
@@ -0,0 +1,146 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.domain.PersistentAuditEvent;
+import com.diaspora.repository.CustomAuditEventRepository;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.service.AuditEventRollupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for the {@link AuditEventRollupResource} REST controller and its {@link AuditEventRollupService}.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class AuditEventRollupResourceIT {
+
+    private static final Instant MINUTE = Instant.parse("2020-03-01T10:00:00Z");
+
+    /**
+     * The day of the events, leaving out those written by the other tests.
+     */
+    private static final String DAY = "&fromDate=2020-03-01T00:00:00Z&toDate=2020-03-02T00:00:00Z";
+
+    @Autowired
+    private MockMvc restAuditEventRollupMockMvc;
+
+    @Autowired
+    private AuditEventRollupService auditEventRollupService;
+
+    @Autowired
+    private CustomAuditEventRepository customAuditEventRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        auditEventRollupService.flush();
+        transactionTemplate.execute(status -> jdbcTemplate.update("delete from jhi_audit_event_rollup"));
+    }
+
+    @Test
+    public void countEventsByTypeAndPrincipal() throws Exception {
+        record(MINUTE.plusSeconds(1), "AUTHENTICATION_SUCCESS", "admin");
+        record(MINUTE.plusSeconds(2), "AUTHENTICATION_SUCCESS", "admin");
+        record(MINUTE.plusSeconds(3), "AUTHENTICATION_FAILURE", "admin");
+        auditEventRollupService.flush();
+        record(MINUTE.plusSeconds(61), "AUTHENTICATION_SUCCESS", "admin");
+        record(MINUTE.plusSeconds(62), "AUTHENTICATION_SUCCESS", "user");
+        auditEventRollupService.flush();
+
+        restAuditEventRollupMockMvc.perform(get("/api/admin/audit-rollups?groupBy=type,principal" + DAY))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(3)))
+            .andExpect(jsonPath("$[0].eventType").value("AUTHENTICATION_FAILURE"))
+            .andExpect(jsonPath("$[0].principal").value("admin"))
+            .andExpect(jsonPath("$[0].count").value(1))
+            .andExpect(jsonPath("$[0].minute").doesNotExist())
+            .andExpect(jsonPath("$[1].eventType").value("AUTHENTICATION_SUCCESS"))
+            .andExpect(jsonPath("$[1].principal").value("admin"))
+            .andExpect(jsonPath("$[1].count").value(3))
+            .andExpect(jsonPath("$[2].principal").value("user"))
+            .andExpect(jsonPath("$[2].count").value(1));
+
+        restAuditEventRollupMockMvc.perform(get("/api/admin/audit-rollups?groupBy=minute&eventType=AUTHENTICATION_SUCCESS" + DAY))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(2)))
+            .andExpect(jsonPath("$[0].minute").value("2020-03-01T10:00:00Z"))
+            .andExpect(jsonPath("$[0].count").value(2))
+            .andExpect(jsonPath("$[1].minute").value("2020-03-01T10:01:00Z"))
+            .andExpect(jsonPath("$[1].count").value(2));
+
+        restAuditEventRollupMockMvc.perform(get("/api/admin/audit-rollups?principal=admin" +
+            "&fromDate=2020-03-01T10:00:30Z&toDate=2020-03-01T10:00:31Z"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].count").value(3));
+    }
+
+    @Test
+    public void countWrittenEvents() throws Exception {
+        customAuditEventRepository.add(new AuditEvent(MINUTE, "rollup-user", "AUTHENTICATION_SUCCESS", Collections.emptyMap()));
+        customAuditEventRepository.add(new AuditEvent(MINUTE, "rollup-user", "AUTHENTICATION_SUCCESS", Collections.emptyMap()));
+
+        await(() -> {
+            auditEventRollupService.flush();
+            Long count = jdbcTemplate.queryForObject("select sum(event_count) from jhi_audit_event_rollup" +
+                " where principal = 'rollup-user'", Long.class);
+            return count != null && count == 2;
+        });
+    }
+
+    @Test
+    public void countWithUnknownDimension() throws Exception {
+        restAuditEventRollupMockMvc.perform(get("/api/admin/audit-rollups?groupBy=day"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message").value("error.invaliddimension"));
+    }
+
+    private void record(Instant date, String type, String principal) {
+        PersistentAuditEvent event = new PersistentAuditEvent();
+        event.setAuditEventDate(date);
+        event.setAuditEventType(type);
+        event.setPrincipal(principal);
+        List<PersistentAuditEvent> batch = new ArrayList<>();
+        batch.add(event);
+        auditEventRollupService.record(batch);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
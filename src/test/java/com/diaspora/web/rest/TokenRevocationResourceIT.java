@@ -0,0 +1,119 @@
+package com.diaspora.web.rest;
+
+import com.diaspora.MsSecureCardBankApp;
+import com.diaspora.config.SecurityBeanOverrideConfiguration;
+import com.diaspora.config.oauth2.OAuth2Properties;
+import com.diaspora.security.AuthoritiesConstants;
+import com.diaspora.security.oauth2.TokenRevocationStore;
+import com.diaspora.web.rest.vm.TokenRevocationVM;
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Integration tests for the {@link TokenRevocationResource} REST controller.
+ */
+@AutoConfigureMockMvc
+@WithMockUser(authorities = AuthoritiesConstants.ADMIN)
+@SpringBootTest(classes = {SecurityBeanOverrideConfiguration.class, MsSecureCardBankApp.class})
+public class TokenRevocationResourceIT {
+
+    @Autowired
+    private MockMvc restTokenRevocationMockMvc;
+
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Autowired
+    private HazelcastInstance hazelcastInstance;
+
+    @Autowired
+    private OAuth2Properties oAuth2Properties;
+
+    @Test
+    public void revokeToken() throws Exception {
+        String jti = UUID.randomUUID().toString();
+        assertThat(tokenRevocationStore.isRevoked(jti)).isFalse();
+
+        restTokenRevocationMockMvc.perform(post("/api/admin/token-revocations")
+            .contentType(TestUtil.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(revocation(jti))))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$.jti").value(jti))
+            .andExpect(jsonPath("$.revokedBy").value("user"))
+            .andExpect(jsonPath("$.reason").value("compromised"));
+
+        assertThat(tokenRevocationStore.isRevoked(jti)).isTrue();
+        restTokenRevocationMockMvc.perform(get("/api/admin/token-revocations/{jti}", jti))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.jti").value(jti));
+        restTokenRevocationMockMvc.perform(get("/api/admin/token-revocations"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].jti").value(hasItem(jti)));
+    }
+
+    @Test
+    public void revocationIsPublishedToOtherNodes() throws Exception {
+        // A second store on the same cluster only learns about the revocation through the topic
+        TokenRevocationStore otherNode = new TokenRevocationStore(hazelcastInstance, oAuth2Properties, null, new SimpleMeterRegistry());
+        otherNode.start();
+        String jti = UUID.randomUUID().toString();
+
+        restTokenRevocationMockMvc.perform(post("/api/admin/token-revocations")
+            .contentType(TestUtil.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(revocation(jti))))
+            .andExpect(status().isCreated());
+
+        for (int i = 0; i < 50 && !otherNode.isRevoked(jti); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(otherNode.isRevoked(jti)).isTrue();
+        otherNode.stop();
+    }
+
+    @Test
+    public void revokeTokenWithoutJti() throws Exception {
+        restTokenRevocationMockMvc.perform(post("/api/admin/token-revocations")
+            .contentType(TestUtil.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(revocation(null))))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getUnknownTokenRevocation() throws Exception {
+        restTokenRevocationMockMvc.perform(get("/api/admin/token-revocations/{jti}", UUID.randomUUID().toString()))
+            .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser(authorities = AuthoritiesConstants.USER)
+    public void revokeTokenIsForbiddenForUsers() throws Exception {
+        restTokenRevocationMockMvc.perform(post("/api/admin/token-revocations")
+            .contentType(TestUtil.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(revocation(UUID.randomUUID().toString()))))
+            .andExpect(status().isForbidden());
+    }
+
+    private TokenRevocationVM revocation(String jti) {
+        TokenRevocationVM revocation = new TokenRevocationVM();
+        revocation.setJti(jti);
+        revocation.setExpiresAt(Instant.now().plusSeconds(3600));
+        revocation.setReason("compromised");
+        return revocation;
+    }
+}